@@ -0,0 +1,111 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.BackendApplication;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.service.DataIngestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 环境数据入库吞吐基准
+ *
+ * 测量写入管道实际使用的入库路径 {@link DataIngestService#persistBatch}：对比每个事务一条
+ * （同步模式下单条上报）与每个事务一个微批次（异步消费线程的批大小）的每秒入库行数。
+ * 结果中的 ops/s 即 rows/s。告警检查、缓存和推送在入库之后进行，不在测量范围内。
+ *
+ * 需要 application.properties 中配置的 MySQL 可用，可通过
+ * -Dbenchmark.args="DataIngestBenchmark -jvmArgs -Dspring.datasource.url=..." 指向其他库。
+ * 运行期间写入的数据在结束时会被删除。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DataIngestBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    private ConfigurableApplicationContext context;
+    private DataIngestService dataIngestService;
+    private PigstyRepository pigstyRepository;
+    private JdbcTemplate jdbcTemplate;
+    private Pigsty pigsty;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(BackendApplication.class)
+                // SecurityConfig 依赖 Web MVC 提供的 CORS 配置，因此启动完整的 Web 环境（随机端口）
+                .web(WebApplicationType.SERVLET)
+                // 以命令行参数传入，优先于 application.properties
+                .run("--server.port=0",
+                        "--pigsty.simulator.enabled=false",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        dataIngestService = context.getBean(DataIngestService.class);
+        pigstyRepository = context.getBean(PigstyRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        // 基准用猪舍不挂设备，数据只写入 environmental_data
+        Pigsty benchmarkPigsty = new Pigsty();
+        benchmarkPigsty.setName("jmh-ingest");
+        pigsty = pigstyRepository.save(benchmarkPigsty);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        jdbcTemplate.update("DELETE FROM environmental_data WHERE pigsty_ref = ?", pigsty.getId());
+        pigstyRepository.deleteById(pigsty.getId());
+        context.close();
+    }
+
+    @Benchmark
+    public void singleRow() {
+        dataIngestService.persistBatch(List.of(newReading()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void batch() {
+        List<EnvironmentalData> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(newReading());
+        }
+        dataIngestService.persistBatch(batch);
+    }
+
+    private EnvironmentalData newReading() {
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId(pigsty.getId());
+        data.setTemperature(24.5);
+        data.setHumidity(61.0);
+        data.setAmmoniaLevel(12.3);
+        data.setLight(310.0);
+        return data;
+    }
+}
@@ -0,0 +1,85 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.service.DataSimulationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟数据生成基准
+ *
+ * 测量 DataSimulationService 为一个猪舍生成一条环境数据的耗时（四项指标的高斯随机值、越限注入和取整）。
+ * 该方法是私有方法，通过 MethodHandle 调用，句柄在初始化时查找一次，调用开销可忽略。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class DataSimulationBenchmark {
+
+    private static final MethodHandle CREATE_ENVIRONMENTAL_DATA;
+
+    static {
+        try {
+            CREATE_ENVIRONMENTAL_DATA = MethodHandles
+                    .privateLookupIn(DataSimulationService.class, MethodHandles.lookup())
+                    .findVirtual(DataSimulationService.class, "createEnvironmentalData",
+                            MethodType.methodType(EnvironmentalData.class, Pigsty.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private DataSimulationService simulationService;
+    private Pigsty configured;
+    private Pigsty unconfigured;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 生成数据不访问仓库和写入管道
+        simulationService = new DataSimulationService(null, null, null, null, null, null, null);
+
+        configured = new Pigsty();
+        configured.setId(1L);
+        configured.setTempThresholdHigh(30.0);
+        configured.setTempThresholdLow(15.0);
+        configured.setHumidityThresholdHigh(80.0);
+        configured.setHumidityThresholdLow(40.0);
+        configured.setAmmoniaThresholdHigh(25.0);
+        configured.setLightThresholdHigh(500.0);
+        configured.setLightThresholdLow(100.0);
+
+        unconfigured = new Pigsty();
+        unconfigured.setId(2L);
+    }
+
+    @Benchmark
+    public EnvironmentalData withThresholds() throws Throwable {
+        return (EnvironmentalData) CREATE_ENVIRONMENTAL_DATA.invokeExact(simulationService, configured);
+    }
+
+    @Benchmark
+    public EnvironmentalData withoutThresholds() throws Throwable {
+        return (EnvironmentalData) CREATE_ENVIRONMENTAL_DATA.invokeExact(simulationService, unconfigured);
+    }
+}
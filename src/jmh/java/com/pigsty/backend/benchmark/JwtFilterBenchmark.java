@@ -0,0 +1,170 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.config.JwtAuthenticationFilter;
+import com.pigsty.backend.model.Role;
+import com.pigsty.backend.model.User;
+import com.pigsty.backend.repository.UserRepository;
+import com.pigsty.backend.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 认证过滤器基准
+ *
+ * 对比三种路径处理一个携带 Bearer Token 的请求的耗时：
+ *
+ * - legacy：原实现，每次解析都重新解码密钥、构建解析器，同一 Token 解析三次，再按用户名加载用户
+ * - filterUncached：当前过滤器，缓存始终未命中（轮换使用大量不同的 Token），只解析一次
+ * - filterCached：当前过滤器，同一 Token 命中验证缓存
+ *
+ * 用户加载使用内存中的 UserDetailsService，不含数据库往返，
+ * 因此 legacy 的结果是原实现开销的下限。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private static final String SECRET_KEY = "YWlyc3R5LW1vbml0b3Jpbmctc3lzdGVtLXNlY3JldC1rZXktZm9yLWp3dC1hdXRoZW50aWNhdGlvbg==";
+
+    private static final int UNCACHED_TOKENS = 1024;
+
+    private User user;
+    private UserDetailsService userDetailsService;
+    private JwtAuthenticationFilter cachedFilter;
+    private JwtAuthenticationFilter uncachedFilter;
+    private String token;
+    private String[] uncachedTokens;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        user = User.builder().id(1L).username("jmh-admin").password("x").name("JMH").role(Role.ADMIN).build();
+        Map<String, User> users = Map.of(user.getUsername(), user);
+        userDetailsService = username -> {
+            User found = users.get(username);
+            if (found == null) {
+                throw new UsernameNotFoundException("User not found");
+            }
+            return found;
+        };
+
+        // 账号查询同样使用内存中的实现，只用到 findById
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(), new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> Optional.of(user));
+
+        JwtService cachedService = new JwtService(userRepository, 10_000, 3_600_000);
+        cachedFilter = newFilter(cachedService);
+        token = cachedService.generateToken(user);
+
+        // 缓存上限为 1：每次放入前都会清空，轮换的 Token 永远不会命中
+        JwtService uncachedService = new JwtService(userRepository, 1, 3_600_000);
+        uncachedFilter = newFilter(uncachedService);
+        uncachedTokens = new String[UNCACHED_TOKENS];
+        // 额外的 n 声明使每个 Token 各不相同，uid 声明与正常签发的 Token 一致
+        for (int i = 0; i < UNCACHED_TOKENS; i++) {
+            uncachedTokens[i] = uncachedService.generateToken(
+                    Map.of("n", i, JwtService.CLAIM_USER_ID, user.getId()), user);
+        }
+    }
+
+    @Benchmark
+    public Object legacy() throws Exception {
+        MockHttpServletRequest request = newRequest(token);
+        SecurityContextHolder.clearContext();
+        String username = legacyParse(token).getSubject();
+        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            boolean valid = legacyParse(token).getSubject().equals(userDetails.getUsername())
+                    && !legacyParse(token).getExpiration().before(new Date());
+            if (valid) {
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities());
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            }
+        }
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Benchmark
+    public Object filterUncached() throws Exception {
+        String current = uncachedTokens[next];
+        next = (next + 1) & (UNCACHED_TOKENS - 1);
+        return runFilter(uncachedFilter, current);
+    }
+
+    @Benchmark
+    public Object filterCached() throws Exception {
+        return runFilter(cachedFilter, token);
+    }
+
+    private Object runFilter(JwtAuthenticationFilter filter, String bearer) throws Exception {
+        SecurityContextHolder.clearContext();
+        filter.doFilter(newRequest(bearer), new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private JwtAuthenticationFilter newFilter(JwtService jwtService) {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtService", jwtService);
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        return filter;
+    }
+
+    private static MockHttpServletRequest newRequest(String bearer) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/pigsties");
+        request.setServletPath("/api/pigsties");
+        request.addHeader("Authorization", "Bearer " + bearer);
+        return request;
+    }
+
+    /**
+     * 原实现的解析方式：每次都解码密钥并构建新的解析器
+     */
+    private static Claims legacyParse(String token) {
+        SecretKey key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_KEY));
+        return Jwts.parser()
+                .verifyWith(key)
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,70 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.model.Role;
+import com.pigsty.backend.model.User;
+import com.pigsty.backend.repository.UserRepository;
+import com.pigsty.backend.service.JwtService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 令牌服务基准
+ *
+ * - generateToken：签发一个带 uid 声明的 Token（登录、刷新接口）
+ * - parseToken：完整解析并验证一次签名（验证缓存未命中时的代价）
+ * - verifyCached：验证缓存和账号缓存都命中
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private JwtService jwtService;
+    private User user;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        user = User.builder().id(1L).username("jmh-admin").password("x").name("JMH").role(Role.ADMIN).build();
+        // 只用到 findById，账号缓存命中后不再调用
+        UserRepository users = (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> Optional.of(user));
+        jwtService = new JwtService(users, 10_000, 3_600_000);
+        token = jwtService.generateToken(user);
+        jwtService.verify(token);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean parseToken() {
+        return jwtService.validateTokenSignature(token);
+    }
+
+    @Benchmark
+    public JwtService.VerifiedToken verifyCached() {
+        return jwtService.verify(token);
+    }
+}
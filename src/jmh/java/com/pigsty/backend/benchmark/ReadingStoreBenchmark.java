@@ -0,0 +1,146 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.repository.GorillaReadingStore;
+import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.repository.ReadingStore;
+import com.pigsty.backend.util.GorillaCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 嵌入式时间序列存储基准
+ *
+ * 在临时目录中建立一个 {@link GorillaReadingStore}，写入一个猪舍 30 天、每分钟一条的读数
+ * （时间带 ±10 毫秒抖动，数值保留两位小数，与模拟器一致），测量：
+ *
+ * - scanHour / scanDay：按时间范围扫描一项指标（60 / 1440 个点），包括索引定位和从映射文件中解码
+ * - encodeChunk / decodeChunk：单个数据块（120 个点）的压缩和解压
+ *
+ * 不依赖数据库：仓库为桩对象，启动补齐时没有猪舍需要补齐。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ReadingStoreBenchmark {
+
+    private static final long PIGSTY_ID = 1L;
+    private static final int DAYS = 30;
+    private static final int CHUNK_POINTS = 120;
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private Path directory;
+    private GorillaReadingStore store;
+    private LocalDateTime hourFrom;
+    private LocalDateTime dayFrom;
+    private long[] chunkTimestamps;
+    private double[] chunkValues;
+    private ByteBuffer encodedChunk;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("reading-store-benchmark");
+        store = new GorillaReadingStore(null, mock(PigstyRepository.class, withSettings().stubOnly()),
+                true, directory, CHUNK_POINTS, 262144, DAYS, 0);
+        store.open();
+        store.catchUp();
+        while (!store.covers(PIGSTY_ID, BASE_TIME, BASE_TIME.plusDays(DAYS))) {
+            Thread.sleep(10);
+        }
+
+        Random random = new Random(42);
+        double temperature = 22.0;
+        List<EnvironmentalData> batch = new ArrayList<>();
+        for (int minute = 0; minute < DAYS * 24 * 60; minute++) {
+            temperature += random.nextGaussian() * 0.05;
+            EnvironmentalData data = new EnvironmentalData();
+            data.setPigstyId(PIGSTY_ID);
+            data.setTimestamp(BASE_TIME.plusMinutes(minute).plusNanos((random.nextInt(20000) - 10000) * 1000L));
+            data.setTemperature(Math.round(temperature * 100.0) / 100.0);
+            batch.add(data);
+        }
+        store.append(batch);
+
+        hourFrom = BASE_TIME.plusDays(DAYS / 2);
+        dayFrom = BASE_TIME.plusDays(DAYS / 2);
+
+        chunkTimestamps = new long[CHUNK_POINTS];
+        chunkValues = new double[CHUNK_POINTS];
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < CHUNK_POINTS; i++) {
+            EnvironmentalData data = batch.get(i);
+            chunkTimestamps[i] = ReadingStore.toEpochMicros(data.getTimestamp());
+            chunkValues[i] = data.getTemperature();
+            encoder.append(chunkTimestamps[i], chunkValues[i]);
+        }
+        encodedChunk = ByteBuffer.wrap(encoder.toByteArray());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int scanHour(Blackhole blackhole) {
+        return store.scan(PIGSTY_ID, ReadingStore.Metric.TEMPERATURE, hourFrom, hourFrom.plusHours(1),
+                Integer.MAX_VALUE, (timestamp, value) -> blackhole.consume(value));
+    }
+
+    @Benchmark
+    public int scanDay(Blackhole blackhole) {
+        return store.scan(PIGSTY_ID, ReadingStore.Metric.TEMPERATURE, dayFrom, dayFrom.plusDays(1),
+                Integer.MAX_VALUE, (timestamp, value) -> blackhole.consume(value));
+    }
+
+    @Benchmark
+    public int encodeChunk() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < CHUNK_POINTS; i++) {
+            encoder.append(chunkTimestamps[i], chunkValues[i]);
+        }
+        return encoder.byteLength();
+    }
+
+    @Benchmark
+    public double decodeChunk() {
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(encodedChunk, 0, CHUNK_POINTS);
+        double sum = 0;
+        while (decoder.next()) {
+            sum += decoder.value();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,258 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.BackendApplication;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.repository.WarningCursor;
+import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.repository.WarningSearch;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 告警列表查询延迟基准
+ *
+ * 在 warning_log 中准备数百万条告警（默认 200 万，200 个猪舍 × 4 种指标，约 20% 未确认），
+ * 按告警列表的常用筛选组合测量单次查询的延迟分布，结果中的 p0.99 即 p99。
+ * 查询直接调用仓库（与 WarningController 使用相同的 WarningSearch、排序和仓库方法），不经过 HTTP 和鉴权。
+ *
+ * 对照项：
+ * - legacyIsNullOr：改造前 (:x IS NULL OR ...) 写法的 JPQL，与 latestByPigsty 条件相同
+ * - offsetDeepPage / keysetDeepPage：第 200 页（跳过 2 万条）分别用页码和游标读取
+ *
+ * 准备数据较慢，且每个基准方法是一次独立的 Trial，因此数据按固定种子生成、写入保留的猪舍ID段
+ * （900000 起），运行结束后保留在库中供下次复用；条数不符时自动重建。需要清理时执行：
+ * DELETE FROM warning_log WHERE message = 'jmh-warning-search'
+ *
+ * 需要 application.properties 中配置的 MySQL 可用，可通过
+ * -Dbenchmark.args="WarningSearchBenchmark -jvmArgs -Dspring.datasource.url=..." 指向其他库。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class WarningSearchBenchmark {
+
+    private static final String MARKER = "jmh-warning-search";
+    private static final int FIRST_PIGSTY_ID = 900000;
+    private static final int PIGSTY_COUNT = 200;
+    private static final int TECHNICIAN_PIGSTY_COUNT = 10;
+    private static final String[] METRIC_TYPES = {"TEMPERATURE", "HUMIDITY", "AMMONIA", "LIGHT"};
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int SPAN_SECONDS = 30 * 24 * 3600;
+    private static final int INSERT_BATCH = 10000;
+    private static final int PAGE_SIZE = 100;
+    private static final int DEEP_PAGE = 200;
+
+    private static final String LEGACY_SEARCH = """
+        SELECT w FROM WarningLog w
+        WHERE w.acknowledged = :acknowledged
+          AND (:pigstyId IS NULL OR w.pigstyId = :pigstyId)
+          AND (:metricType IS NULL OR w.metricType = :metricType)
+          AND (:level IS NULL OR w.level = :level)
+          AND (:from IS NULL OR w.timestamp >= :from)
+          AND (:to IS NULL OR w.timestamp <= :to)
+        ORDER BY w.timestamp DESC, w.id DESC
+    """;
+
+    @Param({"2000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private WarningLogRepository warningLogRepository;
+    private EntityManager entityManager;
+    private JdbcTemplate jdbcTemplate;
+    private List<Long> technicianPigstyIds;
+    private WarningLog deepPageAnchor;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(BackendApplication.class)
+                // SecurityConfig 依赖 Web MVC 提供的 CORS 配置，因此启动完整的 Web 环境（随机端口）
+                .web(WebApplicationType.SERVLET)
+                // 以命令行参数传入，优先于 application.properties
+                .run("--server.port=0",
+                        "--pigsty.simulator.enabled=false",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        warningLogRepository = context.getBean(WarningLogRepository.class);
+        entityManager = context.getBean(EntityManager.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        Long existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM warning_log WHERE message = ?", Long.class, MARKER);
+        if (existing == null || existing != rows) {
+            jdbcTemplate.update("DELETE FROM warning_log WHERE message = ?", MARKER);
+            seed();
+        }
+
+        technicianPigstyIds = new ArrayList<>();
+        for (int i = 0; i < TECHNICIAN_PIGSTY_COUNT; i++) {
+            technicianPigstyIds.add((long) FIRST_PIGSTY_ID + i * (PIGSTY_COUNT / TECHNICIAN_PIGSTY_COUNT));
+        }
+        // 第 DEEP_PAGE 页之前最后一条记录，作为键集翻页的游标
+        deepPageAnchor = warningLogRepository.searchSlice(WarningSearch.unacknowledged().toSpecification(),
+                PageRequest.of(DEEP_PAGE * PAGE_SIZE - 1, 1, Sort.by(Sort.Direction.DESC, "timestamp", "id")))
+                .getContent().get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestUnfiltered() {
+        return slice(new WarningSearch(false, null, null, null, null, null), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestByPigsty() {
+        return slice(new WarningSearch(false, List.of(randomPigstyId()), null, null, null, null), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestByPigstyAndMetric() {
+        return slice(new WarningSearch(false, List.of(randomPigstyId()), randomMetricType(), null, null, null), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestByMetricAndLevel() {
+        return slice(new WarningSearch(false, null, randomMetricType(), "DANGER", null, null), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestByPigstyInLastDay() {
+        LocalDateTime to = BASE_TIME.plusSeconds(SPAN_SECONDS);
+        return slice(new WarningSearch(false, List.of(randomPigstyId()), null, null, to.minusDays(1), to), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestForTechnician() {
+        return slice(new WarningSearch(false, technicianPigstyIds, null, null, null, null), 0);
+    }
+
+    @Benchmark
+    public Slice<WarningLog> latestByPigstyWithTotal() {
+        Specification<WarningLog> spec = new WarningSearch(false, List.of(randomPigstyId()), null, null, null, null)
+                .toSpecification();
+        return warningLogRepository.search(spec, pageable("timestamp", 0));
+    }
+
+    @Benchmark
+    public Slice<WarningLog> acknowledgedByPigsty() {
+        Specification<WarningLog> spec = new WarningSearch(true, List.of(randomPigstyId()), null, null, null, null)
+                .toSpecification();
+        return warningLogRepository.searchSlice(spec, pageable("acknowledgedAt", 0));
+    }
+
+    @Benchmark
+    public Slice<WarningLog> offsetDeepPage() {
+        return slice(WarningSearch.unacknowledged(), DEEP_PAGE);
+    }
+
+    @Benchmark
+    public List<WarningLog> keysetDeepPage() {
+        Specification<WarningLog> spec = WarningSearch.unacknowledged().toSpecification()
+                .and(new WarningCursor(deepPageAnchor.getTimestamp(), deepPageAnchor.getId()).after("timestamp"));
+        return warningLogRepository.searchAfter(spec, Sort.by(Sort.Direction.DESC, "timestamp", "id"), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<WarningLog> legacyIsNullOr() {
+        return entityManager.createQuery(LEGACY_SEARCH, WarningLog.class)
+                .setParameter("acknowledged", false)
+                .setParameter("pigstyId", randomPigstyId())
+                .setParameter("metricType", null)
+                .setParameter("level", null)
+                .setParameter("from", null)
+                .setParameter("to", null)
+                .setMaxResults(PAGE_SIZE)
+                .getResultList();
+    }
+
+    private Slice<WarningLog> slice(WarningSearch search, int page) {
+        return warningLogRepository.searchSlice(search.toSpecification(), pageable("timestamp", page));
+    }
+
+    private static Pageable pageable(String sortKey, int page) {
+        return PageRequest.of(page, PAGE_SIZE, Sort.by(Sort.Direction.DESC, sortKey, "id"));
+    }
+
+    private static Long randomPigstyId() {
+        return (long) FIRST_PIGSTY_ID + ThreadLocalRandom.current().nextInt(PIGSTY_COUNT);
+    }
+
+    private static String randomMetricType() {
+        return METRIC_TYPES[ThreadLocalRandom.current().nextInt(METRIC_TYPES.length)];
+    }
+
+    /**
+     * 按固定种子生成告警：时间均匀分布在 30 天内，10% 为 DANGER，80% 已确认（确认时间在发生后 1 小时内）
+     */
+    private void seed() {
+        Random random = new Random(42);
+        String sql = """
+                INSERT INTO warning_log (pigsty_ref, message, metric_type, actual_value, threshold_value, level,
+                                         timestamp, acknowledged, acknowledged_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < rows; i++) {
+            LocalDateTime timestamp = BASE_TIME.plusSeconds(random.nextInt(SPAN_SECONDS));
+            boolean acknowledged = random.nextInt(5) != 0;
+            batch.add(new Object[] {
+                    (long) FIRST_PIGSTY_ID + random.nextInt(PIGSTY_COUNT),
+                    MARKER,
+                    METRIC_TYPES[random.nextInt(METRIC_TYPES.length)],
+                    30.0 + random.nextInt(100) / 10.0,
+                    30.0,
+                    random.nextInt(10) == 0 ? "DANGER" : "WARNING",
+                    Timestamp.valueOf(timestamp),
+                    acknowledged,
+                    acknowledged ? Timestamp.valueOf(timestamp.plusSeconds(random.nextInt(3600))) : null
+            });
+            if (batch.size() == INSERT_BATCH) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+        jdbcTemplate.execute("ANALYZE TABLE warning_log");
+    }
+}
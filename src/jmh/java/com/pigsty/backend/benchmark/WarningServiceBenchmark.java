@@ -0,0 +1,128 @@
+package com.pigsty.backend.benchmark;
+
+import com.pigsty.backend.controller.WebSocketHandler;
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.repository.DeviceRepository;
+import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.PigstyMetrics;
+import com.pigsty.backend.service.ThresholdEngine;
+import com.pigsty.backend.service.WarningCounters;
+import com.pigsty.backend.service.WarningService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 告警检查基准
+ *
+ * 测量 {@link WarningService#checkDataForWarnings(EnvironmentalData)} 的耗时，仓库和 WebSocket 推送均为桩对象，
+ * 只包含规则快照查找、阈值判定和告警对象的构造：
+ *
+ * - withinThresholds：所有指标都在阈值内，不产生告警（绝大多数数据走这条路径）
+ * - breachingThresholds：温度过高且湿度过低，第一次打开两个告警事件，之后只在内存中更新这两个事件（告警风暴时的路径）
+ *
+ * 桩对象使用 stubOnly，不记录调用，长时间运行不会积累内存。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WarningServiceBenchmark {
+
+    private WarningService warningService;
+    private EnvironmentalData normal;
+    private EnvironmentalData breaching;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Pigsty pigsty = new Pigsty();
+        pigsty.setId(1L);
+        pigsty.setTempThresholdHigh(30.0);
+        pigsty.setTempThresholdLow(15.0);
+        pigsty.setHumidityThresholdHigh(80.0);
+        pigsty.setHumidityThresholdLow(40.0);
+        pigsty.setAmmoniaThresholdHigh(25.0);
+        pigsty.setLightThresholdHigh(500.0);
+        pigsty.setLightThresholdLow(100.0);
+
+        List<Device> devices = new ArrayList<>();
+        long deviceId = 1;
+        for (Device.MetricType type : Device.MetricType.values()) {
+            Device device = new Device();
+            device.setId(deviceId++);
+            device.setPigstyId(1L);
+            device.setType(type);
+            devices.add(device);
+        }
+
+        PigstyRepository pigstyRepository = mock(PigstyRepository.class, withSettings().stubOnly());
+        when(pigstyRepository.findById(anyLong())).thenReturn(Optional.of(pigsty));
+        DeviceRepository deviceRepository = mock(DeviceRepository.class, withSettings().stubOnly());
+        when(deviceRepository.findByPigstyId(anyLong())).thenReturn(devices);
+        WarningLogRepository warningLogRepository = mock(WarningLogRepository.class, withSettings().stubOnly());
+        when(warningLogRepository.save(any(WarningLog.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        warningService = new WarningService();
+        PigstyCache pigstyCache = new PigstyCache(pigstyRepository, deviceRepository, 10000);
+        ReflectionTestUtils.setField(warningService, "thresholdEngine", new ThresholdEngine(pigstyCache));
+        ReflectionTestUtils.setField(warningService, "logRepository", warningLogRepository);
+        ReflectionTestUtils.setField(warningService, "webSocketHandler",
+                mock(WebSocketHandler.class, withSettings().stubOnly()));
+        ReflectionTestUtils.setField(warningService, "warningCounters", new WarningCounters(warningLogRepository));
+        ReflectionTestUtils.setField(warningService, "metrics", new PigstyMetrics(new SimpleMeterRegistry(), pigstyCache));
+
+        normal = reading(24.0, 60.0);
+        breaching = reading(35.0, 30.0);
+    }
+
+    @Benchmark
+    public void withinThresholds() {
+        warningService.checkDataForWarnings(normal);
+    }
+
+    @Benchmark
+    public void breachingThresholds() {
+        warningService.checkDataForWarnings(breaching);
+    }
+
+    private static EnvironmentalData reading(double temperature, double humidity) {
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId(1L);
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setAmmoniaLevel(12.0);
+        data.setLight(300.0);
+        return data;
+    }
+}
@@ -0,0 +1,97 @@
+package com.pigsty.backend.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pigsty.backend.controller.SessionSender;
+import com.pigsty.backend.controller.WebSocketHandler;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.service.PigstyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket 消息序列化基准
+ *
+ * ObjectMapper 与 Spring Boot 的默认配置一致（注册 Java 8 日期时间模块，日期输出为 ISO 字符串）。
+ *
+ * - serializeWarning / serializeDataUpdate：单独序列化 WarningLog / EnvironmentalData
+ * - sendWarning / sendDataUpdate：经由 WebSocketHandler 推送（序列化一次并查找订阅者），没有连接的会话，
+ *   因此只包含推送方的开销，不含实际发送
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WebSocketSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private WebSocketHandler webSocketHandler;
+    private WarningLog warningLog;
+    private EnvironmentalData data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        webSocketHandler = new WebSocketHandler(objectMapper, null,
+                new PigstyMetrics(new SimpleMeterRegistry(), null), 256,
+                SessionSender.OverflowPolicy.COALESCE, 10_000, 1 << 20);
+
+        warningLog = new WarningLog();
+        warningLog.setId(42L);
+        warningLog.setPigstyId(1L);
+        warningLog.setMessage("温度过高！");
+        warningLog.setMetricType("TEMPERATURE");
+        warningLog.setActualValue(35.2);
+        warningLog.setThresholdValue(30.0);
+        warningLog.setLevel("DANGER");
+        warningLog.setTimestamp(LocalDateTime.of(2025, 1, 1, 12, 0, 0));
+
+        data = new EnvironmentalData();
+        data.setId(4242L);
+        data.setPigstyId(1L);
+        data.setTemperature(24.5);
+        data.setHumidity(61.0);
+        data.setAmmoniaLevel(12.3);
+        data.setLight(310.0);
+        data.setTimestamp(LocalDateTime.of(2025, 1, 1, 12, 0, 0));
+    }
+
+    @Benchmark
+    public byte[] serializeWarning() throws Exception {
+        return objectMapper.writeValueAsBytes(warningLog);
+    }
+
+    @Benchmark
+    public byte[] serializeDataUpdate() throws Exception {
+        return objectMapper.writeValueAsBytes(data);
+    }
+
+    @Benchmark
+    public void sendWarning() {
+        webSocketHandler.sendWarning(warningLog);
+    }
+
+    @Benchmark
+    public void sendDataUpdate() {
+        webSocketHandler.sendDataUpdate(data);
+    }
+}
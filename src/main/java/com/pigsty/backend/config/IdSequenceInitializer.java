@@ -0,0 +1,44 @@
+package com.pigsty.backend.config;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 主键序列对齐初始化器
+ *
+ * environmental_data 的主键由自增列改为池化序列后，序列表是新建的，初始值从 1 开始，
+ * 会与历史数据的主键冲突。该组件在 JPA 建表完成之后、调度任务和 Web 请求开始之前，
+ * 把序列的下一个值推进到现有最大主键之后。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdSequenceInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignSequences() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM environmental_data", Long.class);
+        // 池化优化器会从取到的值往回分配一整段，因此要多预留一个分配步长
+        long nextValue = (maxId == null ? 0L : maxId) + EnvironmentalData.ID_ALLOCATION_SIZE + 1;
+        int updated = jdbcTemplate.update(
+                "UPDATE environmental_data_seq SET next_val = ? WHERE next_val < ?", nextValue, nextValue);
+        if (updated > 0) {
+            log.info("environmental_data_seq advanced to {} (max existing id {})", nextValue, maxId);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.pigsty.backend.config;
 
 import com.pigsty.backend.service.JwtService;
+import com.pigsty.backend.service.JwtService.VerifiedToken;
+import com.pigsty.backend.service.WebSocketTicketService;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,6 +15,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -26,9 +30,10 @@ import java.io.IOException;
  * 
  * 主要功能：
  * - 从请求头中提取和验证 JWT Token
- * - 解析 Token 获取用户名
- * - 验证 Token 的有效性和过期时间
+ * - 验证 Token 的签名和过期时间（每个请求只解析一次，验证结果按 Token 缓存）
+ * - 按 Token 中的用户ID从账号缓存构造用户主体（见 {@link JwtService#verify}），缓存过期后才查询数据库
  * - 将认证信息设置到 Spring Security 上下文中
+ * - WebSocket 握手请求用一次性票据认证（见 {@link WebSocketTicketService}），URL 中不出现 JWT
  * 
  * @author 系统架构
  * @version 1.0
@@ -36,12 +41,17 @@ import java.io.IOException;
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final String WEBSOCKET_PATH = "/ws";
+
     @Autowired
     private JwtService jwtService;
 
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private WebSocketTicketService ticketService;
+
     /**
      * 判断是否应该跳过当前请求的过滤
      * 
@@ -63,13 +73,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
      * 执行 JWT 认证过滤逻辑
      * 
      * 对请求进行 JWT Token 认证，执行以下步骤：
-     * 1. 从 Authorization 请求头中提取 Token
+     * 1. 从 Authorization 请求头中提取 Token；没有请求头的 WebSocket 握手请求改为使用 ticket 查询参数中的一次性票据
      * 2. 验证 Token 格式是否正确（Bearer 前缀）
-     * 3. 从 Token 中解析用户名
-     * 4. 从数据库加载用户详细信息
-     * 5. 验证 Token 的有效性
-     * 6. 将认证信息设置到 Spring Security 上下文中
-     * 7. 放行请求到下一个过滤器
+     * 3. 验证 Token 的签名和过期时间，并解析出用户主体（已验证过的 Token 直接命中缓存）
+     * 4. 旧版 Token 不含用户ID声明时，从数据库加载用户详细信息
+     * 5. 将认证信息设置到 Spring Security 上下文中
+     * 6. 放行请求到下一个过滤器
      * 
      * @param request HTTP 请求对象
      * @param response HTTP 响应对象
@@ -85,43 +94,62 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     ) throws ServletException, IOException {
 
         final String authHeader = request.getHeader("Authorization");
+        final String token;
 
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            token = authHeader.substring(7);
+        } else if (WEBSOCKET_PATH.equals(request.getServletPath()) && request.getParameter("ticket") != null) {
+            // 浏览器的 WebSocket API 无法设置请求头，握手请求通过 ?ticket= 携带事先换取的一次性票据
+            UserDetails principal = ticketService.redeem(request.getParameter("ticket"));
+            if (principal == null) {
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired ticket");
+                return;
+            }
+            authenticate(principal, request);
+            filterChain.doFilter(request, response);
+            return;
+        } else {
             filterChain.doFilter(request, response);
             return;
         }
 
-        final String token = authHeader.substring(7);
-        final String username;
+        final VerifiedToken verified;
 
         try {
-            username = jwtService.extractUsername(token);
-        } catch (Exception e) {
+            verified = jwtService.verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            // Token 无效（过期或被篡改），返回 401 错误
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid Token");
             return;
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-
-            if (jwtService.isTokenValid(token, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities()
-                );
-                authToken.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request)
-                );
-
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            } else {
-                // Token 无效（过期或被篡改），返回 401 错误
-                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
-                return;
+        if (verified.username() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = verified.principal();
+            if (userDetails == null) {
+                try {
+                    userDetails = this.userDetailsService.loadUserByUsername(verified.username());
+                } catch (UsernameNotFoundException e) {
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
+                    return;
+                }
             }
+
+            authenticate(userDetails, request);
         }
 
         filterChain.doFilter(request, response);
     }
+
+    private void authenticate(UserDetails userDetails, HttpServletRequest request) {
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                userDetails,
+                null,
+                userDetails.getAuthorities()
+        );
+        authToken.setDetails(
+                new WebAuthenticationDetailsSource().buildDetails(request)
+        );
+
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
 }
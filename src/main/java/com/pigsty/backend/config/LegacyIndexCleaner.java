@@ -0,0 +1,58 @@
+package com.pigsty.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 过时索引清理器
+ *
+ * ddl-auto=update 只会创建实体上声明的新索引，不会删除已经从实体上移除的索引。
+ * 该组件在 JPA 建表完成之后删除已被组合索引取代的旧索引，避免它们继续拖慢写入，
+ * 也避免优化器在新旧索引之间选错。索引不存在时什么也不做。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class LegacyIndexCleaner {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyIndexCleaner.class);
+
+    /**
+     * 要删除的索引：[表名, 索引名]
+     */
+    private static final List<String[]> OBSOLETE_INDEXES = List.of(
+            // 被 warning_log 上 (acknowledged, ...) 开头的组合索引取代
+            new String[] {"warning_log", "idx_acknowledged"},
+            new String[] {"warning_log", "idx_pigsty_id"},
+            new String[] {"warning_log", "idx_metric_type"},
+            new String[] {"warning_log", "idx_timestamp"}
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LegacyIndexCleaner(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void dropObsoleteIndexes() {
+        for (String[] index : OBSOLETE_INDEXES) {
+            Integer present = jdbcTemplate.queryForObject("""
+                    SELECT COUNT(*) FROM information_schema.statistics
+                    WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?
+                    """, Integer.class, index[0], index[1]);
+            if (present != null && present > 0) {
+                jdbcTemplate.execute("ALTER TABLE " + index[0] + " DROP INDEX " + index[1]);
+                log.info("Dropped obsolete index {}.{}", index[0], index[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.pigsty.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 猪舍ID列迁移：environmental_data、warning_log 的字符串列 pigsty_id → 数值列 pigsty_ref
+ *
+ * 按“扩展 → 回填 → 收缩”三步在线完成，不阻塞启动，也不长时间锁表：
+ * - 扩展：ddl-auto=update 按实体新增可为空的 pigsty_ref 列及其组合索引，新写入的数据只写这一列
+ * - 回填：后台线程按主键区间分批执行
+ *   UPDATE ... SET pigsty_ref = CAST(pigsty_id AS UNSIGNED) WHERE id >= ? AND id < ? AND pigsty_ref IS NULL，
+ *   每批是一个独立的小事务，只锁定该区间内的行；批次之间暂停一会儿，把 I/O 让给正常的读写
+ *   （pigsty.migration.chunk-size、pigsty.migration.pause-ms）
+ * - 收缩：一张表回填完成后，删除旧列上的索引（ALGORITHM=INPLACE, LOCK=NONE，只改元数据）和旧列
+ *   （ALGORITHM=INSTANT，MariaDB 10.4+ / MySQL 8.0.29+）。两者都不重建表；数据库不支持即时删除列时
+ *   不会退回到重建整张表的普通 DROP COLUMN，而是记录错误并保留旧列（可为空，不影响写入），
+ *   需要在维护窗口手动执行日志中给出的语句
+ *
+ * 回填完成之前，按猪舍查询看不到尚未回填的历史数据；一张表回填完成后发布 {@link TableMigrated} 事件，
+ * 启动时从该表加载过数据的内存缓存据此重新加载。旧列不存在时（新库或已迁移完成）什么也不做；
+ * 中途重启后重新从头检查，已回填的行（pigsty_ref 非空）不会被重复更新。
+ * 不是数字的旧猪舍ID无法对应到猪舍，这些行的 pigsty_ref 为空。删除旧列之前先把这些行的旧值
+ * 按（表名，行ID）复制到 {@value #UNMAPPED_TABLE} 表，确认全部复制完成才删除旧列，否则保留旧列、下次启动再试。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class PigstyIdMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(PigstyIdMigration.class);
+
+    /**
+     * 旧列
+     */
+    public static final String LEGACY_COLUMN = "pigsty_id";
+
+    /**
+     * 保存无法对应到猪舍的旧猪舍ID的表
+     */
+    public static final String UNMAPPED_TABLE = "legacy_pigsty_id";
+
+    /**
+     * 要迁移的表 → 建立在旧列上、需要在删除旧列之前删除的索引
+     */
+    private static final Map<String, List<String>> TABLES = Map.of(
+            "environmental_data", List.of("idx_pigsty_ts_id"),
+            "warning_log", List.of("idx_ack_pigsty_ts", "idx_ack_pigsty_metric_ts", "idx_ack_pigsty_acked_at")
+    );
+
+    /**
+     * 一张表的 pigsty_ref 已回填完成
+     *
+     * @param table 表名
+     */
+    public record TableMigrated(String table) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 每批回填的主键区间宽度
+     */
+    @Value("${pigsty.migration.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * 批次之间的暂停（毫秒）
+     */
+    @Value("${pigsty.migration.pause-ms:50}")
+    private long pauseMillis;
+
+    private volatile boolean stopped;
+
+    public PigstyIdMigration(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 检查是否还有表需要迁移，有则在后台开始回填
+     */
+    @PostConstruct
+    public void start() {
+        List<String> pending = TABLES.keySet().stream()
+                .filter(table -> hasLegacyColumn(jdbcTemplate, table))
+                .sorted()
+                .toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+        log.info("Migrating legacy pigsty_id columns to pigsty_ref in the background: {}", pending);
+        Thread.ofVirtual().name("pigsty-id-migration").start(() -> {
+            for (String table : pending) {
+                try {
+                    migrate(table);
+                } catch (Exception e) {
+                    log.error("Migration of {}.pigsty_id failed, will retry on next start: {}", table, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 表中是否还有旧的字符串列 pigsty_id
+     */
+    public static boolean hasLegacyColumn(JdbcTemplate jdbcTemplate, String table) {
+        Integer present = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.columns
+                WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?
+                """, Integer.class, table, LEGACY_COLUMN);
+        return present != null && present > 0;
+    }
+
+    private void migrate(String table) throws InterruptedException {
+        // 新数据只写 pigsty_ref，因此只需回填启动时已有的主键范围
+        Map<String, Object> range = jdbcTemplate.queryForMap("SELECT MIN(id) AS lo, MAX(id) AS hi FROM " + table);
+        if (range.get("lo") != null) {
+            long lo = ((Number) range.get("lo")).longValue();
+            long hi = ((Number) range.get("hi")).longValue();
+            String update = "UPDATE " + table + " SET pigsty_ref = CAST(pigsty_id AS UNSIGNED)"
+                    + " WHERE id >= ? AND id < ? AND pigsty_ref IS NULL AND pigsty_id REGEXP '^[0-9]+$'";
+            long updated = 0;
+            long nextReport = System.nanoTime();
+            for (long from = lo; from <= hi; from += chunkSize) {
+                if (stopped) {
+                    log.info("Migration of {}.pigsty_id interrupted at id {}, will resume on next start", table, from);
+                    return;
+                }
+                updated += jdbcTemplate.update(update, from, from + chunkSize);
+                if (System.nanoTime() >= nextReport) {
+                    log.info("Backfilling {}.pigsty_ref: id {} of {}, {} rows updated", table, from, hi, updated);
+                    nextReport = System.nanoTime() + 10_000_000_000L;
+                }
+                if (pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            log.info("Backfilled {}.pigsty_ref: {} rows updated", table, updated);
+        }
+        eventPublisher.publishEvent(new TableMigrated(table));
+
+        if (!preserveUnmapped(table)) {
+            return;
+        }
+        List<String> indexes = TABLES.get(table).stream().filter(index -> hasIndex(table, index)).toList();
+        if (!indexes.isEmpty()) {
+            // 删除二级索引只改元数据，不重建表；LOCK=NONE 保证期间读写不被阻塞，做不到时直接报错
+            StringBuilder dropIndexes = new StringBuilder("ALTER TABLE ").append(table);
+            for (String index : indexes) {
+                dropIndexes.append(" DROP INDEX ").append(index).append(',');
+            }
+            dropIndexes.append(" ALGORITHM=INPLACE, LOCK=NONE");
+            jdbcTemplate.execute(dropIndexes.toString());
+        }
+        String dropColumn = "ALTER TABLE " + table + " DROP COLUMN " + LEGACY_COLUMN;
+        try {
+            jdbcTemplate.execute(dropColumn + ", ALGORITHM=INSTANT");
+        } catch (DataAccessException e) {
+            // 普通的 DROP COLUMN 会重建整张表并长时间阻塞写入，不自动执行
+            log.error("Cannot drop {}.{} without rebuilding the table ({}). The column is unused and stays in place; "
+                            + "run \"{}\" in a maintenance window to remove it",
+                    table, LEGACY_COLUMN, e.getMostSpecificCause().getMessage(), dropColumn);
+            return;
+        }
+        log.info("Dropped legacy column {}.{}", table, LEGACY_COLUMN);
+    }
+
+    /**
+     * 把没有回填 pigsty_ref 的旧猪舍ID复制到 {@value #UNMAPPED_TABLE}
+     *
+     * @return 所有这样的行都已复制，可以删除旧列
+     */
+    private boolean preserveUnmapped(String table) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + UNMAPPED_TABLE + " ("
+                + "table_name VARCHAR(64) NOT NULL, row_id BIGINT NOT NULL, pigsty_id VARCHAR(255) NOT NULL, "
+                + "PRIMARY KEY (table_name, row_id))");
+        int copied = jdbcTemplate.update("INSERT IGNORE INTO " + UNMAPPED_TABLE + " (table_name, row_id, pigsty_id)"
+                + " SELECT ?, id, pigsty_id FROM " + table + " WHERE pigsty_ref IS NULL AND pigsty_id IS NOT NULL", table);
+        Long missing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " t"
+                + " LEFT JOIN " + UNMAPPED_TABLE + " u ON u.table_name = ? AND u.row_id = t.id"
+                + " WHERE t.pigsty_ref IS NULL AND t.pigsty_id IS NOT NULL AND u.row_id IS NULL", Long.class, table);
+        if (missing != null && missing > 0) {
+            log.warn("{} rows of {} have an unmapped pigsty_id that was not copied to {}, keeping column {} for now",
+                    missing, table, UNMAPPED_TABLE, LEGACY_COLUMN);
+            return false;
+        }
+        if (copied > 0) {
+            log.warn("{} rows of {} have a non-numeric pigsty_id, original values kept in {}",
+                    copied, table, UNMAPPED_TABLE);
+        }
+        return true;
+    }
+
+    private boolean hasIndex(String table, String index) {
+        Integer present = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.statistics
+                WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?
+                """, Integer.class, table, index);
+        return present != null && present > 0;
+    }
+}
@@ -0,0 +1,139 @@
+package com.pigsty.backend.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 请求并发上限（虚拟线程模式）
+ *
+ * 平台线程模式下 Tomcat 工作线程数同时就是并发处理的请求数上限，超出的请求按到达顺序排队，
+ * 已开始处理的请求能很快完成。虚拟线程模式下每个请求立即得到一个线程，过载时几千个请求同时争抢
+ * CPU 和数据库连接，每个请求都变慢，大部分超过客户端超时，有效吞吐反而下降。
+ *
+ * 该过滤器用公平信号量恢复这一上限：最多 pigsty.threads.max-concurrent-requests 个请求同时处理，
+ * 其余请求按到达顺序等待（虚拟线程挂起，不占用载体线程）；等待超过 pigsty.threads.request-queue-timeout-ms
+ * 的请求返回 503 并附带 Retry-After。上限为 0 或未开启虚拟线程时不做限制。
+ *
+ * 异步处理的请求（如流式返回历史数据）在请求线程返回后继续占用许可，直到异步处理完成、超时或出错；
+ * 异步分派（ASYNC dispatch）不经过该过滤器，不会重复获取许可。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestConcurrencyLimitFilter.class);
+
+    private final Semaphore permits;
+    private final long queueTimeoutMillis;
+    private final int retryAfterSeconds;
+
+    public RequestConcurrencyLimitFilter(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${pigsty.threads.max-concurrent-requests:200}") int maxConcurrentRequests,
+            @Value("${pigsty.threads.request-queue-timeout-ms:5000}") long queueTimeoutMillis,
+            @Value("${pigsty.ingest.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.permits = virtualThreads && maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * 异步分派属于已持有许可的同一个请求，不再获取许可
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (permits == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            log.debug("Request {} rejected: waited {} ms for a permit", request.getRequestURI(), queueTimeoutMillis);
+            // 直接写状态码而不是 sendError：错误页分派不经过认证，会被安全配置改写成 403
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return;
+        }
+        Runnable release = releaseOnce();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // 流式下载等异步响应在请求线程返回后仍在处理，许可在异步处理结束时才归还
+                request.getAsyncContext().addListener(new ReleasingAsyncListener(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * 每个请求只归还一次许可（异步处理超时后通常还会收到完成事件）
+     */
+    private Runnable releaseOnce() {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+    }
+
+    private record ReleasingAsyncListener(Runnable release) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 异步分派中再次开始异步处理时监听器会被移除，需要重新注册
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pigsty.backend.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -56,8 +57,11 @@ public class SecurityConfig {
      * 5. 集成 JWT 认证过滤器
      * 
      * 权限规则：
+     * - 异步分派（流式响应）：全部允许，原请求已完成认证
      * - OPTIONS 请求：全部允许
      * - /api/auth/**：公开访问（注册和登录）
+     * - /actuator/health：公开访问，供负载均衡健康检查
+     * - /actuator/prometheus：仅 ADMIN 角色（指标中含猪舍ID和流量），Prometheus 以 ADMIN 账号的 Token 抓取
      * - 其他 /api/** 接口：需要认证
      * 
      * @param http HttpSecurity 配置对象
@@ -70,8 +74,12 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .cors(Customizer.withDefaults())
             .authorizeHttpRequests(auth -> auth
+                // 流式响应结束后的异步分派沿用原请求已通过的认证，不再重复鉴权
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/prometheus").hasRole("ADMIN")
                 .requestMatchers("/api/devices/**").authenticated()
                 .requestMatchers("/api/pigsties/**").authenticated()
                 .requestMatchers("/api/admin/**").authenticated()
@@ -0,0 +1,155 @@
+package com.pigsty.backend.config;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 虚拟线程固定（pinning）监测
+ *
+ * 虚拟线程在 synchronized 块内（或本地方法中）阻塞时无法从载体线程上卸下，载体线程被占住，
+ * 载体线程数只有 CPU 核数，几处这样的阻塞就能让所有虚拟线程排队。
+ * 该组件用 JFR 事件流订阅 jdk.VirtualThreadPinned 事件（阻塞时间超过阈值才记录），
+ * 按发生位置（调用栈中第一个本项目的栈帧）汇总次数和时长，每个位置第一次出现时打印调用栈，
+ * 汇总结果见 GET /api/admin/pinned-threads。
+ *
+ * 事件只在虚拟线程真正阻塞时产生，没有开启虚拟线程模式（spring.threads.virtual.enabled）时不会有记录。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String PROJECT_PACKAGE = "com.pigsty.";
+    private static final int LOGGED_FRAMES = 12;
+
+    /**
+     * 一个发生位置的汇总
+     *
+     * @param site 发生位置（类名.方法名:行号）
+     * @param count 次数
+     * @param totalMillis 累计固定时长（毫秒）
+     * @param maxMillis 最长一次（毫秒）
+     */
+    public record PinnedSite(String site, long count, long totalMillis, long maxMillis) {
+    }
+
+    @Value("${pigsty.threads.pinning-monitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pigsty.threads.pinning-monitor.threshold-ms:20}")
+    private long thresholdMillis;
+
+    private final ConcurrentHashMap<String, SiteStats> sites = new ConcurrentHashMap<>();
+    private volatile RecordingStream stream;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            RecordingStream recording = new RecordingStream();
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMillis)).withStackTrace();
+            recording.onEvent(PINNED_EVENT, this::record);
+            recording.startAsync();
+            stream = recording;
+            log.info("Virtual thread pinning monitor started (threshold {} ms)", thresholdMillis);
+        } catch (RuntimeException e) {
+            // JFR 不可用（例如被 JVM 参数禁用）时只是没有诊断信息
+            log.warn("Virtual thread pinning monitor unavailable: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        RecordingStream recording = stream;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    /**
+     * 各发生位置的汇总，按累计时长从大到小排列
+     */
+    public List<PinnedSite> sites() {
+        List<PinnedSite> result = new ArrayList<>(sites.size());
+        sites.forEach((site, stats) -> result.add(
+                new PinnedSite(site, stats.count.sum(), stats.totalNanos.sum() / 1_000_000, stats.maxNanos / 1_000_000)));
+        result.sort(Comparator.comparingLong(PinnedSite::totalMillis).reversed());
+        return result;
+    }
+
+    private void record(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        String site = site(frames);
+        long nanos = event.getDuration().toNanos();
+
+        boolean[] first = new boolean[1];
+        SiteStats stats = sites.computeIfAbsent(site, key -> {
+            first[0] = true;
+            return new SiteStats();
+        });
+        stats.add(nanos);
+
+        if (first[0]) {
+            StringBuilder trace = new StringBuilder();
+            for (int i = 0; i < Math.min(frames.size(), LOGGED_FRAMES); i++) {
+                trace.append("\n\tat ").append(describe(frames.get(i)));
+            }
+            log.warn("Virtual thread pinned for {} ms at {}{}", nanos / 1_000_000, site, trace);
+        }
+    }
+
+    /**
+     * 调用栈中第一个本项目的栈帧；整个栈都不在本项目中时取栈顶
+     */
+    private static String site(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            if (frame.getMethod().getType().getName().startsWith(PROJECT_PACKAGE)) {
+                return describe(frame);
+            }
+        }
+        return frames.isEmpty() ? "unknown" : describe(frames.get(0));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    private static final class SiteStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private volatile long maxNanos;
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            // JFR 事件流在单个线程上回调，无需比较并交换
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package com.pigsty.backend.controller;
 
+import com.pigsty.backend.config.VirtualThreadPinningMonitor;
+import com.pigsty.backend.config.VirtualThreadPinningMonitor.PinnedSite;
 import com.pigsty.backend.model.Role;
 import com.pigsty.backend.model.User;
 import com.pigsty.backend.repository.UserRepository;
+import com.pigsty.backend.service.JwtService;
+import com.pigsty.backend.service.LoadGenerationService;
+import com.pigsty.backend.service.LoadGenerationService.LoadTestRequest;
+import com.pigsty.backend.service.LoadGenerationService.LoadTestStatus;
+import com.pigsty.backend.service.PartitionMaintenanceService;
+import com.pigsty.backend.service.PartitionMaintenanceService.TableStatus;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.SimulationReplayService;
+import com.pigsty.backend.service.SimulationReplayService.ReplayRequest;
+import com.pigsty.backend.service.SimulationReplayService.ReplayStatus;
+import com.pigsty.backend.util.ReadThroughCache;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
@@ -14,6 +28,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -29,6 +44,12 @@ import java.util.stream.Collectors;
  * - 获取用户列表：所有已认证用户可访问
  * - 添加用户：仅 ADMIN 角色可操作
  * - 删除用户：仅 ADMIN 角色可操作
+ * - WebSocket 会话状态：仅 ADMIN 角色可查看各会话出站队列的深度
+ * - 压测：仅 ADMIN 角色可启动、停止和查看负载生成
+ * - 回放：仅 ADMIN 角色可回放模拟器录制的数据
+ * - 分区：仅 ADMIN 角色可查看环境数据表的分区并立即执行一次分区维护
+ * - 缓存：仅 ADMIN 角色可查看猪舍与设备缓存的命中率
+ * - 虚拟线程：仅 ADMIN 角色可查看虚拟线程被固定（pinning）的位置
  * 
  * @author 系统架构
  * @version 1.0
@@ -43,6 +64,27 @@ public class AdminController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private WebSocketHandler webSocketHandler;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private LoadGenerationService loadGenerationService;
+
+    @Autowired
+    private SimulationReplayService simulationReplayService;
+
+    @Autowired
+    private PartitionMaintenanceService partitionMaintenanceService;
+
+    @Autowired
+    private PigstyCache pigstyCache;
+
+    @Autowired
+    private VirtualThreadPinningMonitor pinningMonitor;
+
     /**
      * 用户数据传输对象
      * 
@@ -156,10 +198,217 @@ public class AdminController {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).build(); // 400 不能删除自己
             }
             userRepository.deleteById(id);
+            // 已签发给该用户的 Token 在下一次请求时按数据库重新认证（用户已不存在，请求被拒绝）
+            jwtService.userChanged(id);
             return ResponseEntity.ok().build();
         } else {
             return ResponseEntity.notFound().build();
         }
     }
-}
 
+    /**
+     * 获取 WebSocket 会话的出站队列状态
+     * 
+     * 返回每个连接的排队告警数、排队数据更新数、排队字节数、
+     * 已发送/丢弃/合并的条数以及当前发送已持续的毫秒数，用于定位慢客户端。
+     * 仅具有 ADMIN 角色的用户可以访问。
+     * 
+     * 接口路径: GET /api/admin/websocket/sessions
+     * 
+     * @return 各会话的队列统计，无权限返回403
+     */
+    @GetMapping("/websocket/sessions")
+    public ResponseEntity<List<SessionSender.Stats>> getWebSocketSessions() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(webSocketHandler.sessionStats());
+    }
+
+    /**
+     * 启动一次压测
+     * 
+     * 按请求体中的参数（未设置的使用默认值）在后台生成负载，立即返回补全后的参数。
+     * HTTP 模式下沿用本次请求的 Authorization 请求头调用 /api/data，DASHBOARD 模式下同样沿用它请求看板接口；
+     * 目标地址不是本服务时不附带该请求头。IN_PROCESS 和 HTTP 模式写入的数据会永久保存在生产表中。
+     * 仅具有 ADMIN 角色的用户可以操作。
+     * 
+     * 接口路径: POST /api/admin/load-test
+     * 
+     * @param loadTestRequest 压测参数
+     * @param request HTTP 请求对象
+     * @return 已启动返回202，参数不合法返回400，已有压测在运行返回409，无权限返回403
+     */
+    @PostMapping("/load-test")
+    public ResponseEntity<?> startLoadTest(@RequestBody(required = false) LoadTestRequest loadTestRequest,
+                                           HttpServletRequest request) {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        LoadTestRequest resolved;
+        try {
+            resolved = loadGenerationService.start(
+                    loadTestRequest != null ? loadTestRequest : new LoadTestRequest(null, null, null, null, null, null, null, null),
+                    request.getHeader("Authorization"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+        if (resolved == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "A load test is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(resolved);
+    }
+
+    /**
+     * 查看压测状态和最近一次的结果（实际吞吐、延迟百分位）
+     * 
+     * 接口路径: GET /api/admin/load-test
+     * 
+     * @return 压测状态，无权限返回403
+     */
+    @GetMapping("/load-test")
+    public ResponseEntity<LoadTestStatus> getLoadTest() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(loadGenerationService.status());
+    }
+
+    /**
+     * 停止正在运行的压测，已完成部分的结果照常报告
+     * 
+     * 接口路径: DELETE /api/admin/load-test
+     * 
+     * @return 已请求停止返回202，没有压测在运行返回404，无权限返回403
+     */
+    @DeleteMapping("/load-test")
+    public ResponseEntity<Void> stopLoadTest() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return loadGenerationService.stop()
+                ? ResponseEntity.status(HttpStatus.ACCEPTED).build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 回放一个模拟器录制文件
+     * 
+     * 在后台把录制目录（pigsty.simulator.recording.dir）中的文件按指定倍速送入写入管道，立即返回补全后的参数。
+     * 仅具有 ADMIN 角色的用户可以操作。
+     * 
+     * 接口路径: POST /api/admin/replay
+     * 
+     * @param replayRequest 回放参数（文件名和倍速）
+     * @return 已启动返回202，参数不合法或文件不存在返回400，已有回放在运行返回409，无权限返回403
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<?> startReplay(@RequestBody ReplayRequest replayRequest) {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        ReplayRequest resolved;
+        try {
+            resolved = simulationReplayService.start(replayRequest);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+        if (resolved == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "A replay is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(resolved);
+    }
+
+    /**
+     * 查看回放状态和最近一次的结果（吞吐、告警延迟百分位）
+     * 
+     * 接口路径: GET /api/admin/replay
+     * 
+     * @return 回放状态，无权限返回403
+     */
+    @GetMapping("/replay")
+    public ResponseEntity<ReplayStatus> getReplay() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(simulationReplayService.status());
+    }
+
+    /**
+     * 停止正在运行的回放，已回放部分的结果照常报告
+     * 
+     * 接口路径: DELETE /api/admin/replay
+     * 
+     * @return 已请求停止返回202，没有回放在运行返回404，无权限返回403
+     */
+    @DeleteMapping("/replay")
+    public ResponseEntity<Void> stopReplay() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return simulationReplayService.stop()
+                ? ResponseEntity.status(HttpStatus.ACCEPTED).build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 查看环境数据表和汇总表的分区（上界、估算行数）与保留期
+     * 
+     * 接口路径: GET /api/admin/partitions
+     * 
+     * @return 各表的分区状态，无权限返回403
+     */
+    @GetMapping("/partitions")
+    public ResponseEntity<List<TableStatus>> getPartitions() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(partitionMaintenanceService.status());
+    }
+
+    /**
+     * 立即执行一次分区维护（预建分区、删除过期分区），不必等待定时任务
+     * 
+     * 接口路径: POST /api/admin/partitions/maintenance
+     * 
+     * @return 维护后的分区状态，无权限返回403
+     */
+    @PostMapping("/partitions/maintenance")
+    public ResponseEntity<List<TableStatus>> runPartitionMaintenance() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        partitionMaintenanceService.maintain();
+        return ResponseEntity.ok(partitionMaintenanceService.status());
+    }
+
+    /**
+     * 查看猪舍与设备缓存的条目数、命中率、淘汰和失效次数
+     * 
+     * 接口路径: GET /api/admin/caches
+     * 
+     * @return 各缓存的统计数据，无权限返回403
+     */
+    @GetMapping("/caches")
+    public ResponseEntity<Collection<ReadThroughCache.Stats>> getCaches() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(pigstyCache.stats());
+    }
+
+    /**
+     * 查看虚拟线程被固定在载体线程上的位置（次数、累计和最长时长），用于定位在 synchronized 内阻塞的代码
+     * 
+     * 接口路径: GET /api/admin/pinned-threads
+     * 
+     * @return 各位置的汇总，按累计时长排序，无权限返回403
+     */
+    @GetMapping("/pinned-threads")
+    public ResponseEntity<List<PinnedSite>> getPinnedThreads() {
+        if (!checkIsAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(pinningMonitor.sites());
+    }
+}
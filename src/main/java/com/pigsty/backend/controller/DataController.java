@@ -4,18 +4,34 @@ import com.pigsty.backend.model.EnvironmentalData;
 import com.pigsty.backend.model.Pigsty;
 import com.pigsty.backend.model.Role;
 import com.pigsty.backend.model.User;
-import com.pigsty.backend.repository.DataRepository;
-import com.pigsty.backend.repository.PigstyRepository;
-import com.pigsty.backend.repository.UserRepository;
-import com.pigsty.backend.service.WarningService;
+import com.pigsty.backend.service.DataHistoryService;
+import com.pigsty.backend.service.IngestPipeline;
+import com.pigsty.backend.service.LatestDataCache;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.RollupService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -26,8 +42,11 @@ import java.util.stream.Collectors;
  * 
  * 主要功能：
  * - 数据上报：接收物联网设备上报的环境数据并触发告警检查
- * - 数据查询：获取最新环境数据（支持基于角色的数据过滤）
- * - 猪舍数据查询：获取特定猪舍的历史环境数据
+ * - 批量上报：网关一次上报多条数据，按 JDBC 批次写入
+ * - 背压：异步写入队列已满时返回 429
+ * - 数据查询：从缓存获取各猪舍最新环境数据（支持基于角色的数据过滤）
+ * - 猪舍数据查询：按时间范围和键集游标分页获取特定猪舍的历史环境数据
+ * - 图表序列：按请求点数返回特定猪舍降采样后的环境数据序列
  * 
  * @author 系统架构
  * @version 1.0
@@ -36,86 +55,185 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/data")
 public class DataController {
 
+    /**
+     * NDJSON 批量上报时每次提交的最大条数
+     */
+    private static final int NDJSON_CHUNK_SIZE = 1000;
+
     @Autowired
-    private DataRepository dataRepository;
+    private IngestPipeline ingestPipeline;
 
     @Autowired
-    private WarningService warningService;
+    private LatestDataCache latestDataCache;
 
     @Autowired
-    private PigstyRepository pigstyRepository;
+    private DataHistoryService dataHistoryService;
 
     @Autowired
-    private UserRepository userRepository;
+    private RollupService rollupService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PigstyCache pigstyCache;
+
+    @Value("${pigsty.ingest.retry-after-seconds:1}")
+    private int retryAfterSeconds;
 
     /**
      * 上报环境数据
      * 
-     * 接收物联网设备上报的环境监测数据，执行以下操作：
+     * 接收物联网设备上报的环境监测数据，交给写入管道处理：
      * 1. 将数据保存到数据库
      * 2. 调用告警服务检查数据是否超出阈值
-     * 3. 返回保存后的数据对象
+     * 3. 通过 WebSocket 推送数据更新
+     * 
+     * 同步模式下处理完成后返回保存后的数据对象（200）；
+     * 异步模式下数据入队即返回（202），响应与批量上报相同，只有已接收的条数：入队后数据对象归消费线程所有
+     * （入库时会被修改），不能再序列化。队列已满时返回 429 并通过 Retry-After 告知重试间隔。
      * 
      * 接口路径: POST /api/data
      * 
      * @param data 环境数据对象，包含猪舍ID、指标类型、数值、时间戳等信息
-     * @return 保存成功的环境数据对象
+     * @return 同步模式下为保存后的环境数据对象，异步模式下为已接收的条数
      */
     @PostMapping
-    public ResponseEntity<EnvironmentalData> addData(@RequestBody EnvironmentalData data) {
-        EnvironmentalData savedData = dataRepository.save(data);
-        warningService.checkDataForWarnings(savedData);
-        return ResponseEntity.ok(savedData);
+    public ResponseEntity<?> addData(@RequestBody EnvironmentalData data) {
+        if (!ingestPipeline.submit(data)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+        if (ingestPipeline.isAsync()) {
+            return batchResponse(1, true);
+        }
+        return ResponseEntity.ok(data);
+    }
+
+    /**
+     * 批量上报环境数据（JSON 数组）
+     * 
+     * 网关汇总多个猪舍的读数后一次性上报，执行以下操作：
+     * 1. 按 JDBC 批次写入整批数据
+     * 2. 整批数据只做一次告警检查（猪舍和设备各查询一次）
+     * 
+     * 队列中途满时返回 429，响应中的 accepted 为已接收的条数，网关应从该位置开始重传。
+     * 
+     * 接口路径: POST /api/data/batch（Content-Type: application/json）
+     * 
+     * @param dataList 环境数据数组
+     * @return 已接收的条数
+     */
+    @PostMapping(value = "/batch", consumes = "application/json")
+    public ResponseEntity<Map<String, Object>> addDataBatch(@RequestBody List<EnvironmentalData> dataList) {
+        int accepted = ingestPipeline.submitAll(dataList);
+        return batchResponse(accepted, accepted == dataList.size());
+    }
+
+    /**
+     * 批量上报环境数据（NDJSON 流）
+     * 
+     * 每行一条 JSON 格式的环境数据，边读边按块提交，
+     * 请求体再大也不会一次性全部加载到内存。
+     * 
+     * 接口路径: POST /api/data/batch（Content-Type: application/x-ndjson）
+     * 
+     * @param request HTTP 请求对象
+     * @return 已接收的条数
+     * @throws IOException 请求体读取或解析失败
+     */
+    @PostMapping(value = "/batch", consumes = "application/x-ndjson")
+    public ResponseEntity<Map<String, Object>> addDataStream(HttpServletRequest request) throws IOException {
+        int accepted = 0;
+        List<EnvironmentalData> chunk = new ArrayList<>(NDJSON_CHUNK_SIZE);
+        try (MappingIterator<EnvironmentalData> it = objectMapper.readerFor(EnvironmentalData.class)
+                .readValues(request.getInputStream())) {
+            while (it.hasNextValue()) {
+                chunk.add(it.nextValue());
+                if (chunk.size() == NDJSON_CHUNK_SIZE) {
+                    int chunkAccepted = ingestPipeline.submitAll(chunk);
+                    accepted += chunkAccepted;
+                    if (chunkAccepted < chunk.size()) {
+                        return batchResponse(accepted, false);
+                    }
+                    chunk = new ArrayList<>(NDJSON_CHUNK_SIZE);
+                }
+            }
+        }
+        int chunkAccepted = ingestPipeline.submitAll(chunk);
+        accepted += chunkAccepted;
+        return batchResponse(accepted, chunkAccepted == chunk.size());
+    }
+
+    private ResponseEntity<Map<String, Object>> batchResponse(int accepted, boolean complete) {
+        if (!complete) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .body(Map.of("accepted", accepted));
+        }
+        return ResponseEntity.status(ingestPipeline.isAsync() ? HttpStatus.ACCEPTED : HttpStatus.OK)
+                .body(Map.of("accepted", accepted));
     }
 
     /**
      * 获取最新环境数据
      * 
-     * 获取系统中最新的100条环境监测数据，根据用户角色进行数据过滤：
+     * 从最新数据缓存中按猪舍合并出最新的环境监测数据，根据用户角色限定猪舍范围：
      * - ADMIN 角色：可查看所有猪舍的数据
      * - USER 角色：只能查看分配给自己的猪舍的数据
      * 
      * 执行流程：
      * 1. 从安全上下文获取当前登录用户
-     * 2. 查询最新100条环境数据
-     * 3. 根据用户角色过滤数据
-     * 4. 返回过滤后的数据列表
+     * 2. 确定用户可见的猪舍（可再通过 pigstyId 缩小到单个猪舍）
+     * 3. 从缓存中合并这些猪舍的最新数据，按时间倒序取前 limit 条
+     * 
+     * 由于是先按猪舍限定范围再取最新数据，技术员总能看到自己猪舍的数据，
+     * 不会被其他猪舍的大量数据挤掉。
      * 
      * 接口路径: GET /api/data/latest
      * 
+     * @param pigstyId 猪舍ID筛选，可选
+     * @param limit 最多返回的条数，默认100
      * @return 环境数据列表，未授权返回 401 状态码
      */
     @GetMapping("/latest")
-    public ResponseEntity<List<EnvironmentalData>> getLatestData() {
+    public ResponseEntity<List<EnvironmentalData>> getLatestData(
+            @RequestParam(required = false) Long pigstyId,
+            @RequestParam(defaultValue = "100") int limit) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = userRepository.findByUsername(authentication.getName()).orElse(null);
+        // 认证过滤器放入的主体已带有用户ID和当前角色，无需再查询数据库
+        User currentUser = authentication != null && authentication.getPrincipal() instanceof User user ? user : null;
 
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        List<EnvironmentalData> allData = dataRepository.findTop100ByOrderByTimestampDesc();
-        
-        if (currentUser.getRole() == Role.ADMIN) {
-            return ResponseEntity.ok(allData);
-        } else {
-            List<Pigsty> userPigsties = pigstyRepository.findByTechnicianId(currentUser.getId());
-            List<String> userPigstyIds = userPigsties.stream()
-                                            .map(pigsty -> String.valueOf(pigsty.getId()))
-                                            .collect(Collectors.toList());
-            
-            List<EnvironmentalData> filteredData = allData.stream()
-                .filter(data -> userPigstyIds.contains(data.getPigstyId()))
+        List<Pigsty> visiblePigsties = currentUser.getRole() == Role.ADMIN
+                ? pigstyCache.allPigsties()
+                : pigstyCache.pigstiesOfTechnician(currentUser.getId());
+        List<Long> pigstyIds = visiblePigsties.stream()
+                .map(Pigsty::getId)
                 .collect(Collectors.toList());
-                
-            return ResponseEntity.ok(filteredData);
+
+        if (pigstyId != null) {
+            if (!pigstyIds.contains(pigstyId)) {
+                return ResponseEntity.ok(Collections.emptyList());
+            }
+            pigstyIds = List.of(pigstyId);
         }
+
+        return ResponseEntity.ok(latestDataCache.latest(pigstyIds, limit));
     }
 
     /**
-     * 获取特定猪舍的环境数据
+     * 分页获取特定猪舍的历史环境数据
      * 
-     * 查询指定猪舍的所有历史环境数据，按时间戳倒序排列。
+     * 按时间倒序返回指定猪舍在 [from, to) 时间范围内的环境数据，每页条数有硬上限。
+     * 翻页使用键集游标而不是页码：响应中的 nextCursor 原样传回即可获取下一页，
+     * 为 null 表示已经没有更多数据。响应体边查询边写出，不会在内存中组装整页列表。
+     * 
+     * 响应格式: {"items": [...], "nextCursor": "..."}
      * 
      * 注意：当前接口暂未添加权限检查，建议后续增加权限验证，
      * 确保技术员只能访问分配给自己的猪舍数据。
@@ -123,11 +241,66 @@ public class DataController {
      * 接口路径: GET /api/data/pigsty/{pigstyId}
      * 
      * @param pigstyId 猪舍ID（路径参数）
-     * @return 该猪舍的环境数据列表，按时间倒序排列
+     * @param from 起始时间（包含），ISO 格式，可选
+     * @param to 截止时间（不包含），ISO 格式，可选
+     * @param cursor 上一页返回的 nextCursor，可选
+     * @param limit 每页条数，默认500，超过上限按上限处理
+     * @return 流式写出的分页数据
      */
     @GetMapping("/pigsty/{pigstyId}")
-    public ResponseEntity<List<EnvironmentalData>> getDataByPigstyId(@PathVariable String pigstyId) {
-        List<EnvironmentalData> dataList = dataRepository.findByPigstyIdOrderByTimestampDesc(pigstyId);
-        return ResponseEntity.ok(dataList);
+    public ResponseEntity<StreamingResponseBody> getDataByPigstyId(
+            @PathVariable Long pigstyId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "500") int limit) {
+        DataHistoryService.Cursor seek = (cursor == null || cursor.isBlank()) ? null : DataHistoryService.Cursor.decode(cursor);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("items");
+                DataHistoryService.Cursor next = dataHistoryService.streamPage(pigstyId, from, to, seek, limit, data -> {
+                    try {
+                        objectMapper.writeValue(generator, data);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeStringField("nextCursor", next != null ? next.encode() : null);
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * 获取特定猪舍用于绘图的降采样序列
+     * 
+     * 根据时间跨度和请求的点数自动选择粒度：
+     * - 跨度较大时从 1 天 / 1 小时 / 1 分钟汇总表中选满足点数要求的最粗粒度，
+     *   每个点给出该时间段内的平均值、最小值、最大值和样本数
+     * - 跨度小到 1 分钟粒度都不够细时读取原始数据，用 LTTB 降采样到请求的点数
+     * 
+     * 无论时间跨度多大，每个指标返回的点数都不超过 points（及服务端上限）。
+     * 
+     * 接口路径: GET /api/data/pigsty/{pigstyId}/series
+     * 
+     * @param pigstyId 猪舍ID（路径参数）
+     * @param from 起始时间（包含），默认为截止时间前 24 小时
+     * @param to 截止时间（不包含），默认为当前时间
+     * @param points 期望的最多点数，默认500
+     * @return 各指标的序列
+     */
+    @GetMapping("/pigsty/{pigstyId}/series")
+    public ResponseEntity<RollupService.Series> getSeries(
+            @PathVariable Long pigstyId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "500") int points) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(rollupService.series(pigstyId, start, end, points));
     }
 }
@@ -2,6 +2,10 @@ package com.pigsty.backend.controller;
 
 import com.pigsty.backend.model.Device;
 import com.pigsty.backend.repository.DeviceRepository;
+import com.pigsty.backend.service.DeviceLivenessService;
+import com.pigsty.backend.service.HeartbeatService;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.ThresholdEngine;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
@@ -10,6 +14,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,9 +26,23 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/devices")
 public class DeviceController {
 
+    private static final Logger log = LoggerFactory.getLogger(DeviceController.class);
+
     @Autowired
     private DeviceRepository deviceRepository;
 
+    @Autowired
+    private PigstyCache pigstyCache;
+
+    @Autowired
+    private ThresholdEngine thresholdEngine;
+
+    @Autowired
+    private HeartbeatService heartbeatService;
+
+    @Autowired
+    private DeviceLivenessService deviceLivenessService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -30,15 +50,19 @@ public class DeviceController {
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<List<Device>> getAllDevices(@RequestParam(required = false) Long pigstyId) {
         List<Device> devices;
-        if (pigstyId != null) { devices = deviceRepository.findByPigstyId(pigstyId); }
+        if (pigstyId != null) { devices = pigstyCache.devicesOfPigsty(pigstyId); }
         else { devices = deviceRepository.findAll(); }
-        return ResponseEntity.ok(devices);
+        // 尚未写回数据库的心跳以内存中的时间为准
+        return ResponseEntity.ok(heartbeatService.applyPending(devices));
     }
 
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Device> addDevice(@RequestBody Device device) {
         Device savedDevice = deviceRepository.save(device);
+        pigstyCache.devicesChanged(savedDevice.getPigstyId());
+        thresholdEngine.invalidate(savedDevice.getPigstyId());
+        deviceLivenessService.watch(savedDevice);
         return ResponseEntity.status(HttpStatus.CREATED).body(savedDevice);
     }
 
@@ -51,6 +75,9 @@ public class DeviceController {
                 existingDevice.setModelNumber(deviceDetails.getModelNumber());
                 existingDevice.setSerialNumber(deviceDetails.getSerialNumber());
                 Device updatedDevice = deviceRepository.save(existingDevice);
+                pigstyCache.devicesChanged(updatedDevice.getPigstyId());
+                thresholdEngine.invalidate(updatedDevice.getPigstyId());
+                deviceLivenessService.watch(updatedDevice);
                 return ResponseEntity.ok(updatedDevice);
             })
             .orElse(ResponseEntity.notFound().build());
@@ -71,7 +98,10 @@ public class DeviceController {
             entityManager.flush();
             entityManager.refresh(existingDevice);
 
-            System.out.println("Toggling device ID: " + id + ", New state from DB: " + existingDevice.isActive());
+            log.info("Toggled device {}, new state from DB: {}", id, existingDevice.isActive());
+            pigstyCache.devicesChanged(existingDevice.getPigstyId());
+            thresholdEngine.invalidate(existingDevice.getPigstyId());
+            deviceLivenessService.watch(existingDevice);
 
             return ResponseEntity.ok(existingDevice);
         } else {
@@ -93,6 +123,9 @@ public class DeviceController {
             entityManager.merge(device);
             entityManager.flush();
             entityManager.refresh(device);
+            pigstyCache.devicesChanged(device.getPigstyId());
+            // 复位后重新开始离线监测
+            deviceLivenessService.watch(device);
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -111,8 +144,12 @@ public class DeviceController {
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteDevice(@PathVariable Long id) {
-        if (deviceRepository.existsById(id)) {
+        Optional<Device> deviceOpt = deviceRepository.findById(id);
+        if (deviceOpt.isPresent()) {
             deviceRepository.deleteById(id);
+            pigstyCache.devicesChanged(deviceOpt.get().getPigstyId());
+            thresholdEngine.invalidate(deviceOpt.get().getPigstyId());
+            deviceLivenessService.unwatch(id);
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
@@ -2,6 +2,10 @@ package com.pigsty.backend.controller;
 
 import com.pigsty.backend.model.Pigsty;
 import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.service.LatestDataCache;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.PigstyMetrics;
+import com.pigsty.backend.service.ThresholdEngine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -32,11 +36,26 @@ public class PigstyController {
     @Autowired
     private PigstyRepository pigstyRepository;
 
+    @Autowired
+    private PigstyCache pigstyCache;
+
+    @Autowired
+    private LatestDataCache latestDataCache;
+
+    @Autowired
+    private ThresholdEngine thresholdEngine;
+
+    @Autowired
+    private WebSocketHandler webSocketHandler;
+
+    @Autowired
+    private PigstyMetrics pigstyMetrics;
+
     /**
      * 获取所有猪舍列表
      * 
      * 查询系统中所有猪舍的基本信息。
-     * 所有已登录认证的用户都可以访问此接口。
+     * 所有已登录认证的用户都可以访问此接口。结果来自 {@link PigstyCache}。
      * 
      * 接口路径: GET /api/pigsties
      * 
@@ -45,7 +64,7 @@ public class PigstyController {
     @GetMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<List<Pigsty>> getAllPigsties() {
-        List<Pigsty> pigsties = pigstyRepository.findAll();
+        List<Pigsty> pigsties = pigstyCache.allPigsties();
         return ResponseEntity.ok(pigsties);
     }
 
@@ -64,6 +83,9 @@ public class PigstyController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Pigsty> createPigsty(@RequestBody Pigsty pigsty) {
         Pigsty savedPigsty = pigstyRepository.save(pigsty);
+        pigstyCache.pigstyChanged(savedPigsty.getId());
+        thresholdEngine.invalidate(savedPigsty.getId());
+        webSocketHandler.pigstyAssignmentChanged(savedPigsty.getId(), savedPigsty.getTechnicianId());
         return ResponseEntity.status(HttpStatus.CREATED).body(savedPigsty);
     }
 
@@ -103,6 +125,11 @@ public class PigstyController {
                 existingPigsty.setLightThresholdLow(pigstyDetails.getLightThresholdLow());
                 
                 Pigsty updatedPigsty = pigstyRepository.save(existingPigsty);
+                pigstyCache.pigstyChanged(id);
+                // 阈值已变更，使告警判定使用的规则快照失效
+                thresholdEngine.invalidate(id);
+                // 负责技术员可能已变更，调整 WebSocket 订阅
+                webSocketHandler.pigstyAssignmentChanged(id, updatedPigsty.getTechnicianId());
                 return ResponseEntity.ok(updatedPigsty);
             })
             .orElse(ResponseEntity.notFound().build()); // 如果找不到，返回 404
@@ -124,6 +151,11 @@ public class PigstyController {
     public ResponseEntity<Void> deletePigsty(@PathVariable Long id) {
         if (pigstyRepository.existsById(id)) {
             pigstyRepository.deleteById(id);
+            pigstyCache.pigstyChanged(id);
+            latestDataCache.evict(id);
+            thresholdEngine.invalidate(id);
+            webSocketHandler.pigstyRemoved(id);
+            pigstyMetrics.pigstyRemoved(id);
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
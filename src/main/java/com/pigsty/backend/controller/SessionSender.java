@@ -0,0 +1,304 @@
+package com.pigsty.backend.controller;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个 WebSocket 会话的异步发送器
+ *
+ * 每个会话一个出站队列和一个虚拟线程，推送方只负责入队，不会被慢客户端阻塞；
+ * 同一会话只有发送线程调用 sendMessage，也避免了多个推送线程并发写同一会话。
+ * 队列分为两条通道，发送线程优先发送告警：
+ *
+ * - 告警（以及订阅回复）：从不丢弃
+ * - 数据更新：有界，满了以后丢弃最旧的一条；合并模式下同一猪舍尚未发出的更新直接被新数据替换
+ *
+ * 正在进行的一次发送超过时间上限，或排队的消息总字节数超过上限时，
+ * 认为客户端已经跟不上，关闭该会话（客户端可重连后重新获取最新数据）。
+ * 每次发送的耗时记入构造时传入的计时器。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class SessionSender {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionSender.class);
+
+    /**
+     * 数据更新通道满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 丢弃最旧的一条 */
+        DROP_OLDEST,
+        /** 同一猪舍只保留最新一条，仍然满时丢弃最旧的一条 */
+        COALESCE
+    }
+
+    /**
+     * 发送器的限制参数
+     *
+     * @param dataQueueCapacity 数据更新通道最多排队的条数
+     * @param overflowPolicy 数据更新通道满时的处理策略
+     * @param sendTimeLimitMillis 单次发送的时间上限（毫秒）
+     * @param bufferSizeLimit 排队消息的总字节数上限
+     */
+    public record Limits(int dataQueueCapacity, OverflowPolicy overflowPolicy,
+                         long sendTimeLimitMillis, long bufferSizeLimit) {
+    }
+
+    /**
+     * 会话队列的统计快照
+     */
+    public record Stats(String sessionId, String principal, int queuedWarnings, int queuedDataUpdates,
+                        long queuedBytes, long sent, long dropped, long coalesced, long inFlightMillis) {
+    }
+
+    private final WebSocketSession session;
+    private final Limits limits;
+    private final Timer sendTimer;
+    private final Runnable onClose;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<TextMessage> warnings = new ArrayDeque<>();
+    private final LinkedHashMap<Object, TextMessage> dataUpdates = new LinkedHashMap<>();
+    private long queuedBytes;
+    private long sent;
+    private long dropped;
+    private long coalesced;
+    private long sendStartedNanos;
+    private boolean closed;
+
+    private Thread worker;
+
+    /**
+     * @param session WebSocket 会话
+     * @param limits 限制参数
+     * @param sendTimer 记录每次发送耗时的计时器
+     * @param onClose 会话被关闭（包括被驱逐）后的回调
+     */
+    public SessionSender(WebSocketSession session, Limits limits, Timer sendTimer, Runnable onClose) {
+        this.session = session;
+        this.limits = limits;
+        this.sendTimer = sendTimer;
+        this.onClose = onClose;
+    }
+
+    public WebSocketSession session() {
+        return session;
+    }
+
+    /**
+     * 启动发送线程
+     */
+    public void start() {
+        worker = Thread.ofVirtual().name("ws-sender-" + session.getId()).start(this::sendLoop);
+    }
+
+    /**
+     * 告警入队，从不丢弃
+     */
+    public void enqueueWarning(TextMessage message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            warnings.addLast(message);
+            queuedBytes += message.getPayloadLength();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        evictIfTooSlow();
+    }
+
+    /**
+     * 订阅回复等控制消息入队，与告警同一通道，从不丢弃
+     */
+    public void enqueueReply(TextMessage message) {
+        enqueueWarning(message);
+    }
+
+    /**
+     * 数据更新入队
+     *
+     * @param pigstyId 数据所属猪舍，合并模式下用作合并键
+     * @param message 消息
+     */
+    public void enqueueDataUpdate(Long pigstyId, TextMessage message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            // 不合并的消息各用一个独立的键对象，不会与猪舍ID相等
+            Object key = limits.overflowPolicy() == OverflowPolicy.COALESCE && pigstyId != null
+                    ? pigstyId : new Object();
+            TextMessage replaced = dataUpdates.put(key, message);
+            queuedBytes += message.getPayloadLength();
+            if (replaced != null) {
+                queuedBytes -= replaced.getPayloadLength();
+                coalesced++;
+            } else if (dataUpdates.size() > limits.dataQueueCapacity()) {
+                Iterator<TextMessage> oldest = dataUpdates.values().iterator();
+                queuedBytes -= oldest.next().getPayloadLength();
+                oldest.remove();
+                dropped++;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        evictIfTooSlow();
+    }
+
+    /**
+     * 当前队列状态
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            long inFlight = sendStartedNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendStartedNanos);
+            String principal = session.getPrincipal() != null ? session.getPrincipal().getName() : null;
+            return new Stats(session.getId(), principal, warnings.size(), dataUpdates.size(),
+                    queuedBytes, sent, dropped, coalesced, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止发送线程，丢弃未发送的消息
+     */
+    public void stop() {
+        markClosed();
+    }
+
+    /**
+     * @return 由本次调用完成关闭返回 true，已经关闭过返回 false
+     */
+    private boolean markClosed() {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            warnings.clear();
+            dataUpdates.clear();
+            queuedBytes = 0;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (worker != null) {
+            worker.interrupt();
+        }
+        return true;
+    }
+
+    private void evictIfTooSlow() {
+        String reason = null;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (sendStartedNanos != 0
+                    && System.nanoTime() - sendStartedNanos > TimeUnit.MILLISECONDS.toNanos(limits.sendTimeLimitMillis())) {
+                reason = "send time limit " + limits.sendTimeLimitMillis() + " ms exceeded";
+            } else if (queuedBytes > limits.bufferSizeLimit()) {
+                reason = "buffer size limit " + limits.bufferSizeLimit() + " bytes exceeded";
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (reason != null && markClosed()) {
+            log.warn("Evicting slow WebSocket session {}: {}", session.getId(), reason);
+            // 关闭握手可能被卡住的发送阻塞，放到单独的虚拟线程上执行，推送方立即返回
+            Thread.ofVirtual().name("ws-evict-" + session.getId())
+                    .start(() -> close(CloseStatus.SESSION_NOT_RELIABLE));
+        }
+    }
+
+    private void sendLoop() {
+        while (true) {
+            TextMessage message;
+            long startedNanos;
+            lock.lock();
+            try {
+                while (!closed && warnings.isEmpty() && dataUpdates.isEmpty()) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                if (!warnings.isEmpty()) {
+                    message = warnings.pollFirst();
+                } else {
+                    Iterator<Map.Entry<Object, TextMessage>> first = dataUpdates.entrySet().iterator();
+                    message = first.next().getValue();
+                    first.remove();
+                }
+                queuedBytes -= message.getPayloadLength();
+                sendStartedNanos = System.nanoTime();
+                startedNanos = sendStartedNanos;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                session.sendMessage(message);
+            } catch (IOException | IllegalStateException e) {
+                if (!isClosed()) {
+                    log.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+                    close(CloseStatus.SERVER_ERROR);
+                }
+                return;
+            }
+            sendTimer.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+            lock.lock();
+            try {
+                sendStartedNanos = 0;
+                sent++;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void close(CloseStatus status) {
+        stop();
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (IOException e) {
+            log.debug("Closing session {} failed: {}", session.getId(), e.getMessage());
+        }
+        onClose.run();
+    }
+}
@@ -4,29 +4,46 @@ import com.pigsty.backend.model.Pigsty;
 import com.pigsty.backend.model.Role;
 import com.pigsty.backend.model.User;
 import com.pigsty.backend.model.WarningLog;
-import com.pigsty.backend.repository.PigstyRepository;
-import com.pigsty.backend.repository.UserRepository;
+import com.pigsty.backend.repository.WarningCursor;
 import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.repository.WarningSearch;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.WarningCounters;
+import com.pigsty.backend.service.WarningService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -36,8 +53,11 @@ import java.util.stream.Collectors;
  * 所有接口路径都以 /api/warnings 为前缀。
  * 
  * 主要功能：
- * - 获取告警列表：支持分页、按确认状态筛选、按角色过滤数据
+ * - 获取告警列表：支持分页、按确认状态、猪舍、指标、级别和时间范围筛选、按角色过滤数据
+ * - 键集翻页：按游标而不是页码翻页，深翻页的代价与第一页相同
  * - 确认告警：将告警标记为已处理状态
+ * - 批量确认：按ID列表或筛选条件一次确认多条告警（一条 UPDATE 语句），并通过 WebSocket 通知其他客户端
+ * - 未确认告警汇总：读取内存计数器，供仪表盘角标使用
  * 
  * @author 系统架构
  * @version 1.0
@@ -50,10 +70,55 @@ public class WarningController {
     private WarningLogRepository logRepository;
 
     @Autowired
-    private PigstyRepository pigstyRepository;
+    private PigstyCache pigstyCache;
 
     @Autowired
-    private UserRepository userRepository;
+    private WebSocketHandler webSocketHandler;
+
+    @Autowired
+    private WarningCounters warningCounters;
+
+    @Autowired
+    private WarningService warningService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 按ID批量确认时单次最多的ID数
+     */
+    private static final int MAX_ACKNOWLEDGE_IDS = 10000;
+
+    /**
+     * 按筛选条件确认时每个事务锁定和更新的告警数
+     */
+    private static final int ACKNOWLEDGE_BATCH_SIZE = 1000;
+
+    /**
+     * 键集翻页单页最多的条数
+     */
+    private static final int MAX_FEED_LIMIT = 500;
+
+    /**
+     * 键集翻页的一页告警
+     * 
+     * @param items 按时间倒序的告警
+     * @param nextCursor 下一页的游标，为 null 表示没有更多数据
+     */
+    public record WarningFeed(List<WarningLog> items, String nextCursor) {}
+
+    /**
+     * 按ID批量确认的请求体
+     */
+    public record AcknowledgeIdsRequest(List<Long> ids) {}
+
+    /**
+     * 按筛选条件批量确认的请求体，各字段为空表示不筛选
+     * 
+     * to 为空时取当前时间：只确认请求时已经发生的告警。
+     */
+    public record AcknowledgeFilterRequest(String pigstyId, String metricType, String level,
+                                           LocalDateTime from, LocalDateTime to) {}
 
     /**
      * 获取最新告警列表
@@ -70,68 +135,113 @@ public class WarningController {
      * @param acknowledged 是否只显示已确认的告警，默认为false
      * @param pigstyId 猪舍ID筛选，可选，空值或"all"表示不筛选
      * @param metricType 指标类型筛选，可选，空值或"all"表示不筛选
+     * @param level 预警级别筛选（WARNING 或 DANGER），可选，空值或"all"表示不筛选
+     * @param from 发生时间下限（含），可选
+     * @param to 发生时间上限（含），可选
+     * @param withTotal 是否需要总条数，默认为true；为false时返回不带总条数的分片（Slice），省去 COUNT 查询
      * @return 分页告警数据，未授权返回401
      */
     @GetMapping("/latest")
-    public ResponseEntity<Page<WarningLog>> getLatestWarnings(
+    public ResponseEntity<Slice<WarningLog>> getLatestWarnings(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "100") int size,
             @RequestParam(defaultValue = "false") boolean acknowledged,
             @RequestParam(required = false) String pigstyId,
-            @RequestParam(required = false) String metricType) {
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "true") boolean withTotal) {
 
         // 预处理筛选参数：空串/“all”视为未筛选
-        String pigstyFilter = (pigstyId == null || pigstyId.isBlank() || "all".equalsIgnoreCase(pigstyId)) ? null : pigstyId;
-        String metricFilter = (metricType == null || metricType.isBlank() || "all".equalsIgnoreCase(metricType)) ? null : metricType;
+        Long pigstyFilter = pigstyFilter(pigstyId);
+        String metricFilter = normalizeFilter(metricType);
+        String levelFilter = normalizeFilter(level);
 
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = userRepository.findByUsername(authentication.getName()).orElse(null);
+        User currentUser = currentUser();
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        Sort sort = acknowledged
-                ? Sort.by(Sort.Direction.DESC, "acknowledgedAt", "timestamp") // 已处理按处理时间，空值回退发生时间
-                : Sort.by(Sort.Direction.DESC, "timestamp");
-        Pageable pageable = PageRequest.of(page, size, sort);
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortKey(acknowledged), "id"));
+        Collection<Long> scope = pigstyScope(currentUser, pigstyFilter);
+        if (scope != null && scope.isEmpty()) {
+            return ResponseEntity.ok(new PageImpl<>(Collections.emptyList(), pageable, 0));
+        }
 
-        if (currentUser.getRole() == Role.ADMIN) {
-            Page<WarningLog> pageResult = logRepository.searchForAdmin(acknowledged, pigstyFilter, metricFilter, pageable);
-            return ResponseEntity.ok(pageResult);
-        } else {
-            List<Pigsty> userPigsties = pigstyRepository.findByTechnicianId(currentUser.getId());
-            List<String> userPigstyIds = userPigsties.stream()
-                    .map(pigsty -> String.valueOf(pigsty.getId()))
-                    .collect(Collectors.toList());
+        Specification<WarningLog> spec = new WarningSearch(acknowledged, scope, metricFilter, levelFilter, from, to)
+                .toSpecification();
+        Slice<WarningLog> result = withTotal
+                ? logRepository.search(spec, pageable)
+                : logRepository.searchSlice(spec, pageable);
+        return ResponseEntity.ok(result);
+    }
 
-            if (userPigstyIds.isEmpty()) {
-                Page<WarningLog> emptyPage = new PageImpl<>(Collections.emptyList(), pageable, 0);
-                return ResponseEntity.ok(emptyPage);
-            }
+    /**
+     * 按键集游标翻页获取最新告警
+     * 
+     * 与 /latest 的筛选条件和排序相同，但翻页不使用页码：响应中的 nextCursor 原样传回即可获取下一页，
+     * 为 null 表示已经没有更多数据。每一页都从游标位置沿索引向后读取 limit 条，
+     * 翻到多深都不需要跳过前面的记录，也不执行 COUNT 查询。
+     * 
+     * 响应格式: {"items": [...], "nextCursor": "..."}
+     * 
+     * 接口路径: GET /api/warnings/feed
+     * 
+     * @param acknowledged 是否只显示已确认的告警，默认为false
+     * @param pigstyId 猪舍ID筛选，可选，空值或"all"表示不筛选
+     * @param metricType 指标类型筛选，可选，空值或"all"表示不筛选
+     * @param level 预警级别筛选（WARNING 或 DANGER），可选，空值或"all"表示不筛选
+     * @param from 发生时间下限（含），可选
+     * @param to 发生时间上限（含），可选
+     * @param cursor 上一页返回的 nextCursor，可选
+     * @param limit 每页条数，默认100，超过上限按上限处理
+     * @return 一页告警和下一页的游标，游标无效返回400，未授权返回401
+     */
+    @GetMapping("/feed")
+    public ResponseEntity<WarningFeed> getWarningFeed(
+            @RequestParam(defaultValue = "false") boolean acknowledged,
+            @RequestParam(required = false) String pigstyId,
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        WarningCursor seek = (cursor == null || cursor.isBlank()) ? null : WarningCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, MAX_FEED_LIMIT));
 
-            List<String> filteredPigstyIds;
-            if (pigstyFilter != null && !pigstyFilter.equals("all")) {
-                filteredPigstyIds = userPigstyIds.stream()
-                        .filter(id -> id.equals(pigstyFilter))
-                        .collect(Collectors.toList());
-            } else {
-                filteredPigstyIds = userPigstyIds;
-            }
+        User currentUser = currentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Collection<Long> scope = pigstyScope(currentUser, pigstyFilter(pigstyId));
+        if (scope != null && scope.isEmpty()) {
+            return ResponseEntity.ok(new WarningFeed(List.of(), null));
+        }
 
-            if (filteredPigstyIds.isEmpty()) {
-                Page<WarningLog> emptyPage = new PageImpl<>(Collections.emptyList(), pageable, 0);
-                return ResponseEntity.ok(emptyPage);
-            }
+        String sortKey = sortKey(acknowledged);
+        Specification<WarningLog> spec = new WarningSearch(acknowledged, scope, normalizeFilter(metricType),
+                normalizeFilter(level), from, to).toSpecification();
+        Sort sort = Sort.by(Sort.Direction.DESC, sortKey, "id");
+        List<WarningLog> items = seek == null
+                ? logRepository.searchTop(spec, sort, pageSize)
+                : logRepository.searchAfter(spec.and(seek.after(sortKey)), sort, pageSize);
 
-            Page<WarningLog> filteredPage = logRepository.searchForTechnician(acknowledged, filteredPigstyIds, metricFilter, pageable);
-            return ResponseEntity.ok(filteredPage);
+        String nextCursor = null;
+        if (items.size() == pageSize) {
+            WarningLog last = items.get(items.size() - 1);
+            // 早期确认的告警没有确认时间，排序键为空的游标同样可以继续翻页
+            LocalDateTime lastKey = acknowledged ? last.getAcknowledgedAt() : last.getTimestamp();
+            nextCursor = new WarningCursor(lastKey, last.getId()).encode();
         }
+        return ResponseEntity.ok(new WarningFeed(items, nextCursor));
     }
 
     /**
      * 确认告警
      * 
-     * 将指定ID的告警标记为已处理状态，并记录确认时间。
+     * 将指定ID的告警标记为已处理状态，并记录确认时间；已确认的告警保持原来的确认时间。
      * 
      * 接口路径: POST /api/warnings/acknowledge/{id}
      * 
@@ -140,15 +250,235 @@ public class WarningController {
      */
     @PostMapping("/acknowledge/{id}")
     public ResponseEntity<WarningLog> acknowledgeWarning(@PathVariable Long id) {
-        Optional<WarningLog> logOpt = logRepository.findById(id);
-        if (logOpt.isPresent()) {
-            WarningLog log = logOpt.get();
-            log.setAcknowledged(true);
-            log.setAcknowledgedAt(java.time.LocalDateTime.now());
-            WarningLog updatedLog = logRepository.save(log);
-            return ResponseEntity.ok(updatedLog);
-        } else {
-            return ResponseEntity.notFound().build();
+        acknowledge(() -> logRepository.lockUnacknowledgedByIds(List.of(id)), row -> true, LocalDateTime.now());
+        return logRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 按ID列表批量确认告警
+     * 
+     * 已确认的告警和（技术员）不属于自己负责猪舍的告警会被跳过。
+     * 确认后按猪舍向订阅了预警的客户端推送 warning-ack 消息（带确认的ID列表）。
+     * 
+     * 接口路径: POST /api/warnings/acknowledge
+     * 
+     * @param request 要确认的告警ID列表
+     * @return 实际确认的条数和确认时间；ID列表为空或超过上限返回400，未授权返回401
+     */
+    @PostMapping("/acknowledge")
+    public ResponseEntity<?> acknowledgeWarnings(@RequestBody AcknowledgeIdsRequest request) {
+        if (request.ids() == null || request.ids().isEmpty() || request.ids().size() > MAX_ACKNOWLEDGE_IDS) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("message", "ids must contain between 1 and " + MAX_ACKNOWLEDGE_IDS + " warning IDs"));
+        }
+        User currentUser = currentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Set<Long> allowedPigstyIds = allowedPigstyIds(currentUser);
+
+        // 剔除无权操作的告警，再按猪舍分组，用于推送通知
+        LocalDateTime acknowledgedAt = LocalDateTime.now();
+        List<Object[]> rows = acknowledge(() -> logRepository.lockUnacknowledgedByIds(request.ids()), row -> {
+            Long pigstyId = (Long) row[1];
+            return pigstyId != null && (allowedPigstyIds == null || allowedPigstyIds.contains(pigstyId));
+        }, acknowledgedAt);
+        Map<Long, List<Long>> idsByPigsty = new TreeMap<>();
+        for (Object[] row : rows) {
+            idsByPigsty.computeIfAbsent((Long) row[1], k -> new ArrayList<>()).add((Long) row[0]);
+        }
+
+        idsByPigsty.forEach((pigstyId, pigstyWarningIds) -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("ids", pigstyWarningIds);
+            details.put("acknowledgedAt", acknowledgedAt);
+            webSocketHandler.sendWarningsAcknowledged(pigstyId, details);
+        });
+        return ResponseEntity.ok(Map.of("acknowledged", rows.size(), "acknowledgedAt", acknowledgedAt));
+    }
+
+    /**
+     * 按筛选条件批量确认告警
+     * 
+     * 确认所有符合条件的未确认告警；技术员只能确认自己负责猪舍的告警。
+     * 按ID顺序分批进行，每批一个事务（锁定并更新 ACKNOWLEDGE_BATCH_SIZE 条），不会一次锁住全部积压的告警；
+     * 中途失败时已提交的批次保持已确认。确认后按猪舍向订阅了预警的客户端推送 warning-ack 消息（带筛选条件），客户端按同样的条件更新本地列表。
+     * 
+     * 接口路径: POST /api/warnings/acknowledge/matching
+     * 
+     * @param request 筛选条件（猪舍、指标类型、级别、发生时间范围）
+     * @return 实际确认的条数和确认时间，未授权返回401
+     */
+    @PostMapping("/acknowledge/matching")
+    public ResponseEntity<?> acknowledgeMatchingWarnings(@RequestBody AcknowledgeFilterRequest request) {
+        User currentUser = currentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Long pigstyFilter = pigstyFilter(request.pigstyId());
+        String metricFilter = normalizeFilter(request.metricType());
+        String levelFilter = normalizeFilter(request.level());
+        LocalDateTime acknowledgedAt = LocalDateTime.now();
+        LocalDateTime to = request.to() != null ? request.to() : acknowledgedAt;
+
+        Collection<Long> scope = pigstyScope(currentUser, pigstyFilter);
+        WarningSearch search = new WarningSearch(false, scope, metricFilter, levelFilter, request.from(), to);
+        int acknowledged = 0;
+        Set<Long> pigstyIds = new TreeSet<>();
+        if (scope == null || !scope.isEmpty()) {
+            long afterId = Long.MIN_VALUE;
+            List<Object[]> rows;
+            do {
+                long cursor = afterId;
+                rows = acknowledge(() -> logRepository.lockUnacknowledged(search, cursor, ACKNOWLEDGE_BATCH_SIZE),
+                        row -> true, acknowledgedAt);
+                for (Object[] row : rows) {
+                    if (row[1] != null) {
+                        pigstyIds.add((Long) row[1]);
+                    }
+                }
+                acknowledged += rows.size();
+                if (!rows.isEmpty()) {
+                    afterId = (Long) rows.get(rows.size() - 1)[0];
+                }
+            } while (rows.size() == ACKNOWLEDGE_BATCH_SIZE);
+        }
+        for (Long pigstyId : pigstyIds) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("metricType", metricFilter);
+            details.put("level", levelFilter);
+            details.put("from", request.from());
+            details.put("to", to);
+            details.put("acknowledgedAt", acknowledgedAt);
+            webSocketHandler.sendWarningsAcknowledged(pigstyId, details);
         }
+        return ResponseEntity.ok(Map.of("acknowledged", acknowledged, "acknowledgedAt", acknowledgedAt));
+    }
+
+    /**
+     * 未确认告警汇总（仪表盘角标）
+     * 
+     * 读取内存中的计数器，不查询告警表。技术员只能看到自己负责猪舍的计数。
+     * 
+     * 接口路径: GET /api/warnings/summary
+     * 
+     * @return 总数、按猪舍、按级别以及按 猪舍 × 指标类型 × 级别 的未确认条数，未授权返回401
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<WarningCounters.Summary> getSummary() {
+        User currentUser = currentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(warningCounters.summary(allowedPigstyIds(currentUser)));
+    }
+
+    /**
+     * 确认一批告警并扣减计数
+     *
+     * 在一个事务中先锁定（SELECT ... FOR UPDATE）将被确认的行，再按锁定的ID更新。并发的确认请求在行锁上排队，
+     * 拿到锁时读到的已是确认后的状态，因此每条告警只被一个请求确认和计数。提交后通知告警服务关闭对应的打开事件，
+     * 再按维度扣减计数。
+     *
+     * @param lockingRead 加锁读取未确认告警，每行为 [id, pigstyId, metricType, level]
+     * @param allowed 过滤掉不应确认的行（例如无权操作的猪舍）；被过滤的行在事务结束时解锁
+     * @param acknowledgedAt 确认时间
+     * @return 实际确认的告警
+     */
+    private List<Object[]> acknowledge(Supplier<List<Object[]>> lockingRead, Predicate<Object[]> allowed,
+                                       LocalDateTime acknowledgedAt) {
+        List<Object[]> rows = transactionTemplate.execute(status -> {
+            List<Object[]> locked = lockingRead.get().stream().filter(allowed).toList();
+            List<Long> ids = locked.stream().map(row -> (Long) row[0]).toList();
+            for (int from = 0; from < ids.size(); from += ACKNOWLEDGE_BATCH_SIZE) {
+                logRepository.acknowledgeByIds(ids.subList(from, Math.min(ids.size(), from + ACKNOWLEDGE_BATCH_SIZE)),
+                        acknowledgedAt);
+            }
+            return locked;
+        });
+        if (rows == null || rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = rows.stream().map(row -> (Long) row[0]).toList();
+        countAcknowledged(rows, warningService.acknowledged(ids, acknowledgedAt));
+        return rows;
+    }
+
+    /**
+     * 按维度扣减未确认计数
+     *
+     * @param rows 被确认的告警，每行为 [id, pigstyId, metricType, level]
+     * @param openLevels 其中是打开事件的告警 → 内存中的当前级别（级别升级可能尚未写回，以它为准）
+     */
+    private void countAcknowledged(List<Object[]> rows, Map<Long, String> openLevels) {
+        Map<WarningCounters.Key, Long> countsByKey = new HashMap<>();
+        for (Object[] row : rows) {
+            String level = openLevels.getOrDefault((Long) row[0], (String) row[3]);
+            countsByKey.merge(new WarningCounters.Key((Long) row[1], (String) row[2], level), 1L, Long::sum);
+        }
+        countsByKey.forEach(warningCounters::acknowledged);
+    }
+
+    private User currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        // 认证过滤器放入的主体已带有用户ID和当前角色，无需再查询数据库
+        return authentication != null && authentication.getPrincipal() instanceof User user ? user : null;
+    }
+
+    /**
+     * 当前用户可以操作的猪舍ID，管理员返回 null（不限）
+     */
+    private Set<Long> allowedPigstyIds(User user) {
+        if (user.getRole() == Role.ADMIN) {
+            return null;
+        }
+        return pigstyCache.pigstiesOfTechnician(user.getId()).stream()
+                .map(Pigsty::getId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 本次查询的猪舍范围：null 表示不限（管理员且未筛选猪舍），空列表表示没有可查看的猪舍
+     */
+    private Collection<Long> pigstyScope(User user, Long pigstyFilter) {
+        Set<Long> allowedPigstyIds = allowedPigstyIds(user);
+        if (allowedPigstyIds == null) {
+            return pigstyFilter == null ? null : List.of(pigstyFilter);
+        }
+        if (pigstyFilter == null) {
+            return allowedPigstyIds;
+        }
+        return allowedPigstyIds.contains(pigstyFilter) ? List.of(pigstyFilter) : List.of();
+    }
+
+    /**
+     * 解析猪舍筛选参数：空串或“all”视为未筛选，不是数字时返回400
+     */
+    private static Long pigstyFilter(String pigstyId) {
+        String value = normalizeFilter(pigstyId);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid pigstyId: " + value);
+        }
+    }
+
+    /**
+     * 列表的排序时间列：已处理按处理时间，未处理按发生时间
+     */
+    private static String sortKey(boolean acknowledged) {
+        return acknowledged ? "acknowledgedAt" : "timestamp";
+    }
+
+    /**
+     * 空串或“all”视为未筛选
+     */
+    private static String normalizeFilter(String value) {
+        return (value == null || value.isBlank() || "all".equalsIgnoreCase(value)) ? null : value;
     }
 }
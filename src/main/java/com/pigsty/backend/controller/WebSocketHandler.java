@@ -1,49 +1,184 @@
 package com.pigsty.backend.controller;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pigsty.backend.controller.WebSocketSubscriptions.Subscriber;
+import com.pigsty.backend.controller.WebSocketSubscriptions.Topic;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.model.Role;
+import com.pigsty.backend.model.User;
 import com.pigsty.backend.model.WarningLog;
 import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.service.PigstyCache;
+import com.pigsty.backend.service.PigstyMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * WebSocket 处理器
  * 
- * 该类处理 WebSocket 连接、断开连接以及消息推送。
- * 维护所有活跃的 WebSocket 会话，并提供静态方法用于推送消息。
+ * 该类处理 WebSocket 连接、断开连接、订阅请求以及消息推送。
+ * 每个会话由一个 {@link SessionSender} 异步发送：推送方法只把序列化好的消息
+ * 放入订阅了对应猪舍和消息类型的会话的出站队列，不会被慢客户端阻塞。
+ * 
+ * 订阅协议（客户端发送 JSON 文本消息）：
+ * - {"action":"subscribe","pigstyIds":[1,2],"types":["data-update","warning"]}
+ * - {"action":"subscribe","allPigsties":true}
+ * - {"action":"unsubscribe","pigstyIds":[2]} / {"action":"unsubscribe","types":["data-update"]}
+ * - {"action":"unsubscribe"}：取消所有猪舍的订阅
+ * 
+ * 每次处理订阅请求后回复当前的订阅状态：
+ * {"type":"subscriptions","allPigsties":false,"pigstyIds":[1],"types":["warning"]}
+ * 
+ * 默认订阅：管理员订阅全部猪舍，技术员订阅分配给自己的猪舍，均接收全部消息类型。
+ * 技术员只能订阅分配给自己的猪舍，请求中的其他猪舍会被忽略。
+ * 
+ * 推送的扇出时间、每个会话的发送时间、连接数和排队消息数见 {@link PigstyMetrics}。
  * 
  * @author 系统架构
  * @version 1.0
  */
+@Component
 public class WebSocketHandler extends TextWebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(WebSocketHandler.class);
 
-    // 维护所有活跃的 WebSocket 会话
-    private static final Set<WebSocketSession> sessions = Collections.synchronizedSet(new HashSet<>());
+    // 维护所有活跃的 WebSocket 会话及其订阅
+    private final WebSocketSubscriptions subscriptions = new WebSocketSubscriptions();
     
-    // Jackson  ObjectMapper 用于 JSON 序列化
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Jackson ObjectMapper 用于 JSON 序列化（使用 Spring 配置的实例，支持 Java 8 日期时间类型）
+    private final ObjectMapper objectMapper;
+
+    private final PigstyCache pigstyCache;
+
+    private final PigstyMetrics metrics;
+
+    private final SessionSender.Limits limits;
+
+    public WebSocketHandler(
+            ObjectMapper objectMapper,
+            PigstyCache pigstyCache,
+            PigstyMetrics metrics,
+            @Value("${pigsty.websocket.data-queue-capacity:256}") int dataQueueCapacity,
+            @Value("${pigsty.websocket.data-overflow-policy:COALESCE}") SessionSender.OverflowPolicy overflowPolicy,
+            @Value("${pigsty.websocket.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+            @Value("${pigsty.websocket.buffer-size-limit:1048576}") long bufferSizeLimit) {
+        this.objectMapper = objectMapper;
+        this.pigstyCache = pigstyCache;
+        this.metrics = metrics;
+        this.limits = new SessionSender.Limits(dataQueueCapacity, overflowPolicy, sendTimeLimitMillis, bufferSizeLimit);
+        metrics.gauge("pigsty.websocket.sessions", "已连接的 WebSocket 会话数", () -> subscriptions.all().size());
+        metrics.gauge("pigsty.websocket.queued", "所有会话出站队列中的消息数", this::queuedMessages);
+    }
+
+    /**
+     * 客户端订阅请求
+     */
+    public record SubscriptionRequest(String action, List<Long> pigstyIds, Boolean allPigsties, List<String> types) {}
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        // 新连接建立时，将会话添加到集合中
-        sessions.add(session);
+        // 新连接建立时，为会话创建发送器，并按用户角色建立默认订阅
+        SessionSender sender = new SessionSender(session, limits, metrics.sessionSend(),
+                () -> subscriptions.remove(session.getId()));
+        User user = currentUser(session.getPrincipal());
+        Subscriber subscriber = new Subscriber(sender,
+                user != null ? user.getId() : null,
+                user != null && user.getRole() == Role.ADMIN);
+        subscriptions.register(session.getId(), subscriber);
+        sender.start();
+
+        if (subscriber.isAdmin()) {
+            subscriptions.subscribeAll(subscriber);
+        } else if (subscriber.userId() != null) {
+            subscriptions.subscribe(subscriber, assignedPigstyIds(subscriber.userId()));
+        }
+        replySubscriptions(subscriber);
         log.info("WebSocket connection established: {}", session.getId());
     }
 
     @Override
-    public void afterConnectionClosed(WebSocketSession session, org.springframework.web.socket.CloseStatus status) throws Exception {
-        // 连接关闭时，从集合中移除会话
-        sessions.remove(session);
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Subscriber subscriber = subscriptions.get(session.getId());
+        if (subscriber == null) {
+            return;
+        }
+        SubscriptionRequest request;
+        try {
+            request = objectMapper.readValue(message.getPayload(), SubscriptionRequest.class);
+        } catch (JsonProcessingException e) {
+            replyError(subscriber, "Malformed message: " + e.getOriginalMessage());
+            return;
+        }
+
+        int topics = 0;
+        if (request.types() != null) {
+            for (String type : request.types()) {
+                Topic topic = Topic.fromWireName(type);
+                if (topic == null) {
+                    replyError(subscriber, "Unknown message type: " + type);
+                    return;
+                }
+                topics |= topic.bit();
+            }
+        }
+
+        if ("subscribe".equals(request.action())) {
+            if (Boolean.TRUE.equals(request.allPigsties())) {
+                if (subscriber.isAdmin()) {
+                    subscriptions.subscribeAll(subscriber);
+                } else {
+                    subscriptions.subscribe(subscriber, assignedPigstyIds(subscriber.userId()));
+                }
+            } else if (request.pigstyIds() != null) {
+                subscriptions.subscribe(subscriber, permittedPigstyIds(subscriber, request.pigstyIds()));
+            }
+            if (request.types() != null) {
+                subscriptions.setTopics(subscriber, subscriber.topics() | topics);
+            }
+        } else if ("unsubscribe".equals(request.action())) {
+            if (request.pigstyIds() != null) {
+                Set<Long> remaining = subscriber.isAllPigsties() ? allPigstyIds() : Set.of();
+                subscriptions.unsubscribe(subscriber, request.pigstyIds(), remaining);
+            } else if (request.types() == null) {
+                subscriptions.unsubscribeAll(subscriber);
+            }
+            if (request.types() != null) {
+                subscriptions.setTopics(subscriber, subscriber.topics() & ~topics);
+            }
+        } else {
+            replyError(subscriber, "Unknown action: " + request.action());
+            return;
+        }
+        replySubscriptions(subscriber);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        // 连接关闭时，停止发送器并移除订阅
+        Subscriber subscriber = subscriptions.remove(session.getId());
+        if (subscriber != null) {
+            subscriber.sender().stop();
+        }
         log.info("WebSocket connection closed: {} with status: {}", session.getId(), status);
     }
 
@@ -52,7 +187,10 @@ public class WebSocketHandler extends TextWebSocketHandler {
         // 处理传输错误
         log.error("WebSocket transport error for session {}: {}", session.getId(), exception.getMessage());
         // 移除出错的会话
-        sessions.remove(session);
+        Subscriber subscriber = subscriptions.remove(session.getId());
+        if (subscriber != null) {
+            subscriber.sender().stop();
+        }
         // 关闭会话
         if (session.isOpen()) {
             session.close();
@@ -60,67 +198,202 @@ public class WebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 推送预警消息给所有连接的客户端
+     * 推送预警消息给订阅了该猪舍预警的客户端
+     * 
+     * 预警消息不会因为客户端处理慢而被丢弃。
      * 
      * @param warningLog 预警日志对象
      */
-    public static void sendWarning(WarningLog warningLog) {
+    public void sendWarning(WarningLog warningLog) {
+        long startNanos = System.nanoTime();
         try {
             // 创建预警消息对象
             WarningMessage message = new WarningMessage();
-            message.setType("warning");
+            message.setType(Topic.WARNING.wireName());
             message.setData(warningLog);
             
-            // 序列化为 JSON 字符串
-            String jsonMessage = objectMapper.writeValueAsString(message);
+            // 只序列化一次，所有会话共用同一个消息对象
+            TextMessage textMessage = new TextMessage(objectMapper.writeValueAsBytes(message));
             
-            // 发送给所有活跃会话
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    try {
-                        session.sendMessage(new TextMessage(jsonMessage));
-                    } catch (IOException e) {
-                        log.error("Failed to send warning message to session {}: {}", session.getId(), e.getMessage());
-                        // 移除出错的会话
-                        sessions.remove(session);
-                    }
-                }
-            }
+            // 放入订阅会话的出站队列
+            subscriptions.forEachRecipient(warningLog.getPigstyId(), Topic.WARNING,
+                    sender -> sender.enqueueWarning(textMessage));
         } catch (Exception e) {
             log.error("Failed to send warning message: {}", e.getMessage());
         }
+        metrics.warningBroadcast().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     }
 
     /**
-     * 推送环境数据更新给所有连接的客户端
+     * 通知订阅了该猪舍预警的客户端：一批告警已被确认
+     * 
+     * 消息类型为 warning-ack，随预警通道发送（同样不会被丢弃），客户端据此更新本地列表而无需重新查询。
+     * 
+     * @param pigstyId 猪舍ID
+     * @param details 确认的范围：告警ID列表（ids），或筛选条件（metricType、level、from、to），以及确认时间
+     */
+    public void sendWarningsAcknowledged(Long pigstyId, Map<String, Object> details) {
+        try {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "warning-ack");
+            message.put("pigstyId", pigstyId);
+            message.putAll(details);
+            TextMessage textMessage = new TextMessage(objectMapper.writeValueAsBytes(message));
+            subscriptions.forEachRecipient(pigstyId, Topic.WARNING,
+                    sender -> sender.enqueueWarning(textMessage));
+        } catch (Exception e) {
+            log.error("Failed to send warning acknowledgement: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 推送环境数据更新给订阅了该猪舍数据更新的客户端
+     * 
+     * 客户端跟不上时按配置的策略丢弃最旧的更新，或只保留每个猪舍最新的一条。
      * 
      * @param data 环境数据对象
      */
-    public static void sendDataUpdate(EnvironmentalData data) {
+    public void sendDataUpdate(EnvironmentalData data) {
+        long startNanos = System.nanoTime();
         try {
             // 创建数据更新消息对象
             DataMessage message = new DataMessage();
-            message.setType("data-update");
+            message.setType(Topic.DATA_UPDATE.wireName());
             message.setData(data);
             
-            // 序列化为 JSON 字符串
-            String jsonMessage = objectMapper.writeValueAsString(message);
+            // 只序列化一次，所有会话共用同一个消息对象
+            TextMessage textMessage = new TextMessage(objectMapper.writeValueAsBytes(message));
             
-            // 发送给所有活跃会话
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    try {
-                        session.sendMessage(new TextMessage(jsonMessage));
-                    } catch (IOException e) {
-                        log.error("Failed to send data update message to session {}: {}", session.getId(), e.getMessage());
-                        // 移除出错的会话
-                        sessions.remove(session);
-                    }
-                }
-            }
+            // 放入订阅会话的出站队列
+            subscriptions.forEachRecipient(data.getPigstyId(), Topic.DATA_UPDATE,
+                    sender -> sender.enqueueDataUpdate(data.getPigstyId(), textMessage));
         } catch (Exception e) {
             log.error("Failed to send data update message: {}", e.getMessage());
         }
+        metrics.dataBroadcast().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 猪舍的负责技术员变更后调整订阅：原技术员的会话不再接收该猪舍的消息，
+     * 新技术员已连接的会话自动订阅该猪舍
+     * 
+     * @param pigstyId 猪舍ID
+     * @param technicianId 新的负责技术员ID，可为 null
+     */
+    public void pigstyAssignmentChanged(Long pigstyId, Long technicianId) {
+        for (Subscriber subscriber : subscriptions.subscribersOf(pigstyId)) {
+            if (!subscriber.isAdmin() && !Objects.equals(subscriber.userId(), technicianId)) {
+                subscriptions.unsubscribe(subscriber, List.of(pigstyId), Set.of());
+                replySubscriptions(subscriber);
+            }
+        }
+        if (technicianId == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscriptions.all()) {
+            if (!subscriber.isAdmin() && technicianId.equals(subscriber.userId())
+                    && !subscriber.pigstyIds().contains(pigstyId)) {
+                subscriptions.subscribe(subscriber, List.of(pigstyId));
+                replySubscriptions(subscriber);
+            }
+        }
+    }
+
+    /**
+     * 猪舍被删除后移除所有会话对它的订阅
+     * 
+     * @param pigstyId 猪舍ID
+     */
+    public void pigstyRemoved(Long pigstyId) {
+        for (Subscriber subscriber : subscriptions.subscribersOf(pigstyId)) {
+            subscriptions.unsubscribe(subscriber, List.of(pigstyId), Set.of());
+        }
+    }
+
+    /**
+     * 获取所有会话出站队列的统计信息
+     * 
+     * @return 各会话的队列深度、已发送/丢弃/合并条数等
+     */
+    public List<SessionSender.Stats> sessionStats() {
+        List<SessionSender.Stats> stats = new ArrayList<>();
+        for (Subscriber subscriber : subscriptions.all()) {
+            stats.add(subscriber.sender().stats());
+        }
+        return stats;
+    }
+
+    private long queuedMessages() {
+        long queued = 0;
+        for (Subscriber subscriber : subscriptions.all()) {
+            SessionSender.Stats stats = subscriber.sender().stats();
+            queued += stats.queuedWarnings() + stats.queuedDataUpdates();
+        }
+        return queued;
+    }
+
+    private static User currentUser(Principal principal) {
+        if (principal instanceof Authentication authentication && authentication.getPrincipal() instanceof User user) {
+            return user;
+        }
+        return null;
+    }
+
+    private Set<Long> assignedPigstyIds(Long userId) {
+        if (userId == null) {
+            return Set.of();
+        }
+        return pigstyCache.pigstiesOfTechnician(userId).stream()
+                .map(Pigsty::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Set<Long> allPigstyIds() {
+        return pigstyCache.allPigsties().stream()
+                .map(Pigsty::getId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 过滤出当前用户有权订阅的猪舍：管理员不限，技术员只能订阅分配给自己的猪舍
+     */
+    private Set<Long> permittedPigstyIds(Subscriber subscriber, List<Long> requested) {
+        Set<Long> permitted = new HashSet<>(requested);
+        permitted.remove(null);
+        if (!subscriber.isAdmin()) {
+            permitted.retainAll(assignedPigstyIds(subscriber.userId()));
+        }
+        return permitted;
+    }
+
+    private void replySubscriptions(Subscriber subscriber) {
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("type", "subscriptions");
+        reply.put("allPigsties", subscriber.isAllPigsties());
+        reply.put("pigstyIds", subscriber.pigstyIds().stream().sorted().toList());
+        List<String> types = new ArrayList<>();
+        for (Topic topic : Topic.values()) {
+            if (subscriber.wants(topic)) {
+                types.add(topic.wireName());
+            }
+        }
+        reply.put("types", types);
+        reply(subscriber, reply);
+    }
+
+    private void replyError(Subscriber subscriber, String message) {
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("type", "error");
+        reply.put("message", message);
+        reply(subscriber, reply);
+    }
+
+    private void reply(Subscriber subscriber, Map<String, Object> reply) {
+        try {
+            subscriber.sender().enqueueReply(new TextMessage(objectMapper.writeValueAsBytes(reply)));
+        } catch (IOException e) {
+            log.error("Failed to send subscription reply: {}", e.getMessage());
+        }
     }
 
     /**
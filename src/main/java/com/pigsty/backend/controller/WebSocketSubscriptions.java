@@ -0,0 +1,262 @@
+package com.pigsty.backend.controller;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket 订阅索引
+ *
+ * 记录每个会话订阅了哪些猪舍和哪些消息类型，并维护“猪舍ID → 订阅会话”的索引，
+ * 推送时只遍历订阅了该猪舍的会话，而不是所有连接。
+ * 订阅了全部猪舍的会话（管理员默认如此）单独存放，不进入按猪舍的索引。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class WebSocketSubscriptions {
+
+    /**
+     * 可订阅的消息类型，名称与推送消息中的 type 字段一致
+     */
+    public enum Topic {
+        DATA_UPDATE("data-update"),
+        WARNING("warning");
+
+        private final String wireName;
+
+        Topic(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String wireName() {
+            return wireName;
+        }
+
+        public int bit() {
+            return 1 << ordinal();
+        }
+
+        /**
+         * 按消息类型名称查找，未知名称返回 null
+         */
+        public static Topic fromWireName(String name) {
+            for (Topic topic : values()) {
+                if (topic.wireName.equals(name)) {
+                    return topic;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 所有类型的位掩码
+     */
+    public static final int ALL_TOPICS = (1 << Topic.values().length) - 1;
+
+    /**
+     * 单个会话的订阅状态
+     */
+    public static final class Subscriber {
+
+        private final SessionSender sender;
+        private final Long userId;
+        private final boolean admin;
+        private final Set<Long> pigstyIds = ConcurrentHashMap.newKeySet();
+        private volatile boolean allPigsties;
+        private volatile int topics = ALL_TOPICS;
+
+        public Subscriber(SessionSender sender, Long userId, boolean admin) {
+            this.sender = sender;
+            this.userId = userId;
+            this.admin = admin;
+        }
+
+        public SessionSender sender() {
+            return sender;
+        }
+
+        public Long userId() {
+            return userId;
+        }
+
+        public boolean isAdmin() {
+            return admin;
+        }
+
+        public boolean isAllPigsties() {
+            return allPigsties;
+        }
+
+        public Set<Long> pigstyIds() {
+            return Set.copyOf(pigstyIds);
+        }
+
+        public int topics() {
+            return topics;
+        }
+
+        public boolean wants(Topic topic) {
+            return (topics & topic.bit()) != 0;
+        }
+    }
+
+    private final Map<String, Subscriber> subscribersBySession = new ConcurrentHashMap<>();
+    private final Set<Subscriber> allPigstySubscribers = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Set<Subscriber>> subscribersByPigsty = new ConcurrentHashMap<>();
+
+    public void register(String sessionId, Subscriber subscriber) {
+        subscribersBySession.put(sessionId, subscriber);
+    }
+
+    public Subscriber get(String sessionId) {
+        return subscribersBySession.get(sessionId);
+    }
+
+    public Collection<Subscriber> all() {
+        return subscribersBySession.values();
+    }
+
+    /**
+     * 移除会话的所有订阅
+     *
+     * @return 被移除的订阅状态，会话不存在返回 null
+     */
+    public Subscriber remove(String sessionId) {
+        Subscriber subscriber = subscribersBySession.remove(sessionId);
+        if (subscriber != null) {
+            synchronized (subscriber) {
+                allPigstySubscribers.remove(subscriber);
+                for (Long pigstyId : subscriber.pigstyIds) {
+                    unindex(pigstyId, subscriber);
+                }
+                subscriber.pigstyIds.clear();
+            }
+        }
+        return subscriber;
+    }
+
+    /**
+     * 订阅全部猪舍（替换原有的按猪舍订阅）
+     */
+    public void subscribeAll(Subscriber subscriber) {
+        synchronized (subscriber) {
+            for (Long pigstyId : subscriber.pigstyIds) {
+                unindex(pigstyId, subscriber);
+            }
+            subscriber.pigstyIds.clear();
+            subscriber.allPigsties = true;
+            allPigstySubscribers.add(subscriber);
+        }
+    }
+
+    /**
+     * 订阅指定猪舍
+     */
+    public void subscribe(Subscriber subscriber, Collection<Long> pigstyIds) {
+        synchronized (subscriber) {
+            if (subscriber.allPigsties) {
+                return;
+            }
+            for (Long pigstyId : pigstyIds) {
+                if (subscriber.pigstyIds.add(pigstyId)) {
+                    // 在 compute 内加入，避免与移除空集合的 unindex 交错导致加入到已被移除的集合
+                    subscribersByPigsty.compute(pigstyId, (id, subscribers) -> {
+                        Set<Subscriber> target = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+                        target.add(subscriber);
+                        return target;
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消订阅指定猪舍
+     *
+     * @param remaining 订阅了全部猪舍时，取消后保留的猪舍（即全部猪舍减去要取消的猪舍）
+     */
+    public void unsubscribe(Subscriber subscriber, Collection<Long> pigstyIds, Collection<Long> remaining) {
+        synchronized (subscriber) {
+            if (subscriber.allPigsties) {
+                subscriber.allPigsties = false;
+                allPigstySubscribers.remove(subscriber);
+                subscribe(subscriber, remaining);
+            }
+            for (Long pigstyId : pigstyIds) {
+                if (subscriber.pigstyIds.remove(pigstyId)) {
+                    unindex(pigstyId, subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消订阅所有猪舍
+     */
+    public void unsubscribeAll(Subscriber subscriber) {
+        synchronized (subscriber) {
+            subscriber.allPigsties = false;
+            allPigstySubscribers.remove(subscriber);
+            for (Long pigstyId : subscriber.pigstyIds) {
+                unindex(pigstyId, subscriber);
+            }
+            subscriber.pigstyIds.clear();
+        }
+    }
+
+    /**
+     * 设置订阅的消息类型
+     *
+     * @param topics 消息类型位掩码
+     */
+    public void setTopics(Subscriber subscriber, int topics) {
+        subscriber.topics = topics & ALL_TOPICS;
+    }
+
+    /**
+     * 某个猪舍当前的按猪舍订阅者（不含订阅了全部猪舍的会话）
+     */
+    public List<Subscriber> subscribersOf(Long pigstyId) {
+        Set<Subscriber> subscribers = subscribersByPigsty.get(pigstyId);
+        return subscribers == null ? List.of() : List.copyOf(subscribers);
+    }
+
+    /**
+     * 遍历应当收到某个猪舍某类消息的会话
+     *
+     * @param pigstyId 猪舍ID，为 null 时只有订阅了全部猪舍的会话会收到
+     * @param topic 消息类型
+     * @param action 对每个会话执行的操作
+     */
+    public void forEachRecipient(Long pigstyId, Topic topic, Consumer<SessionSender> action) {
+        for (Subscriber subscriber : allPigstySubscribers) {
+            if (subscriber.wants(topic)) {
+                action.accept(subscriber.sender);
+            }
+        }
+        if (pigstyId == null) {
+            return;
+        }
+        Set<Subscriber> subscribers = subscribersByPigsty.get(pigstyId);
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.wants(topic)) {
+                action.accept(subscriber.sender);
+            }
+        }
+    }
+
+    private void unindex(Long pigstyId, Subscriber subscriber) {
+        subscribersByPigsty.computeIfPresent(pigstyId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+}
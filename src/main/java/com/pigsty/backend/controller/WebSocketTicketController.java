@@ -0,0 +1,43 @@
+package com.pigsty.backend.controller;
+
+import com.pigsty.backend.service.WebSocketTicketService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * WebSocket 票据控制器
+ *
+ * 用 JWT 换取一次性的 WebSocket 握手票据，见 {@link WebSocketTicketService}。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@RestController
+@RequestMapping("/api/ws")
+public class WebSocketTicketController {
+
+    @Autowired
+    private WebSocketTicketService ticketService;
+
+    /**
+     * 签发握手票据
+     *
+     * 接口路径: POST /api/ws/ticket
+     *
+     * @param principal 当前用户
+     * @return 票据及其有效期（毫秒），客户端随后以 /ws?ticket=... 发起握手
+     */
+    @PostMapping("/ticket")
+    public ResponseEntity<?> issueTicket(@AuthenticationPrincipal UserDetails principal) {
+        return ResponseEntity.ok(Map.of(
+                "ticket", ticketService.issue(principal),
+                "expiresInMs", ticketService.ttlMillis()));
+    }
+}
@@ -0,0 +1,17 @@
+package com.pigsty.backend.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * 1 天粒度的环境数据汇总
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Entity
+@IdClass(EnvironmentalRollup.Key.class)
+@Table(name = "environmental_rollup_1d")
+public class DayRollup extends EnvironmentalRollup {
+}
@@ -32,10 +32,23 @@ public class Device {
     private LocalDateTime lastHeartbeat;
     
     public enum MetricType {
-        TEMPERATURE,
-        HUMIDITY,
-        AMMONIA,
-        LIGHT
+        TEMPERATURE("温度传感器"),
+        HUMIDITY("湿度传感器"),
+        AMMONIA("氨气传感器"),
+        LIGHT("光照传感器");
+
+        private final String deviceName;
+
+        MetricType(String deviceName) {
+            this.deviceName = deviceName;
+        }
+
+        /**
+         * 采集该指标的设备名称，用于告警消息
+         */
+        public String deviceName() {
+            return deviceName;
+        }
     }
     
     public boolean isOnline() {
@@ -1,12 +1,18 @@
 package com.pigsty.backend.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
 /**
@@ -21,13 +27,22 @@ import java.time.LocalDateTime;
 @Entity
 @Data
 @Table(name = "environmental_data", indexes = {
-    @Index(name = "idx_pigsty_id", columnList = "pigsty_id"),
+    @Index(name = "idx_pigsty_ref_ts_id", columnList = "pigsty_ref, timestamp, id"),
     @Index(name = "idx_timestamp", columnList = "timestamp")
 })
 public class EnvironmentalData {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * 主键生成策略
+     *
+     * 使用池化序列（MySQL 下由 Hibernate 以表模拟），每次预分配 {@link #ID_ALLOCATION_SIZE} 个ID，
+     * 这样批量写入时无需逐行回读自增主键，JDBC 批处理才能真正生效。
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "environmental_data_seq")
+    @SequenceGenerator(name = "environmental_data_seq", sequenceName = "environmental_data_seq", allocationSize = EnvironmentalData.ID_ALLOCATION_SIZE)
     private Long id;
 
     private Double temperature;
@@ -36,10 +51,30 @@ public class EnvironmentalData {
 
     private Double light;
 
-    private String pigstyId;
+    /**
+     * 所属猪舍ID
+     *
+     * 早期版本存放在字符串列 pigsty_id 中，现为数值列 pigsty_ref；
+     * 历史数据由 {@link com.pigsty.backend.config.PigstyIdMigration} 在后台分批回填。
+     */
+    @Column(name = "pigsty_ref")
+    private Long pigstyId;
 
+    /**
+     * 采集时间，也是分区列（见 PartitionMaintenanceService），因此不能为空；数据库中与 id 一起构成主键
+     */
+    @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    /**
+     * 写入管道接收该数据的时刻（{@link System#nanoTime()}），用于统计端到端延迟；0 表示未知。不入库、不序列化
+     */
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long receivedNanos;
+
     @jakarta.persistence.PrePersist
     public void prePersist() {
         if (this.timestamp == null) {
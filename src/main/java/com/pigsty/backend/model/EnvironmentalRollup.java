@@ -0,0 +1,65 @@
+package com.pigsty.backend.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.MappedSuperclass;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 环境数据汇总桶
+ *
+ * 某个猪舍在一个时间桶内各项指标的最小值、最大值、总和与样本数，平均值为 总和 / 样本数。
+ * 按分辨率分别存放在三张表中（见 {@link MinuteRollup}、{@link HourRollup}、{@link DayRollup}），
+ * 主键为 (pigsty_id, bucket_start)，写入时按主键做增量合并。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Data
+@MappedSuperclass
+public abstract class EnvironmentalRollup {
+
+    @Id
+    private Long pigstyId;
+
+    @Id
+    private LocalDateTime bucketStart;
+
+    private Double temperatureMin;
+    private Double temperatureMax;
+    private Double temperatureSum;
+    @Column(nullable = false)
+    private long temperatureCount;
+
+    private Double humidityMin;
+    private Double humidityMax;
+    private Double humiditySum;
+    @Column(nullable = false)
+    private long humidityCount;
+
+    private Double ammoniaMin;
+    private Double ammoniaMax;
+    private Double ammoniaSum;
+    @Column(nullable = false)
+    private long ammoniaCount;
+
+    private Double lightMin;
+    private Double lightMax;
+    private Double lightSum;
+    @Column(nullable = false)
+    private long lightCount;
+
+    /**
+     * 汇总表的联合主键
+     */
+    @Data
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long pigstyId;
+        private LocalDateTime bucketStart;
+    }
+}
@@ -0,0 +1,35 @@
+package com.pigsty.backend.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * 预写日志已入库的位置
+ *
+ * 每个预写日志目录一行（按日志目录创建时生成的随机ID区分）。回放线程每入库一批数据，就在同一个事务中
+ * 把这批数据之后的日志位置记到这里；日志自己的检查点在入库之后才提交，两者之间崩溃时，
+ * 重启后跳过不晚于该位置的记录，同一条数据不会入库两次。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Data
+@Entity
+@Table(name = "ingest_wal_checkpoint")
+public class IngestWalCheckpoint {
+
+    /**
+     * 预写日志的ID，见 {@link com.pigsty.backend.util.WriteAheadLog#id()}
+     */
+    @Id
+    private Long walId;
+
+    /**
+     * 最后一批已入库记录之后的日志位置，见 {@link com.pigsty.backend.util.WriteAheadLog#position()}
+     */
+    @Column(nullable = false)
+    private long position;
+}
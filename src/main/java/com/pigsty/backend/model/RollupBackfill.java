@@ -0,0 +1,37 @@
+package com.pigsty.backend.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * 汇总表回填进度
+ *
+ * 只有一行。回填开始时记录 environmental_data 当时的主键范围，之后每回填一批就在同一个事务中推进 nextId，
+ * 中途重启后从 nextId 继续；nextId 超过 lastId 表示回填已完成。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Data
+@Entity
+@Table(name = "rollup_backfill")
+public class RollupBackfill {
+
+    @Id
+    private Integer id;
+
+    /**
+     * 下一批的起始主键（包含）
+     */
+    @Column(nullable = false)
+    private long nextId;
+
+    /**
+     * 需要回填的最大主键（包含）；更大的主键是回填开始之后写入的数据，已由写入管道实时汇总
+     */
+    @Column(nullable = false)
+    private long lastId;
+}
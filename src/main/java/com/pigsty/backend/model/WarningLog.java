@@ -1,5 +1,6 @@
 package com.pigsty.backend.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -15,16 +16,23 @@ import java.time.LocalDateTime;
  * 该类表示系统中触发的一条告警记录，包含告警的详细信息、确认状态和时间戳。
  * 当环境数据超出猪舍设定的阈值时，系统会自动创建一条告警日志。
  * 
+ * 阈值告警以“事件”为单位记录：同一猪舍同一越限类型持续越限期间只有一行，
+ * 后续越限的数据只累加次数、更新峰值和最后越限时间，数值回到阈值内一定幅度后事件关闭。
+ * 
  * @author 系统架构
  * @version 1.0
  */
 @Entity
 @Data
 @Table(name = "warning_log", indexes = {
-    @Index(name = "idx_acknowledged", columnList = "acknowledged"),
-    @Index(name = "idx_pigsty_id", columnList = "pigsty_id"),
-    @Index(name = "idx_metric_type", columnList = "metric_type"),
-    @Index(name = "idx_timestamp", columnList = "timestamp")
+    // 与告警列表的查询形状一一对应：确认状态等值 + 可选的猪舍/指标等值 + 按发生时间倒序（范围），id 用于键集翻页
+    @Index(name = "idx_ack_ts", columnList = "acknowledged, timestamp, id"),
+    @Index(name = "idx_ack_metric_ts", columnList = "acknowledged, metric_type, timestamp, id"),
+    @Index(name = "idx_ack_pigsty_ref_ts", columnList = "acknowledged, pigsty_ref, timestamp, id"),
+    @Index(name = "idx_ack_pigsty_ref_metric_ts", columnList = "acknowledged, pigsty_ref, metric_type, timestamp, id"),
+    // 已确认列表按确认时间倒序
+    @Index(name = "idx_ack_acked_at", columnList = "acknowledged, acknowledged_at, id"),
+    @Index(name = "idx_ack_pigsty_ref_acked_at", columnList = "acknowledged, pigsty_ref, acknowledged_at, id")
 })
 public class WarningLog {
 
@@ -32,7 +40,8 @@ public class WarningLog {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    private String pigstyId;
+    @Column(name = "pigsty_ref") // 数值猪舍ID，替代早期的字符串列 pigsty_id（见 PigstyIdMigration）
+    private Long pigstyId;
     private String message;
     private String metricType;
     private Double actualValue;
@@ -43,6 +52,11 @@ public class WarningLog {
     private boolean acknowledged = false;
     private LocalDateTime acknowledgedAt;
 
+    private Integer occurrences;       // 事件期间越限的数据条数
+    private Double peakValue;          // 事件期间最偏离阈值的值
+    private LocalDateTime lastSeenAt;  // 最后一次越限的时间
+    private LocalDateTime closedAt;    // 事件关闭时间，仍在越限时为空
+
     @jakarta.persistence.PrePersist
     public void prePersist() {
         if (this.timestamp == null) {
@@ -1,17 +1,44 @@
 package com.pigsty.backend.repository;
 
 import com.pigsty.backend.model.EnvironmentalData;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface DataRepository extends JpaRepository<EnvironmentalData, Long> {
 
-    // 查找最新的 100 条数据
-    List<EnvironmentalData> findTop100ByOrderByTimestampDesc();
+    // 查找特定猪舍最新的若干条数据（用于预热最新数据缓存）
+    List<EnvironmentalData> findByPigstyIdOrderByTimestampDesc(Long pigstyId, Limit limit);
 
-    // 查找特定猪舍的数据
-    List<EnvironmentalData> findByPigstyIdOrderByTimestampDesc(String pigstyId);
+    // 键集分页读取某个猪舍的历史数据：从 (seekTimestamp, seekId) 之后按时间倒序继续读取
+    // 走 (pigsty_ref, timestamp, id) 联合索引；fetch size 为 Integer.MIN_VALUE 时 MySQL 驱动逐行流式返回
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("""
+        SELECT d FROM EnvironmentalData d
+        WHERE d.pigstyId = :pigstyId
+          AND d.timestamp >= :from
+          AND (d.timestamp < :seekTimestamp OR (d.timestamp = :seekTimestamp AND d.id < :seekId))
+        ORDER BY d.timestamp DESC, d.id DESC
+    """)
+    Stream<EnvironmentalData> streamHistoryPage(Long pigstyId, LocalDateTime from,
+                                                LocalDateTime seekTimestamp, long seekId, Limit limit);
+
+    // 读取某个猪舍在 [from, to) 内的原始读数，只取时间和四项指标列，按时间升序（用于图表降采样）
+    @Query("""
+        SELECT d.timestamp, d.temperature, d.humidity, d.ammoniaLevel, d.light FROM EnvironmentalData d
+        WHERE d.pigstyId = :pigstyId
+          AND d.timestamp >= :from
+          AND d.timestamp < :to
+        ORDER BY d.timestamp
+    """)
+    List<Object[]> findReadingsBetween(Long pigstyId, LocalDateTime from, LocalDateTime to, Limit limit);
 }
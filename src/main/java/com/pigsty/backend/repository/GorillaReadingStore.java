@@ -0,0 +1,757 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.util.GorillaCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于 Gorilla 压缩和内存映射文件的嵌入式时间序列存储
+ *
+ * 存储结构：
+ *
+ * - 序列：每个 猪舍 × 指标 一条，只追加，时间严格递增
+ * - 数据块：每 pigsty.tsdb.chunk-points 个点用 {@link GorillaCodec} 压缩成一块；未满的块留在内存中
+ * - 段文件：{dir}/{猪舍ID}/{指标}-{序号}.seg，固定大小（pigsty.tsdb.segment-size）并整体映射到内存，
+ *   数据块依次写入，写满后新建下一个段。文件头 16 字节：魔数 "PTSD"、版本、指标序号、猪舍ID；
+ *   每个数据块前有 24 字节块头：点数、字节数、首末点时间。块头中的点数最后写入，
+ *   写到一半中断的块点数为 0，重新打开时被忽略
+ * - 稀疏索引：内存中只保存每个数据块的位置和首末时间，启动时扫描块头重建；
+ *   范围扫描先按索引定位数据块，再直接从映射的缓冲区解码，不复制数据、不构造实体
+ * - 迟到数据：早于序列最后一个点的点无法插入已压缩的数据块。与已有点时间相同的视为重复（例如补齐时重读的数据）
+ *   直接跳过；否则计数、记录日志，并把它所在的小时记入 {dir}/{猪舍ID}/{指标}.late（每个小时 8 字节，只追加），
+ *   {@link #covers} 对包含这些小时的查询返回 false，由 MySQL 回答
+ *
+ * MySQL 仍是权威存储：启动后从 MySQL 补齐每条序列最后一个点之后的数据（首次启动补最近
+ * pigsty.tsdb.backfill-days 天），补齐完成之前 {@link #covers} 返回 false，查询仍走 MySQL；
+ * 段文件丢失或损坏时删除数据目录即可重建。早于保留期（pigsty.tsdb.retention-days）的段文件整个删除。
+ *
+ * pigsty.tsdb.enabled=false（默认）时不打开任何文件，所有方法都是空操作。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Repository
+public class GorillaReadingStore implements ReadingStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GorillaReadingStore.class);
+
+    private static final int SEGMENT_MAGIC = 0x50545344;
+    private static final short SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int CHUNK_HEADER_BYTES = 24;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("([A-Z_]+)-(\\d+)\\.seg");
+    private static final String LATE_FILE_SUFFIX = ".late";
+    private static final long HOUR_MICROS = 3_600_000_000L;
+    private static final Metric[] METRICS = Metric.values();
+
+    /**
+     * 启动补齐时每次从 MySQL 读取的行数
+     */
+    private static final int CATCH_UP_PAGE = 10000;
+
+    private final DataRepository dataRepository;
+    private final PigstyRepository pigstyRepository;
+    private final boolean enabled;
+    private final Path directory;
+    private final int chunkPoints;
+    private final int segmentSize;
+    private final int backfillDays;
+    private final int retentionDays;
+
+    private final ConcurrentHashMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * 启动以来因迟到而没有写入的点数
+     */
+    private final AtomicLong latePoints = new AtomicLong();
+
+    /**
+     * 补齐期间新到的数据先暂存在这里，补齐完成后再追加，保证每条序列按时间顺序写入
+     */
+    private final Object catchUpLock = new Object();
+    private List<EnvironmentalData> deferred;
+    private volatile boolean available;
+    private volatile boolean stopped;
+
+    public GorillaReadingStore(
+            DataRepository dataRepository,
+            PigstyRepository pigstyRepository,
+            @Value("${pigsty.tsdb.enabled:false}") boolean enabled,
+            @Value("${pigsty.tsdb.dir:tsdb}") Path directory,
+            @Value("${pigsty.tsdb.chunk-points:120}") int chunkPoints,
+            @Value("${pigsty.tsdb.segment-size:262144}") int segmentSize,
+            @Value("${pigsty.tsdb.backfill-days:30}") int backfillDays,
+            @Value("${pigsty.tsdb.retention-days:365}") int retentionDays) {
+        this.dataRepository = dataRepository;
+        this.pigstyRepository = pigstyRepository;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.chunkPoints = chunkPoints;
+        this.segmentSize = segmentSize;
+        this.backfillDays = backfillDays;
+        this.retentionDays = retentionDays;
+    }
+
+    private record SeriesKey(long pigstyId, Metric metric) {
+    }
+
+    /**
+     * 扫描时要解码的一个数据块
+     */
+    private record ChunkRef(ByteBuffer buffer, int offset, int count) {
+    }
+
+    /**
+     * 打开数据目录中已有的段文件，重建索引
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        deferred = new ArrayList<>();
+        Files.createDirectories(directory);
+        int segments = 0;
+        try (DirectoryStream<Path> pigstyDirs = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path pigstyDir : pigstyDirs) {
+                long pigstyId;
+                try {
+                    pigstyId = Long.parseLong(pigstyDir.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                segments += loadSegments(pigstyId, pigstyDir);
+            }
+        }
+        log.info("Reading store opened at {}: {} series in {} segments", directory.toAbsolutePath(),
+                series.size(), segments);
+    }
+
+    private int loadSegments(long pigstyId, Path pigstyDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(pigstyDir, "*.seg")) {
+            stream.forEach(files::add);
+        }
+        // 同一序列的段按序号顺序加载，时间也就是升序
+        files.sort(Comparator.comparingLong(GorillaReadingStore::segmentSequence));
+        for (Metric metric : METRICS) {
+            Path lateFile = pigstyDir.resolve(metric.name() + LATE_FILE_SUFFIX);
+            if (Files.exists(lateFile)) {
+                series(pigstyId, metric).loadLateHours(lateFile);
+            }
+        }
+        int loaded = 0;
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            Metric metric;
+            try {
+                metric = Metric.valueOf(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            try {
+                Segment segment = Segment.load(file);
+                Series s = series(pigstyId, metric);
+                s.addLoaded(segment, Integer.parseInt(matcher.group(2)));
+                loaded++;
+            } catch (IOException e) {
+                log.warn("Skipping unreadable segment {}: {}", file, e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    private static long segmentSequence(Path file) {
+        Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(2)) : Long.MAX_VALUE;
+    }
+
+    /**
+     * 应用启动完成后，在后台从 MySQL 补齐各序列
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUp() {
+        if (!enabled) {
+            return;
+        }
+        Thread.ofVirtual().name("reading-store-catch-up").start(() -> {
+            boolean complete = false;
+            try {
+                catchUpFromDatabase();
+                complete = !stopped;
+            } catch (RuntimeException e) {
+                log.error("Reading store catch-up failed, raw series stay on MySQL until next start: {}",
+                        e.getMessage(), e);
+            }
+            synchronized (catchUpLock) {
+                appendNow(deferred);
+                deferred = null;
+                available = complete;
+            }
+        });
+    }
+
+    private void catchUpFromDatabase() {
+        long started = System.nanoTime();
+        LocalDateTime floor = LocalDateTime.now().minusDays(backfillDays);
+        // 补齐期间入库的数据也可能被读到，重复的点按时间去重
+        LocalDateTime to = LocalDateTime.now().plusDays(1);
+        long rows = 0;
+        for (Pigsty pigsty : pigstyRepository.findAll()) {
+            long pigstyId = pigsty.getId();
+            LocalDateTime from = resumeFrom(pigstyId, floor);
+            while (!stopped) {
+                List<Object[]> page = dataRepository.findReadingsBetween(pigstyId, from, to, Limit.of(CATCH_UP_PAGE));
+                for (Object[] row : page) {
+                    long micros = ReadingStore.toEpochMicros((LocalDateTime) row[0]);
+                    for (int m = 0; m < METRICS.length; m++) {
+                        appendPoint(pigstyId, METRICS[m], micros, (Double) row[m + 1]);
+                    }
+                }
+                rows += page.size();
+                if (page.size() < CATCH_UP_PAGE) {
+                    break;
+                }
+                LocalDateTime last = (LocalDateTime) page.get(page.size() - 1)[0];
+                from = last.isAfter(from) ? last : from.plusNanos(1000);
+            }
+        }
+        log.info("Reading store caught up with MySQL: {} readings in {} ms", rows,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * 某个猪舍的补齐起点：各指标序列最后一个点中最早的一个，没有数据时为 floor
+     */
+    private LocalDateTime resumeFrom(long pigstyId, LocalDateTime floor) {
+        long resume = Long.MAX_VALUE;
+        for (Metric metric : METRICS) {
+            Series s = series.get(new SeriesKey(pigstyId, metric));
+            long last = s == null ? Long.MIN_VALUE : s.lastTimestamp();
+            resume = Math.min(resume, last);
+        }
+        if (resume == Long.MIN_VALUE) {
+            return floor;
+        }
+        LocalDateTime last = ReadingStore.fromEpochMicros(resume);
+        return last.isAfter(floor) ? last : floor;
+    }
+
+    @Override
+    public boolean covers(long pigstyId, LocalDateTime from, LocalDateTime to) {
+        if (!available || (retentionDays > 0 && from.isBefore(LocalDateTime.now().minusDays(retentionDays)))) {
+            return false;
+        }
+        long fromMicros = ReadingStore.toEpochMicros(from);
+        long toMicros = ReadingStore.toEpochMicros(to);
+        for (Metric metric : METRICS) {
+            Series s = series.get(new SeriesKey(pigstyId, metric));
+            if (s != null && s.hasLateDataBetween(fromMicros, toMicros)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 启动以来因迟到（早于序列最后一个点）而没有写入的点数
+     */
+    public long latePoints() {
+        return latePoints.get();
+    }
+
+    @Override
+    public void append(List<EnvironmentalData> dataList) {
+        if (!enabled) {
+            return;
+        }
+        if (!available) {
+            synchronized (catchUpLock) {
+                if (deferred != null) {
+                    deferred.addAll(dataList);
+                    return;
+                }
+            }
+        }
+        appendNow(dataList);
+    }
+
+    private void appendNow(List<EnvironmentalData> dataList) {
+        for (EnvironmentalData data : dataList) {
+            if (data.getPigstyId() == null || data.getTimestamp() == null) {
+                continue;
+            }
+            long micros = ReadingStore.toEpochMicros(data.getTimestamp());
+            for (Metric metric : METRICS) {
+                appendPoint(data.getPigstyId(), metric, micros, metric.read(data));
+            }
+        }
+    }
+
+    private void appendPoint(long pigstyId, Metric metric, long micros, Double value) {
+        if (value == null || value.isNaN()) {
+            return;
+        }
+        try {
+            series(pigstyId, metric).append(micros, value);
+        } catch (UncheckedIOException e) {
+            log.error("Writing reading store segment for pigsty {} {} failed: {}", pigstyId, metric, e.getMessage());
+        }
+    }
+
+    private Series series(long pigstyId, Metric metric) {
+        return series.computeIfAbsent(new SeriesKey(pigstyId, metric), key -> new Series(key));
+    }
+
+    @Override
+    public int scan(long pigstyId, Metric metric, LocalDateTime from, LocalDateTime to, int limit,
+                    PointConsumer consumer) {
+        Series s = series.get(new SeriesKey(pigstyId, metric));
+        if (s == null) {
+            return 0;
+        }
+        long fromMicros = ReadingStore.toEpochMicros(from);
+        long toMicros = ReadingStore.toEpochMicros(to);
+        int n = 0;
+        for (ChunkRef chunk : s.chunksBetween(fromMicros, toMicros)) {
+            GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(chunk.buffer(), chunk.offset(), chunk.count());
+            while (decoder.next()) {
+                long timestamp = decoder.timestamp();
+                if (timestamp < fromMicros) {
+                    continue;
+                }
+                if (timestamp >= toMicros || n >= limit) {
+                    return n;
+                }
+                consumer.accept(timestamp, decoder.value());
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 删除最后一个点早于保留期的段文件
+     */
+    @Scheduled(cron = "${pigsty.partition.maintenance-cron:0 30 3 * * *}")
+    public void dropExpired() {
+        if (!enabled || retentionDays <= 0) {
+            return;
+        }
+        long cutoff = ReadingStore.toEpochMicros(LocalDateTime.now().minusDays(retentionDays));
+        int dropped = 0;
+        for (Series s : series.values()) {
+            dropped += s.dropBefore(cutoff);
+        }
+        if (dropped > 0) {
+            log.info("Dropped {} reading store segments older than {} days", dropped, retentionDays);
+        }
+    }
+
+    /**
+     * 把内存中未满的数据块写入段文件并刷到磁盘。运行期间不逐块刷盘，由操作系统回写；
+     * 异常退出时丢失的尾部数据在下次启动时从 MySQL 补齐
+     */
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        stopped = true;
+        for (Series s : series.values()) {
+            try {
+                s.flush();
+                s.force();
+            } catch (UncheckedIOException e) {
+                log.error("Flushing reading store series {} failed: {}", s.key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一条序列：已写入段文件的数据块加上内存中未满的一块。所有修改和索引快照都在序列的锁内进行；
+     * .late 文件的读写和过期段文件的删除在序列的锁外进行，不让查询和写入在文件 I/O 上等待
+     */
+    private final class Series {
+
+        private static final long NO_LATE_HOUR = Long.MIN_VALUE;
+
+        private final SeriesKey key;
+        private final List<Segment> segments = new ArrayList<>();
+        /**
+         * 有迟到数据的小时（起始时间，纪元微秒）
+         */
+        private final TreeSet<Long> lateHours = new TreeSet<>();
+        /**
+         * 串行化 .late 文件的追加和重写
+         */
+        private final ReentrantLock lateFileLock = new ReentrantLock();
+        private GorillaCodec.Encoder open;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private int nextSequence;
+
+        Series(SeriesKey key) {
+            this.key = key;
+        }
+
+        synchronized void addLoaded(Segment segment, int sequence) {
+            segments.add(segment);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (segment.chunkCount > 0) {
+                lastTimestamp = Math.max(lastTimestamp, segment.ends[segment.chunkCount - 1]);
+            }
+        }
+
+        synchronized long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        void append(long micros, double value) {
+            long lateHour = appendPoint(micros, value);
+            if (lateHour != NO_LATE_HOUR) {
+                recordLateHour(lateHour);
+            }
+        }
+
+        /**
+         * @return 第一次出现迟到数据的小时，没有时为 NO_LATE_HOUR
+         */
+        private synchronized long appendPoint(long micros, double value) {
+            if (micros <= lastTimestamp) {
+                if (micros < lastTimestamp && !contains(micros)) {
+                    return late(micros);
+                }
+                return NO_LATE_HOUR;
+            }
+            if (open == null) {
+                open = new GorillaCodec.Encoder();
+            }
+            open.append(micros, value);
+            lastTimestamp = micros;
+            if (open.count() >= chunkPoints) {
+                flush();
+            }
+            return NO_LATE_HOUR;
+        }
+
+        /**
+         * 序列中是否已有该时间的点
+         */
+        private boolean contains(long micros) {
+            for (ChunkRef chunk : chunksBetween(micros, micros + 1)) {
+                GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(chunk.buffer(), chunk.offset(), chunk.count());
+                while (decoder.next()) {
+                    if (decoder.timestamp() >= micros) {
+                        if (decoder.timestamp() == micros) {
+                            return true;
+                        }
+                        break;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 记录一个没有写入的迟到点
+         *
+         * @return 它所在的小时第一次出现时返回该小时（由调用方在锁外追加到 .late 文件），否则返回 NO_LATE_HOUR
+         */
+        private long late(long micros) {
+            long total = latePoints.incrementAndGet();
+            long hour = Math.floorDiv(micros, HOUR_MICROS) * HOUR_MICROS;
+            if (!lateHours.add(hour)) {
+                return NO_LATE_HOUR;
+            }
+            log.warn("Late reading for pigsty {} {} at {} (series already at {}), not stored; "
+                            + "queries covering that hour go to MySQL ({} late readings since start)",
+                    key.pigstyId(), key.metric(), ReadingStore.fromEpochMicros(micros),
+                    ReadingStore.fromEpochMicros(lastTimestamp), total);
+            return hour;
+        }
+
+        private void recordLateHour(long hour) {
+            lateFileLock.lock();
+            try {
+                Path file = lateFile();
+                Files.createDirectories(file.getParent());
+                Files.write(file, ByteBuffer.allocate(Long.BYTES).putLong(0, hour).array(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.error("Recording late hour for pigsty {} {} failed: {}", key.pigstyId(), key.metric(),
+                        e.getMessage());
+            } finally {
+                lateFileLock.unlock();
+            }
+        }
+
+        void loadLateHours(Path file) throws IOException {
+            ByteBuffer hours = ByteBuffer.wrap(Files.readAllBytes(file));
+            synchronized (this) {
+                while (hours.remaining() >= Long.BYTES) {
+                    lateHours.add(hours.getLong());
+                }
+            }
+        }
+
+        synchronized boolean hasLateDataBetween(long from, long to) {
+            Long hour = lateHours.ceiling(Math.floorDiv(from, HOUR_MICROS) * HOUR_MICROS);
+            return hour != null && hour < to;
+        }
+
+        private Path lateFile() {
+            return directory.resolve(Long.toString(key.pigstyId())).resolve(key.metric().name() + LATE_FILE_SUFFIX);
+        }
+
+        synchronized void flush() {
+            if (open == null || open.count() == 0) {
+                return;
+            }
+            byte[] payload = open.toByteArray();
+            int size = CHUNK_HEADER_BYTES + payload.length;
+            Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (active == null || !active.fits(size)) {
+                Path file = directory.resolve(Long.toString(key.pigstyId()))
+                        .resolve(String.format("%s-%06d.seg", key.metric().name(), nextSequence));
+                active = Segment.create(file, Math.max(segmentSize, SEGMENT_HEADER_BYTES + size), key);
+                segments.add(active);
+                nextSequence++;
+            }
+            active.write(open.count(), open.firstTimestamp(), open.lastTimestamp(), payload);
+            open = null;
+        }
+
+        synchronized void force() {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+        }
+
+        synchronized List<ChunkRef> chunksBetween(long from, long to) {
+            List<ChunkRef> chunks = new ArrayList<>();
+            for (Segment segment : segments) {
+                int count = segment.chunkCount;
+                if (count == 0 || segment.ends[count - 1] < from || segment.starts[0] >= to) {
+                    continue;
+                }
+                for (int i = segment.firstChunkEndingAtOrAfter(from); i < count && segment.starts[i] < to; i++) {
+                    chunks.add(new ChunkRef(segment.buffer, segment.offsets[i] + CHUNK_HEADER_BYTES,
+                            segment.counts[i]));
+                }
+            }
+            if (open != null && open.lastTimestamp() >= from && open.firstTimestamp() < to) {
+                chunks.add(new ChunkRef(ByteBuffer.wrap(open.toByteArray()), 0, open.count()));
+            }
+            return chunks;
+        }
+
+        /**
+         * 删除最后一个点早于 cutoff 的段，正在写入的最后一个段除外
+         */
+        int dropBefore(long cutoff) {
+            boolean lateHoursExpired;
+            List<Path> expired = new ArrayList<>();
+            synchronized (this) {
+                SortedSet<Long> expiredHours = lateHours.headSet(Math.floorDiv(cutoff, HOUR_MICROS) * HOUR_MICROS);
+                lateHoursExpired = !expiredHours.isEmpty();
+                expiredHours.clear();
+                while (segments.size() > 1) {
+                    Segment oldest = segments.get(0);
+                    if (oldest.chunkCount > 0 && oldest.ends[oldest.chunkCount - 1] >= cutoff) {
+                        break;
+                    }
+                    segments.remove(0);
+                    expired.add(oldest.path);
+                }
+            }
+            if (lateHoursExpired) {
+                rewriteLateFile();
+            }
+            // 映射在删除文件后仍然有效，正在进行的扫描不受影响
+            for (Path path : expired) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Deleting expired segment {} failed: {}", path, e.getMessage());
+                }
+            }
+            return expired.size();
+        }
+
+        private synchronized long[] lateHoursSnapshot() {
+            return lateHours.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        /**
+         * 按当前的迟到小时重写 .late 文件。快照在文件锁内取，与之并发追加的小时要么已在快照中，要么在重写之后追加
+         */
+        private void rewriteLateFile() {
+            lateFileLock.lock();
+            try {
+                long[] hours = lateHoursSnapshot();
+                Path file = lateFile();
+                if (hours.length == 0) {
+                    Files.deleteIfExists(file);
+                    return;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(hours.length * Long.BYTES);
+                for (long hour : hours) {
+                    buffer.putLong(hour);
+                }
+                Files.write(file, buffer.array());
+            } catch (IOException e) {
+                log.warn("Rewriting late hours of pigsty {} {} failed: {}", key.pigstyId(), key.metric(),
+                        e.getMessage());
+            } finally {
+                lateFileLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 一个映射到内存的段文件及其数据块索引
+     */
+    private static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int chunkCount;
+        private int[] offsets = new int[16];
+        private int[] counts = new int[16];
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+            this.writePosition = SEGMENT_HEADER_BYTES;
+        }
+
+        static Segment create(Path path, int size, SeriesKey key) {
+            try {
+                Files.createDirectories(path.getParent());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.putInt(0, SEGMENT_MAGIC)
+                            .putShort(4, SEGMENT_VERSION)
+                            .putShort(6, (short) key.metric().ordinal())
+                            .putLong(8, key.pigstyId());
+                    return new Segment(path, buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        static Segment load(Path path) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            if (buffer.capacity() < SEGMENT_HEADER_BYTES || buffer.getInt(0) != SEGMENT_MAGIC
+                    || buffer.getShort(4) != SEGMENT_VERSION) {
+                throw new IOException("not a segment file");
+            }
+            Segment segment = new Segment(path, buffer);
+            int position = SEGMENT_HEADER_BYTES;
+            while (position + CHUNK_HEADER_BYTES <= buffer.capacity()) {
+                int count = buffer.getInt(position);
+                int length = buffer.getInt(position + 4);
+                if (count <= 0 || length <= 0 || position + CHUNK_HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                segment.index(position, count, buffer.getLong(position + 8), buffer.getLong(position + 16));
+                position += CHUNK_HEADER_BYTES + length;
+            }
+            segment.writePosition = position;
+            return segment;
+        }
+
+        boolean fits(int bytes) {
+            return writePosition + bytes <= buffer.capacity();
+        }
+
+        /**
+         * 写入一个数据块：先写数据和时间，最后写点数
+         */
+        void write(int count, long start, long end, byte[] payload) {
+            int position = writePosition;
+            buffer.put(position + CHUNK_HEADER_BYTES, payload);
+            buffer.putLong(position + 16, end);
+            buffer.putLong(position + 8, start);
+            buffer.putInt(position + 4, payload.length);
+            buffer.putInt(position, count);
+            index(position, count, start, end);
+            writePosition = position + CHUNK_HEADER_BYTES + payload.length;
+        }
+
+        private void index(int offset, int count, long start, long end) {
+            if (chunkCount == offsets.length) {
+                int capacity = chunkCount * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            offsets[chunkCount] = offset;
+            counts[chunkCount] = count;
+            starts[chunkCount] = start;
+            ends[chunkCount] = end;
+            chunkCount++;
+        }
+
+        /**
+         * 第一个最后时间不早于 from 的数据块（数据块按时间升序排列）
+         */
+        int firstChunkEndingAtOrAfter(long from) {
+            int low = 0;
+            int high = chunkCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
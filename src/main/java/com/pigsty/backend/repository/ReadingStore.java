@@ -0,0 +1,93 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.EnvironmentalData;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 传感器读数的时间序列存储
+ *
+ * 与 {@link DataRepository} 并存：MySQL 仍是权威存储，这里按 猪舍 × 指标 保存压缩后的 (时间, 数值) 序列，
+ * 供原始粒度的图表查询按时间范围扫描，不构造实体。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public interface ReadingStore {
+
+    /**
+     * 存储的指标及其取值方法
+     */
+    enum Metric {
+        TEMPERATURE(EnvironmentalData::getTemperature),
+        HUMIDITY(EnvironmentalData::getHumidity),
+        AMMONIA_LEVEL(EnvironmentalData::getAmmoniaLevel),
+        LIGHT(EnvironmentalData::getLight);
+
+        private final Function<EnvironmentalData, Double> reader;
+
+        Metric(Function<EnvironmentalData, Double> reader) {
+            this.reader = reader;
+        }
+
+        public Double read(EnvironmentalData data) {
+            return reader.apply(data);
+        }
+    }
+
+    /**
+     * 扫描结果的接收方
+     */
+    @FunctionalInterface
+    interface PointConsumer {
+
+        /**
+         * @param epochMicros 时间（UTC 纪元微秒，与 LocalDateTime 按 UTC 换算）
+         * @param value 数值
+         */
+        void accept(long epochMicros, double value);
+    }
+
+    /**
+     * 存储是否已启用并追上了 MySQL 中的数据，可以代替 MySQL 回答某个猪舍 [from, to) 的查询
+     *
+     * @param pigstyId 猪舍ID
+     * @param from 查询的起始时间
+     * @param to 查询的截止时间
+     */
+    boolean covers(long pigstyId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * 追加一批已入库的环境数据。每个序列只追加晚于其最后一个点的数据；早于最后一个点的迟到数据无法写入，
+     * 实现须记住它们所在的时段，{@link #covers} 对包含这些时段的查询返回 false，改由 MySQL 回答
+     *
+     * @param dataList 已入库的环境数据
+     */
+    void append(List<EnvironmentalData> dataList);
+
+    /**
+     * 按时间升序扫描某个猪舍某项指标在 [from, to) 内的点
+     *
+     * @param pigstyId 猪舍ID
+     * @param metric 指标
+     * @param from 起始时间（包含）
+     * @param to 截止时间（不包含）
+     * @param limit 最多读取的点数
+     * @param consumer 接收每个点
+     * @return 实际读取的点数
+     */
+    int scan(long pigstyId, Metric metric, LocalDateTime from, LocalDateTime to, int limit, PointConsumer consumer);
+
+    static long toEpochMicros(LocalDateTime timestamp) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, timestamp.toInstant(ZoneOffset.UTC));
+    }
+
+    static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+}
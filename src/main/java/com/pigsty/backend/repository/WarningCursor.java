@@ -0,0 +1,66 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.WarningLog;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 告警键集翻页的游标：上一页最后一条记录的排序键和ID
+ *
+ * 排序键是发生时间或确认时间。早期确认的告警没有确认时间，按 (sortKey, id) 倒序时 MySQL 把空值排在最后，
+ * 因此游标的排序键可以为空：表示已经翻到排序键为空的那一段，之后只按ID继续向后翻。
+ *
+ * @param sortKey 上一页最后一条记录的排序键，可以为 null
+ * @param id 上一页最后一条记录的ID
+ * @author 系统架构
+ * @version 1.0
+ */
+public record WarningCursor(LocalDateTime sortKey, long id) {
+
+    /**
+     * 编码为对客户端不透明的字符串；排序键为空时编码为空串
+     */
+    public String encode() {
+        String raw = (sortKey != null ? sortKey.toString() : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析客户端传回的游标
+     *
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static WarningCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            String key = raw.substring(0, separator);
+            return new WarningCursor(key.isEmpty() ? null : LocalDateTime.parse(key),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded);
+        }
+    }
+
+    /**
+     * 查询规格：按 (sortKey, id) 倒序时严格位于游标之后的记录
+     *
+     * 排序键不为空时包括排序键更小的、相等而ID更小的，以及排序键为空的记录；
+     * 排序键为空时只包括排序键为空且ID更小的记录。
+     *
+     * @param sortKeyColumn 排序的时间列（timestamp 或 acknowledgedAt）
+     */
+    public Specification<WarningLog> after(String sortKeyColumn) {
+        if (sortKey == null) {
+            return (root, query, cb) -> cb.and(cb.isNull(root.get(sortKeyColumn)), cb.lessThan(root.get("id"), id));
+        }
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get(sortKeyColumn), sortKey),
+                cb.and(cb.equal(root.get(sortKeyColumn), sortKey), cb.lessThan(root.get("id"), id)),
+                cb.isNull(root.get(sortKeyColumn)));
+    }
+}
@@ -1,30 +1,47 @@
 package com.pigsty.backend.repository;
 
 import com.pigsty.backend.model.WarningLog;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * 告警日志仓库
+ *
+ * 列表查询、统计和按条件确认都按 {@link WarningSearch} 动态生成 SQL（见 {@link WarningLogRepositoryCustom}），
+ * 这里只保留条件固定的查询。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
 @Repository
-public interface WarningLogRepository extends JpaRepository<WarningLog, Long> {
+public interface WarningLogRepository extends JpaRepository<WarningLog, Long>, WarningLogRepositoryCustom {
 
-    @Query("""
-        SELECT w FROM WarningLog w
-        WHERE w.acknowledged = :acknowledged
-          AND (:pigstyId IS NULL OR w.pigstyId = :pigstyId)
-          AND (:metricType IS NULL OR w.metricType = :metricType)
-    """)
-    Page<WarningLog> searchForAdmin(boolean acknowledged, String pigstyId, String metricType, Pageable pageable);
+    /**
+     * 锁定（SELECT ... FOR UPDATE）指定ID中未确认的告警，须在事务中调用：每行为 [id, pigstyId, metricType, level]
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w.id, w.pigstyId, w.metricType, w.level FROM WarningLog w WHERE w.acknowledged = false AND w.id IN :ids")
+    List<Object[]> lockUnacknowledgedByIds(Collection<Long> ids);
 
+    /**
+     * 把指定ID中未确认的告警标记为已确认
+     *
+     * @return 实际确认的条数
+     */
+    @Transactional
+    @Modifying
     @Query("""
-        SELECT w FROM WarningLog w
-        WHERE w.acknowledged = :acknowledged
-          AND w.pigstyId IN :pigstyIds
-          AND (:metricType IS NULL OR w.metricType = :metricType)
+        UPDATE WarningLog w SET w.acknowledged = true, w.acknowledgedAt = :acknowledgedAt
+        WHERE w.acknowledged = false AND w.id IN :ids
     """)
-    Page<WarningLog> searchForTechnician(boolean acknowledged, List<String> pigstyIds, String metricType, Pageable pageable);
+    int acknowledgeByIds(Collection<Long> ids, LocalDateTime acknowledgedAt);
 }
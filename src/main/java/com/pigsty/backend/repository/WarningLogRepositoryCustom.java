@@ -0,0 +1,60 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.WarningLog;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * 告警日志仓库中按动态条件执行的列表查询、统计和加锁读取
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public interface WarningLogRepositoryCustom {
+
+    /**
+     * 按条件分页查询，带总条数
+     *
+     * @param spec 查询条件，通常由 {@link WarningSearch#toSpecification()} 生成
+     * @param pageable 页码、条数和排序
+     */
+    Page<WarningLog> search(Specification<WarningLog> spec, Pageable pageable);
+
+    /**
+     * 与 {@link #search} 相同，但不统计总条数（不执行 COUNT 查询）
+     */
+    Slice<WarningLog> searchSlice(Specification<WarningLog> spec, Pageable pageable);
+
+    /**
+     * 按排序取符合条件的前 limit 条，用于键集翻页的第一页
+     */
+    List<WarningLog> searchTop(Specification<WarningLog> spec, Sort sort, int limit);
+
+    /**
+     * 与 {@link #searchTop} 相同，用于键集翻页的后续页（游标条件已包含在 spec 中）：先查ID再取整行
+     */
+    List<WarningLog> searchAfter(Specification<WarningLog> spec, Sort sort, int limit);
+
+    /**
+     * 按 猪舍 × 指标类型 × 级别 统计符合条件的告警
+     *
+     * @param search 查询条件
+     * @return 每行为 [pigstyId, metricType, level, count]
+     */
+    List<Object[]> countByGroup(WarningSearch search);
+
+    /**
+     * 按ID顺序锁定（SELECT ... FOR UPDATE）一批符合条件的未确认告警，须在事务中调用
+     *
+     * @param search 查询条件，确认状态一项被忽略（总是只查未确认的告警）
+     * @param afterId 只查ID大于该值的告警（键集游标，上一批最后一条的ID）
+     * @param limit 最多锁定的条数
+     * @return 按ID升序，每行为 [id, pigstyId, metricType, level]
+     */
+    List<Object[]> lockUnacknowledged(WarningSearch search, long afterId, int limit);
+}
@@ -0,0 +1,146 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.WarningLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link WarningLogRepositoryCustom} 的 Criteria 实现
+ *
+ * 需要跳过前面记录的列表查询（页码大于 0，或带键集游标）分两步（延迟关联）：
+ * 先只查询一页的ID，再按主键取整行。第一步只涉及组合索引中的列，被跳过的记录只读索引、不回表；
+ * 另外 MySQL 对“只有确认状态一个等值条件 + 时间倒序 + LIMIT”的整行查询会放弃按游标范围定位，
+ * 改为从索引头部逐行回表过滤，只查ID时则按范围定位。
+ * 第一页不需要跳过记录，直接查询整行，少一次往返。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public class WarningLogRepositoryImpl implements WarningLogRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<WarningLog> search(Specification<WarningLog> spec, Pageable pageable) {
+        List<WarningLog> content = find(spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize(),
+                pageable.getOffset() > 0);
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    @Override
+    public Slice<WarningLog> searchSlice(Specification<WarningLog> spec, Pageable pageable) {
+        // 多取一条判断是否还有下一页
+        List<WarningLog> content = find(spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1,
+                pageable.getOffset() > 0);
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @Override
+    public List<WarningLog> searchTop(Specification<WarningLog> spec, Sort sort, int limit) {
+        return find(spec, sort, 0, limit, false);
+    }
+
+    @Override
+    public List<WarningLog> searchAfter(Specification<WarningLog> spec, Sort sort, int limit) {
+        return find(spec, sort, 0, limit, true);
+    }
+
+    @Override
+    public List<Object[]> countByGroup(WarningSearch search) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<WarningLog> warning = query.from(WarningLog.class);
+        query.multiselect(warning.get("pigstyId"), warning.get("metricType"), warning.get("level"), cb.count(warning))
+                .where(search.toPredicate(warning, cb))
+                .groupBy(warning.get("pigstyId"), warning.get("metricType"), warning.get("level"));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public List<Object[]> lockUnacknowledged(WarningSearch search, long afterId, int limit) {
+        WarningSearch unacknowledged = new WarningSearch(false, search.pigstyIds(), search.metricType(),
+                search.level(), search.from(), search.to());
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<WarningLog> warning = query.from(WarningLog.class);
+        query.multiselect(warning.get("id"), warning.get("pigstyId"), warning.get("metricType"), warning.get("level"))
+                .where(unacknowledged.toPredicate(warning, cb), cb.greaterThan(warning.get("id"), afterId))
+                .orderBy(cb.asc(warning.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    private List<WarningLog> find(Specification<WarningLog> spec, Sort sort, long offset, int limit, boolean deferred) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        if (!deferred) {
+            CriteriaQuery<WarningLog> query = cb.createQuery(WarningLog.class);
+            Root<WarningLog> warning = query.from(WarningLog.class);
+            query.select(warning)
+                    .where(spec.toPredicate(warning, query, cb))
+                    .orderBy(QueryUtils.toOrders(sort, warning, cb));
+            return entityManager.createQuery(query)
+                    .setFirstResult((int) offset)
+                    .setMaxResults(limit)
+                    .getResultList();
+        }
+
+
+        CriteriaQuery<Long> idQuery = cb.createQuery(Long.class);
+        Root<WarningLog> warning = idQuery.from(WarningLog.class);
+        idQuery.select(warning.get("id"))
+                .where(spec.toPredicate(warning, idQuery, cb))
+                .orderBy(QueryUtils.toOrders(sort, warning, cb));
+        List<Long> ids = entityManager.createQuery(idQuery)
+                .setFirstResult((int) offset)
+                .setMaxResults(limit)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, WarningLog> byId = new HashMap<>();
+        for (WarningLog log : entityManager.createQuery("SELECT w FROM WarningLog w WHERE w.id IN :ids", WarningLog.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            byId.put(log.getId(), log);
+        }
+        // 按第一步的顺序返回；两步之间被删除的行直接跳过
+        List<WarningLog> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            WarningLog log = byId.get(id);
+            if (log != null) {
+                result.add(log);
+            }
+        }
+        return result;
+    }
+
+    private long count(Specification<WarningLog> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<WarningLog> warning = query.from(WarningLog.class);
+        query.select(cb.count(warning)).where(spec.toPredicate(warning, query, cb));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
@@ -0,0 +1,80 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.WarningLog;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 告警查询条件
+ *
+ * 按实际设置的条件动态拼出 WHERE 子句：未设置的条件不出现在 SQL 中，
+ * 而不是写成 (:x IS NULL OR w.x = :x)。后者让 MySQL 在生成执行计划时无法确定哪些列参与过滤，
+ * 只能选单列索引再回表过滤和文件排序；动态条件可以命中与查询形状一致的组合索引
+ * （见 {@link WarningLog} 上的索引定义）。
+ *
+ * 查询列表、统计和按条件确认（分批加锁读取后按ID更新）共用同一套条件，保证“看到的”和“被确认的”是同一批告警。
+ *
+ * @param acknowledged 确认状态，为 null 时不限
+ * @param pigstyIds 猪舍范围，为 null 时不限；只有一个时生成等值条件
+ * @param metricType 指标类型，为 null 时不限
+ * @param level 预警级别，为 null 时不限
+ * @param from 发生时间下限（含），为 null 时不限
+ * @param to 发生时间上限（含），为 null 时不限
+ * @author 系统架构
+ * @version 1.0
+ */
+public record WarningSearch(Boolean acknowledged, Collection<Long> pigstyIds, String metricType, String level,
+                            LocalDateTime from, LocalDateTime to) {
+
+    /**
+     * 所有未确认的告警
+     */
+    public static WarningSearch unacknowledged() {
+        return new WarningSearch(false, null, null, null, null, null);
+    }
+
+    /**
+     * 按条件生成谓词，用于列表、统计和加锁读取的 Criteria 查询
+     *
+     * @param warning 告警实体的路径
+     * @param cb CriteriaBuilder
+     */
+    public Predicate toPredicate(Path<WarningLog> warning, CriteriaBuilder cb) {
+        List<Predicate> predicates = new ArrayList<>(6);
+        if (acknowledged != null) {
+            predicates.add(cb.equal(warning.get("acknowledged"), acknowledged));
+        }
+        if (pigstyIds != null) {
+            predicates.add(pigstyIds.size() == 1
+                    ? cb.equal(warning.get("pigstyId"), pigstyIds.iterator().next())
+                    : warning.get("pigstyId").in(pigstyIds));
+        }
+        if (metricType != null) {
+            predicates.add(cb.equal(warning.get("metricType"), metricType));
+        }
+        if (level != null) {
+            predicates.add(cb.equal(warning.get("level"), level));
+        }
+        if (from != null) {
+            predicates.add(cb.greaterThanOrEqualTo(warning.get("timestamp"), from));
+        }
+        if (to != null) {
+            predicates.add(cb.lessThanOrEqualTo(warning.get("timestamp"), to));
+        }
+        return cb.and(predicates.toArray(new Predicate[0]));
+    }
+
+    /**
+     * 转换为 Spring Data 的查询规格
+     */
+    public Specification<WarningLog> toSpecification() {
+        return (root, query, cb) -> toPredicate(root, cb);
+    }
+}
@@ -0,0 +1,132 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.repository.DataRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 环境历史数据查询服务
+ *
+ * 按 (pigsty_ref, timestamp, id) 做键集（seek）分页：每一页从上一页最后一条记录之后继续读取，
+ * 不使用 OFFSET，翻到再深的页也只扫描本页的数据。
+ * 查询结果以流的方式逐条交给调用方，并在交出后立即从持久化上下文中分离，
+ * 整页数据不会同时驻留在内存中。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class DataHistoryService {
+
+    private static final LocalDateTime MIN_TIMESTAMP = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIMESTAMP = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final DataRepository dataRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 单页最大条数，请求的 limit 超过该值时按该值截断
+     */
+    @Value("${pigsty.data.history.max-page-size:1000}")
+    private int maxPageSize;
+
+    public DataHistoryService(DataRepository dataRepository, TransactionTemplate transactionTemplate) {
+        this.dataRepository = dataRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 分页游标：上一页最后一条记录的时间戳和ID
+     */
+    public record Cursor(LocalDateTime timestamp, long id) {
+
+        /**
+         * 编码为对客户端不透明的字符串
+         */
+        public String encode() {
+            String raw = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 解析客户端传回的游标
+         *
+         * @throws IllegalArgumentException 游标格式不正确
+         */
+        public static Cursor decode(String encoded) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(
+                        LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+        }
+    }
+
+    /**
+     * 单页最大条数
+     */
+    public int maxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * 按时间倒序读取一页历史数据，逐条交给 consumer
+     *
+     * @param pigstyId 猪舍ID
+     * @param from 起始时间（包含），为空表示不限
+     * @param to 截止时间（不包含），为空表示不限
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param limit 本页条数，会被限制在 1 到最大页大小之间
+     * @param consumer 每条数据的处理函数
+     * @return 下一页的游标；本页不满说明已没有更多数据，返回 null
+     */
+    public Cursor streamPage(Long pigstyId, LocalDateTime from, LocalDateTime to,
+                             Cursor cursor, int limit, Consumer<EnvironmentalData> consumer) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        LocalDateTime lowerBound = from != null ? from : MIN_TIMESTAMP;
+        // 第一页的游标取截止时间且ID无下限，等价于 timestamp < to
+        LocalDateTime seekTimestamp = cursor != null ? cursor.timestamp() : (to != null ? to : MAX_TIMESTAMP);
+        long seekId = cursor != null ? cursor.id() : Long.MIN_VALUE;
+        if (cursor != null && to != null && to.isBefore(seekTimestamp)) {
+            seekTimestamp = to;
+            seekId = Long.MIN_VALUE;
+        }
+
+        final LocalDateTime seekFrom = seekTimestamp;
+        final long seekFromId = seekId;
+        return readOnlyTransaction.execute(status -> {
+            EnvironmentalData last = null;
+            int count = 0;
+            try (Stream<EnvironmentalData> rows = dataRepository.streamHistoryPage(
+                    pigstyId, lowerBound, seekFrom, seekFromId, Limit.of(pageSize))) {
+                for (EnvironmentalData data : (Iterable<EnvironmentalData>) rows::iterator) {
+                    consumer.accept(data);
+                    entityManager.detach(data);
+                    last = data;
+                    count++;
+                }
+            }
+            return count == pageSize ? new Cursor(last.getTimestamp(), last.getId()) : null;
+        });
+    }
+}
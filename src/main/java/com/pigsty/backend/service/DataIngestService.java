@@ -0,0 +1,100 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.IngestWalCheckpoint;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 环境数据写入服务
+ *
+ * 该服务负责环境数据的持久化：由 {@link IngestPipeline} 调用，在一个事务内按 JDBC 批次写入整批数据
+ * （预写日志模式下同时记录已入库的日志位置）。告警检查、缓存更新和推送由 IngestPipeline 在入库之后进行。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class DataIngestService {
+
+    private final TransactionTemplate transactionTemplate;
+    private final PigstyMetrics metrics;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 每次 flush 的行数，与 Hibernate 的 JDBC 批大小保持一致
+     */
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+    private int batchSize;
+
+    public DataIngestService(
+            TransactionTemplate transactionTemplate,
+            PigstyMetrics metrics) {
+        this.transactionTemplate = transactionTemplate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 在单个事务内批量持久化环境数据
+     *
+     * 每 batchSize 条 flush 一次并清空持久化上下文，
+     * 使 Hibernate 以 JDBC 批处理发送 INSERT，同时避免一级缓存无限增长。
+     * 整个事务的耗时计入 pigsty.db.save{kind=readings}。
+     *
+     * @param dataList 环境数据列表
+     */
+    public void persistBatch(List<EnvironmentalData> dataList) {
+        persistBatch(dataList, null, 0);
+    }
+
+    /**
+     * 与 {@link #persistBatch(List)} 相同，并在同一个事务中记录预写日志已入库的位置
+     *
+     * @param dataList 环境数据列表
+     * @param walId 预写日志的ID，为 null 时不记录
+     * @param walPosition 这批数据之后的日志位置
+     */
+    public void persistBatch(List<EnvironmentalData> dataList, Long walId, long walPosition) {
+        metrics.readingsSave().record(() -> transactionTemplate.executeWithoutResult(status -> {
+            int count = 0;
+            for (EnvironmentalData data : dataList) {
+                // 上报数据一律视为新记录，忽略客户端传入的 ID
+                data.setId(null);
+                entityManager.persist(data);
+                if (++count % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            if (walId != null) {
+                entityManager.createNativeQuery("""
+                        INSERT INTO ingest_wal_checkpoint (wal_id, position) VALUES (?1, ?2)
+                        ON DUPLICATE KEY UPDATE position = VALUES(position)
+                        """)
+                        .setParameter(1, walId)
+                        .setParameter(2, walPosition)
+                        .executeUpdate();
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }));
+    }
+
+    /**
+     * 预写日志已入库的位置
+     *
+     * @param walId 预写日志的ID
+     * @return 日志位置，没有记录时返回 -1
+     */
+    public long walCheckpoint(long walId) {
+        IngestWalCheckpoint checkpoint = entityManager.find(IngestWalCheckpoint.class, walId);
+        return checkpoint != null ? checkpoint.getPosition() : -1;
+    }
+}
@@ -4,14 +4,18 @@ import com.pigsty.backend.model.Device;
 import com.pigsty.backend.model.EnvironmentalData;
 import com.pigsty.backend.model.Pigsty;
 import com.pigsty.backend.model.WarningLog;
-import com.pigsty.backend.repository.DataRepository;
 import com.pigsty.backend.repository.DeviceRepository;
-import com.pigsty.backend.repository.PigstyRepository;
 import com.pigsty.backend.repository.WarningRepository;
-import com.pigsty.backend.controller.WebSocketHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,27 +29,79 @@ public class DataSimulationService {
     private static final Logger log = LoggerFactory.getLogger(DataSimulationService.class);
     private static final double FAULT_INJECTION_PROBABILITY = 0.99;
 
-    private final DataRepository dataRepository;
-    private final PigstyRepository pigstyRepository;
+    private final PigstyCache pigstyCache;
     private final DeviceRepository deviceRepository;
     private final WarningRepository warningRepository;
-    private final WarningService warningService;
-    private final Random random = new Random();
+    private final IngestPipeline ingestPipeline;
+    private final HeartbeatService heartbeatService;
+    private final WarningCounters warningCounters;
+    private final Long seed;
+    private final Random random;
 
     @Value("${pigsty.simulator.enabled:true}")
     private boolean simulatorEnabled;
 
+    @Value("${pigsty.simulator.recording.dir:recordings}")
+    private String recordingDir;
+
+    @Value("${pigsty.simulator.recording.file:}")
+    private String recordingFile;
+
+    /**
+     * 录制文件写入器，未开启录制时为 null
+     */
+    private volatile SimulationRecording.Writer recorder;
+
+    /**
+     * 正在生成一批数据。虚拟线程模式下每次定时触发都在新线程上执行，上一批未完成时跳过本次
+     */
+    private final AtomicBoolean batchRunning = new AtomicBoolean();
+
     public DataSimulationService(
-            DataRepository dataRepository,
-            PigstyRepository pigstyRepository,
+            PigstyCache pigstyCache,
             DeviceRepository deviceRepository,
             WarningRepository warningRepository,
-            WarningService warningService) {
-        this.dataRepository = dataRepository;
-        this.pigstyRepository = pigstyRepository;
+            IngestPipeline ingestPipeline,
+            HeartbeatService heartbeatService,
+            WarningCounters warningCounters,
+            @Value("${pigsty.simulator.seed:#{null}}") Long seed) {
+        this.pigstyCache = pigstyCache;
         this.deviceRepository = deviceRepository;
         this.warningRepository = warningRepository;
-        this.warningService = warningService;
+        this.ingestPipeline = ingestPipeline;
+        this.heartbeatService = heartbeatService;
+        this.warningCounters = warningCounters;
+        // 设置种子后，同样的猪舍和设备数据每次启动生成同一串读数和故障
+        this.seed = seed;
+        this.random = seed != null ? new Random(seed) : new Random();
+    }
+
+    /**
+     * 配置了录制文件时，把模拟器生成的读数和注入的故障写入该文件，供 {@link SimulationReplayService} 回放
+     */
+    @PostConstruct
+    public void openRecording() throws IOException {
+        if (recordingFile == null || recordingFile.isBlank()) {
+            return;
+        }
+        Path file = SimulationRecording.resolve(Path.of(recordingDir), recordingFile);
+        Files.createDirectories(file.getParent());
+        recorder = new SimulationRecording.Writer(file, seed);
+        log.info("Recording simulator output to {} (seed {})", file.toAbsolutePath(), seed);
+    }
+
+    @PreDestroy
+    public void closeRecording() {
+        SimulationRecording.Writer writer = recorder;
+        if (writer == null) {
+            return;
+        }
+        recorder = null;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error("Failed to close simulator recording: {}", e.getMessage());
+        }
     }
 
     @Scheduled(fixedRateString = "${pigsty.simulator.interval-ms:300000}")
@@ -53,24 +109,59 @@ public class DataSimulationService {
         if (!simulatorEnabled) {
             return;
         }
+        if (!batchRunning.compareAndSet(false, true)) {
+            log.warn("Previous simulated batch still running; skip this round.");
+            return;
+        }
+        try {
+            generateBatch();
+        } finally {
+            batchRunning.set(false);
+        }
+    }
 
-        List<Pigsty> pigsties = pigstyRepository.findAll();
+    private void generateBatch() {
+        List<Pigsty> pigsties = pigstyCache.allPigsties();
         if (pigsties.isEmpty()) {
             log.debug("No pigsty found; skip simulation.");
             return;
         }
 
-        injectRandomFault();
+        // 每个周期只查询一次设备表，按猪舍分组
+        List<Device> allDevices = deviceRepository.findAll();
+        injectRandomFault(allDevices);
+
+        Map<Long, List<Device>> devicesByPigsty = allDevices.stream()
+                .filter(d -> d.getPigstyId() != null)
+                .collect(Collectors.groupingBy(Device::getPigstyId));
+        LocalDateTime now = LocalDateTime.now();
+        pigsties.forEach(pigsty -> generateForPigsty(pigsty, devicesByPigsty.getOrDefault(pigsty.getId(), List.of()), now));
+        flushRecording();
+    }
 
-        pigsties.forEach(this::generateForPigsty);
+    /**
+     * 让指定设备发生故障（回放录制文件中的故障时调用）
+     *
+     * 与随机注入的故障一致：设备状态改为 error 并创建设备故障告警。设备不存在、不在线或未激活时不做任何操作。
+     *
+     * @param deviceId 设备ID
+     * @return 设备已被置为故障返回 true
+     */
+    public boolean injectFault(Long deviceId) {
+        Device device = deviceRepository.findById(deviceId).orElse(null);
+        if (device == null || !device.isOnline() || !device.isActive()) {
+            return false;
+        }
+        applyFault(device);
+        return true;
     }
 
-    private void injectRandomFault() {
+    private void injectRandomFault(List<Device> allDevices) {
         if (random.nextDouble() >= FAULT_INJECTION_PROBABILITY) {
             return;
         }
 
-        List<Device> onlineDevices = deviceRepository.findAll().stream()
+        List<Device> onlineDevices = allDevices.stream()
                 .filter(Device::isOnline)
                 .filter(d -> d.isActive())
                 .collect(Collectors.toList());
@@ -80,8 +171,24 @@ public class DataSimulationService {
         }
 
         Device targetDevice = onlineDevices.get(random.nextInt(onlineDevices.size()));
+        applyFault(targetDevice);
+
+        SimulationRecording.Writer writer = recorder;
+        if (writer != null) {
+            try {
+                writer.writeFault(targetDevice.getId());
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+    }
+
+    private void applyFault(Device targetDevice) {
         targetDevice.setOperatingStatus("error");
+        // save 会写回整行，带上内存中尚未写回的心跳，避免把最后在线时间改回旧值
+        targetDevice.setLastHeartbeat(heartbeatService.lastSeen(targetDevice));
         deviceRepository.save(targetDevice);
+        pigstyCache.devicesChanged(targetDevice.getPigstyId());
 
         log.warn("Chaos Testing: Device {} (Pigsty {}) status changed to error", 
                 targetDevice.getId(), targetDevice.getPigstyId());
@@ -89,41 +196,26 @@ public class DataSimulationService {
         createDeviceFaultWarning(targetDevice);
     }
 
-    private String getDeviceTypeName(Device.MetricType type) {
-        switch (type) {
-            case TEMPERATURE: return "温度传感器";
-            case HUMIDITY: return "湿度传感器";
-            case AMMONIA: return "氨气传感器";
-            case LIGHT: return "光照传感器";
-            default: return "传感器";
-        }
-    }
-
     private void createDeviceFaultWarning(Device device) {
         WarningLog warning = new WarningLog();
-        warning.setPigstyId(String.valueOf(device.getPigstyId()));
+        warning.setPigstyId(device.getPigstyId());
         warning.setMetricType("设备故障");
-        String deviceName = getDeviceTypeName(device.getType());
+        String deviceName = device.getType().deviceName();
         warning.setMessage(String.format("%s发生硬件故障，数据已阻断，请立即派人检修！", deviceName));
         warning.setAcknowledged(false);
         warning.setTimestamp(LocalDateTime.now());
         warning.setLevel("DANGER");
         warning.setActualValue(null);
         warning.setThresholdValue(null);
-        warningRepository.save(warning);
+        warningCounters.created(warningRepository.save(warning));
         
         log.warn("Device fault warning created: Device {} in Pigsty {} - {}", 
                 device.getId(), device.getPigstyId(), warning.getMessage());
     }
 
-    private void generateForPigsty(Pigsty pigsty) {
-        List<Device> devices = deviceRepository.findByPigstyId(pigsty.getId());
-        
+    private void generateForPigsty(Pigsty pigsty, List<Device> devices, LocalDateTime now) {
         if (devices.isEmpty()) {
-            EnvironmentalData data = createEnvironmentalData(pigsty);
-            EnvironmentalData saved = dataRepository.save(data);
-            WebSocketHandler.sendDataUpdate(saved);
-            warningService.checkDataForWarnings(saved);
+            publish(createEnvironmentalData(pigsty));
             return;
         }
 
@@ -135,77 +227,48 @@ public class DataSimulationService {
             return;
         }
 
-        EnvironmentalData data = createEnvironmentalData(pigsty);
-        EnvironmentalData saved = dataRepository.save(data);
-        WebSocketHandler.sendDataUpdate(saved);
-        warningService.checkDataForWarnings(saved);
+        publish(createEnvironmentalData(pigsty));
 
-        devices.stream()
+        // 心跳在内存中合并，由 HeartbeatService 定时批量写回
+        heartbeatService.recordAll(devices.stream()
                 .filter(d -> d.isOnline() && d.isActive())
-                .forEach(device -> {
-                    device.setLastHeartbeat(LocalDateTime.now());
-                    deviceRepository.save(device);
-                });
+                .toList(), now);
     }
 
-    private EnvironmentalData createEnvironmentalData(Pigsty pigsty) {
-        EnvironmentalData data = new EnvironmentalData();
-        data.setPigstyId(String.valueOf(pigsty.getId()));
-
-        data.setTemperature(generateMetric(
-                midpoint(pigsty.getTempThresholdLow(), pigsty.getTempThresholdHigh(), 24.0),
-                1.5,
-                pigsty.getTempThresholdLow(),
-                pigsty.getTempThresholdHigh()));
-
-        data.setHumidity(generateMetric(
-                midpoint(pigsty.getHumidityThresholdLow(), pigsty.getHumidityThresholdHigh(), 60.0),
-                3.0,
-                pigsty.getHumidityThresholdLow(),
-                pigsty.getHumidityThresholdHigh()));
-
-        data.setAmmoniaLevel(generateMetric(
-                midpoint(null, pigsty.getAmmoniaThresholdHigh(), 15.0),
-                2.0,
-                null,
-                pigsty.getAmmoniaThresholdHigh()));
-
-        data.setLight(generateMetric(
-                midpoint(pigsty.getLightThresholdLow(), pigsty.getLightThresholdHigh(), 300.0),
-                15.0,
-                pigsty.getLightThresholdLow(),
-                pigsty.getLightThresholdHigh()));
-
-        return data;
+    private void publish(EnvironmentalData data) {
+        SimulationRecording.Writer writer = recorder;
+        if (writer != null) {
+            try {
+                writer.writeReading(data);
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        if (!ingestPipeline.submit(data)) {
+            log.warn("Ingest queue full, dropping simulated reading for pigsty {}", data.getPigstyId());
+        }
     }
 
-    private double generateMetric(double base, double spread, Double low, Double high) {
-        double value = base + random.nextGaussian() * spread;
-
-        double chance = random.nextDouble();
-        if (high != null && chance < 0.05) {
-            value = high + 1.0 + random.nextDouble() * 3.0;
-        } else if (low != null && chance > 0.95) {
-            value = Math.max(0.0, low - 1.0 - random.nextDouble() * 3.0);
+    private void flushRecording() {
+        SimulationRecording.Writer writer = recorder;
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
         }
-
-        return roundToTwo(Math.max(0.0, value));
     }
 
-    private double midpoint(Double low, Double high, double fallback) {
-        if (low != null && high != null) {
-            return (low + high) / 2.0;
-        }
-        if (low != null) {
-            return low + 2.0;
-        }
-        if (high != null) {
-            return Math.max(0.0, high - 2.0);
-        }
-        return fallback;
+    /**
+     * 写录制文件失败（例如磁盘已满）时停止录制，模拟器继续运行
+     */
+    private void stopRecording(IOException cause) {
+        log.error("Simulator recording failed, recording stopped: {}", cause.getMessage());
+        closeRecording();
     }
 
-    private double roundToTwo(double value) {
-        return Math.round(value * 100.0) / 100.0;
+    private EnvironmentalData createEnvironmentalData(Pigsty pigsty) {
+        return SimulatedReadings.create(pigsty, random);
     }
 }
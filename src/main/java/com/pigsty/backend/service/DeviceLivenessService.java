@@ -0,0 +1,231 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.controller.WebSocketHandler;
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.repository.DeviceRepository;
+import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.util.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 设备离线检测服务
+ *
+ * 每台在线且激活的设备在哈希时间轮中有一个“心跳截止时间”，每次心跳把截止时间往后推
+ * （{@link HeartbeatService} 记录心跳时调用 {@link #heartbeat(Long, long)}，代价为 O(1)）。
+ * 定时任务推进时间轮，取出错过截止时间的设备，一次性：
+ *
+ * - 把设备状态改为 offline（只改仍为 online 的设备，不覆盖 error 等状态）
+ * - 为每台设备创建一条告警记录
+ * - 通过 WebSocket 推送告警
+ *
+ * 不为每台设备创建定时任务，也不轮询 lastHeartbeat 列。
+ * 离线设备不再出现在时间轮中，由管理员复位（或重新激活）后重新开始监测。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class DeviceLivenessService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceLivenessService.class);
+
+    /**
+     * 单条 UPDATE 语句中 IN 列表的最大长度
+     */
+    private static final int MAX_IDS_PER_UPDATE = 1000;
+
+    private final DeviceRepository deviceRepository;
+    private final WarningLogRepository warningLogRepository;
+    private final WebSocketHandler webSocketHandler;
+    private final JdbcTemplate jdbcTemplate;
+    private final WarningCounters warningCounters;
+    private final PigstyCache pigstyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final long offlineTimeoutMillis;
+    private final HashedTimingWheel<Long> wheel;
+
+    public DeviceLivenessService(
+            DeviceRepository deviceRepository,
+            WarningLogRepository warningLogRepository,
+            WebSocketHandler webSocketHandler,
+            JdbcTemplate jdbcTemplate,
+            WarningCounters warningCounters,
+            PigstyCache pigstyCache,
+            TransactionTemplate transactionTemplate,
+            @Value("${pigsty.device.offline-timeout-ms:180000}") long offlineTimeoutMillis,
+            @Value("${pigsty.device.offline-check-interval-ms:1000}") long checkIntervalMillis) {
+        this.deviceRepository = deviceRepository;
+        this.warningLogRepository = warningLogRepository;
+        this.webSocketHandler = webSocketHandler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.warningCounters = warningCounters;
+        this.pigstyCache = pigstyCache;
+        this.transactionTemplate = transactionTemplate;
+        this.offlineTimeoutMillis = offlineTimeoutMillis;
+        // 一圈覆盖整个超时时间，每个槽里只有本圈到期的设备
+        int slots = (int) Math.min(1 << 16, Math.max(64, offlineTimeoutMillis / checkIntervalMillis + 1));
+        this.wheel = new HashedTimingWheel<>(checkIntervalMillis, slots, System.currentTimeMillis());
+    }
+
+    /**
+     * 启动时按数据库中的最后在线时间为所有在线且激活的设备设置截止时间
+     *
+     * 最后在线时间为空的设备从启动时刻开始计时，避免刚升级的库里所有设备立即被判定离线。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void armAll() {
+        long now = System.currentTimeMillis();
+        int armed = 0;
+        for (Device device : deviceRepository.findAll()) {
+            // 启动后已经收到过心跳的设备以心跳为准
+            if (device.isOnline() && device.isActive() && !wheel.contains(device.getId())) {
+                Long lastSeen = toMillis(device.getLastHeartbeat());
+                wheel.schedule(device.getId(), (lastSeen != null ? lastSeen : now) + offlineTimeoutMillis);
+                armed++;
+            }
+        }
+        log.info("Offline detection armed for {} devices (timeout {} ms)", armed, offlineTimeoutMillis);
+    }
+
+    /**
+     * 收到心跳，把设备的截止时间推后
+     *
+     * @param deviceId 设备ID
+     * @param atMillis 心跳时间（毫秒）
+     */
+    public void heartbeat(Long deviceId, long atMillis) {
+        wheel.schedule(deviceId, atMillis + offlineTimeoutMillis);
+    }
+
+    /**
+     * 开始（或重新开始）监测一台设备，在设备新增、复位或重新激活后调用
+     *
+     * 不在线或未激活的设备会被移出监测。
+     *
+     * @param device 设备
+     */
+    public void watch(Device device) {
+        if (device.isOnline() && device.isActive()) {
+            Long lastSeen = toMillis(device.getLastHeartbeat());
+            long now = System.currentTimeMillis();
+            wheel.schedule(device.getId(), Math.max(lastSeen != null ? lastSeen : now, now) + offlineTimeoutMillis);
+        } else {
+            wheel.cancel(device.getId());
+        }
+    }
+
+    /**
+     * 停止监测一台设备（设备被删除时调用）
+     *
+     * @param deviceId 设备ID
+     */
+    public void unwatch(Long deviceId) {
+        wheel.cancel(deviceId);
+    }
+
+    /**
+     * 当前处于监测中的设备数
+     */
+    public int watchedCount() {
+        return wheel.size();
+    }
+
+    /**
+     * 推进时间轮，处理错过截止时间的设备
+     */
+    @Scheduled(fixedRateString = "${pigsty.device.offline-check-interval-ms:1000}")
+    public void checkDeadlines() {
+        List<Long> expired = wheel.advance(System.currentTimeMillis());
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < expired.size(); from += MAX_IDS_PER_UPDATE) {
+            List<Long> chunk = expired.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, expired.size()));
+            try {
+                markOffline(chunk);
+            } catch (DataAccessException e) {
+                // 写库失败时稍后重试，而不是丢掉这次离线判定
+                log.error("Failed to mark {} devices offline, will retry: {}", chunk.size(), e.getMessage());
+                long retryAt = System.currentTimeMillis();
+                for (Long id : chunk) {
+                    wheel.schedule(id, retryAt);
+                }
+            }
+        }
+    }
+
+    private void markOffline(List<Long> deviceIds) {
+        // 截止时间到期后设备可能已被停用、删除或进入其他状态（也可能正被管理员复位），
+        // 在同一个事务中锁定仍为在线且激活的设备并只修改这些行，告警只为实际被改为离线的设备创建
+        Set<Long> changed = transactionTemplate.execute(status -> {
+            List<Long> online = jdbcTemplate.queryForList(
+                    "SELECT id FROM device WHERE operating_status = 'online' AND is_active AND id IN ("
+                            + placeholders(deviceIds.size()) + ") FOR UPDATE",
+                    Long.class, deviceIds.toArray());
+            if (!online.isEmpty()) {
+                jdbcTemplate.update("UPDATE device SET operating_status = 'offline' WHERE id IN ("
+                        + placeholders(online.size()) + ")", online.toArray());
+            }
+            return new HashSet<>(online);
+        });
+        if (changed == null || changed.isEmpty()) {
+            return;
+        }
+
+        List<Device> devices = new ArrayList<>(changed.size());
+        for (Device device : deviceRepository.findAllById(changed)) {
+            devices.add(device);
+        }
+        for (Device device : devices) {
+            pigstyCache.devicesChanged(device.getPigstyId());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<WarningLog> warnings = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            warnings.add(createOfflineWarning(device, now));
+        }
+        for (WarningLog saved : warningLogRepository.saveAll(warnings)) {
+            warningCounters.created(saved);
+            webSocketHandler.sendWarning(saved);
+        }
+        log.warn("{} devices marked offline after missing heartbeats for {} ms", devices.size(), offlineTimeoutMillis);
+    }
+
+    private WarningLog createOfflineWarning(Device device, LocalDateTime now) {
+        WarningLog warning = new WarningLog();
+        warning.setPigstyId(device.getPigstyId());
+        warning.setMetricType("设备离线");
+        warning.setMessage(String.format("%s（ID %d）超过 %d 秒未上报心跳，已判定为离线，请检查设备！",
+                device.getType() != null ? device.getType().deviceName() : "传感器", device.getId(), offlineTimeoutMillis / 1000));
+        warning.setAcknowledged(false);
+        warning.setTimestamp(now);
+        warning.setLevel("WARNING");
+        return warning;
+    }
+
+    private static String placeholders(int count) {
+        return "?" + ",?".repeat(count - 1);
+    }
+
+    private static Long toMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
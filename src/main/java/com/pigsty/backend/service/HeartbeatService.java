@@ -0,0 +1,228 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.Device;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 设备心跳服务
+ *
+ * 心跳只更新设备的最后在线时间，逐条 save 每台设备都要一次查询加一次更新。
+ * 这里把心跳先合并在内存中（每台设备只保留最新时间），由定时任务批量写回：
+ * 同一时间戳的设备合并为一条 UPDATE ... WHERE id IN (...)，每条语句最多 {@link #MAX_IDS_PER_UPDATE} 个ID。
+ *
+ * 每次心跳同时推后设备在 {@link DeviceLivenessService} 时间轮中的离线截止时间。
+ *
+ * 写回完成前，读取设备的接口通过 {@link #applyPending(List)} 用内存中的时间覆盖数据库中的旧值，
+ * 因此在两次写回之间看到的最后在线时间也是准确的。写回成功的时间同步到 {@link PigstyCache} 中缓存的设备上。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class HeartbeatService {
+
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatService.class);
+
+    /**
+     * 单条 UPDATE 语句中 IN 列表的最大长度
+     */
+    private static final int MAX_IDS_PER_UPDATE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceLivenessService deviceLivenessService;
+    private final PigstyCache pigstyCache;
+
+    /**
+     * 设备ID → 尚未写回数据库的最新心跳时间。写回成功后才移除，写回期间读取方仍能看到
+     */
+    private final ConcurrentHashMap<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 同一时刻只有一次写回。写回期间要等数据库，用 ReentrantLock 而不是 synchronized，
+     * 在虚拟线程上等待时不占用载体线程
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public HeartbeatService(JdbcTemplate jdbcTemplate, DeviceLivenessService deviceLivenessService,
+                            PigstyCache pigstyCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deviceLivenessService = deviceLivenessService;
+        this.pigstyCache = pigstyCache;
+    }
+
+    /**
+     * 记录一次设备心跳（只更新内存，由定时任务写回）
+     *
+     * @param deviceId 设备ID
+     * @param at 心跳时间
+     */
+    public void record(Long deviceId, LocalDateTime at) {
+        if (deviceId == null || at == null) {
+            return;
+        }
+        pending.merge(deviceId, at, (current, next) -> next.isAfter(current) ? next : current);
+        deviceLivenessService.heartbeat(deviceId, at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * 记录一批设备在同一时刻的心跳
+     *
+     * @param devices 设备
+     * @param at 心跳时间
+     */
+    public void recordAll(Collection<Device> devices, LocalDateTime at) {
+        for (Device device : devices) {
+            record(device.getId(), at);
+        }
+    }
+
+    /**
+     * 设备的最后在线时间：内存中有更新的心跳时返回内存中的时间，否则返回数据库中的值
+     *
+     * @param device 从数据库读取的设备
+     * @return 最后在线时间，从未上报过返回 null
+     */
+    public LocalDateTime lastSeen(Device device) {
+        LocalDateTime stored = device.getLastHeartbeat();
+        LocalDateTime recent = pending.get(device.getId());
+        if (recent == null) {
+            return stored;
+        }
+        return stored == null || recent.isAfter(stored) ? recent : stored;
+    }
+
+    /**
+     * 用内存中尚未写回的心跳覆盖设备的最后在线时间（不写数据库）
+     *
+     * 传入的设备可能来自 {@link PigstyCache}，不能修改：需要覆盖的设备返回一份副本，其余设备原样返回。
+     *
+     * @param devices 从数据库或缓存读取的设备
+     * @return 按原顺序排列的设备
+     */
+    public List<Device> applyPending(List<Device> devices) {
+        if (pending.isEmpty()) {
+            return devices;
+        }
+        List<Device> result = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            LocalDateTime lastSeen = lastSeen(device);
+            result.add(lastSeen == device.getLastHeartbeat() ? device : withLastHeartbeat(device, lastSeen));
+        }
+        return result;
+    }
+
+    private static Device withLastHeartbeat(Device device, LocalDateTime lastHeartbeat) {
+        Device copy = new Device();
+        copy.setId(device.getId());
+        copy.setPigstyId(device.getPigstyId());
+        copy.setType(device.getType());
+        copy.setModelNumber(device.getModelNumber());
+        copy.setSerialNumber(device.getSerialNumber());
+        copy.setActive(device.isActive());
+        copy.setOperatingStatus(device.getOperatingStatus());
+        copy.setLastHeartbeat(lastHeartbeat);
+        return copy;
+    }
+
+    /**
+     * 尚未写回数据库的心跳数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 把内存中的心跳批量写回数据库
+     *
+     * 只会把最后在线时间往后推，不会覆盖数据库中更新的值（例如设备复位时写入的时间）。
+     * 某个时间戳的写回失败时，对应的心跳保留在内存中，下个周期重试。
+     */
+    @Scheduled(fixedDelayString = "${pigsty.heartbeat.flush-interval-ms:5000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            writeBack();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 持有 flushLock 时调用
+     */
+    private void writeBack() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<LocalDateTime, List<Long>> idsByTime = new HashMap<>();
+        Map<Long, LocalDateTime> snapshot = new HashMap<>(pending);
+        snapshot.forEach((id, at) -> idsByTime.computeIfAbsent(at, t -> new ArrayList<>()).add(id));
+
+        int updated = 0;
+        Map<Long, LocalDateTime> written = new HashMap<>();
+        for (Map.Entry<LocalDateTime, List<Long>> entry : idsByTime.entrySet()) {
+            Timestamp at = Timestamp.valueOf(entry.getKey());
+            List<Long> ids = entry.getValue();
+            Collections.sort(ids);
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+                List<Long> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, ids.size()));
+                try {
+                    updated += jdbcTemplate.update(updateSql(chunk.size()), args(at, chunk));
+                } catch (DataAccessException e) {
+                    log.error("Failed to flush {} device heartbeats, will retry: {}", chunk.size(), e.getMessage());
+                    continue;
+                }
+                for (Long id : chunk) {
+                    // 写回期间又收到更新的心跳时保留，下个周期再写
+                    pending.remove(id, entry.getKey());
+                    written.put(id, entry.getKey());
+                }
+            }
+        }
+        pigstyCache.heartbeatsWritten(written);
+        log.debug("Flushed {} device heartbeats ({} rows updated)", snapshot.size(), updated);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private static String updateSql(int idCount) {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE device SET last_heartbeat = ? WHERE (last_heartbeat IS NULL OR last_heartbeat < ?) AND id IN (");
+        for (int i = 0; i < idCount; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static Object[] args(Timestamp at, List<Long> ids) {
+        Object[] args = new Object[ids.size() + 2];
+        args[0] = at;
+        args[1] = at;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 2] = ids.get(i);
+        }
+        return args;
+    }
+}
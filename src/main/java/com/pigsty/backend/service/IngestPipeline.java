@@ -0,0 +1,543 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.controller.WebSocketHandler;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.repository.ReadingStore;
+import com.pigsty.backend.util.MpmcRingBuffer;
+import com.pigsty.backend.util.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步写入管道
+ *
+ * 上报数据先进入有界无锁环形队列，由少量消费线程按微批次取出，
+ * 依次完成：批量入库 → 更新最新数据缓存和汇总桶 → 告警检查 → WebSocket 推送。
+ * 请求线程和调度线程只负责入队，因此接口延迟不再受 MySQL 延迟影响，
+ * 网关断线重连后集中补传的数据也能被队列吸收。
+ *
+ * 队列满时入队失败，由调用方返回 429 并附带 Retry-After，让网关稍后重传。
+ * 入库失败时消费线程按退避一直重试当前批次，已接收的数据不会被丢弃；重试期间新的提交同样被拒绝，
+ * 直到入库恢复。停机时先停止接收，等正在提交的调用方退出后消费线程再处理完队列中剩余的数据。
+ * 关闭异步模式（pigsty.ingest.async.enabled=false）时，提交的数据在调用线程上同步处理。
+ *
+ * 启用预写日志（pigsty.ingest.wal.enabled=true）时，内存队列由本地的 {@link WriteAheadLog} 代替：
+ * 提交的数据追加到日志后即返回，由一个回放线程按批读出、入库，入库成功后提交日志的读取位置。
+ * 数据库不可用期间入库一直按退避重试，数据留在日志中（容量由 pigsty.ingest.wal.max-bytes 决定），
+ * 停机或崩溃后未入库的数据在下次启动时继续回放。日志按 pigsty.ingest.wal.sync-interval-ms
+ * 批量刷盘（组提交）。每批数据入库时在同一个事务中记下这批数据之后的日志位置（ingest_wal_checkpoint），
+ * 入库成功但尚未提交日志读取位置时崩溃，重启后回放线程先跳过不晚于该位置的记录，同一条数据不会入库两次。
+ * 预写日志模式下由单个回放线程按日志顺序完成全部处理，环形队列和 pigsty.ingest.consumers 不起作用。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class IngestPipeline implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestPipeline.class);
+
+    /**
+     * 停机过程中（内存队列模式）一批数据最多尝试入库的次数，之后放弃并记录丢弃的条数
+     */
+    private static final int MAX_PERSIST_ATTEMPTS_ON_STOP = 3;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+    /**
+     * 预写日志记录的格式版本，写在每条记录的第一个字节；回放时跳过不认识的版本
+     */
+    private static final byte WAL_RECORD_VERSION = 1;
+
+    /**
+     * 预写日志中一条记录的字节数：版本、非空标志、猪舍ID、采集时间（秒、纳秒）、四项指标、接收时间（毫秒）
+     */
+    private static final int WAL_RECORD_BYTES = 1 + 1 + 8 + 8 + 4 + 4 * 8 + 8;
+
+    private final DataIngestService dataIngestService;
+    private final WarningService warningService;
+    private final LatestDataCache latestDataCache;
+    private final RollupService rollupService;
+    private final ReadingStore readingStore;
+    private final WebSocketHandler webSocketHandler;
+    private final PigstyMetrics metrics;
+
+    @Value("${pigsty.ingest.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    @Value("${pigsty.ingest.queue-capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${pigsty.ingest.consumers:2}")
+    private int consumerCount;
+
+    @Value("${pigsty.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${pigsty.ingest.wal.enabled:false}")
+    private boolean walEnabled;
+
+    @Value("${pigsty.ingest.wal.dir:wal}")
+    private Path walDirectory;
+
+    @Value("${pigsty.ingest.wal.segment-size:16777216}")
+    private int walSegmentSize;
+
+    @Value("${pigsty.ingest.wal.max-bytes:1073741824}")
+    private long walMaxBytes;
+
+    @Value("${pigsty.ingest.wal.sync-interval-ms:50}")
+    private long walSyncIntervalMillis;
+
+    private MpmcRingBuffer<EnvironmentalData> queue;
+    private WriteAheadLog wal;
+    private final List<Thread> consumers = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * 是否接收新数据。停机时先关闭，等 activeProducers 归零后才让消费线程收尾，
+     * 已通过检查的提交方放入队列的数据不会被遗漏
+     */
+    private volatile boolean accepting;
+    private final AtomicInteger activeProducers = new AtomicInteger();
+
+    /**
+     * 内存队列模式下入库正在失败（消费线程在重试），期间拒绝新的提交
+     */
+    private volatile boolean persistFailing;
+
+    public IngestPipeline(
+            DataIngestService dataIngestService,
+            WarningService warningService,
+            LatestDataCache latestDataCache,
+            RollupService rollupService,
+            ReadingStore readingStore,
+            WebSocketHandler webSocketHandler,
+            PigstyMetrics metrics) {
+        this.dataIngestService = dataIngestService;
+        this.warningService = warningService;
+        this.latestDataCache = latestDataCache;
+        this.rollupService = rollupService;
+        this.readingStore = readingStore;
+        this.webSocketHandler = webSocketHandler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 是否以异步模式运行
+     */
+    public boolean isAsync() {
+        return asyncEnabled;
+    }
+
+    /**
+     * 提交一条数据
+     *
+     * @param data 环境数据
+     * @return 已接收返回 true；队列（或预写日志）已满、入库正在失败、管道已停止返回 false
+     */
+    public boolean submit(EnvironmentalData data) {
+        data.setReceivedNanos(System.nanoTime());
+        if (!asyncEnabled) {
+            process(List.of(data));
+            return true;
+        }
+        activeProducers.incrementAndGet();
+        try {
+            return acceptsNewData() && enqueue(data);
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 按顺序提交一批数据
+     *
+     * 队列中途满时停止提交，返回已接收的条数，调用方应从该位置开始重传剩余数据。
+     *
+     * @param dataList 环境数据列表
+     * @return 已接收的条数
+     */
+    public int submitAll(List<EnvironmentalData> dataList) {
+        long receivedNanos = System.nanoTime();
+        for (EnvironmentalData data : dataList) {
+            data.setReceivedNanos(receivedNanos);
+        }
+        if (!asyncEnabled) {
+            process(dataList);
+            return dataList.size();
+        }
+        activeProducers.incrementAndGet();
+        try {
+            int accepted = 0;
+            for (EnvironmentalData data : dataList) {
+                if (!acceptsNewData() || !enqueue(data)) {
+                    break;
+                }
+                accepted++;
+            }
+            return accepted;
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    private boolean acceptsNewData() {
+        // 预写日志模式下入库失败时数据留在日志中，只受日志容量限制
+        return accepting && (wal != null || !persistFailing);
+    }
+
+    /**
+     * 队列（或预写日志）中等待入库的条数
+     */
+    public int backlog() {
+        if (wal != null) {
+            return (int) Math.min(Integer.MAX_VALUE, wal.backlog());
+        }
+        return queue == null ? 0 : queue.size();
+    }
+
+    private boolean enqueue(EnvironmentalData data) {
+        if (wal == null) {
+            return queue.offer(data);
+        }
+        // 采集时间在接收时确定，回放时不再取入库时间
+        if (data.getTimestamp() == null) {
+            data.setTimestamp(LocalDateTime.now());
+        }
+        try {
+            if (!wal.append(encode(data, System.currentTimeMillis()))) {
+                return false;
+            }
+            if (walSyncIntervalMillis <= 0) {
+                wal.sync();
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            log.error("Appending to the write-ahead log failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 同步处理一批数据：入库 → 告警检查 → WebSocket 推送
+     *
+     * @param batch 环境数据列表
+     */
+    private void process(List<EnvironmentalData> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        dataIngestService.persistBatch(batch);
+        fanOut(batch);
+    }
+
+    /**
+     * 已入库数据的后续处理：更新最新数据缓存、汇总桶和时间序列存储，告警检查和 WebSocket 推送，
+     * 完成后按猪舍和指标计数并记录端到端延迟
+     */
+    private void fanOut(List<EnvironmentalData> batch) {
+        latestDataCache.record(batch);
+        rollupService.record(batch);
+        readingStore.append(batch);
+        warningService.checkDataForWarnings(batch);
+        for (EnvironmentalData data : batch) {
+            webSocketHandler.sendDataUpdate(data);
+        }
+        long completedNanos = System.nanoTime();
+        for (EnvironmentalData data : batch) {
+            metrics.readingProcessed(data);
+            if (data.getReceivedNanos() != 0) {
+                metrics.ingestLatency().record(completedNanos - data.getReceivedNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void consumeLoop() {
+        List<EnvironmentalData> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            if (queue.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (persistUntilStopped(batch, () -> dataIngestService.persistBatch(batch))) {
+                try {
+                    fanOut(batch);
+                } catch (RuntimeException e) {
+                    log.error("Warning check / broadcast failed for {} readings: {}", batch.size(), e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 预写日志模式的回放线程：先跳过上次已入库的记录，之后按批读出、入库（连同日志位置）、提交读取位置，
+     * 再做后续处理。停止时不再读取新的批次，剩余数据留在日志中，下次启动时继续回放
+     */
+    private void replayLoop() {
+        if (!skipPersistedRecords()) {
+            return;
+        }
+        List<EnvironmentalData> batch = new ArrayList<>(batchSize);
+        while (running) {
+            List<byte[]> records = wal.read(batchSize);
+            if (records.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            long position = wal.position();
+            // 接收时间按墙上时钟记录（可能跨越重启），换算到 System.nanoTime() 的时间轴上
+            long clockOffsetNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            for (byte[] record : records) {
+                EnvironmentalData data = decode(record, clockOffsetNanos);
+                if (data != null) {
+                    batch.add(data);
+                }
+            }
+            if (!persistUntilStopped(batch, () -> dataIngestService.persistBatch(batch, wal.id(), position))) {
+                return;
+            }
+            wal.commit();
+            try {
+                fanOut(batch);
+            } catch (RuntimeException e) {
+                log.error("Warning check / broadcast failed for {} readings: {}", batch.size(), e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 跳过上次运行中已入库、但日志读取位置尚未提交的记录。数据库不可用时按退避重试，直到成功或管道停止
+     *
+     * @return 成功返回 true，管道停止时返回 false
+     */
+    private boolean skipPersistedRecords() {
+        for (int attempt = 1; running; attempt++) {
+            try {
+                long persisted = dataIngestService.walCheckpoint(wal.id());
+                if (persisted >= 0) {
+                    long skipped = wal.skipThrough(persisted);
+                    if (skipped > 0) {
+                        wal.commit();
+                        log.info("Skipped {} write-ahead log records that were already persisted", skipped);
+                    }
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt == 1 || attempt % 20 == 0) {
+                    log.warn("Reading the write-ahead log checkpoint failed (attempt {}), replay waits: {}",
+                            attempt, e.getMessage());
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(200L * attempt, MAX_RETRY_BACKOFF_MILLIS)));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 入库失败时按退避一直重试当前批次（只重试入库这一步，避免告警被重复触发），直到成功或管道停止：
+     *
+     * - 预写日志模式：停止时立即放弃，数据留在日志中，下次启动时继续回放
+     * - 内存队列模式：重试期间拒绝新的提交；停止时再尝试有限次数，仍失败则丢弃该批并记录错误
+     *
+     * @param batch 当前批次
+     * @param persist 入库操作
+     * @return 入库成功返回 true，管道停止时仍未成功返回 false
+     */
+    private boolean persistUntilStopped(List<EnvironmentalData> batch, Runnable persist) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                persist.run();
+                if (attempt > 1) {
+                    persistFailing = false;
+                    log.info("Ingest resumed after {} attempts, {} readings waiting", attempt, backlog());
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (!running && (wal != null || attempt >= MAX_PERSIST_ATTEMPTS_ON_STOP)) {
+                    if (wal == null) {
+                        log.error("Dropping {} readings after {} failed attempts during shutdown: {}",
+                                batch.size(), attempt, e.getMessage());
+                    }
+                    return false;
+                }
+                if (wal == null) {
+                    persistFailing = true;
+                }
+                if (attempt == 1 || attempt % 20 == 0) {
+                    log.warn("Ingest batch of {} readings failed (attempt {}), {} readings waiting, new readings rejected: {}",
+                            batch.size(), attempt, backlog(), e.getMessage());
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(200L * attempt, MAX_RETRY_BACKOFF_MILLIS)));
+            }
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(walSyncIntervalMillis));
+            try {
+                wal.sync();
+            } catch (RuntimeException e) {
+                log.error("Syncing the write-ahead log failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static byte[] encode(EnvironmentalData data, long receivedMillis) {
+        ByteBuffer buffer = ByteBuffer.allocate(WAL_RECORD_BYTES);
+        Double[] metrics = {data.getTemperature(), data.getHumidity(), data.getAmmoniaLevel(), data.getLight()};
+        int present = data.getPigstyId() != null ? 1 : 0;
+        for (int i = 0; i < metrics.length; i++) {
+            if (metrics[i] != null) {
+                present |= 2 << i;
+            }
+        }
+        buffer.put(WAL_RECORD_VERSION);
+        buffer.put((byte) present);
+        buffer.putLong(data.getPigstyId() != null ? data.getPigstyId() : 0);
+        buffer.putLong(data.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(data.getTimestamp().getNano());
+        for (Double metric : metrics) {
+            buffer.putDouble(metric != null ? metric : 0);
+        }
+        buffer.putLong(receivedMillis);
+        return buffer.array();
+    }
+
+    /**
+     * 解码一条预写日志记录
+     *
+     * @return 环境数据；版本不认识或长度不符时记录错误并返回 null
+     */
+    private static EnvironmentalData decode(byte[] record, long clockOffsetNanos) {
+        if (record.length != WAL_RECORD_BYTES || record[0] != WAL_RECORD_VERSION) {
+            log.error("Skipping write-ahead log record of {} bytes with unknown version {}",
+                    record.length, record.length > 0 ? record[0] : -1);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record, 1, record.length - 1);
+        int present = buffer.get();
+        long pigstyId = buffer.getLong();
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        Double[] metrics = new Double[4];
+        for (int i = 0; i < metrics.length; i++) {
+            double value = buffer.getDouble();
+            metrics[i] = (present & (2 << i)) != 0 ? value : null;
+        }
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId((present & 1) != 0 ? pigstyId : null);
+        data.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+        data.setTemperature(metrics[0]);
+        data.setHumidity(metrics[1]);
+        data.setAmmoniaLevel(metrics[2]);
+        data.setLight(metrics[3]);
+        data.setReceivedNanos(TimeUnit.MILLISECONDS.toNanos(buffer.getLong()) + clockOffsetNanos);
+        return data;
+    }
+
+    @Override
+    public void start() {
+        if (!asyncEnabled || running) {
+            return;
+        }
+        metrics.gauge("pigsty.ingest.backlog", "队列（或预写日志）中等待入库的条数", this::backlog);
+        if (walEnabled) {
+            startWithWal();
+            return;
+        }
+        queue = new MpmcRingBuffer<>(queueCapacity);
+        running = true;
+        for (int i = 0; i < consumerCount; i++) {
+            Thread consumer = new Thread(this::consumeLoop, "ingest-consumer-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumers.add(consumer);
+        }
+        accepting = true;
+        log.info("Ingest pipeline started: capacity={}, consumers={}, batchSize={}",
+                queue.capacity(), consumerCount, batchSize);
+    }
+
+    private void startWithWal() {
+        try {
+            wal = new WriteAheadLog(walDirectory, walSegmentSize, walMaxBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open write-ahead log at " + walDirectory.toAbsolutePath(), e);
+        }
+        running = true;
+        Thread replayer = new Thread(this::replayLoop, "ingest-wal-replayer");
+        replayer.setDaemon(true);
+        replayer.start();
+        consumers.add(replayer);
+        if (walSyncIntervalMillis > 0) {
+            Thread syncer = new Thread(this::syncLoop, "ingest-wal-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+            consumers.add(syncer);
+        }
+        accepting = true;
+        log.info("Ingest pipeline started with write-ahead log at {}: {} readings pending, batchSize={}, syncInterval={}ms",
+                walDirectory.toAbsolutePath(), wal.backlog(), batchSize, walSyncIntervalMillis);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // 先停止接收新数据，等已通过检查的提交方完成入队；
+        // 然后消费线程把队列中剩余的数据处理完后退出，回放线程处理完当前批次后退出
+        accepting = false;
+        while (activeProducers.get() > 0) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        running = false;
+        for (Thread consumer : consumers) {
+            try {
+                consumer.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        consumers.clear();
+        if (wal != null) {
+            wal.close();
+            log.info("Ingest pipeline stopped, {} readings kept in the write-ahead log", wal.backlog());
+            return;
+        }
+        log.info("Ingest pipeline stopped, {} readings left unprocessed", queue.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在 Web 服务器之前启动、之后停止，保证停机时已接收的请求仍能入队并被处理完
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -1,17 +1,24 @@
 package com.pigsty.backend.service;
 
+import com.pigsty.backend.model.User;
+import com.pigsty.backend.repository.UserRepository;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
@@ -25,6 +32,13 @@ import java.util.function.Function;
  * - 验证 Token 的有效性
  * - 检查 Token 是否过期
  * - 提取 Token 中的声明（Claims）
+ * - 请求认证：每个 Token 只验证一次签名，验证结果缓存到过期为止
+ * 
+ * 签名密钥和解析器在启动时构建一次。Token 中携带用户ID（uid），
+ * 认证时按用户ID查询账号缓存构造用户主体：用户已被删除时 Token 不再有效，角色以账号当前的角色为准，
+ * 不必等到 Token 过期。账号缓存的条目在 pigsty.security.user-cache.ttl-ms 后重新从数据库加载，
+ * 因此其他实例上的删除和角色变更最迟在该时间后生效；本实例的变更通过 {@link #userChanged} 立即生效。
+ * 旧版 Token（不含用户ID声明）仍由调用方从数据库加载用户。
  * 
  * @author 系统架构
  * @version 1.0
@@ -47,6 +61,64 @@ public class JwtService {
      */
     private static final long EXPIRATION_TIME = 1000 * 60 * 60 * 24; 
 
+    /**
+     * 用户ID声明
+     */
+    public static final String CLAIM_USER_ID = "uid";
+
+    /**
+     * 一次验证的结果
+     * 
+     * @param username Token 中的用户名
+     * @param principal 用户主体；旧版 Token 为 null，需要从数据库加载
+     * @param expiresAtMillis 过期时间（毫秒时间戳）
+     */
+    public record VerifiedToken(String username, User principal, long expiresAtMillis) {
+    }
+
+    /**
+     * 已验证签名的 Token 中与认证有关的声明
+     *
+     * @param userId 用户ID，旧版 Token 为 null
+     */
+    private record Claimed(String username, Long userId, long expiresAtMillis) {
+    }
+
+    /**
+     * 账号缓存的条目
+     *
+     * @param user 只含ID、用户名和角色的用户；用户不存在时为 null
+     * @param loadedAtNanos 加载时间
+     */
+    private record Account(User user, long loadedAtNanos) {
+    }
+
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+    private final UserRepository userRepository;
+    private final int tokenCacheMaxSize;
+    private final long userCacheTtlNanos;
+
+    /**
+     * 已验证的 Token 缓存，键为 Token 本身（按哈希查找，命中后完整比较，哈希碰撞不会误认）
+     */
+    private final ConcurrentHashMap<String, Claimed> verifiedTokens = new ConcurrentHashMap<>();
+
+    /**
+     * 账号缓存：用户ID → 账号（条目数上限与 Token 缓存相同）
+     */
+    private final ConcurrentHashMap<Long, Account> accounts = new ConcurrentHashMap<>();
+
+    public JwtService(UserRepository userRepository,
+                      @Value("${pigsty.security.token-cache.max-size:10000}") int tokenCacheMaxSize,
+                      @Value("${pigsty.security.user-cache.ttl-ms:30000}") long userCacheTtlMillis) {
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_KEY));
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+        this.userRepository = userRepository;
+        this.tokenCacheMaxSize = tokenCacheMaxSize;
+        this.userCacheTtlNanos = userCacheTtlMillis * 1_000_000L;
+    }
+
     /**
      * 从 Token 中提取用户名
      * 
@@ -62,13 +134,18 @@ public class JwtService {
     /**
      * 生成 JWT Token
      * 
-     * 根据用户详情生成一个新的 JWT Token，不包含额外声明。
+     * 根据用户详情生成一个新的 JWT Token。
+     * 用户详情为 {@link User} 时写入用户ID声明，认证时按用户ID查询账号缓存，不必按用户名加载用户。
      * 
      * @param userDetails Spring Security 的用户详情对象
      * @return 生成的 JWT Token 字符串
      */
     public String generateToken(UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+        Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof User user && user.getId() != null) {
+            claims.put(CLAIM_USER_ID, user.getId());
+        }
+        return generateToken(claims, userDetails);
     }
 
     /**
@@ -91,10 +168,51 @@ public class JwtService {
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * 验证请求携带的 Token
+     * 
+     * 签名和过期时间的验证结果按 Token 缓存直到 Token 过期；用户主体每次都由账号缓存构造。
+     * 
+     * @param token JWT Token 字符串
+     * @return 验证结果
+     * @throws io.jsonwebtoken.JwtException Token 签名无效、格式错误、已过期，或用户已不存在
+     * @throws IllegalArgumentException Token 为空
+     */
+    public VerifiedToken verify(String token) {
+        long now = System.currentTimeMillis();
+        Claimed claimed = verifiedTokens.get(token);
+        if (claimed != null && claimed.expiresAtMillis() <= now) {
+            verifiedTokens.remove(token, claimed);
+            claimed = null;
+        }
+        if (claimed == null) {
+            Claims claims = extractAllClaims(token);
+            Number userId = claims.get(CLAIM_USER_ID, Number.class);
+            claimed = new Claimed(claims.getSubject(), userId != null ? userId.longValue() : null,
+                    claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE);
+            if (claimed.username() != null) {
+                if (verifiedTokens.size() >= tokenCacheMaxSize) {
+                    trimCache(now);
+                }
+                verifiedTokens.put(token, claimed);
+            }
+        }
+        return new VerifiedToken(claimed.username(), principalOf(claimed), claimed.expiresAtMillis());
+    }
+
+    /**
+     * 用户被删除或角色变更后调用，该用户的 Token 在下一次请求时按数据库中的最新状态认证
+     * 
+     * @param userId 用户ID
+     */
+    public void userChanged(Long userId) {
+        accounts.remove(userId);
+    }
+
     /**
      * 验证 Token 是否有效
      * 
@@ -107,8 +225,8 @@ public class JwtService {
      * @return Token 有效返回 true，否则返回 false
      */
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        final Claims claims = extractAllClaims(token);
+        return claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date());
     }
 
     /**
@@ -129,27 +247,61 @@ public class JwtService {
     }
 
     /**
-     * 检查 Token 是否过期
+     * 由账号缓存构造用户主体
      * 
-     * 验证 JWT Token 的过期时间是否已过。
+     * 不含用户ID声明（旧版 Token）时返回 null。
      * 
-     * @param token JWT Token 字符串
-     * @return Token 已过期返回 true，否则返回 false
+     * @throws JwtException 用户已不存在，或用户名与 Token 不一致
      */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private User principalOf(Claimed claimed) {
+        if (claimed.userId() == null || claimed.username() == null) {
+            return null;
+        }
+        User user = account(claimed.userId());
+        if (user == null || !claimed.username().equals(user.getUsername())) {
+            throw new JwtException("User " + claimed.username() + " no longer exists");
+        }
+        return user;
     }
 
     /**
-     * 提取 Token 的过期时间
-     * 
-     * 从 JWT Token 中解析过期时间。
-     * 
-     * @param token JWT Token 字符串
-     * @return Token 的过期时间
+     * 读取账号缓存，条目不存在或超过有效期时从数据库加载；用户不存在的结果也会缓存，避免已删除用户的请求反复查库
      */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private User account(Long userId) {
+        long now = System.nanoTime();
+        Account account = accounts.get(userId);
+        if (account != null && now - account.loadedAtNanos() < userCacheTtlNanos) {
+            return account.user();
+        }
+        User user = userRepository.findById(userId)
+                .map(found -> User.builder()
+                        .id(found.getId())
+                        .username(found.getUsername())
+                        .role(found.getRole())
+                        .build())
+                .orElse(null);
+        if (accounts.size() >= tokenCacheMaxSize) {
+            trim(accounts, tokenCacheMaxSize);
+        }
+        accounts.put(userId, new Account(user, now));
+        return user;
+    }
+
+    /**
+     * Token 缓存已满时先清除过期的条目，仍然满则清除一半，保证缓存大小有界
+     */
+    private void trimCache(long now) {
+        verifiedTokens.values().removeIf(claimed -> claimed.expiresAtMillis() <= now);
+        trim(verifiedTokens, tokenCacheMaxSize);
+    }
+
+    private static void trim(ConcurrentHashMap<?, ?> cache, int maxSize) {
+        int excess = cache.size() - maxSize / 2;
+        Iterator<?> it = cache.keySet().iterator();
+        while (excess-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
     }
 
     /**
@@ -170,28 +322,13 @@ public class JwtService {
     /**
      * 提取 Token 中的所有声明
      * 
-     * 解析 JWT Token 并获取其中的所有声明（Claims）。
+     * 使用启动时构建的解析器解析 JWT Token 并获取其中的所有声明（Claims），
+     * 同时验证签名和过期时间。
      * 
      * @param token JWT Token 字符串
      * @return Token 中的所有声明对象
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    /**
-     * 获取签名密钥
-     * 
-     * 将 Base64 编码的密钥字符串解码为 SecretKey 对象。
-     * 
-     * @return HMAC-SHA 签名密钥
-     */
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(SECRET_KEY);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return parser.parseSignedClaims(token).getPayload();
     }
 }
@@ -0,0 +1,353 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.config.PigstyIdMigration;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.repository.DataRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 最新环境数据缓存
+ *
+ * 按猪舍维护最近 N 条环境数据，每个猪舍一个环形缓冲区，
+ * 指标值和时间戳都保存在基本类型数组中（空值记为 NaN），避免为每条数据保留实体对象。
+ *
+ * - 写入：写入管道在数据入库后调用 {@link #record(List)} 更新缓存
+ * - 读取：/api/data/latest 直接从缓存合并各猪舍的数据，不再扫描 environmental_data 表
+ * - 预热：某个猪舍第一次被读取时从数据库加载一次最近 N 条数据。加载前先放入空的缓冲区，
+ *   加载期间入库的数据照常写入该缓冲区，不会因为查询与放入缓存之间的时间差而丢失；
+ *   查询结果中已写入的数据按ID去重。其他读取方等待加载完成
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class LatestDataCache {
+
+    private final DataRepository dataRepository;
+    private final ConcurrentHashMap<Long, Series> seriesByPigsty = new ConcurrentHashMap<>();
+
+    /**
+     * 每个猪舍保留的最大条数
+     */
+    private final int capacity;
+
+    public LatestDataCache(DataRepository dataRepository, @Value("${pigsty.data.latest-cache.size:100}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("pigsty.data.latest-cache.size must be at least 1");
+        }
+        this.dataRepository = dataRepository;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 记录一批已入库的环境数据
+     *
+     * 只更新已经预热过（或正在预热）的猪舍；尚未被读取过的猪舍在第一次读取时从数据库加载，
+     * 加载结果自然包含这些已入库的数据。
+     *
+     * @param dataList 已入库的环境数据
+     */
+    public void record(List<EnvironmentalData> dataList) {
+        for (EnvironmentalData data : dataList) {
+            Long pigstyId = data.getPigstyId();
+            if (pigstyId == null || data.getTimestamp() == null) {
+                continue;
+            }
+            Series series = seriesByPigsty.get(pigstyId);
+            if (series != null) {
+                series.insert(data);
+            }
+        }
+    }
+
+    /**
+     * 获取若干猪舍合并后的最新数据，按时间倒序
+     *
+     * @param pigstyIds 猪舍ID集合
+     * @param limit 最多返回的条数（不超过缓存容量）
+     * @return 环境数据列表
+     */
+    public List<EnvironmentalData> latest(Collection<Long> pigstyIds, int limit) {
+        int effectiveLimit = Math.max(0, Math.min(limit, capacity));
+        PriorityQueue<Snapshot> heads = new PriorityQueue<>(
+                Math.max(1, pigstyIds.size()),
+                (a, b) -> Long.compare(b.currentTimestamp(), a.currentTimestamp()));
+        for (Long pigstyId : pigstyIds) {
+            Snapshot snapshot = seriesFor(pigstyId).snapshot(pigstyId, effectiveLimit);
+            if (snapshot.length > 0) {
+                heads.add(snapshot);
+            }
+        }
+
+        // 各猪舍的快照都已按时间倒序排列，多路归并取前 limit 条
+        List<EnvironmentalData> result = new ArrayList<>(effectiveLimit);
+        while (result.size() < effectiveLimit && !heads.isEmpty()) {
+            Snapshot head = heads.poll();
+            result.add(head.current());
+            if (++head.position < head.length) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 移除某个猪舍的缓存（例如猪舍被删除时）
+     *
+     * @param pigstyId 猪舍ID
+     */
+    public void evict(Long pigstyId) {
+        seriesByPigsty.remove(pigstyId);
+    }
+
+    /**
+     * 猪舍ID列迁移完成后清空缓存：回填期间加载的猪舍缺少尚未回填的历史数据
+     */
+    @EventListener
+    public void onPigstyIdMigrated(PigstyIdMigration.TableMigrated event) {
+        if ("environmental_data".equals(event.table())) {
+            seriesByPigsty.clear();
+        }
+    }
+
+    private Series seriesFor(Long pigstyId) {
+        while (true) {
+            Series series = seriesByPigsty.get(pigstyId);
+            if (series == null) {
+                Series created = new Series(capacity);
+                series = seriesByPigsty.putIfAbsent(pigstyId, created);
+                if (series == null) {
+                    seed(pigstyId, created);
+                    return created;
+                }
+            }
+            if (series.awaitSeeded()) {
+                return series;
+            }
+            // 其他线程的预热失败并已移除该缓冲区，重新预热
+        }
+    }
+
+    /**
+     * 从数据库加载最近 N 条数据。缓冲区已经在缓存中，加载期间 {@link #record} 写入的数据不会丢失
+     */
+    private void seed(Long pigstyId, Series series) {
+        boolean seeded = false;
+        try {
+            List<EnvironmentalData> rows = dataRepository.findByPigstyIdOrderByTimestampDesc(pigstyId, Limit.of(capacity));
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                series.insert(rows.get(i));
+            }
+            seeded = true;
+        } finally {
+            if (!seeded) {
+                seriesByPigsty.remove(pigstyId, series);
+            }
+            series.seedingDone(seeded);
+        }
+    }
+
+    private static long toEpochMicros(LocalDateTime timestamp) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, timestamp.toInstant(ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+
+    private static double toPrimitive(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static Double fromPrimitive(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * 单个猪舍的环形缓冲区，逻辑位置 0 为最旧的一条，按时间戳升序保存
+     */
+    private static final class Series {
+
+        private final int capacity;
+        private final long[] ids;
+        private final long[] timestamps;
+        private final double[] temperature;
+        private final double[] humidity;
+        private final double[] ammoniaLevel;
+        private final double[] light;
+        private int start;
+        private int size;
+
+        private final CountDownLatch seeding = new CountDownLatch(1);
+        private volatile boolean seeded;
+
+        Series(int capacity) {
+            this.capacity = capacity;
+            this.ids = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.temperature = new double[capacity];
+            this.humidity = new double[capacity];
+            this.ammoniaLevel = new double[capacity];
+            this.light = new double[capacity];
+        }
+
+        private int physical(int logical) {
+            return (start + logical) % capacity;
+        }
+
+        void seedingDone(boolean success) {
+            seeded = success;
+            seeding.countDown();
+        }
+
+        /**
+         * 等待预热完成
+         *
+         * @return 预热成功返回 true
+         */
+        boolean awaitSeeded() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    seeding.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return seeded;
+        }
+
+        /**
+         * 按时间戳插入一条数据。正常情况下数据按时间顺序到达，直接追加在末尾；
+         * 网关补传的历史数据会被插入到正确位置，比缓存中最旧的数据还旧时直接丢弃。
+         * 已有相同ID和时间戳的数据时忽略（预热查询可能读到加载期间已经写入的数据）。
+         */
+        synchronized void insert(EnvironmentalData data) {
+            long timestamp = toEpochMicros(data.getTimestamp());
+            if (data.getId() != null && contains(data.getId(), timestamp)) {
+                return;
+            }
+            if (size == capacity) {
+                if (timestamp < timestamps[physical(0)]) {
+                    return;
+                }
+                start = (start + 1) % capacity;
+                size--;
+            }
+            int position = size;
+            while (position > 0 && timestamps[physical(position - 1)] > timestamp) {
+                copy(physical(position - 1), physical(position));
+                position--;
+            }
+            int slot = physical(position);
+            ids[slot] = data.getId() == null ? 0L : data.getId();
+            timestamps[slot] = timestamp;
+            temperature[slot] = toPrimitive(data.getTemperature());
+            humidity[slot] = toPrimitive(data.getHumidity());
+            ammoniaLevel[slot] = toPrimitive(data.getAmmoniaLevel());
+            light[slot] = toPrimitive(data.getLight());
+            size++;
+        }
+
+        private boolean contains(long id, long timestamp) {
+            for (int logical = size - 1; logical >= 0; logical--) {
+                int slot = physical(logical);
+                if (timestamps[slot] < timestamp) {
+                    return false;
+                }
+                if (timestamps[slot] == timestamp && ids[slot] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void copy(int from, int to) {
+            ids[to] = ids[from];
+            timestamps[to] = timestamps[from];
+            temperature[to] = temperature[from];
+            humidity[to] = humidity[from];
+            ammoniaLevel[to] = ammoniaLevel[from];
+            light[to] = light[from];
+        }
+
+        /**
+         * 复制最新的 limit 条数据，按时间倒序
+         */
+        synchronized Snapshot snapshot(Long pigstyId, int limit) {
+            int length = Math.min(limit, size);
+            Snapshot snapshot = new Snapshot(pigstyId, length);
+            for (int i = 0; i < length; i++) {
+                int slot = physical(size - 1 - i);
+                snapshot.ids[i] = ids[slot];
+                snapshot.timestamps[i] = timestamps[slot];
+                snapshot.temperature[i] = temperature[slot];
+                snapshot.humidity[i] = humidity[slot];
+                snapshot.ammoniaLevel[i] = ammoniaLevel[slot];
+                snapshot.light[i] = light[slot];
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 某个猪舍缓存数据的只读副本，供合并时按位置读取
+     */
+    private static final class Snapshot {
+
+        private final Long pigstyId;
+        private final int length;
+        private final long[] ids;
+        private final long[] timestamps;
+        private final double[] temperature;
+        private final double[] humidity;
+        private final double[] ammoniaLevel;
+        private final double[] light;
+        private int position;
+
+        Snapshot(Long pigstyId, int length) {
+            this.pigstyId = pigstyId;
+            this.length = length;
+            this.ids = new long[length];
+            this.timestamps = new long[length];
+            this.temperature = new double[length];
+            this.humidity = new double[length];
+            this.ammoniaLevel = new double[length];
+            this.light = new double[length];
+        }
+
+        long currentTimestamp() {
+            return timestamps[position];
+        }
+
+        EnvironmentalData current() {
+            EnvironmentalData data = new EnvironmentalData();
+            data.setId(ids[position] == 0L ? null : ids[position]);
+            data.setPigstyId(pigstyId);
+            data.setTimestamp(fromEpochMicros(timestamps[position]));
+            data.setTemperature(fromPrimitive(temperature[position]));
+            data.setHumidity(fromPrimitive(humidity[position]));
+            data.setAmmoniaLevel(fromPrimitive(ammoniaLevel[position]));
+            data.setLight(fromPrimitive(light[position]));
+            return data;
+        }
+    }
+}
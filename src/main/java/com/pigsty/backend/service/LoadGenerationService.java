@@ -0,0 +1,449 @@
+package com.pigsty.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负载生成服务
+ *
+ * 上线前的压测工具：按目标速率为一批虚拟猪舍生成环境数据，写入进程内的写入管道，或通过 HTTP 调用 POST /api/data。
+ * 虚拟猪舍不需要存在于 MySQL 中（ID 从 firstPigstyId 开始编号，默认远大于真实猪舍ID，不会触发告警）。
+ *
+ * 注意：IN_PROCESS 和指向本服务的 HTTP 模式写入的是真实数据，和生产数据一样永久写入 environmental_data、
+ * 汇总表和时间序列存储，不会自动清理。为避免污染真实猪舍的数据，虚拟猪舍的ID区间不能与已有猪舍重叠；
+ * 压测结束后可按启动日志中给出的ID区间删除（DELETE FROM environmental_data WHERE pigsty_ref BETWEEN ...，
+ * 汇总表同理），或只在压测专用的环境中运行。
+ *
+ * HTTP 和 DASHBOARD 模式只有在目标地址是本服务（本机回环地址和本服务端口）时才附带发起压测的管理员的
+ * Authorization 请求头，指向其他地址时不附带，避免把管理员的 Token 发给任意地址。
+ * DASHBOARD 模式不写数据，而是模拟大量同时打开的看板，按目标速率轮流请求看板读取的接口
+ * （用于比较 spring.threads.virtual.enabled 打开和关闭时的吞吐和尾延迟）。
+ *
+ * - 分片：虚拟猪舍按 ID 取模分给若干分片，每个分片一个虚拟线程和一个由种子派生的 SplittableRandom，
+ *   分片之间不共享任何可变状态；同一种子、同样的参数生成同一串读数
+ * - 节奏：每个分片按“开始时间 + 序号 × 间隔”计算每条读数的计划发送时间，提前到达时等待，落后时立即发送
+ * - 延迟：从计划发送时间（而不是实际发送时间）开始计时，发送方被拖慢时排队的时间也计入延迟，
+ *   避免协调遗漏（coordinated omission）让结果偏乐观
+ *
+ * 同一时刻只允许一次压测，结束后报告实际吞吐和延迟百分位。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class LoadGenerationService {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerationService.class);
+
+    /**
+     * 写入目标
+     */
+    public enum Target {
+        /** 直接提交到进程内的写入管道 */
+        IN_PROCESS,
+        /** 通过 HTTP 调用 POST /api/data */
+        HTTP,
+        /** 模拟看板客户端，通过 HTTP 轮流请求 {@link #DASHBOARD_PATHS} */
+        DASHBOARD
+    }
+
+    /**
+     * 看板读取的接口，%d 替换为猪舍ID
+     */
+    private static final String[] DASHBOARD_PATHS = {
+            "/api/data/latest?limit=50",
+            "/api/warnings/summary",
+            "/api/warnings/latest?size=20&withTotal=false",
+            "/api/data/pigsty/%d/series?points=200"
+    };
+
+    /**
+     * 压测参数，未设置的字段使用默认值
+     *
+     * @param pigsties 虚拟猪舍数量；DASHBOARD 模式下为看板轮流查看的（真实）猪舍数量
+     * @param firstPigstyId 第一个虚拟猪舍的ID；DASHBOARD 模式默认为 1
+     * @param readingsPerSecond 目标速率（条/秒，所有分片合计）；DASHBOARD 模式下为请求/秒
+     * @param durationSeconds 持续时间（秒）
+     * @param shards 分片数；HTTP 模式下即并发请求数，DASHBOARD 模式下即看板客户端数
+     * @param target 写入目标
+     * @param url HTTP 模式的目标地址，默认为本服务的 /api/data；DASHBOARD 模式为服务的根地址，默认为本服务
+     * @param seed 随机种子，未设置时随机生成（报告中会给出实际使用的种子）
+     */
+    public record LoadTestRequest(Integer pigsties, Long firstPigstyId, Integer readingsPerSecond,
+                                  Integer durationSeconds, Integer shards, Target target, String url, Long seed) {
+
+        LoadTestRequest withDefaults(String baseUrl) {
+            Target resolvedTarget = target != null ? target : Target.IN_PROCESS;
+            boolean dashboard = resolvedTarget == Target.DASHBOARD;
+            int defaultShards = switch (resolvedTarget) {
+                case IN_PROCESS -> Runtime.getRuntime().availableProcessors();
+                case HTTP -> 64;
+                case DASHBOARD -> 5000;
+            };
+            return new LoadTestRequest(
+                    pigsties != null ? pigsties : dashboard ? 1 : 1000,
+                    firstPigstyId != null ? firstPigstyId : dashboard ? 1L : 1_000_000L,
+                    readingsPerSecond != null ? readingsPerSecond : 1000,
+                    durationSeconds != null ? durationSeconds : 60,
+                    shards != null ? shards : defaultShards,
+                    resolvedTarget,
+                    url != null ? url : dashboard ? baseUrl : baseUrl + "/api/data",
+                    seed != null ? seed : System.nanoTime());
+        }
+    }
+
+    /**
+     * 压测结果
+     *
+     * 延迟单位为微秒：进程内模式为提交到写入管道的耗时，HTTP 和 DASHBOARD 模式为请求往返时间，均从计划发送时间起算。
+     */
+    public record LoadTestReport(LoadTestRequest request, long elapsedMillis, long sent, long accepted,
+                                 long rejected, long errors, double achievedPerSecond, long p50Micros,
+                                 long p90Micros, long p99Micros, long p999Micros, long maxMicros) {
+    }
+
+    /**
+     * 压测状态
+     *
+     * @param running 是否正在运行
+     * @param request 当前（或最近一次）压测的参数
+     * @param report 最近一次完成的压测结果，运行中或从未运行时为 null
+     */
+    public record LoadTestStatus(boolean running, LoadTestRequest request, LoadTestReport report) {
+    }
+
+    private final IngestPipeline ingestPipeline;
+    private final PigstyCache pigstyCache;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final AtomicReference<Run> current = new AtomicReference<>();
+    private volatile LoadTestStatus lastStatus = new LoadTestStatus(false, null, null);
+
+    public LoadGenerationService(IngestPipeline ingestPipeline, PigstyCache pigstyCache, ObjectMapper objectMapper,
+                                 Environment environment) {
+        this.ingestPipeline = ingestPipeline;
+        this.pigstyCache = pigstyCache;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+    }
+
+    /**
+     * 在后台开始一次压测
+     *
+     * @param request 压测参数
+     * @param authorization 发起压测的请求的 Authorization 请求头；只有目标地址是本服务时才在 HTTP 和 DASHBOARD 模式下附带
+     * @return 补全默认值后的参数；已有压测在运行时返回 null
+     * @throws IllegalArgumentException 参数不合法
+     */
+    public LoadTestRequest start(LoadTestRequest request, String authorization) {
+        int port = Integer.parseInt(environment.getProperty("local.server.port", "8080"));
+        LoadTestRequest resolved = request.withDefaults("http://localhost:" + port);
+        validate(resolved);
+
+        String forwarded = null;
+        if (resolved.target() != Target.IN_PROCESS) {
+            if (targetsThisService(URI.create(resolved.url()), port)) {
+                forwarded = authorization;
+            } else {
+                log.info("Load test targets {}, the caller's Authorization header is not forwarded", resolved.url());
+            }
+        }
+        boolean writesHere = resolved.target() == Target.IN_PROCESS
+                || (resolved.target() == Target.HTTP && targetsThisService(URI.create(resolved.url()), port));
+        if (writesHere) {
+            long lastPigstyId = resolved.firstPigstyId() + resolved.pigsties() - 1;
+            for (Pigsty pigsty : pigstyCache.allPigsties()) {
+                if (pigsty.getId() >= resolved.firstPigstyId() && pigsty.getId() <= lastPigstyId) {
+                    throw new IllegalArgumentException("Virtual pigsty ids " + resolved.firstPigstyId() + ".."
+                            + lastPigstyId + " overlap existing pigsty " + pigsty.getId());
+                }
+            }
+        }
+
+        Run run = new Run(resolved, forwarded);
+        if (!current.compareAndSet(null, run)) {
+            return null;
+        }
+        if (writesHere) {
+            log.warn("Load test writes readings for virtual pigsties {}..{} into the production tables; "
+                    + "they are not removed afterwards", resolved.firstPigstyId(),
+                    resolved.firstPigstyId() + resolved.pigsties() - 1);
+        }
+        lastStatus = new LoadTestStatus(true, resolved, null);
+        Thread.ofVirtual().name("load-test").start(() -> {
+            try {
+                LoadTestReport report = run.execute();
+                lastStatus = new LoadTestStatus(false, resolved, report);
+                log.info("Load test finished: {}", report);
+            } catch (Exception e) {
+                log.error("Load test failed: {}", e.getMessage(), e);
+                lastStatus = new LoadTestStatus(false, resolved, null);
+            } finally {
+                current.set(null);
+            }
+        });
+        return resolved;
+    }
+
+    /**
+     * 停止正在运行的压测，已发送部分的结果照常报告
+     *
+     * @return 有压测在运行返回 true
+     */
+    public boolean stop() {
+        Run run = current.get();
+        if (run == null) {
+            return false;
+        }
+        run.stopRequested = true;
+        return true;
+    }
+
+    /**
+     * 当前状态和最近一次的结果
+     */
+    public LoadTestStatus status() {
+        return lastStatus;
+    }
+
+    /**
+     * 目标地址是否就是本服务：本机回环地址且端口相同
+     */
+    private static boolean targetsThisService(URI uri, int port) {
+        String host = uri.getHost();
+        if (host == null) {
+            return false;
+        }
+        int targetPort = uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+        boolean loopback = host.equalsIgnoreCase("localhost") || host.equals("127.0.0.1")
+                || host.equals("[::1]") || host.equals("::1");
+        return loopback && targetPort == port;
+    }
+
+    private static void validate(LoadTestRequest request) {
+        if (request.pigsties() < 1) {
+            throw new IllegalArgumentException("pigsties must be at least 1");
+        }
+        if (request.readingsPerSecond() < 1) {
+            throw new IllegalArgumentException("readingsPerSecond must be at least 1");
+        }
+        if (request.durationSeconds() < 1) {
+            throw new IllegalArgumentException("durationSeconds must be at least 1");
+        }
+        if (request.shards() < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        // 看板客户端可以查看同一个猪舍，写入的分片则各自负责不同的猪舍
+        if (request.target() != Target.DASHBOARD && request.shards() > request.pigsties()) {
+            throw new IllegalArgumentException("shards must be between 1 and the number of pigsties");
+        }
+        if (request.target() != Target.IN_PROCESS) {
+            URI uri = URI.create(request.url());
+            if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+                throw new IllegalArgumentException("url must be an http(s) URL");
+            }
+        }
+    }
+
+    /**
+     * 一次压测的执行过程
+     */
+    private final class Run {
+
+        private final LoadTestRequest request;
+        private final String authorization;
+        private HttpClient httpClient;
+        private volatile boolean stopRequested;
+
+        Run(LoadTestRequest request, String authorization) {
+            this.request = request;
+            this.authorization = authorization;
+        }
+
+        LoadTestReport execute() throws Exception {
+            if (request.target() != Target.IN_PROCESS) {
+                httpClient = HttpClient.newBuilder()
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .executor(Executors.newVirtualThreadPerTaskExecutor())
+                        .build();
+            }
+            int shardCount = request.shards();
+            SplittableRandom root = new SplittableRandom(request.seed());
+            List<Shard> shards = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(new Shard(i, root.split()));
+            }
+
+            long startNanos = System.nanoTime();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> futures = new ArrayList<>(shardCount);
+                for (Shard shard : shards) {
+                    futures.add(executor.submit(() -> shard.run(startNanos)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                if (httpClient != null) {
+                    httpClient.close();
+                }
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            long sent = 0;
+            long accepted = 0;
+            long rejected = 0;
+            long errors = 0;
+            for (Shard shard : shards) {
+                latencies.add(shard.latencies);
+                sent += shard.sent;
+                accepted += shard.accepted;
+                rejected += shard.rejected;
+                errors += shard.errors;
+            }
+            double seconds = elapsedNanos / 1e9;
+            return new LoadTestReport(request, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), sent, accepted,
+                    rejected, errors, Math.round(accepted / seconds * 10) / 10.0,
+                    toMicros(latencies.percentile(50)), toMicros(latencies.percentile(90)),
+                    toMicros(latencies.percentile(99)), toMicros(latencies.percentile(99.9)),
+                    toMicros(latencies.max()));
+        }
+
+        /**
+         * 一个分片：负责 ID 对分片数取模等于自身序号的虚拟猪舍，按各自的速率发送
+         */
+        private final class Shard {
+
+            private final int index;
+            private final SplittableRandom random;
+            private final LatencyHistogram latencies = new LatencyHistogram();
+            private final Pigsty pigsty = new Pigsty();
+            private long sent;
+            private long accepted;
+            private long rejected;
+            private long errors;
+
+            Shard(int index, SplittableRandom random) {
+                this.index = index;
+                this.random = random;
+            }
+
+            void run(long startNanos) {
+                int shardCount = request.shards();
+                int pigstyCount = 0;
+                long intervalNanos;
+                long total;
+                long offsetNanos = 0;
+                if (request.target() == Target.DASHBOARD) {
+                    // 看板客户端通常比每秒请求数多，每个客户端每隔 客户端数 / 速率 秒请求一次，
+                    // 首次请求在一个间隔内随机错开，避免所有客户端在同一时刻发出
+                    intervalNanos = TimeUnit.SECONDS.toNanos(1) * shardCount / request.readingsPerSecond();
+                    total = TimeUnit.SECONDS.toNanos(request.durationSeconds()) / intervalNanos;
+                    offsetNanos = random.nextLong(intervalNanos);
+                } else {
+                    // 速率和猪舍在分片间尽量均分，前几个分片多分到余数
+                    long ratePerShard = request.readingsPerSecond() / shardCount
+                            + (index < request.readingsPerSecond() % shardCount ? 1 : 0);
+                    if (ratePerShard == 0) {
+                        return;
+                    }
+                    pigstyCount = request.pigsties() / shardCount + (index < request.pigsties() % shardCount ? 1 : 0);
+                    intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerShard;
+                    total = ratePerShard * request.durationSeconds();
+                }
+
+                for (long i = 0; i < total && !stopRequested; i++) {
+                    long intendedNanos = startNanos + offsetNanos + i * intervalNanos;
+                    long waitNanos = intendedNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                    if (request.target() == Target.DASHBOARD) {
+                        poll(i);
+                    } else {
+                        pigsty.setId(request.firstPigstyId() + index + (i % pigstyCount) * shardCount);
+                        send(SimulatedReadings.create(pigsty, random));
+                    }
+                    sent++;
+                    latencies.record(System.nanoTime() - intendedNanos);
+                }
+            }
+
+            private void send(EnvironmentalData data) {
+                if (request.target() == Target.IN_PROCESS) {
+                    if (ingestPipeline.submit(data)) {
+                        accepted++;
+                    } else {
+                        rejected++;
+                    }
+                    return;
+                }
+                try {
+                    exchange(HttpRequest.newBuilder(URI.create(request.url()))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(data))));
+                } catch (IOException e) {
+                    errors++;
+                }
+            }
+
+            /**
+             * 看板客户端的一次轮询：按序号轮流请求看板接口，猪舍在 pigsties 个猪舍中轮换
+             */
+            private void poll(long sequence) {
+                String path = DASHBOARD_PATHS[(int) ((sequence + index) % DASHBOARD_PATHS.length)];
+                long pigstyId = request.firstPigstyId() + (sequence + index) % request.pigsties();
+                exchange(HttpRequest.newBuilder(URI.create(request.url() + path.formatted(pigstyId))).GET());
+            }
+
+            private void exchange(HttpRequest.Builder builder) {
+                builder.timeout(Duration.ofSeconds(10));
+                if (authorization != null) {
+                    builder.header("Authorization", authorization);
+                }
+                try {
+                    int status = httpClient.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                    if (status / 100 == 2) {
+                        accepted++;
+                    } else if (status == 429) {
+                        rejected++;
+                    } else {
+                        errors++;
+                    }
+                } catch (IOException e) {
+                    errors++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopRequested = true;
+                }
+            }
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
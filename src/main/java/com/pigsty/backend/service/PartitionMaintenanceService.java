@@ -0,0 +1,372 @@
+package com.pigsty.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * 按时间分区的表的维护服务
+ *
+ * 原始数据表和三张汇总表按时间列做 RANGE COLUMNS 分区，每个分区以其上界命名（p20261019 存放 2026-10-19 之前、
+ * 上一个分区上界之后的数据），最后一个分区 pmax 兜底存放超出预建范围的数据。定时任务：
+ *
+ * - 预建分区：保证分区覆盖到当前时间之后 pigsty.partition.precreate-days 天，
+ *   新分区从（通常为空的）pmax 中拆出，不移动已有数据
+ * - 删除过期分区：上界早于保留期的分区整个删除（DROP PARTITION），只删除文件、不逐行删除，
+ *   不会像 DELETE 那样长时间锁表和产生大量 undo
+ *
+ * 各粒度的保留期分别配置（pigsty.retention.*-days，0 表示永久保留），删除以分区为单位，
+ * 实际保留的数据最多比保留期多一个分区宽度。
+ *
+ * 尚未分区的表在估算行数不超过 pigsty.partition.auto-convert-max-rows（默认 10000，
+ * 即只转换新库或几乎为空的表）时自动转换为分区表，执行前记录转换语句；转换需要重建整张表（ALGORITHM=COPY），
+ * 复制期间表被锁住，行数更多时只记录警告和转换语句，由运维在维护窗口执行。设为 -1 时从不自动转换。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class PartitionMaintenanceService {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionMaintenanceService.class);
+
+    private static final String CATCH_ALL = "pmax";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 分区宽度
+     */
+    public enum Interval {
+        DAY, MONTH, YEAR;
+
+        LocalDateTime floor(LocalDateTime time) {
+            LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+            return switch (this) {
+                case DAY -> day;
+                case MONTH -> day.withDayOfMonth(1);
+                case YEAR -> day.withDayOfYear(1);
+            };
+        }
+
+        LocalDateTime next(LocalDateTime bound) {
+            return switch (this) {
+                case DAY -> bound.plusDays(1);
+                case MONTH -> bound.plusMonths(1);
+                case YEAR -> bound.plusYears(1);
+            };
+        }
+    }
+
+    /**
+     * 按时间分区的表
+     */
+    public enum PartitionedTable {
+        RAW("environmental_data", "timestamp", Interval.DAY),
+        ROLLUP_1M("environmental_rollup_1m", "bucket_start", Interval.MONTH),
+        ROLLUP_1H("environmental_rollup_1h", "bucket_start", Interval.MONTH),
+        ROLLUP_1D("environmental_rollup_1d", "bucket_start", Interval.YEAR);
+
+        private final String table;
+        private final String column;
+        private final Interval interval;
+
+        PartitionedTable(String table, String column, Interval interval) {
+            this.table = table;
+            this.column = column;
+            this.interval = interval;
+        }
+
+        public String table() {
+            return table;
+        }
+
+        static PartitionedTable of(String table) {
+            for (PartitionedTable candidate : values()) {
+                if (candidate.table.equals(table)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一个分区
+     *
+     * @param name 分区名
+     * @param lessThan 上界（不含），兜底分区为 null
+     * @param rows 估算行数
+     */
+    public record PartitionInfo(String name, LocalDateTime lessThan, long rows) {
+    }
+
+    /**
+     * 一张表的分区状态
+     *
+     * @param table 表名
+     * @param retentionDays 保留天数，0 表示永久保留
+     * @param partitions 分区，按上界升序；尚未分区时为空
+     */
+    public record TableStatus(String table, int retentionDays, List<PartitionInfo> partitions) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 串行化维护（启动、定时任务和管理接口都可能触发），持锁期间执行 DDL
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    @Value("${pigsty.retention.raw-days:30}")
+    private int rawRetentionDays;
+
+    @Value("${pigsty.retention.rollup-1m-days:90}")
+    private int minuteRetentionDays;
+
+    @Value("${pigsty.retention.rollup-1h-days:730}")
+    private int hourRetentionDays;
+
+    @Value("${pigsty.retention.rollup-1d-days:0}")
+    private int dayRetentionDays;
+
+    /**
+     * 分区预建到当前时间之后的天数
+     */
+    @Value("${pigsty.partition.precreate-days:7}")
+    private int precreateDays;
+
+    /**
+     * 自动转换为分区表的估算行数上限
+     */
+    @Value("${pigsty.partition.auto-convert-max-rows:10000}")
+    private long autoConvertMaxRows;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        maintain();
+    }
+
+    /**
+     * 对所有分区表执行一次维护：未分区的表尝试转换，预建分区，删除过期分区
+     *
+     * 某张表失败不影响其他表，下个周期再试。
+     */
+    @Scheduled(cron = "${pigsty.partition.maintenance-cron:0 30 3 * * *}")
+    public void maintain() {
+        maintenanceLock.lock();
+        try {
+            maintainAll();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * 持有 maintenanceLock 时调用
+     */
+    private void maintainAll() {
+        LocalDateTime now = LocalDateTime.now();
+        for (PartitionedTable table : PartitionedTable.values()) {
+            try {
+                List<PartitionInfo> partitions = partitions(table);
+                if (partitions.isEmpty()) {
+                    convert(table, now);
+                    continue;
+                }
+                precreate(table, partitions, now);
+                dropExpired(table, partitions, now);
+            } catch (DataAccessException e) {
+                log.error("Partition maintenance of {} failed: {}", table.table, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 各分区表的当前状态
+     */
+    public List<TableStatus> status() {
+        List<TableStatus> result = new ArrayList<>();
+        for (PartitionedTable table : PartitionedTable.values()) {
+            result.add(new TableStatus(table.table, retentionDays(table), partitions(table)));
+        }
+        return result;
+    }
+
+    /**
+     * 某张表保留期的起点：早于该时间的数据可能已被删除；永久保留或不是分区表时返回 null
+     *
+     * @param table 表名
+     */
+    public LocalDateTime retainedSince(String table) {
+        PartitionedTable partitioned = PartitionedTable.of(table);
+        if (partitioned == null || retentionDays(partitioned) <= 0) {
+            return null;
+        }
+        return LocalDateTime.now().minusDays(retentionDays(partitioned));
+    }
+
+    private int retentionDays(PartitionedTable table) {
+        return switch (table) {
+            case RAW -> rawRetentionDays;
+            case ROLLUP_1M -> minuteRetentionDays;
+            case ROLLUP_1H -> hourRetentionDays;
+            case ROLLUP_1D -> dayRetentionDays;
+        };
+    }
+
+    private List<PartitionInfo> partitions(PartitionedTable table) {
+        return jdbcTemplate.query("""
+                SELECT partition_name, partition_description, table_rows FROM information_schema.partitions
+                WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL
+                ORDER BY partition_ordinal_position
+                """,
+                (rs, i) -> new PartitionInfo(rs.getString(1), parseBound(rs.getString(2)), rs.getLong(3)),
+                table.table);
+    }
+
+    private void convert(PartitionedTable table, LocalDateTime now) {
+        Long rows = jdbcTemplate.queryForObject("""
+                SELECT COALESCE(MAX(table_rows), 0) FROM information_schema.tables
+                WHERE table_schema = DATABASE() AND table_name = ?
+                """, Long.class, table.table);
+        LocalDateTime oldest = jdbcTemplate.queryForObject(
+                "SELECT MIN(" + table.column + ") FROM " + table.table, LocalDateTime.class);
+
+        // 第一个分区存放保留期起点（或最早数据）之前的全部数据，之后每个分区一个宽度
+        LocalDateTime start = oldest != null ? oldest : now;
+        LocalDateTime retainedSince = retainedSince(table.table);
+        if (retainedSince != null && retainedSince.isAfter(start)) {
+            start = retainedSince;
+        }
+        List<LocalDateTime> bounds = new ArrayList<>();
+        LocalDateTime horizon = horizon(table, now);
+        for (LocalDateTime bound = table.interval.next(table.interval.floor(start)); !bound.isAfter(horizon);
+             bound = table.interval.next(bound)) {
+            bounds.add(bound);
+        }
+
+        StringBuilder ddl = new StringBuilder("ALTER TABLE ").append(table.table);
+        if (table == PartitionedTable.RAW) {
+            // 分区表的每个唯一键都必须包含分区列
+            ddl.append(" MODIFY timestamp DATETIME(6) NOT NULL, DROP PRIMARY KEY, ADD PRIMARY KEY (id, timestamp)");
+        }
+        ddl.append(" PARTITION BY RANGE COLUMNS(").append(table.column).append(") (")
+                .append(partitionDefinitions(bounds)).append(')');
+
+        if (rows != null && rows > autoConvertMaxRows) {
+            log.warn("{} has about {} rows and is not partitioned; converting it rebuilds the whole table, "
+                    + "run this in a maintenance window (or with an online schema change tool): {}",
+                    table.table, rows, ddl);
+            return;
+        }
+        log.info("Partitioning {} (about {} rows), rebuilding the table: {}", table.table, rows, ddl);
+        long started = System.nanoTime();
+        jdbcTemplate.execute(ddl.toString());
+        log.info("Partitioned {} by {} into {} partitions in {} ms", table.table, table.column, bounds.size() + 1,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void precreate(PartitionedTable table, List<PartitionInfo> partitions, LocalDateTime now) {
+        LocalDateTime last = null;
+        boolean hasCatchAll = false;
+        for (PartitionInfo partition : partitions) {
+            if (partition.lessThan() == null) {
+                hasCatchAll = true;
+            } else if (last == null || partition.lessThan().isAfter(last)) {
+                last = partition.lessThan();
+            }
+        }
+        if (last == null) {
+            last = table.interval.floor(now);
+        }
+        List<LocalDateTime> bounds = new ArrayList<>();
+        LocalDateTime horizon = horizon(table, now);
+        for (LocalDateTime bound = table.interval.next(last); !bound.isAfter(horizon); bound = table.interval.next(bound)) {
+            bounds.add(bound);
+        }
+        if (bounds.isEmpty()) {
+            return;
+        }
+        if (hasCatchAll) {
+            jdbcTemplate.execute("ALTER TABLE " + table.table + " REORGANIZE PARTITION " + CATCH_ALL
+                    + " INTO (" + partitionDefinitions(bounds) + ")");
+        } else {
+            jdbcTemplate.execute("ALTER TABLE " + table.table + " ADD PARTITION ("
+                    + bounds.stream().map(PartitionMaintenanceService::partitionDefinition).collect(Collectors.joining(", "))
+                    + ")");
+        }
+        log.info("Created {} partitions of {} up to {}", bounds.size(), table.table, bounds.get(bounds.size() - 1));
+    }
+
+    private void dropExpired(PartitionedTable table, List<PartitionInfo> partitions, LocalDateTime now) {
+        int retentionDays = retentionDays(table);
+        if (retentionDays <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = now.minusDays(retentionDays);
+        List<PartitionInfo> expired = partitions.stream()
+                .filter(partition -> partition.lessThan() != null && !partition.lessThan().isAfter(cutoff))
+                .toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table.table + " DROP PARTITION "
+                + expired.stream().map(PartitionInfo::name).collect(Collectors.joining(", ")));
+        log.info("Dropped {} expired partitions of {} (about {} rows, retention {} days): {}",
+                expired.size(), table.table, expired.stream().mapToLong(PartitionInfo::rows).sum(), retentionDays,
+                expired.stream().map(PartitionInfo::name).toList());
+    }
+
+    /**
+     * 分区需要覆盖到的上界：当前时间加预建天数所在分区的上界
+     */
+    private LocalDateTime horizon(PartitionedTable table, LocalDateTime now) {
+        return table.interval.next(table.interval.floor(now.plusDays(precreateDays)));
+    }
+
+    /**
+     * 若干上界依次对应的分区定义，最后加上兜底分区
+     */
+    private static String partitionDefinitions(List<LocalDateTime> bounds) {
+        List<String> definitions = new ArrayList<>(bounds.size() + 1);
+        for (LocalDateTime bound : bounds) {
+            definitions.add(partitionDefinition(bound));
+        }
+        definitions.add("PARTITION " + CATCH_ALL + " VALUES LESS THAN (MAXVALUE)");
+        return String.join(", ", definitions);
+    }
+
+    private static String partitionDefinition(LocalDateTime bound) {
+        return "PARTITION p" + NAME_FORMAT.format(bound) + " VALUES LESS THAN ('" + BOUND_FORMAT.format(bound) + "')";
+    }
+
+    /**
+     * 解析 information_schema 中的分区上界，例如 '2026-10-19 00:00:00'；MAXVALUE 返回 null
+     */
+    private static LocalDateTime parseBound(String description) {
+        if (description == null || description.equalsIgnoreCase("MAXVALUE")) {
+            return null;
+        }
+        String value = description.replace("'", "").trim();
+        return LocalDateTime.parse(value.substring(0, Math.min(value.length(), 19)), BOUND_FORMAT);
+    }
+}
@@ -0,0 +1,153 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.repository.DeviceRepository;
+import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.util.ReadThroughCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 猪舍与设备缓存
+ *
+ * 猪舍和设备几乎每个请求都要读取（权限范围、告警检查、数据模拟），但一天只变化几次。
+ * 这里按以下维度缓存查询结果，未命中时从数据库加载：
+ *
+ * - 按ID查猪舍（不存在的猪舍同样缓存）
+ * - 全部猪舍
+ * - 按技术员查猪舍
+ * - 按猪舍查设备
+ *
+ * 修改猪舍或设备的地方调用 {@link #pigstyChanged(Long)} / {@link #devicesChanged(Long)} 使相关条目失效；
+ * 在事务中修改时提交后再失效一次（与 {@link ThresholdEngine#invalidate(Long)} 相同）。
+ * 设备的最后在线时间由 {@link HeartbeatService} 写回时直接更新到缓存的设备上，不使缓存失效。
+ *
+ * 返回的实体和列表被所有调用方共享，调用方不能修改（需要修改时从仓库重新读取）。
+ * 每个缓存的条目数上限为 pigsty.cache.max-entries，统计数据见 {@link #stats()}。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class PigstyCache {
+
+    private static final String ALL = "all";
+
+    private final PigstyRepository pigstyRepository;
+    private final DeviceRepository deviceRepository;
+    private final ReadThroughCache<Long, Optional<Pigsty>> pigstyById;
+    private final ReadThroughCache<String, List<Pigsty>> allPigsties;
+    private final ReadThroughCache<Long, List<Pigsty>> pigstiesByTechnician;
+    private final ReadThroughCache<Long, List<Device>> devicesByPigsty;
+
+    public PigstyCache(
+            PigstyRepository pigstyRepository,
+            DeviceRepository deviceRepository,
+            @Value("${pigsty.cache.max-entries:10000}") int maxEntries) {
+        this.pigstyRepository = pigstyRepository;
+        this.deviceRepository = deviceRepository;
+        this.pigstyById = new ReadThroughCache<>("pigstyById", maxEntries);
+        this.allPigsties = new ReadThroughCache<>("allPigsties", 1);
+        this.pigstiesByTechnician = new ReadThroughCache<>("pigstiesByTechnician", maxEntries);
+        this.devicesByPigsty = new ReadThroughCache<>("devicesByPigsty", maxEntries);
+    }
+
+    /**
+     * 按ID查猪舍
+     */
+    public Optional<Pigsty> findPigsty(Long pigstyId) {
+        return pigstyById.get(pigstyId, pigstyRepository::findById);
+    }
+
+    /**
+     * 全部猪舍
+     */
+    public List<Pigsty> allPigsties() {
+        return allPigsties.get(ALL, key -> List.copyOf(pigstyRepository.findAll()));
+    }
+
+    /**
+     * 某个技术员负责的猪舍
+     */
+    public List<Pigsty> pigstiesOfTechnician(Long technicianId) {
+        return pigstiesByTechnician.get(technicianId, id -> List.copyOf(pigstyRepository.findByTechnicianId(id)));
+    }
+
+    /**
+     * 某个猪舍的设备
+     */
+    public List<Device> devicesOfPigsty(Long pigstyId) {
+        return devicesByPigsty.get(pigstyId, id -> List.copyOf(deviceRepository.findByPigstyId(id)));
+    }
+
+    /**
+     * 猪舍被创建、修改或删除（负责的技术员可能变化，按技术员缓存的条目全部失效）
+     *
+     * @param pigstyId 猪舍ID
+     */
+    public void pigstyChanged(Long pigstyId) {
+        afterCommitToo(() -> {
+            pigstyById.invalidate(pigstyId);
+            allPigsties.invalidateAll();
+            pigstiesByTechnician.invalidateAll();
+            devicesByPigsty.invalidate(pigstyId);
+        });
+    }
+
+    /**
+     * 猪舍的设备被创建、修改、删除或改变了运行状态
+     *
+     * @param pigstyId 设备所属猪舍ID
+     */
+    public void devicesChanged(Long pigstyId) {
+        if (pigstyId == null) {
+            return;
+        }
+        afterCommitToo(() -> devicesByPigsty.invalidate(pigstyId));
+    }
+
+    /**
+     * 心跳写回数据库后，把最后在线时间同步到缓存的设备上（只往后推）
+     *
+     * @param lastSeen 设备ID → 已写回的心跳时间
+     */
+    void heartbeatsWritten(Map<Long, LocalDateTime> lastSeen) {
+        devicesByPigsty.forEach((pigstyId, devices) -> {
+            for (Device device : devices) {
+                LocalDateTime at = lastSeen.get(device.getId());
+                if (at != null && (device.getLastHeartbeat() == null || at.isAfter(device.getLastHeartbeat()))) {
+                    device.setLastHeartbeat(at);
+                }
+            }
+        });
+    }
+
+    /**
+     * 各缓存的统计数据
+     */
+    public Collection<ReadThroughCache.Stats> stats() {
+        return List.of(pigstyById.stats(), allPigsties.stats(), pigstiesByTechnician.stats(), devicesByPigsty.stats());
+    }
+
+    private static void afterCommitToo(Runnable invalidation) {
+        invalidation.run();
+        // 在事务中修改时，提交前被重新加载的条目读到的仍是旧数据，提交后需要再失效一次
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.EnvironmentalData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 业务指标（Micrometer），由 Actuator 在 /actuator/prometheus 暴露
+ *
+ * 所有计时器在启动时注册好，热路径上只调用 record / increment，不构造标签字符串：
+ *
+ * - pigsty.ingest.latency：一条数据从接收（入队或写入预写日志）到入库、告警检查和推送全部完成的时间
+ * - pigsty.db.save{kind}：写库时间，kind 为 readings（一批环境数据）、warning（新告警）、incidents（事件写回）
+ * - pigsty.warning.evaluation：一批数据的告警检查时间
+ * - pigsty.websocket.broadcast{type}：一条推送序列化并放入所有订阅会话队列的时间
+ * - pigsty.websocket.send：单个会话发送一条消息的时间
+ * - pigsty.readings{pigsty,metric} / pigsty.warnings{pigsty,metric}：按猪舍和指标计数的已处理数据和新告警，
+ *   每个猪舍第一次出现时注册一组计数器，之后按猪舍ID查表；只为 {@link PigstyCache} 中存在的猪舍注册
+ *   （上报数据中的猪舍ID来自设备，不能让任意ID在注册表中无限增加标签），猪舍删除时由 {@link #pigstyRemoved} 移除
+ *
+ * 队列深度和会话数等量规由各组件通过 {@link #gauge} 注册，抓取时才计算。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Component
+public class PigstyMetrics {
+
+    private static final Device.MetricType[] METRICS = Device.MetricType.values();
+
+    private final MeterRegistry registry;
+    private final PigstyCache pigstyCache;
+    private final Timer ingestLatency;
+    private final Timer readingsSave;
+    private final Timer warningSave;
+    private final Timer incidentsSave;
+    private final Timer warningEvaluation;
+    private final Timer dataBroadcast;
+    private final Timer warningBroadcast;
+    private final Timer sessionSend;
+
+    /**
+     * 猪舍ID → 按 {@link Device.MetricType} 序号排列的计数器
+     */
+    private final ConcurrentHashMap<Long, Counter[]> readingsByPigsty = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Counter[]> warningsByPigsty = new ConcurrentHashMap<>();
+
+    public PigstyMetrics(MeterRegistry registry, PigstyCache pigstyCache) {
+        this.registry = registry;
+        this.pigstyCache = pigstyCache;
+        this.ingestLatency = timer("pigsty.ingest.latency", "接收到处理完成的端到端延迟", Duration.ofSeconds(30))
+                .register(registry);
+        this.readingsSave = saveTimer("readings");
+        this.warningSave = saveTimer("warning");
+        this.incidentsSave = saveTimer("incidents");
+        this.warningEvaluation = timer("pigsty.warning.evaluation", "一批数据的告警检查时间", Duration.ofSeconds(1))
+                .register(registry);
+        this.dataBroadcast = broadcastTimer("data-update");
+        this.warningBroadcast = broadcastTimer("warning");
+        this.sessionSend = timer("pigsty.websocket.send", "单个会话发送一条消息的时间", Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    private Timer saveTimer(String kind) {
+        return timer("pigsty.db.save", "写库时间", Duration.ofSeconds(10)).tag("kind", kind).register(registry);
+    }
+
+    private Timer broadcastTimer(String type) {
+        return timer("pigsty.websocket.broadcast", "推送扇出时间", Duration.ofSeconds(1)).tag("type", type)
+                .register(registry);
+    }
+
+    private static Timer.Builder timer(String name, String description, Duration max) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(max);
+    }
+
+    /**
+     * 注册一个量规，抓取时调用 value 取值
+     */
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    public Timer ingestLatency() {
+        return ingestLatency;
+    }
+
+    public Timer readingsSave() {
+        return readingsSave;
+    }
+
+    public Timer warningSave() {
+        return warningSave;
+    }
+
+    public Timer incidentsSave() {
+        return incidentsSave;
+    }
+
+    public Timer warningEvaluation() {
+        return warningEvaluation;
+    }
+
+    public Timer dataBroadcast() {
+        return dataBroadcast;
+    }
+
+    public Timer warningBroadcast() {
+        return warningBroadcast;
+    }
+
+    public Timer sessionSend() {
+        return sessionSend;
+    }
+
+    /**
+     * 已处理一条数据，按其中不为空的指标计数；没有猪舍ID或猪舍不存在的数据不计
+     */
+    public void readingProcessed(EnvironmentalData data) {
+        if (data.getPigstyId() == null) {
+            return;
+        }
+        Counter[] counters = counters(readingsByPigsty, "pigsty.readings", "已处理的数据条数", data.getPigstyId());
+        if (counters == null) {
+            return;
+        }
+        for (Device.MetricType metric : METRICS) {
+            if (ThresholdEngine.valueOf(data, metric) != null) {
+                counters[metric.ordinal()].increment();
+            }
+        }
+    }
+
+    /**
+     * 某个猪舍的一项指标打开了新的告警事件
+     */
+    public void warningCreated(long pigstyId, Device.MetricType metric) {
+        Counter[] counters = counters(warningsByPigsty, "pigsty.warnings", "新告警数", pigstyId);
+        if (counters != null) {
+            counters[metric.ordinal()].increment();
+        }
+    }
+
+    /**
+     * 猪舍被删除，从注册表中移除它的计数器（应在猪舍缓存失效之后调用，之后的数据不会重新注册）
+     *
+     * @param pigstyId 猪舍ID
+     */
+    public void pigstyRemoved(Long pigstyId) {
+        remove(readingsByPigsty.remove(pigstyId));
+        remove(warningsByPigsty.remove(pigstyId));
+    }
+
+    private void remove(Counter[] counters) {
+        if (counters == null) {
+            return;
+        }
+        for (Counter counter : counters) {
+            registry.remove(counter);
+        }
+    }
+
+    /**
+     * 猪舍的一组计数器，猪舍不存在时返回 null
+     */
+    private Counter[] counters(ConcurrentHashMap<Long, Counter[]> byPigsty, String name, String description,
+                               Long pigstyId) {
+        Counter[] counters = byPigsty.get(pigstyId);
+        if (counters != null) {
+            return counters;
+        }
+        if (pigstyCache.findPigsty(pigstyId).isEmpty()) {
+            return null;
+        }
+        return byPigsty.computeIfAbsent(pigstyId, id -> {
+            Counter[] created = new Counter[METRICS.length];
+            for (Device.MetricType metric : METRICS) {
+                created[metric.ordinal()] = Counter.builder(name)
+                        .description(description)
+                        .tag("pigsty", String.valueOf(id))
+                        .tag("metric", metric.name())
+                        .register(registry);
+            }
+            return created;
+        });
+    }
+}
@@ -0,0 +1,690 @@
+package com.pigsty.backend.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.pigsty.backend.config.PigstyIdMigration;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.repository.DataRepository;
+import com.pigsty.backend.repository.ReadingStore;
+import com.pigsty.backend.util.Lttb;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 环境数据汇总（降采样）服务
+ *
+ * 按 1 分钟、1 小时、1 天三种粒度维护每个猪舍各项指标的最小值、最大值、总和与样本数：
+ *
+ * - 写入：写入管道在数据入库后调用 {@link #record(List)}，数据先累加到内存中的桶，
+ *   由定时任务按主键 upsert 合并到汇总表，每个桶每个刷新周期只写一次
+ * - 读取：{@link #series} 按请求的点数选择满足要求的最粗粒度，
+ *   再把相邻的桶合并到不超过请求点数；时间跨度小到连 1 分钟粒度都嫌粗时，
+ *   读取原始数据并用 LTTB 降采样到请求点数；起始时间已超出所选粒度的保留期时改用更粗的粒度。
+ *   时间序列存储（{@link ReadingStore}）可用时原始数据从中读取，不经过 MySQL
+ * - 回填：首次启动时汇总表为空，后台线程按主键区间分批用 environmental_data 中已有的数据生成汇总，
+ *   每批一个小事务，进度记录在 rollup_backfill 表中，中途重启后继续（见 {@link #startBackfill}）。
+ *   回填完成之前，早于启动时间的时段查询结果不完整
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class RollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final Resolution[] COARSEST_FIRST = {Resolution.DAY, Resolution.HOUR, Resolution.MINUTE};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataRepository dataRepository;
+    private final PartitionMaintenanceService partitionMaintenance;
+    private final ReadingStore readingStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Resolution, String> upsertSql = new EnumMap<>(Resolution.class);
+
+    /**
+     * 尚未写入汇总表的桶。写入方持读锁累加，刷新时持写锁整体换出
+     */
+    private final ReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<BucketKey, Bucket> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 串行化刷新（定时任务与关闭时的刷新），持锁期间执行批量写入
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * 单次查询最多返回的点数
+     */
+    @Value("${pigsty.data.series.max-points:2000}")
+    private int maxPoints;
+
+    /**
+     * 原始粒度查询最多读取的行数
+     */
+    @Value("${pigsty.data.series.raw-max-rows:200000}")
+    private int rawMaxRows;
+
+    /**
+     * 回填时每批的主键区间宽度
+     */
+    @Value("${pigsty.rollup.backfill.chunk-size:20000}")
+    private int backfillChunkSize;
+
+    /**
+     * 回填批次之间的暂停（毫秒）
+     */
+    @Value("${pigsty.rollup.backfill.pause-ms:50}")
+    private long backfillPauseMillis;
+
+    private volatile boolean stopped;
+
+    public RollupService(JdbcTemplate jdbcTemplate, DataRepository dataRepository,
+                         PartitionMaintenanceService partitionMaintenance, ReadingStore readingStore,
+                         TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataRepository = dataRepository;
+        this.partitionMaintenance = partitionMaintenance;
+        this.readingStore = readingStore;
+        this.transactionTemplate = transactionTemplate;
+        for (Resolution resolution : Resolution.values()) {
+            upsertSql.put(resolution, buildUpsertSql(resolution.table()));
+        }
+    }
+
+    /**
+     * 汇总粒度
+     */
+    public enum Resolution {
+        MINUTE("1m", "environmental_rollup_1m", ChronoUnit.MINUTES),
+        HOUR("1h", "environmental_rollup_1h", ChronoUnit.HOURS),
+        DAY("1d", "environmental_rollup_1d", ChronoUnit.DAYS);
+
+        private final String label;
+        private final String table;
+        private final ChronoUnit unit;
+
+        Resolution(String label, String table, ChronoUnit unit) {
+            this.label = label;
+            this.table = table;
+            this.unit = unit;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public String table() {
+            return table;
+        }
+
+        public long seconds() {
+            return unit.getDuration().getSeconds();
+        }
+
+        LocalDateTime bucketStart(LocalDateTime timestamp) {
+            return timestamp.truncatedTo(unit);
+        }
+    }
+
+    /**
+     * 汇总的指标：JSON 字段名、汇总表列名前缀，以及时间序列存储中对应的指标（同时提供取值方法）
+     */
+    private enum Metric {
+        TEMPERATURE("temperature", "temperature", ReadingStore.Metric.TEMPERATURE),
+        HUMIDITY("humidity", "humidity", ReadingStore.Metric.HUMIDITY),
+        AMMONIA_LEVEL("ammoniaLevel", "ammonia", ReadingStore.Metric.AMMONIA_LEVEL),
+        LIGHT("light", "light", ReadingStore.Metric.LIGHT);
+
+        private final String field;
+        private final String column;
+        private final ReadingStore.Metric stored;
+
+        Metric(String field, String column, ReadingStore.Metric stored) {
+            this.field = field;
+            this.column = column;
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * 查询结果
+     *
+     * @param resolution 实际使用的粒度：1m、1h、1d 或 raw
+     * @param bucketSeconds 每个点代表的时间宽度（秒），原始粒度为 0
+     * @param metrics 各指标的序列，键为指标字段名
+     */
+    public record Series(String resolution, long bucketSeconds, Map<String, MetricSeries> metrics) {
+    }
+
+    /**
+     * 单个指标的序列，按时间升序；原始粒度只有 avg（即原始值），没有 min / max / count
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record MetricSeries(List<LocalDateTime> timestamps, double[] avg, double[] min, double[] max, long[] count) {
+    }
+
+    /**
+     * 记录一批已入库的环境数据
+     *
+     * @param dataList 已入库的环境数据
+     */
+    public void record(List<EnvironmentalData> dataList) {
+        pendingLock.readLock().lock();
+        try {
+            for (EnvironmentalData data : dataList) {
+                Long pigstyId = data.getPigstyId();
+                if (pigstyId == null || data.getTimestamp() == null) {
+                    continue;
+                }
+                for (Resolution resolution : Resolution.values()) {
+                    BucketKey key = new BucketKey(resolution, pigstyId, resolution.bucketStart(data.getTimestamp()));
+                    pending.computeIfAbsent(key, k -> new Bucket()).add(data);
+                }
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把内存中累加的桶合并到汇总表
+     *
+     * 每个粒度的桶在一个事务中写入；某个粒度写入失败时整批回滚，该粒度的桶放回内存，下个周期再试。
+     * 累加式的 upsert 不是幂等的，部分写入后再重试会重复累加，因此不能省掉事务。
+     */
+    @Scheduled(fixedDelayString = "${pigsty.rollup.flush-interval-ms:10000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            mergeDrained();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 持有 flushLock 时调用
+     */
+    private void mergeDrained() {
+        Map<BucketKey, Bucket> drained;
+        pendingLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            drained = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            pendingLock.writeLock().unlock();
+        }
+
+        Map<Resolution, List<Map.Entry<BucketKey, Bucket>>> byResolution = new EnumMap<>(Resolution.class);
+        for (Map.Entry<BucketKey, Bucket> entry : drained.entrySet()) {
+            byResolution.computeIfAbsent(entry.getKey().resolution(), r -> new ArrayList<>()).add(entry);
+        }
+        byResolution.forEach((resolution, entries) -> {
+            List<Object[]> rows = new ArrayList<>(entries.size());
+            for (Map.Entry<BucketKey, Bucket> entry : entries) {
+                rows.add(entry.getValue().toRow(entry.getKey()));
+            }
+            try {
+                transactionTemplate.executeWithoutResult(
+                        status -> jdbcTemplate.batchUpdate(upsertSql.get(resolution), rows));
+            } catch (DataAccessException | TransactionException e) {
+                log.warn("Flushing {} {} rollup buckets failed, will retry: {}",
+                        entries.size(), resolution.label(), e.getMessage());
+                restore(entries);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        stopped = true;
+        flush();
+    }
+
+    private void restore(List<Map.Entry<BucketKey, Bucket>> entries) {
+        pendingLock.readLock().lock();
+        try {
+            for (Map.Entry<BucketKey, Bucket> entry : entries) {
+                pending.computeIfAbsent(entry.getKey(), k -> new Bucket()).merge(entry.getValue());
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询某个猪舍在 [from, to) 内的降采样序列
+     *
+     * @param pigstyId 猪舍ID
+     * @param from 起始时间（包含）
+     * @param to 截止时间（不包含）
+     * @param points 期望的最多点数，会被限制在 3 到最大点数之间
+     * @return 各指标的序列
+     */
+    public Series series(Long pigstyId, LocalDateTime from, LocalDateTime to, int points) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        int target = Math.max(3, Math.min(points, maxPoints));
+        long rangeSeconds = Duration.between(from, to).getSeconds();
+        long targetSeconds = Math.max(1, Math.ceilDiv(rangeSeconds, target));
+
+        Resolution chosen = null;
+        for (Resolution resolution : COARSEST_FIRST) {
+            if (resolution.seconds() <= targetSeconds) {
+                chosen = resolution;
+                break;
+            }
+        }
+        // 超出保留期的细粒度数据已被删除，改用仍保留该时段的更粗粒度
+        if (chosen == null && expired("environmental_data", from) && !readingStore.covers(pigstyId, from, to)) {
+            chosen = Resolution.MINUTE;
+        }
+        while (chosen != null && chosen != Resolution.DAY && expired(chosen.table(), from)) {
+            chosen = Resolution.values()[chosen.ordinal() + 1];
+        }
+        if (chosen == null) {
+            return rawSeries(pigstyId, from, to, target);
+        }
+
+        // 输出的每个点取所选粒度的整数倍宽度，保证点数不超过 target
+        long width = Math.ceilDiv(targetSeconds, chosen.seconds()) * chosen.seconds();
+        LocalDateTime lowerBound = chosen.bucketStart(from);
+        TreeMap<LocalDateTime, Bucket> merged = new TreeMap<>();
+        jdbcTemplate.query(
+                "SELECT * FROM " + chosen.table() + " WHERE pigsty_id = ? AND bucket_start >= ? AND bucket_start < ?",
+                rs -> {
+                    LocalDateTime bucketStart = rs.getObject("bucket_start", LocalDateTime.class);
+                    merged.computeIfAbsent(align(bucketStart, width), k -> new Bucket()).merge(Bucket.fromRow(rs));
+                },
+                pigstyId, lowerBound, to);
+
+        // 叠加尚未刷新到汇总表的桶
+        pendingLock.readLock().lock();
+        try {
+            for (Map.Entry<BucketKey, Bucket> entry : pending.entrySet()) {
+                BucketKey key = entry.getKey();
+                if (key.resolution() == chosen && key.pigstyId() == pigstyId
+                        && !key.bucketStart().isBefore(lowerBound) && key.bucketStart().isBefore(to)) {
+                    merged.computeIfAbsent(align(key.bucketStart(), width), k -> new Bucket()).merge(entry.getValue());
+                }
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+
+        Map<String, MetricSeries> metrics = new LinkedHashMap<>();
+        for (int m = 0; m < METRICS.length; m++) {
+            List<LocalDateTime> timestamps = new ArrayList<>(merged.size());
+            double[] avg = new double[merged.size()];
+            double[] min = new double[merged.size()];
+            double[] max = new double[merged.size()];
+            long[] count = new long[merged.size()];
+            int n = 0;
+            for (Map.Entry<LocalDateTime, Bucket> entry : merged.entrySet()) {
+                Bucket bucket = entry.getValue();
+                if (bucket.count[m] == 0) {
+                    continue;
+                }
+                timestamps.add(entry.getKey());
+                avg[n] = bucket.sum[m] / bucket.count[m];
+                min[n] = bucket.min[m];
+                max[n] = bucket.max[m];
+                count[n] = bucket.count[m];
+                n++;
+            }
+            if (n > 0) {
+                metrics.put(METRICS[m].field, new MetricSeries(timestamps,
+                        Arrays.copyOf(avg, n), Arrays.copyOf(min, n),
+                        Arrays.copyOf(max, n), Arrays.copyOf(count, n)));
+            }
+        }
+        return new Series(chosen.label(), width, metrics);
+    }
+
+    private Series rawSeries(Long pigstyId, LocalDateTime from, LocalDateTime to, int target) {
+        if (readingStore.covers(pigstyId, from, to)) {
+            return storedRawSeries(pigstyId, from, to, target);
+        }
+        List<Object[]> rows = dataRepository.findReadingsBetween(
+                pigstyId, from, to, Limit.of(rawMaxRows));
+        LocalDateTime[] timestamps = new LocalDateTime[rows.size()];
+        long[] x = new long[rows.size()];
+        double[] y = new double[rows.size()];
+
+        Map<String, MetricSeries> metrics = new LinkedHashMap<>();
+        for (int m = 0; m < METRICS.length; m++) {
+            int n = 0;
+            for (Object[] row : rows) {
+                Double value = (Double) row[m + 1];
+                if (value == null || value.isNaN()) {
+                    continue;
+                }
+                timestamps[n] = (LocalDateTime) row[0];
+                x[n] = timestamps[n].toInstant(ZoneOffset.UTC).toEpochMilli();
+                y[n] = value;
+                n++;
+            }
+            if (n == 0) {
+                continue;
+            }
+            int[] selected = Lttb.select(x, y, n, target);
+            List<LocalDateTime> selectedTimestamps = new ArrayList<>(selected.length);
+            double[] values = new double[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                selectedTimestamps.add(timestamps[selected[i]]);
+                values[i] = y[selected[i]];
+            }
+            metrics.put(METRICS[m].field, new MetricSeries(selectedTimestamps, values, null, null, null));
+        }
+        return new Series("raw", 0, metrics);
+    }
+
+    /**
+     * 从时间序列存储读取原始数据，每项指标最多读取原始粒度的行数上限个点
+     */
+    private Series storedRawSeries(long pigstyId, LocalDateTime from, LocalDateTime to, int target) {
+        Map<String, MetricSeries> metrics = new LinkedHashMap<>();
+        PointBuffer points = new PointBuffer();
+        for (Metric metric : METRICS) {
+            points.size = 0;
+            readingStore.scan(pigstyId, metric.stored, from, to, rawMaxRows, points);
+            if (points.size == 0) {
+                continue;
+            }
+            int[] selected = Lttb.select(points.x, points.y, points.size, target);
+            List<LocalDateTime> selectedTimestamps = new ArrayList<>(selected.length);
+            double[] values = new double[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                selectedTimestamps.add(ReadingStore.fromEpochMicros(points.x[selected[i]]));
+                values[i] = points.y[selected[i]];
+            }
+            metrics.put(metric.field, new MetricSeries(selectedTimestamps, values, null, null, null));
+        }
+        return new Series("raw", 0, metrics);
+    }
+
+    /**
+     * 汇总表为空时（或上次回填尚未完成时），在后台用已有的原始数据生成汇总
+     *
+     * 需要回填的主键上限在启动时确定：更大的主键是之后写入的数据，由 {@link #record} 实时汇总，
+     * 不会被重复计入。后台线程按主键区间分批执行 INSERT ... SELECT ... GROUP BY ... ON DUPLICATE KEY UPDATE，
+     * 直接从原始数据生成三种粒度的桶并与已有的桶合并（同一个桶可能跨越多批）；
+     * 每批的三条语句和进度更新在同一个事务中，重启后从记录的进度继续，不会重复累加。
+     * 批次之间暂停一会儿，把 I/O 让给正常的读写（pigsty.rollup.backfill.chunk-size、pigsty.rollup.backfill.pause-ms）。
+     */
+    @PostConstruct
+    public void startBackfill() {
+        List<Map<String, Object>> progress = jdbcTemplate.queryForList(
+                "SELECT next_id, last_id FROM rollup_backfill WHERE id = 1");
+        long nextId;
+        long lastId;
+        if (progress.isEmpty()) {
+            List<Integer> existing = jdbcTemplate.queryForList(
+                    "SELECT 1 FROM " + Resolution.MINUTE.table() + " LIMIT 1", Integer.class);
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "SELECT COALESCE(MIN(id), 1) AS lo, COALESCE(MAX(id), 0) AS hi FROM environmental_data");
+            nextId = ((Number) range.get("lo")).longValue();
+            lastId = ((Number) range.get("hi")).longValue();
+            if (!existing.isEmpty()) {
+                // 汇总表已有数据：此前已经回填过，只记录为已完成
+                nextId = lastId + 1;
+            }
+            jdbcTemplate.update("INSERT INTO rollup_backfill (id, next_id, last_id) VALUES (1, ?, ?)", nextId, lastId);
+        } else {
+            nextId = ((Number) progress.get(0).get("next_id")).longValue();
+            lastId = ((Number) progress.get(0).get("last_id")).longValue();
+        }
+        if (nextId > lastId) {
+            return;
+        }
+
+        long from = nextId;
+        log.info("Backfilling rollup tables from environmental_data ids {}..{} in the background", from, lastId);
+        Thread.ofVirtual().name("rollup-backfill").start(() -> {
+            try {
+                backfill(from, lastId);
+            } catch (Exception e) {
+                log.error("Rollup backfill failed, will resume on next start: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    private void backfill(long from, long lastId) throws InterruptedException {
+        int failures = 0;
+        long nextReport = System.nanoTime();
+        while (from <= lastId) {
+            if (stopped) {
+                log.info("Rollup backfill interrupted at id {}, will resume on next start", from);
+                return;
+            }
+            long to = Math.min(from + backfillChunkSize, lastId + 1);
+            try {
+                backfillChunk(from, to);
+                failures = 0;
+                from = to;
+            } catch (DataAccessException | TransactionException e) {
+                // 与定时刷新写入同一批桶时可能发生死锁，整批已回滚，稍后重试
+                if (++failures >= 3) {
+                    throw e;
+                }
+                log.warn("Rollup backfill of ids {}..{} failed, retrying: {}", from, to - 1, e.getMessage());
+            }
+            if (System.nanoTime() >= nextReport) {
+                log.info("Backfilling rollup tables: id {} of {}", from, lastId);
+                nextReport = System.nanoTime() + 10_000_000_000L;
+            }
+            if (backfillPauseMillis > 0) {
+                Thread.sleep(backfillPauseMillis);
+            }
+        }
+        log.info("Rollup tables backfilled from environmental_data up to id {}", lastId);
+    }
+
+    private void backfillChunk(long from, long to) {
+        // 猪舍ID列迁移（PigstyIdMigration）尚未完成时，未回填的行以旧的字符串列为准；迁移可能在回填期间完成，每批重新检查
+        String pigstyId = PigstyIdMigration.hasLegacyColumn(jdbcTemplate, "environmental_data")
+                ? "COALESCE(pigsty_ref, IF(pigsty_id REGEXP '^[0-9]+$', CAST(pigsty_id AS UNSIGNED), NULL))"
+                : "pigsty_ref";
+        StringBuilder columns = new StringBuilder("pigsty_id, bucket_start");
+        StringBuilder aggregates = new StringBuilder();
+        for (Metric metric : METRICS) {
+            String c = metric.column;
+            String raw = metric == Metric.AMMONIA_LEVEL ? "ammonia_level" : c;
+            columns.append(String.format(", %1$s_min, %1$s_max, %1$s_sum, %1$s_count", c));
+            aggregates.append(String.format(", MIN(%1$s), MAX(%1$s), SUM(%1$s), COUNT(%1$s)", raw));
+        }
+        Map<Resolution, String> bucketStart = Map.of(
+                Resolution.MINUTE, "DATE_FORMAT(timestamp, '%Y-%m-%d %H:%i:00')",
+                Resolution.HOUR, "DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00')",
+                Resolution.DAY, "DATE(timestamp)");
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Resolution resolution : Resolution.values()) {
+                jdbcTemplate.update("INSERT INTO " + resolution.table() + " (" + columns + ")"
+                        + " SELECT " + pigstyId + ", " + bucketStart.get(resolution) + aggregates
+                        + " FROM environmental_data WHERE id >= ? AND id < ?"
+                        + " AND " + pigstyId + " IS NOT NULL AND timestamp IS NOT NULL"
+                        + " GROUP BY 1, 2 ON DUPLICATE KEY UPDATE " + mergeClause(), from, to);
+            }
+            jdbcTemplate.update("UPDATE rollup_backfill SET next_id = ? WHERE id = 1", to);
+        });
+    }
+
+    /**
+     * 按主键合并的 upsert：min / max 取两者中的极值（任一方为空时取另一方），sum 与 count 累加
+     */
+    private static String buildUpsertSql(String table) {
+        StringBuilder columns = new StringBuilder("pigsty_id, bucket_start");
+        StringBuilder placeholders = new StringBuilder("?, ?");
+        for (Metric metric : METRICS) {
+            columns.append(String.format(", %1$s_min, %1$s_max, %1$s_sum, %1$s_count", metric.column));
+            placeholders.append(", ?, ?, ?, ?");
+        }
+        return "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ")"
+                + " ON DUPLICATE KEY UPDATE " + mergeClause();
+    }
+
+    /**
+     * upsert 的合并子句，VALUES(列) 为要合并进来的桶
+     */
+    private static String mergeClause() {
+        StringBuilder updates = new StringBuilder();
+        for (Metric metric : METRICS) {
+            String c = metric.column;
+            if (!updates.isEmpty()) {
+                updates.append(", ");
+            }
+            updates.append(String.format(
+                    "%1$s_min = LEAST(COALESCE(%1$s_min, VALUES(%1$s_min)), COALESCE(VALUES(%1$s_min), %1$s_min)), "
+                    + "%1$s_max = GREATEST(COALESCE(%1$s_max, VALUES(%1$s_max)), COALESCE(VALUES(%1$s_max), %1$s_max)), "
+                    + "%1$s_sum = COALESCE(%1$s_sum + VALUES(%1$s_sum), %1$s_sum, VALUES(%1$s_sum)), "
+                    + "%1$s_count = %1$s_count + VALUES(%1$s_count)", c));
+        }
+        return updates.toString();
+    }
+
+    private boolean expired(String table, LocalDateTime from) {
+        LocalDateTime retainedSince = partitionMaintenance.retainedSince(table);
+        return retainedSince != null && from.isBefore(retainedSince);
+    }
+
+    private static LocalDateTime align(LocalDateTime timestamp, long widthSeconds) {
+        long epochSecond = timestamp.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochSecond, widthSeconds) * widthSeconds, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * 扫描时间序列存储得到的点（时间为纪元微秒），数组按需扩容
+     */
+    private static final class PointBuffer implements ReadingStore.PointConsumer {
+        long[] x = new long[1024];
+        double[] y = new double[1024];
+        int size;
+
+        @Override
+        public void accept(long epochMicros, double value) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = epochMicros;
+            y[size] = value;
+            size++;
+        }
+    }
+
+    private record BucketKey(Resolution resolution, long pigstyId, LocalDateTime bucketStart) {
+    }
+
+    /**
+     * 单个时间桶内各指标的累计值
+     */
+    private static final class Bucket {
+
+        private final double[] min = new double[METRICS.length];
+        private final double[] max = new double[METRICS.length];
+        private final double[] sum = new double[METRICS.length];
+        private final long[] count = new long[METRICS.length];
+
+        synchronized void add(EnvironmentalData data) {
+            for (int m = 0; m < METRICS.length; m++) {
+                Double value = METRICS[m].stored.read(data);
+                if (value != null && !value.isNaN()) {
+                    accumulate(m, value, value, value, 1);
+                }
+            }
+        }
+
+        void merge(Bucket other) {
+            double[] otherMin;
+            double[] otherMax;
+            double[] otherSum;
+            long[] otherCount;
+            synchronized (other) {
+                otherMin = other.min.clone();
+                otherMax = other.max.clone();
+                otherSum = other.sum.clone();
+                otherCount = other.count.clone();
+            }
+            synchronized (this) {
+                for (int m = 0; m < METRICS.length; m++) {
+                    accumulate(m, otherMin[m], otherMax[m], otherSum[m], otherCount[m]);
+                }
+            }
+        }
+
+        private void accumulate(int m, double minValue, double maxValue, double sumValue, long countValue) {
+            if (countValue == 0) {
+                return;
+            }
+            if (count[m] == 0) {
+                min[m] = minValue;
+                max[m] = maxValue;
+            } else {
+                min[m] = Math.min(min[m], minValue);
+                max[m] = Math.max(max[m], maxValue);
+            }
+            sum[m] += sumValue;
+            count[m] += countValue;
+        }
+
+        synchronized Object[] toRow(BucketKey key) {
+            Object[] row = new Object[2 + METRICS.length * 4];
+            row[0] = key.pigstyId();
+            row[1] = key.bucketStart();
+            for (int m = 0; m < METRICS.length; m++) {
+                boolean empty = count[m] == 0;
+                row[2 + m * 4] = empty ? null : min[m];
+                row[3 + m * 4] = empty ? null : max[m];
+                row[4 + m * 4] = empty ? null : sum[m];
+                row[5 + m * 4] = count[m];
+            }
+            return row;
+        }
+
+        static Bucket fromRow(ResultSet rs) throws SQLException {
+            Bucket bucket = new Bucket();
+            for (int m = 0; m < METRICS.length; m++) {
+                String c = METRICS[m].column;
+                long rowCount = rs.getLong(c + "_count");
+                if (rowCount > 0) {
+                    bucket.accumulate(m, rs.getDouble(c + "_min"), rs.getDouble(c + "_max"),
+                            rs.getDouble(c + "_sum"), rowCount);
+                }
+            }
+            return bucket;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 模拟环境数据的生成规则
+ *
+ * 以猪舍阈值的中点为基准加高斯噪声，约 5% 的读数越过上限、5% 越过下限，保留两位小数。
+ * 随机数源由调用方传入：定时模拟器使用共享的随机数，负载生成器每个分片使用各自的 SplittableRandom，
+ * 分片之间互不争用，且同一种子可以复现同一串读数。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class SimulatedReadings {
+
+    private SimulatedReadings() {
+    }
+
+    /**
+     * 为一个猪舍生成一条环境数据
+     *
+     * @param pigsty 猪舍，用于取ID和阈值
+     * @param random 随机数源
+     * @return 环境数据（未设置时间戳，由入库时填充）
+     */
+    public static EnvironmentalData create(Pigsty pigsty, RandomGenerator random) {
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId(pigsty.getId());
+
+        data.setTemperature(generateMetric(random,
+                midpoint(pigsty.getTempThresholdLow(), pigsty.getTempThresholdHigh(), 24.0),
+                1.5,
+                pigsty.getTempThresholdLow(),
+                pigsty.getTempThresholdHigh()));
+
+        data.setHumidity(generateMetric(random,
+                midpoint(pigsty.getHumidityThresholdLow(), pigsty.getHumidityThresholdHigh(), 60.0),
+                3.0,
+                pigsty.getHumidityThresholdLow(),
+                pigsty.getHumidityThresholdHigh()));
+
+        data.setAmmoniaLevel(generateMetric(random,
+                midpoint(null, pigsty.getAmmoniaThresholdHigh(), 15.0),
+                2.0,
+                null,
+                pigsty.getAmmoniaThresholdHigh()));
+
+        data.setLight(generateMetric(random,
+                midpoint(pigsty.getLightThresholdLow(), pigsty.getLightThresholdHigh(), 300.0),
+                15.0,
+                pigsty.getLightThresholdLow(),
+                pigsty.getLightThresholdHigh()));
+
+        return data;
+    }
+
+    private static double generateMetric(RandomGenerator random, double base, double spread, Double low, Double high) {
+        double value = base + random.nextGaussian() * spread;
+
+        double chance = random.nextDouble();
+        if (high != null && chance < 0.05) {
+            value = high + 1.0 + random.nextDouble() * 3.0;
+        } else if (low != null && chance > 0.95) {
+            value = Math.max(0.0, low - 1.0 - random.nextDouble() * 3.0);
+        }
+
+        return roundToTwo(Math.max(0.0, value));
+    }
+
+    private static double midpoint(Double low, Double high, double fallback) {
+        if (low != null && high != null) {
+            return (low + high) / 2.0;
+        }
+        if (low != null) {
+            return low + 2.0;
+        }
+        if (high != null) {
+            return Math.max(0.0, high - 2.0);
+        }
+        return fallback;
+    }
+
+    private static double roundToTwo(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
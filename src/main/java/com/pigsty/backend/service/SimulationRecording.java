@@ -0,0 +1,275 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.EnvironmentalData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 模拟器录制文件
+ *
+ * 紧凑的二进制格式，按时间顺序保存模拟器产生的事件（环境读数和注入的设备故障），用于在不同版本之间回放完全相同的输入：
+ *
+ * <pre>
+ * 文件头：魔数 "PGSR" | 版本（1 字节）| 是否有种子（1 字节）| 种子（8 字节）| 录制开始时间（毫秒，8 字节）
+ * 事件：  类型（1 字节：1 读数，2 故障）| 距上一事件的毫秒数（变长整数）| 事件内容
+ * 读数：  猪舍ID（变长整数）| 指标存在位（1 字节：温度、湿度、氨气、光照）| 各指标 ×100 后的 zigzag 变长整数
+ * 故障：  设备ID（变长整数）
+ * </pre>
+ *
+ * 模拟器生成的指标都保留两位小数，×100 后取整不丢失精度；一条读数通常只占 10 余字节。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class SimulationRecording {
+
+    private static final byte[] MAGIC = {'P', 'G', 'S', 'R'};
+    private static final int VERSION = 1;
+    private static final int TAG_READING = 1;
+    private static final int TAG_FAULT = 2;
+
+    private SimulationRecording() {
+    }
+
+    /**
+     * 在录制目录中解析录制文件名
+     *
+     * @param dir 录制目录
+     * @param name 文件名，不能包含目录
+     * @return 录制文件路径
+     * @throws IllegalArgumentException 文件名为空或试图指向录制目录之外
+     */
+    public static Path resolve(Path dir, String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("file must not be empty");
+        }
+        Path base = dir.toAbsolutePath().normalize();
+        Path file = base.resolve(name).normalize();
+        if (!base.equals(file.getParent())) {
+            throw new IllegalArgumentException("file must be a plain file name inside the recording directory");
+        }
+        return file;
+    }
+
+    /**
+     * 录制文件中的一个事件
+     */
+    public sealed interface Event permits Reading, Fault {
+
+        /**
+         * 距录制开始的毫秒数
+         */
+        long offsetMillis();
+    }
+
+    /**
+     * 一条环境读数
+     */
+    public record Reading(long offsetMillis, long pigstyId, Double temperature, Double humidity,
+                          Double ammoniaLevel, Double light) implements Event {
+
+        /**
+         * 转换为待写入的环境数据（时间戳由回放方设置）
+         */
+        public EnvironmentalData toData() {
+            EnvironmentalData data = new EnvironmentalData();
+            data.setPigstyId(pigstyId);
+            data.setTemperature(temperature);
+            data.setHumidity(humidity);
+            data.setAmmoniaLevel(ammoniaLevel);
+            data.setLight(light);
+            return data;
+        }
+    }
+
+    /**
+     * 一次注入的设备故障
+     */
+    public record Fault(long offsetMillis, long deviceId) implements Event {
+    }
+
+    /**
+     * 录制文件头
+     *
+     * @param seed 录制时模拟器使用的种子，未设置种子时为 null
+     * @param startEpochMillis 录制开始时间
+     */
+    public record Header(Long seed, long startEpochMillis) {
+    }
+
+    /**
+     * 录制文件写入器，线程安全
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final long startEpochMillis;
+        private long lastOffsetMillis;
+
+        public Writer(Path file, Long seed) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+            this.startEpochMillis = System.currentTimeMillis();
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(seed != null);
+            out.writeLong(seed != null ? seed : 0L);
+            out.writeLong(startEpochMillis);
+        }
+
+        /**
+         * 写入一条读数，读数必须有猪舍ID
+         */
+        public synchronized void writeReading(EnvironmentalData data) throws IOException {
+            writeEventStart(TAG_READING);
+            writeVarLong(out, data.getPigstyId());
+            Double[] values = {data.getTemperature(), data.getHumidity(), data.getAmmoniaLevel(), data.getLight()};
+            int present = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    present |= 1 << i;
+                }
+            }
+            out.writeByte(present);
+            for (Double value : values) {
+                if (value != null) {
+                    long hundredths = Math.round(value * 100.0);
+                    writeVarLong(out, (hundredths << 1) ^ (hundredths >> 63));
+                }
+            }
+        }
+
+        /**
+         * 写入一次设备故障
+         */
+        public synchronized void writeFault(long deviceId) throws IOException {
+            writeEventStart(TAG_FAULT);
+            writeVarLong(out, deviceId);
+        }
+
+        /**
+         * 把缓冲区写入文件
+         */
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private void writeEventStart(int tag) throws IOException {
+            // 时钟回拨时按 0 记录，保证偏移单调不减
+            long offset = Math.max(lastOffsetMillis, System.currentTimeMillis() - startEpochMillis);
+            out.writeByte(tag);
+            writeVarLong(out, offset - lastOffsetMillis);
+            lastOffsetMillis = offset;
+        }
+    }
+
+    /**
+     * 录制文件读取器，按顺序流式读取，不把整个文件载入内存
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final Header header;
+        private long offsetMillis;
+
+        public Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (magic[i] != MAGIC[i]) {
+                        throw new IOException("Not a simulator recording: " + file.getFileName());
+                    }
+                }
+                int version = in.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported recording version " + version);
+                }
+                boolean seeded = in.readBoolean();
+                long seed = in.readLong();
+                this.header = new Header(seeded ? seed : null, in.readLong());
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /**
+         * 读取下一个事件
+         *
+         * @return 事件，文件结束返回 null
+         * @throws IOException 文件损坏或读取失败
+         */
+        public Event next() throws IOException {
+            int tag = in.read();
+            if (tag < 0) {
+                return null;
+            }
+            try {
+                offsetMillis += readVarLong(in);
+                switch (tag) {
+                    case TAG_READING -> {
+                        long pigstyId = readVarLong(in);
+                        int present = in.readUnsignedByte();
+                        Double[] values = new Double[4];
+                        for (int i = 0; i < values.length; i++) {
+                            if ((present & (1 << i)) != 0) {
+                                long zigzag = readVarLong(in);
+                                values[i] = ((zigzag >>> 1) ^ -(zigzag & 1)) / 100.0;
+                            }
+                        }
+                        return new Reading(offsetMillis, pigstyId, values[0], values[1], values[2], values[3]);
+                    }
+                    case TAG_FAULT -> {
+                        return new Fault(offsetMillis, readVarLong(in));
+                    }
+                    default -> throw new IOException("Corrupt recording: unknown event type " + tag);
+                }
+            } catch (EOFException e) {
+                throw new IOException("Corrupt recording: truncated event", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt recording: variable-length integer too long");
+    }
+}
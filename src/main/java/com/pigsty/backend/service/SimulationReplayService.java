@@ -0,0 +1,250 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 模拟器回放服务
+ *
+ * 把 {@link DataSimulationService} 录制的文件（见 {@link SimulationRecording}）按原始节奏、N 倍速或最快速度重新送入写入管道，
+ * 用于在不同版本之间以完全相同的输入比较吞吐和告警延迟：
+ *
+ * - 读数：时间戳改为提交时刻后提交到写入管道；队列满时等待重试（不丢数据），等待次数计入报告
+ * - 故障：通过 {@link DataSimulationService#injectFault(Long)} 让同一台设备发生故障
+ * - 告警延迟：从读数提交到告警落库并推送的时间，由 {@link WarningService} 的监听器记录
+ *
+ * 所有读数提交完后等待写入管道清空再结束，报告中的吞吐为端到端吞吐。
+ * 回放期间模拟器若仍在运行，它产生的告警也会计入延迟统计，比较版本时建议关闭模拟器（pigsty.simulator.enabled=false）。
+ *
+ * 同一时刻只允许一次回放。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class SimulationReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulationReplayService.class);
+
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * 回放参数
+     *
+     * @param file 录制目录中的文件名
+     * @param speed 回放倍速：1 为原始节奏，N 为 N 倍速，未设置或 0 为最快速度
+     */
+    public record ReplayRequest(String file, Double speed) {
+    }
+
+    /**
+     * 回放结果，延迟单位为微秒
+     *
+     * @param seed 录制时模拟器使用的种子，未设置种子时为 null
+     * @param faultsApplied 实际被置为故障的设备数（设备已不在线或已删除时跳过）
+     * @param backpressureWaits 写入队列满、等待后重试的次数
+     */
+    public record ReplayReport(ReplayRequest request, Long seed, long elapsedMillis, long readings, long faults,
+                               long faultsApplied, long backpressureWaits, double achievedPerSecond, long warnings,
+                               long warningP50Micros, long warningP90Micros, long warningP99Micros,
+                               long warningP999Micros, long warningMaxMicros) {
+    }
+
+    /**
+     * 回放状态
+     *
+     * @param running 是否正在运行
+     * @param request 当前（或最近一次）回放的参数
+     * @param report 最近一次完成的回放结果，运行中或从未运行时为 null
+     */
+    public record ReplayStatus(boolean running, ReplayRequest request, ReplayReport report) {
+    }
+
+    private final IngestPipeline ingestPipeline;
+    private final DataSimulationService dataSimulationService;
+    private final WarningService warningService;
+    private final Path recordingDir;
+    private final AtomicReference<Run> current = new AtomicReference<>();
+    private volatile ReplayStatus lastStatus = new ReplayStatus(false, null, null);
+
+    public SimulationReplayService(
+            IngestPipeline ingestPipeline,
+            DataSimulationService dataSimulationService,
+            WarningService warningService,
+            @Value("${pigsty.simulator.recording.dir:recordings}") String recordingDir) {
+        this.ingestPipeline = ingestPipeline;
+        this.dataSimulationService = dataSimulationService;
+        this.warningService = warningService;
+        this.recordingDir = Path.of(recordingDir);
+    }
+
+    /**
+     * 在后台开始一次回放
+     *
+     * @param request 回放参数
+     * @return 补全默认值后的参数；已有回放在运行时返回 null
+     * @throws IllegalArgumentException 参数不合法或文件不存在
+     */
+    public ReplayRequest start(ReplayRequest request) {
+        Path file = SimulationRecording.resolve(recordingDir, request.file());
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("recording not found: " + request.file());
+        }
+        double speed = request.speed() != null ? request.speed() : 0;
+        if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("speed must be 0 (as fast as possible) or a positive multiplier");
+        }
+        ReplayRequest resolved = new ReplayRequest(request.file(), speed);
+
+        Run run = new Run(resolved, file);
+        if (!current.compareAndSet(null, run)) {
+            return null;
+        }
+        lastStatus = new ReplayStatus(true, resolved, null);
+        Thread.ofVirtual().name("simulation-replay").start(() -> {
+            try {
+                ReplayReport report = run.execute();
+                lastStatus = new ReplayStatus(false, resolved, report);
+                log.info("Replay finished: {}", report);
+            } catch (Exception e) {
+                log.error("Replay of {} failed: {}", resolved.file(), e.getMessage(), e);
+                lastStatus = new ReplayStatus(false, resolved, null);
+            } finally {
+                current.set(null);
+            }
+        });
+        return resolved;
+    }
+
+    /**
+     * 停止正在运行的回放，已回放部分的结果照常报告
+     *
+     * @return 有回放在运行返回 true
+     */
+    public boolean stop() {
+        Run run = current.get();
+        if (run == null) {
+            return false;
+        }
+        run.stopRequested = true;
+        return true;
+    }
+
+    /**
+     * 当前状态和最近一次的结果
+     */
+    public ReplayStatus status() {
+        return lastStatus;
+    }
+
+    /**
+     * 一次回放的执行过程
+     */
+    private final class Run {
+
+        private final ReplayRequest request;
+        private final Path file;
+        private final LatencyHistogram warningLatencies = new LatencyHistogram();
+        private volatile boolean stopRequested;
+        private long readings;
+        private long faults;
+        private long faultsApplied;
+        private long backpressureWaits;
+
+        Run(ReplayRequest request, Path file) {
+            this.request = request;
+            this.file = file;
+        }
+
+        ReplayReport execute() throws IOException {
+            LocalDateTime startedAt = LocalDateTime.now();
+            WarningService.WarningListener listener = (data, warning) -> {
+                // 只统计本次回放开始后产生的数据触发的告警
+                if (data.getTimestamp() != null && !data.getTimestamp().isBefore(startedAt)) {
+                    long micros = Duration.between(data.getTimestamp(), LocalDateTime.now()).toNanos() / 1000;
+                    synchronized (warningLatencies) {
+                        warningLatencies.record(micros);
+                    }
+                }
+            };
+            warningService.addListener(listener);
+
+            long startNanos = System.nanoTime();
+            Long seed;
+            try {
+                try (SimulationRecording.Reader reader = new SimulationRecording.Reader(file)) {
+                    seed = reader.header().seed();
+                    replay(reader, startNanos);
+                }
+                awaitDrained();
+            } finally {
+                warningService.removeListener(listener);
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            synchronized (warningLatencies) {
+                double seconds = elapsedNanos / 1e9;
+                return new ReplayReport(request, seed, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), readings,
+                        faults, faultsApplied, backpressureWaits, Math.round(readings / seconds * 10) / 10.0,
+                        warningLatencies.count(), warningLatencies.percentile(50), warningLatencies.percentile(90),
+                        warningLatencies.percentile(99), warningLatencies.percentile(99.9), warningLatencies.max());
+            }
+        }
+
+        private void replay(SimulationRecording.Reader reader, long startNanos) throws IOException {
+            double speed = request.speed();
+            SimulationRecording.Event event;
+            while (!stopRequested && (event = reader.next()) != null) {
+                if (speed > 0) {
+                    // 按录制时的相对时间和倍速计算计划时间，落后时不等待，不累积误差
+                    long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(event.offsetMillis()) / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+                if (event instanceof SimulationRecording.Reading reading) {
+                    submit(reading.toData());
+                } else if (event instanceof SimulationRecording.Fault fault) {
+                    faults++;
+                    if (dataSimulationService.injectFault(fault.deviceId())) {
+                        faultsApplied++;
+                    }
+                }
+            }
+        }
+
+        private void submit(EnvironmentalData data) {
+            data.setTimestamp(LocalDateTime.now());
+            while (!ingestPipeline.submit(data)) {
+                if (stopRequested) {
+                    return;
+                }
+                backpressureWaits++;
+                LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+            }
+            readings++;
+        }
+
+        private void awaitDrained() {
+            long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+            while (ingestPipeline.backlog() > 0 && !stopRequested && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+}
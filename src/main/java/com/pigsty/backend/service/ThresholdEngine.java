@@ -0,0 +1,259 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.Device.MetricType;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阈值判定引擎
+ *
+ * 为每个猪舍编译一份只读的规则快照（阈值保存为基本类型 double，未设置记为 NaN；
+ * 各指标对应设备是否激活保存为位掩码）并缓存在内存中。
+ * 判定一条数据只做基本类型比较，不查询数据库、不分配对象，结果以位掩码返回。
+ *
+ * 猪舍阈值或设备状态被修改时，由对应的控制器调用 {@link #invalidate(Long)} 使快照失效，
+ * 下一条数据到达时重新编译。不存在的猪舍同样会被缓存，避免无效数据反复查询数据库。
+ * 编译所需的猪舍和设备从 {@link PigstyCache} 读取，控制器需先使 {@link PigstyCache} 失效再调用本类的失效方法。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class ThresholdEngine {
+
+    private static final Breach[] BREACHES = Breach.values();
+
+    /**
+     * 不存在的猪舍在缓存中的占位
+     */
+    private static final Rules MISSING = new Rules(0L, new Pigsty(), List.of());
+
+    private final PigstyCache pigstyCache;
+    private final ConcurrentHashMap<Long, Rules> rulesByPigsty = new ConcurrentHashMap<>();
+
+    /**
+     * 每次失效加一，用于丢弃失效前开始、失效后才完成的编译结果
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ThresholdEngine(PigstyCache pigstyCache) {
+        this.pigstyCache = pigstyCache;
+    }
+
+    /**
+     * 越限类型，顺序即告警的生成顺序
+     */
+    public enum Breach {
+        TEMPERATURE_HIGH(MetricType.TEMPERATURE, true, "TEMPERATURE", "温度过高！"),
+        TEMPERATURE_LOW(MetricType.TEMPERATURE, false, "TEMPERATURE", "温度过低！"),
+        HUMIDITY_HIGH(MetricType.HUMIDITY, true, "HUMIDITY", "湿度过高！"),
+        HUMIDITY_LOW(MetricType.HUMIDITY, false, "HUMIDITY", "湿度过低！"),
+        AMMONIA_HIGH(MetricType.AMMONIA, true, "AMMONIA", "氨气浓度过高！"),
+        LIGHT_HIGH(MetricType.LIGHT, true, "LIGHT", "光照过强！"),
+        LIGHT_LOW(MetricType.LIGHT, false, "LIGHT", "光照过弱！");
+
+        private final MetricType metric;
+        private final boolean high;
+        private final String metricName;
+        private final String message;
+
+        Breach(MetricType metric, boolean high, String metricName, String message) {
+            this.metric = metric;
+            this.high = high;
+            this.metricName = metricName;
+            this.message = message;
+        }
+
+        public MetricType metric() {
+            return metric;
+        }
+
+        public String metricName() {
+            return metricName;
+        }
+
+        /**
+         * 是否为上限（值大于阈值为越限）
+         */
+        public boolean isHigh() {
+            return high;
+        }
+
+        public String message() {
+            return message;
+        }
+
+        /**
+         * 根据位掩码中的位号取越限类型
+         */
+        public static Breach of(int bit) {
+            return BREACHES[bit];
+        }
+    }
+
+    /**
+     * 某个猪舍编译后的规则快照，创建后不再修改
+     */
+    public static final class Rules {
+
+        private final long pigstyId;
+        private final double[] thresholds = new double[BREACHES.length];
+        private final int activeMask;
+
+        private Rules(long pigstyId, Pigsty pigsty, List<Device> devices) {
+            this.pigstyId = pigstyId;
+            thresholds[Breach.TEMPERATURE_HIGH.ordinal()] = toPrimitive(pigsty.getTempThresholdHigh());
+            thresholds[Breach.TEMPERATURE_LOW.ordinal()] = toPrimitive(pigsty.getTempThresholdLow());
+            thresholds[Breach.HUMIDITY_HIGH.ordinal()] = toPrimitive(pigsty.getHumidityThresholdHigh());
+            thresholds[Breach.HUMIDITY_LOW.ordinal()] = toPrimitive(pigsty.getHumidityThresholdLow());
+            thresholds[Breach.AMMONIA_HIGH.ordinal()] = toPrimitive(pigsty.getAmmoniaThresholdHigh());
+            thresholds[Breach.LIGHT_HIGH.ordinal()] = toPrimitive(pigsty.getLightThresholdHigh());
+            thresholds[Breach.LIGHT_LOW.ordinal()] = toPrimitive(pigsty.getLightThresholdLow());
+
+            // 每种类型以第一台设备（按ID）的激活状态为准，没有该类型设备视为未激活
+            int seen = 0;
+            int active = 0;
+            for (Device device : devices) {
+                if (device.getType() == null) {
+                    continue;
+                }
+                int bit = 1 << device.getType().ordinal();
+                if ((seen & bit) == 0) {
+                    seen |= bit;
+                    if (device.isActive()) {
+                        active |= bit;
+                    }
+                }
+            }
+            this.activeMask = active;
+        }
+
+        public long pigstyId() {
+            return pigstyId;
+        }
+
+        /**
+         * 某种越限类型对应的阈值，未设置返回 NaN
+         */
+        public double threshold(Breach breach) {
+            return thresholds[breach.ordinal()];
+        }
+
+        public boolean isActive(MetricType type) {
+            return (activeMask & (1 << type.ordinal())) != 0;
+        }
+
+        /**
+         * 根据超出阈值的比例确定预警级别：超出 10% 以上为 DANGER，否则为 WARNING
+         */
+        public String level(Breach breach, double value) {
+            double threshold = thresholds[breach.ordinal()];
+            double ratio = breach.high ? (value - threshold) / threshold : (threshold - value) / threshold;
+            return ratio > 0.1 ? "DANGER" : "WARNING";
+        }
+
+        private static double toPrimitive(Double value) {
+            return value == null ? Double.NaN : value;
+        }
+    }
+
+    /**
+     * 获取某个猪舍的规则快照，缓存未命中时从数据库编译
+     *
+     * @param pigstyId 猪舍ID
+     * @return 规则快照，猪舍不存在返回 null
+     */
+    public Rules rulesFor(long pigstyId) {
+        Rules rules = rulesByPigsty.get(pigstyId);
+        if (rules != null) {
+            return rules == MISSING ? null : rules;
+        }
+        long startGeneration = generation.get();
+        Optional<Pigsty> pigsty = pigstyCache.findPigsty(pigstyId);
+        Rules compiled = pigsty
+                .map(p -> new Rules(pigstyId, p, pigstyCache.devicesOfPigsty(pigstyId).stream()
+                        .sorted(Comparator.comparing(Device::getId))
+                        .toList()))
+                .orElse(MISSING);
+        if (generation.get() == startGeneration && rulesByPigsty.putIfAbsent(pigstyId, compiled) == null
+                && generation.get() != startGeneration) {
+            // 放入缓存的同时发生了失效，撤回这份可能已过期的快照
+            rulesByPigsty.remove(pigstyId, compiled);
+        }
+        return compiled == MISSING ? null : compiled;
+    }
+
+    /**
+     * 判定一条数据越过了哪些阈值
+     *
+     * @param rules 数据所属猪舍的规则快照
+     * @param data 环境数据
+     * @return 越限位掩码，第 n 位对应 {@link Breach#of(int) Breach.of(n)}；未越限返回 0
+     */
+    public int evaluate(Rules rules, EnvironmentalData data) {
+        int breaches = 0;
+        for (Breach breach : BREACHES) {
+            if (!rules.isActive(breach.metric)) {
+                continue;
+            }
+            Double value = valueOf(data, breach.metric);
+            if (value == null) {
+                continue;
+            }
+            // 未设置的阈值为 NaN，任何比较都为 false
+            double threshold = rules.thresholds[breach.ordinal()];
+            if (breach.high ? value > threshold : value < threshold) {
+                breaches |= 1 << breach.ordinal();
+            }
+        }
+        return breaches;
+    }
+
+    /**
+     * 取数据中某项指标的值
+     */
+    public static Double valueOf(EnvironmentalData data, MetricType metric) {
+        return switch (metric) {
+            case TEMPERATURE -> data.getTemperature();
+            case HUMIDITY -> data.getHumidity();
+            case AMMONIA -> data.getAmmoniaLevel();
+            case LIGHT -> data.getLight();
+        };
+    }
+
+    /**
+     * 使某个猪舍的规则快照失效（猪舍阈值或其设备被修改时调用）
+     *
+     * @param pigstyId 猪舍ID
+     */
+    public void invalidate(Long pigstyId) {
+        if (pigstyId == null) {
+            return;
+        }
+        evict(pigstyId);
+        // 在事务中修改时，提交前被重新编译的快照读到的仍是旧数据，提交后需要再失效一次
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(pigstyId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long pigstyId) {
+        generation.incrementAndGet();
+        rulesByPigsty.remove(pigstyId);
+    }
+}
@@ -0,0 +1,198 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.config.PigstyIdMigration;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.repository.WarningSearch;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 未确认告警计数器
+ *
+ * 在内存中按 猪舍 × 指标类型 × 级别 维护未确认告警的条数，供仪表盘角标使用，读取时不查询数据库：
+ *
+ * - 启动时用一条 GROUP BY 查询从数据库初始化
+ * - 创建告警、确认告警、告警级别升级时增量更新
+ * - 定时用数据库重新校准（pigsty.warning.counter-resync-interval-ms），
+ *   修正增量更新与并发确认交错时可能产生的少量偏差
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class WarningCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(WarningCounters.class);
+
+    /**
+     * 计数的维度
+     */
+    public record Key(Long pigstyId, String metricType, String level) {
+
+        public static Key of(WarningLog warning) {
+            return new Key(warning.getPigstyId(), warning.getMetricType(), warning.getLevel());
+        }
+    }
+
+    /**
+     * 某个维度组合的未确认条数
+     */
+    public record Count(Long pigstyId, String metricType, String level, long count) {
+    }
+
+    /**
+     * 未确认告警汇总
+     *
+     * @param total 总数
+     * @param byPigsty 猪舍ID → 条数
+     * @param byLevel 级别 → 条数
+     * @param counts 按 猪舍 × 指标类型 × 级别 的明细
+     */
+    public record Summary(long total, Map<Long, Long> byPigsty, Map<String, Long> byLevel, List<Count> counts) {
+    }
+
+    private final WarningLogRepository warningLogRepository;
+    private final ConcurrentHashMap<Key, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    public WarningCounters(WarningLogRepository warningLogRepository) {
+        this.warningLogRepository = warningLogRepository;
+    }
+
+    /**
+     * 启动时从数据库初始化
+     */
+    @PostConstruct
+    public void seed() {
+        resync();
+    }
+
+    /**
+     * 用数据库中的实际条数校准内存中的计数
+     *
+     * 不整体替换计数表：查询前记下各维度的当前值，查询后只把“数据库条数 − 查询前的值”加到当前计数上，
+     * 查询期间到达的增量仍保留在计数中。
+     */
+    @Scheduled(initialDelayString = "${pigsty.warning.counter-resync-interval-ms:300000}",
+            fixedDelayString = "${pigsty.warning.counter-resync-interval-ms:300000}")
+    public void resync() {
+        Map<Key, Long> before = new HashMap<>();
+        counts.forEach((key, count) -> before.put(key, count.get()));
+
+        Map<Key, Long> actual = new HashMap<>();
+        long total = 0;
+        for (Object[] row : warningLogRepository.countByGroup(WarningSearch.unacknowledged())) {
+            long count = ((Number) row[3]).longValue();
+            actual.put(new Key((Long) row[0], (String) row[1], (String) row[2]), count);
+            total += count;
+        }
+
+        Set<Key> keys = new HashSet<>(before.keySet());
+        keys.addAll(actual.keySet());
+        int corrected = 0;
+        for (Key key : keys) {
+            long correction = actual.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+            if (correction != 0) {
+                add(key, correction);
+                corrected++;
+            }
+        }
+        log.debug("Unacknowledged warning counters resynced: {} warnings in {} groups, {} groups corrected",
+                total, actual.size(), corrected);
+    }
+
+    /**
+     * 猪舍ID列迁移完成后重新校准：启动时回填尚未完成，历史告警被计在空猪舍下
+     */
+    @EventListener
+    public void onPigstyIdMigrated(PigstyIdMigration.TableMigrated event) {
+        if ("warning_log".equals(event.table())) {
+            resync();
+        }
+    }
+
+    /**
+     * 新创建了一条（未确认的）告警
+     */
+    public void created(WarningLog warning) {
+        if (!warning.isAcknowledged()) {
+            add(Key.of(warning), 1);
+        }
+    }
+
+    /**
+     * 新创建了一批告警
+     */
+    public void created(Collection<WarningLog> warnings) {
+        for (WarningLog warning : warnings) {
+            created(warning);
+        }
+    }
+
+    /**
+     * 一组相同维度的告警被确认
+     */
+    public void acknowledged(Key key, long count) {
+        add(key, -count);
+    }
+
+    /**
+     * 未确认的告警级别发生变化（例如 WARNING 升级为 DANGER）
+     */
+    public void levelChanged(WarningLog warning, String previousLevel) {
+        if (!warning.isAcknowledged()) {
+            add(new Key(warning.getPigstyId(), warning.getMetricType(), previousLevel), -1);
+            add(Key.of(warning), 1);
+        }
+    }
+
+    /**
+     * 未确认告警汇总
+     *
+     * @param pigstyIds 只统计这些猪舍，为 null 时统计全部
+     */
+    public Summary summary(Collection<Long> pigstyIds) {
+        long total = 0;
+        Map<Long, Long> byPigsty = new TreeMap<>();
+        Map<String, Long> byLevel = new TreeMap<>();
+        List<Count> details = new ArrayList<>();
+        for (Map.Entry<Key, AtomicLong> entry : counts.entrySet()) {
+            Key key = entry.getKey();
+            long count = entry.getValue().get();
+            if (count <= 0 || (pigstyIds != null && !pigstyIds.contains(key.pigstyId()))) {
+                continue;
+            }
+            total += count;
+            if (key.pigstyId() != null) {
+                byPigsty.merge(key.pigstyId(), count, Long::sum);
+            }
+            byLevel.merge(String.valueOf(key.level()), count, Long::sum);
+            details.add(new Count(key.pigstyId(), key.metricType(), key.level(), count));
+        }
+        details.sort(Comparator.comparing(Count::pigstyId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Count::metricType, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Count::level, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return new Summary(total, byPigsty, byLevel, details);
+    }
+
+    private void add(Key key, long delta) {
+        // 计数不会小于 0（确认的告警可能在初始化之前已经被计入）
+        counts.computeIfAbsent(key, k -> new AtomicLong()).accumulateAndGet(delta, (current, d) -> Math.max(0, current + d));
+    }
+}
@@ -1,20 +1,37 @@
 package com.pigsty.backend.service;
 
-import com.pigsty.backend.model.Device; // 1. 导入 Device
 import com.pigsty.backend.model.EnvironmentalData;
-import com.pigsty.backend.model.Pigsty;
 import com.pigsty.backend.model.WarningLog;
-import com.pigsty.backend.model.Device.MetricType; // 2. 导入 MetricType
-import com.pigsty.backend.repository.DeviceRepository; // 3. 导入 DeviceRepository
-import com.pigsty.backend.repository.PigstyRepository;
 import com.pigsty.backend.repository.WarningLogRepository;
+import com.pigsty.backend.service.ThresholdEngine.Breach;
 import com.pigsty.backend.controller.WebSocketHandler; 
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 告警服务
@@ -23,8 +40,10 @@ import java.util.Optional;
  * 
  * 主要功能：
  * - 检查环境数据是否触发告警
- * - 验证对应类型的设备是否激活
+ * - 验证对应类型的设备是否激活（基于阈值引擎缓存的规则快照）
  * - 创建并保存告警日志
+ * - 告警风暴抑制：同一猪舍同一越限类型持续越限期间只保留一个事件（一行告警），
+ *   带回差关闭，事件期间的次数、峰值和最后越限时间在内存中累加后批量写回
  * 
  * @author 系统架构
  * @version 1.0
@@ -32,14 +51,93 @@ import java.util.Optional;
 @Service
 public class WarningService {
 
+    private static final Logger logger = LoggerFactory.getLogger(WarningService.class);
+
+    private static final Breach[] BREACHES = Breach.values();
+
+    /**
+     * 等待重试的事件更新条数上限；数据库长时间不可用时丢弃最早的更新，
+     * 对应的行保留上次写回的状态，未关闭的行在下次启动时由 {@link #closeStaleIncidents()} 关闭
+     */
+    private static final int MAX_RETRY_UPDATES = 10_000;
+
     @Autowired
-    private PigstyRepository pigstyRepository;
+    private ThresholdEngine thresholdEngine;
 
     @Autowired
     private WarningLogRepository logRepository;
 
     @Autowired
-    private DeviceRepository deviceRepository;
+    private WebSocketHandler webSocketHandler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WarningCounters warningCounters;
+
+    @Autowired
+    private PigstyMetrics metrics;
+
+    /**
+     * 回差比例：值回到阈值内超过阈值的该比例后事件才关闭
+     */
+    @Value("${pigsty.warning.hysteresis-ratio:0.05}")
+    private double hysteresisRatio;
+
+    /**
+     * 超过该时间（毫秒，按接收数据的时刻而不是数据时间计）没有新数据的事件自动关闭
+     */
+    @Value("${pigsty.warning.incident-idle-timeout-ms:1800000}")
+    private long incidentIdleTimeoutMillis;
+
+    /**
+     * 猪舍ID → 该猪舍打开的告警事件
+     */
+    private final ConcurrentHashMap<Long, OpenIncidents> incidentsByPigsty = new ConcurrentHashMap<>();
+
+    /**
+     * 上次写回失败、等待重试的更新：告警ID → 更新（每条更新都是完整状态，同一告警只保留最新的一条）
+     */
+    private final LinkedHashMap<Long, Object[]> retryUpdates = new LinkedHashMap<>();
+
+    /**
+     * 因超过 MAX_RETRY_UPDATES 被丢弃的更新条数
+     */
+    private long droppedUpdates;
+
+    /**
+     * 串行化事件写回，同时保护 retryUpdates 和 droppedUpdates
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * 告警监听器
+     *
+     * 在新告警事件保存并推送后、在写入管道的消费线程上调用，实现必须足够快且不能抛出异常。
+     */
+    @FunctionalInterface
+    public interface WarningListener {
+
+        /**
+         * @param data 触发告警的环境数据
+         * @param warning 已保存的告警
+         */
+        void onWarning(EnvironmentalData data, WarningLog warning);
+    }
+
+    private final List<WarningListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 注册告警监听器（例如回放时统计从数据产生到告警落库的延迟）
+     */
+    public void addListener(WarningListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(WarningListener listener) {
+        listeners.remove(listener);
+    }
 
     /**
      * 检查环境数据是否触发告警
@@ -53,166 +151,411 @@ public class WarningService {
      * - 氨气浓度（过高）
      * - 光照（过强/过弱）
      * 
+     * 猪舍阈值和设备激活状态取自阈值引擎缓存的规则快照，判定过程不查询数据库。
+     * 
      * @param data 刚上报的环境数据对象
      */
     public void checkDataForWarnings(EnvironmentalData data) {
         
-        Long pigstyId;
-        try {
-            pigstyId = Long.parseLong(data.getPigstyId());
-        } catch (NumberFormatException e) {
-            System.err.println("Invalid pigstyId format in data: " + data.getPigstyId());
+        Long pigstyId = data.getPigstyId();
+        if (pigstyId == null) {
+            logger.warn("Missing pigstyId in data, cannot check warnings.");
             return;
         }
 
-        Optional<Pigsty> pigstyOpt = pigstyRepository.findById(pigstyId);
+        ThresholdEngine.Rules rules = thresholdEngine.rulesFor(pigstyId);
 
-        if (!pigstyOpt.isPresent()) {
-            System.err.println("Pigsty with ID " + pigstyId + " not found. Cannot check warnings.");
+        if (rules == null) {
+            logger.warn("Pigsty with ID {} not found. Cannot check warnings.", pigstyId);
             return;
         }
 
-        Pigsty pigsty = pigstyOpt.get();
-
-        // [!!! 关键修复 !!!]
-        // 6. 获取这个猪舍的所有设备
-        List<Device> devices = deviceRepository.findByPigstyId(pigstyId);
+        long startNanos = System.nanoTime();
+        evaluate(data, rules);
+        metrics.warningEvaluation().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
 
-        // 7. 逐一检查每个指标
-        
-        // 检查温度
-        if (data.getTemperature() != null && isDeviceActive(devices, MetricType.TEMPERATURE)) {
-            if (pigsty.getTempThresholdHigh() != null && data.getTemperature() > pigsty.getTempThresholdHigh()) {
-                createWarningLog(pigsty, "TEMPERATURE", data.getTemperature(), "温度过高！");
+    /**
+     * 批量检查环境数据是否触发告警
+     * 
+     * 与 {@link #checkDataForWarnings(EnvironmentalData)} 的判定规则完全一致，
+     * 不存在的猪舍的数据直接跳过。
+     * 
+     * @param dataList 同一批次写入的环境数据
+     */
+    public void checkDataForWarnings(List<EnvironmentalData> dataList) {
+        long startNanos = System.nanoTime();
+        for (EnvironmentalData data : dataList) {
+            if (data.getPigstyId() == null) {
+                continue;
             }
-            if (pigsty.getTempThresholdLow() != null && data.getTemperature() < pigsty.getTempThresholdLow()) {
-                createWarningLog(pigsty, "TEMPERATURE", data.getTemperature(), "温度过低！");
+            ThresholdEngine.Rules rules = thresholdEngine.rulesFor(data.getPigstyId());
+            if (rules != null) {
+                evaluate(data, rules);
             }
         }
+        metrics.warningEvaluation().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
 
-        // 检查湿度
-        if (data.getHumidity() != null && isDeviceActive(devices, MetricType.HUMIDITY)) {
-            if (pigsty.getHumidityThresholdHigh() != null && data.getHumidity() > pigsty.getHumidityThresholdHigh()) {
-                createWarningLog(pigsty, "HUMIDITY", data.getHumidity(), "湿度过高！");
-            }
-            if (pigsty.getHumidityThresholdLow() != null && data.getHumidity() < pigsty.getHumidityThresholdLow()) {
-                createWarningLog(pigsty, "HUMIDITY", data.getHumidity(), "湿度过低！");
-            }
+    /**
+     * 按猪舍规则快照判定一条数据，更新该猪舍的告警事件
+     * 
+     * - 越限且没有打开的事件：创建告警（新的一行）并推送
+     * - 越限且已有打开的事件：只在内存中累加次数、更新峰值和最后越限时间，由定时任务批量写回；
+     *   级别从 WARNING 升为 DANGER 时推送一次
+     * - 未越限：值回到阈值内超过回差（阈值 × pigsty.warning.hysteresis-ratio）时关闭事件并推送，
+     *   在阈值附近来回波动的数据不会反复打开新事件
+     * 
+     * 绝大多数数据既不越限、所属猪舍也没有打开的事件，这种情况不加锁直接返回。
+     * 
+     * @param data 环境数据
+     * @param rules 数据所属猪舍的规则快照
+     */
+    private void evaluate(EnvironmentalData data, ThresholdEngine.Rules rules) {
+        int breaches = thresholdEngine.evaluate(rules, data);
+        OpenIncidents incidents = incidentsByPigsty.get(rules.pigstyId());
+        if (breaches == 0 && (incidents == null || incidents.openCount == 0)) {
+            return;
         }
-        
-        // 检查氨气
-        if (data.getAmmoniaLevel() != null && isDeviceActive(devices, MetricType.AMMONIA)) {
-            if (pigsty.getAmmoniaThresholdHigh() != null && data.getAmmoniaLevel() > pigsty.getAmmoniaThresholdHigh()) {
-                createWarningLog(pigsty, "AMMONIA", data.getAmmoniaLevel(), "氨气浓度过高！");
-            }
+        if (incidents == null) {
+            incidents = incidentsByPigsty.computeIfAbsent(rules.pigstyId(), id -> new OpenIncidents());
         }
+        LocalDateTime seenAt = data.getTimestamp() != null ? data.getTimestamp() : LocalDateTime.now();
 
-        // 检查光照
-        if (data.getLight() != null && isDeviceActive(devices, MetricType.LIGHT)) {
-            if (pigsty.getLightThresholdHigh() != null && data.getLight() > pigsty.getLightThresholdHigh()) {
-                createWarningLog(pigsty, "LIGHT", data.getLight(), "光照过强！");
-            }
-            if (pigsty.getLightThresholdLow() != null && data.getLight() < pigsty.getLightThresholdLow()) {
-                createWarningLog(pigsty, "LIGHT", data.getLight(), "光照过弱！");
+        // 同一猪舍的数据可能被不同的消费线程处理，按猪舍加锁
+        incidents.lock.lock();
+        try {
+            for (Breach breach : BREACHES) {
+                Incident incident = incidents.byBreach[breach.ordinal()];
+                if ((breaches & (1 << breach.ordinal())) != 0) {
+                    double value = ThresholdEngine.valueOf(data, breach.metric());
+                    if (incident == null) {
+                        incidents.open(breach, createWarningLog(data, rules, breach, value, seenAt));
+                    } else {
+                        incident.update(rules, value, seenAt);
+                    }
+                } else if (incident != null) {
+                    if (shouldClose(rules, breach, data)) {
+                        incidents.close(breach, seenAt, true);
+                    } else {
+                        // 回到阈值内但未超过回差：仍有数据，事件不算空闲
+                        incident.touch();
+                    }
+                }
             }
+        } finally {
+            incidents.lock.unlock();
         }
     }
 
     /**
-     * 检查特定类型的设备是否存在且已激活
-     * 
-     * 该方法从指定设备列表中查找匹配类型的设备，并检查其激活状态。
-     * 只有当设备存在且处于激活状态时，才会返回 true。
-     * 
-     * @param devices 猪舍的设备列表
-     * @param type 要检查的设备类型
-     * @return 如果设备存在且已激活返回 true，否则返回 false
-     */
-    private boolean isDeviceActive(List<Device> devices, MetricType type) {
-        Optional<Device> deviceOpt = devices.stream()
-            .filter(d -> d.getType() == type)
-            .findFirst();
-        
-        if (deviceOpt.isPresent()) {
-            return deviceOpt.get().isActive();
+     * 事件是否可以关闭：指标对应设备已停用、阈值已清除，或者值回到阈值内超过回差
+     */
+    private boolean shouldClose(ThresholdEngine.Rules rules, Breach breach, EnvironmentalData data) {
+        double threshold = rules.threshold(breach);
+        if (!rules.isActive(breach.metric()) || Double.isNaN(threshold)) {
+            return true;
         }
-        
-        return false;
+        Double value = ThresholdEngine.valueOf(data, breach.metric());
+        if (value == null) {
+            return false;
+        }
+        double margin = Math.abs(threshold) * hysteresisRatio;
+        return breach.isHigh() ? value <= threshold - margin : value >= threshold + margin;
     }
 
     /**
-     * 创建并保存告警日志
+     * 创建并保存告警日志（打开一个新的事件）
      * 
      * 该方法根据指定参数创建新的告警日志对象，并将其保存到数据库中。
-     * 同时在控制台打印告警信息便于调试和监控。
+     * 同时按猪舍和指标计数，并记录一条日志便于调试和监控。
      * 
-     * @param pigsty 触发告警的猪舍对象
-     * @param metricType 触发告警的指标类型
+     * @param data 触发告警的环境数据
+     * @param rules 触发告警的猪舍的规则快照
+     * @param breach 越限类型，决定指标类型和告警描述
      * @param actualValue 实际测量值
-     * @param message 告警详细描述
+     * @param seenAt 数据的时间
+     * @return 已保存的告警日志
      */
-    private void createWarningLog(Pigsty pigsty, String metricType, Double actualValue, String message) {
+    private WarningLog createWarningLog(EnvironmentalData data, ThresholdEngine.Rules rules, Breach breach,
+                                        double actualValue, LocalDateTime seenAt) {
         WarningLog log = new WarningLog();
-        log.setPigstyId(String.valueOf(pigsty.getId()));
-        log.setMessage(message);
-        log.setMetricType(metricType);
+        log.setPigstyId(rules.pigstyId());
+        log.setMessage(breach.message());
+        log.setMetricType(breach.metricName());
         log.setActualValue(actualValue);
+        log.setThresholdValue(rules.threshold(breach));
+        log.setOccurrences(1);
+        log.setPeakValue(actualValue);
+        log.setLastSeenAt(seenAt);
         
-        // 根据数据超出阈值的程度设置预警级别
-        String level = determineWarningLevel(pigsty, metricType, actualValue);
-        log.setLevel(level);
+        // 根据数据超出阈值的程度设置预警级别（超出 10% 以上为 DANGER）
+        log.setLevel(rules.level(breach, actualValue));
 
-        WarningLog savedLog = logRepository.save(log);
+        WarningLog savedLog = metrics.warningSave().record(() -> logRepository.save(log));
+        warningCounters.created(savedLog);
+        metrics.warningCreated(rules.pigstyId(), breach.metric());
 
         // 通过 WebSocket 推送预警消息
-        WebSocketHandler.sendWarning(savedLog);
+        webSocketHandler.sendWarning(savedLog);
+        for (WarningListener listener : listeners) {
+            listener.onWarning(data, savedLog);
+        }
 
-        System.out.println("!!! 预警触发 !!!: " + savedLog.getMessage() + " 猪舍: " + savedLog.getPigstyId() + " 级别: " + savedLog.getLevel());
+        logger.info("预警触发: {} 猪舍: {} 级别: {}", savedLog.getMessage(), savedLog.getPigstyId(), savedLog.getLevel());
+        return savedLog;
     }
-    
+
     /**
-     * 根据数据超出阈值的程度确定预警级别
-     * 
-     * @param pigsty 猪舍对象
-     * @param metricType 指标类型
-     * @param actualValue 实际测量值
-     * @return 预警级别：WARNING 或 DANGER
+     * 告警已被确认（确认接口在 UPDATE 之后、更新计数器和推送之前调用）
+     *
+     * 确认的告警如果是某个打开的事件，把内存中的告警标记为已确认并关闭该事件（不推送，确认接口自己推送确认消息）：
+     * 此后该猪舍同一越限类型的越限会打开新的未确认事件，已确认的旧行不再被升级、重复计数或作为未确认告警推送。
+     * 级别升级只记录在内存中、尚未写回，因此返回这些事件在内存中的当前级别，调用方据此更新计数器。
+     *
+     * @param warningIds 刚被确认的告警ID
+     * @param acknowledgedAt 确认时间
+     * @return 其中是打开事件的告警ID → 该事件当前的级别
      */
-    private String determineWarningLevel(Pigsty pigsty, String metricType, Double actualValue) {
-        // 计算超出阈值的比例
-        double thresholdExceedRatio = 0.0;
-        
-        switch (metricType) {
-            case "TEMPERATURE":
-                if (actualValue > pigsty.getTempThresholdHigh()) {
-                    thresholdExceedRatio = (actualValue - pigsty.getTempThresholdHigh()) / pigsty.getTempThresholdHigh();
-                } else if (actualValue < pigsty.getTempThresholdLow()) {
-                    thresholdExceedRatio = (pigsty.getTempThresholdLow() - actualValue) / pigsty.getTempThresholdLow();
-                }
-                break;
-            case "HUMIDITY":
-                if (actualValue > pigsty.getHumidityThresholdHigh()) {
-                    thresholdExceedRatio = (actualValue - pigsty.getHumidityThresholdHigh()) / pigsty.getHumidityThresholdHigh();
-                } else if (actualValue < pigsty.getHumidityThresholdLow()) {
-                    thresholdExceedRatio = (pigsty.getHumidityThresholdLow() - actualValue) / pigsty.getHumidityThresholdLow();
+    public Map<Long, String> acknowledged(Collection<Long> warningIds, LocalDateTime acknowledgedAt) {
+        Map<Long, String> levels = new HashMap<>();
+        if (warningIds.isEmpty()) {
+            return levels;
+        }
+        Set<Long> ids = warningIds instanceof Set<Long> set ? set : new HashSet<>(warningIds);
+        for (OpenIncidents incidents : incidentsByPigsty.values()) {
+            if (incidents.openCount == 0) {
+                continue;
+            }
+            incidents.lock.lock();
+            try {
+                for (Breach breach : BREACHES) {
+                    Incident incident = incidents.byBreach[breach.ordinal()];
+                    if (incident != null && ids.contains(incident.log.getId())) {
+                        incident.log.setAcknowledged(true);
+                        incident.log.setAcknowledgedAt(acknowledgedAt);
+                        levels.put(incident.log.getId(), incident.log.getLevel());
+                        incidents.close(breach, acknowledgedAt, false);
+                    }
                 }
-                break;
-            case "AMMONIA":
-                if (actualValue > pigsty.getAmmoniaThresholdHigh()) {
-                    thresholdExceedRatio = (actualValue - pigsty.getAmmoniaThresholdHigh()) / pigsty.getAmmoniaThresholdHigh();
+            } finally {
+                incidents.lock.unlock();
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * 把内存中告警事件的变化（次数、峰值、最后越限时间、级别、关闭时间）批量写回数据库
+     * 
+     * 同时关闭超过 pigsty.warning.incident-idle-timeout-ms 没有新数据的事件（例如设备离线后不再上报）。
+     * 空闲按最后一次收到该猪舍数据的时刻判断，而不是数据中的时间：回放或补传的历史数据不会让事件刚打开就被关闭。
+     * 写回失败的更新保留到下个周期重试，最多 MAX_RETRY_UPDATES 条。
+     */
+    @Scheduled(fixedDelayString = "${pigsty.warning.incident-flush-interval-ms:5000}")
+    public void flushIncidents() {
+        flushLock.lock();
+        try {
+            writeBackIncidents();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 持有 flushLock 时调用
+     */
+    private void writeBackIncidents() {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(incidentIdleTimeoutMillis);
+        long now = System.nanoTime();
+        List<Object[]> drained = new ArrayList<>();
+        for (OpenIncidents incidents : incidentsByPigsty.values()) {
+            incidents.lock.lock();
+            try {
+                if (incidents.openCount > 0) {
+                    for (Breach breach : BREACHES) {
+                        Incident incident = incidents.byBreach[breach.ordinal()];
+                        if (incident != null && now - incident.lastUpdatedNanos >= idleTimeoutNanos) {
+                            incidents.close(breach, LocalDateTime.now(), true);
+                        }
+                    }
                 }
-                break;
-            case "LIGHT":
-                if (actualValue > pigsty.getLightThresholdHigh()) {
-                    thresholdExceedRatio = (actualValue - pigsty.getLightThresholdHigh()) / pigsty.getLightThresholdHigh();
-                } else if (actualValue < pigsty.getLightThresholdLow()) {
-                    thresholdExceedRatio = (pigsty.getLightThresholdLow() - actualValue) / pigsty.getLightThresholdLow();
+                incidents.drainUpdates(drained);
+            } finally {
+                incidents.lock.unlock();
+            }
+        }
+        LinkedHashMap<Long, Object[]> updates = new LinkedHashMap<>(retryUpdates);
+        retryUpdates.clear();
+        for (Object[] update : drained) {
+            // 较新的状态覆盖等待重试的旧状态，并排到最后
+            Long id = (Long) update[Incident.ID_INDEX];
+            updates.remove(id);
+            updates.put(id, update);
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>(updates.values());
+        try {
+            metrics.incidentsSave().record(() -> jdbcTemplate.batchUpdate(
+                    "UPDATE warning_log SET occurrences = ?, peak_value = ?, last_seen_at = ?, level = ?, closed_at = ? WHERE id = ?",
+                    batch));
+        } catch (DataAccessException e) {
+            retryUpdates.putAll(updates);
+            int dropped = 0;
+            for (Iterator<Long> it = retryUpdates.keySet().iterator();
+                 retryUpdates.size() > MAX_RETRY_UPDATES && it.hasNext(); ) {
+                it.next();
+                it.remove();
+                dropped++;
+            }
+            droppedUpdates += dropped;
+            if (dropped > 0) {
+                logger.error("Failed to flush {} warning incidents, retrying the latest {} and dropping {} "
+                                + "({} dropped since start): {}", batch.size(), retryUpdates.size(), dropped,
+                        droppedUpdates, e.getMessage());
+            } else {
+                logger.error("Failed to flush {} warning incidents, will retry: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 等待重试的事件更新条数
+     */
+    int pendingRetryUpdates() {
+        flushLock.lock();
+        try {
+            return retryUpdates.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushIncidentsOnShutdown() {
+        flushIncidents();
+    }
+
+    /**
+     * 启动时关闭上次运行遗留的未关闭事件
+     * 
+     * 事件状态只保存在内存中，重启后仍在越限的猪舍会打开新的事件。
+     * 引入事件之前的旧告警没有最后越限时间，以告警时间作为关闭时间。
+     */
+    @PostConstruct
+    public void closeStaleIncidents() {
+        int closed = jdbcTemplate.update(
+                "UPDATE warning_log SET closed_at = COALESCE(last_seen_at, timestamp, NOW()) WHERE closed_at IS NULL");
+        if (closed > 0) {
+            logger.info("Closed {} warning incidents left open by the previous run", closed);
+        }
+    }
+
+    /**
+     * 一个猪舍当前打开的告警事件，每种越限类型最多一个，访问时持有 {@link #lock}
+     */
+    private final class OpenIncidents {
+
+        /**
+         * 打开事件时要在持锁期间写入告警行，用 ReentrantLock 而不是 synchronized，
+         * 虚拟线程等待数据库连接时不会占住载体线程
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Incident[] byBreach = new Incident[BREACHES.length];
+
+        /**
+         * 打开的事件数，在锁外读取用于快速判断
+         */
+        private volatile int openCount;
+
+        /**
+         * 已关闭、尚未写回的事件
+         */
+        private final List<Incident> closed = new ArrayList<>();
+
+        void open(Breach breach, WarningLog log) {
+            byBreach[breach.ordinal()] = new Incident(breach, log);
+            openCount++;
+        }
+
+        void close(Breach breach, LocalDateTime closedAt, boolean broadcast) {
+            Incident incident = byBreach[breach.ordinal()];
+            byBreach[breach.ordinal()] = null;
+            openCount--;
+            incident.log.setClosedAt(closedAt);
+            closed.add(incident);
+            if (broadcast) {
+                webSocketHandler.sendWarning(incident.log);
+            }
+        }
+
+        void drainUpdates(List<Object[]> updates) {
+            for (Incident incident : byBreach) {
+                if (incident != null && incident.dirty) {
+                    updates.add(incident.toUpdate());
+                    incident.dirty = false;
                 }
-                break;
+            }
+            for (Incident incident : closed) {
+                updates.add(incident.toUpdate());
+            }
+            closed.clear();
         }
-        
-        // 如果超出阈值比例大于 0.1（10%），则为危险级别，否则为警告级别
-        return thresholdExceedRatio > 0.1 ? "DANGER" : "WARNING";
     }
-}
 
+    /**
+     * 一个打开的告警事件，状态直接保存在已入库的告警日志对象上
+     */
+    private final class Incident {
+
+        /**
+         * {@link #toUpdate()} 中告警ID的位置
+         */
+        static final int ID_INDEX = 5;
+
+        private final Breach breach;
+        private final WarningLog log;
+        private boolean dirty;
+
+        /**
+         * 最后一次收到该猪舍数据的时刻（{@link System#nanoTime()}），用于判断空闲
+         */
+        private long lastUpdatedNanos = System.nanoTime();
+
+        Incident(Breach breach, WarningLog log) {
+            this.breach = breach;
+            this.log = log;
+        }
+
+        void touch() {
+            lastUpdatedNanos = System.nanoTime();
+        }
+
+        void update(ThresholdEngine.Rules rules, double value, LocalDateTime seenAt) {
+            touch();
+            log.setOccurrences(log.getOccurrences() + 1);
+            if (breach.isHigh() ? value > log.getPeakValue() : value < log.getPeakValue()) {
+                log.setPeakValue(value);
+            }
+            if (seenAt.isAfter(log.getLastSeenAt())) {
+                log.setLastSeenAt(seenAt);
+            }
+            dirty = true;
+            // 级别只升不降，升级时推送一次
+            if (!"DANGER".equals(log.getLevel()) && "DANGER".equals(rules.level(breach, value))) {
+                String previousLevel = log.getLevel();
+                log.setLevel("DANGER");
+                warningCounters.levelChanged(log, previousLevel);
+                webSocketHandler.sendWarning(log);
+            }
+        }
+
+        Object[] toUpdate() {
+            return new Object[] {log.getOccurrences(), log.getPeakValue(), Timestamp.valueOf(log.getLastSeenAt()),
+                    log.getLevel(), log.getClosedAt() != null ? Timestamp.valueOf(log.getClosedAt()) : null, log.getId()};
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.pigsty.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket 握手票据服务
+ *
+ * 浏览器的 WebSocket API 无法设置请求头，握手只能通过查询参数携带凭证。为了不把 24 小时有效的 JWT
+ * 放进 URL（会出现在访问日志、代理日志和浏览器历史中），客户端先用 JWT 调用 REST 接口换取一张票据，
+ * 再以 /ws?ticket=... 发起握手：
+ *
+ * - 票据是随机字符串，只在本实例内存中保存，与签发时的用户主体对应
+ * - 有效期很短（pigsty.websocket.ticket-ttl-ms），只能使用一次，握手时即被移除
+ * - 过期未使用的票据由定时任务清理
+ *
+ * 多实例部署时换取票据和握手需落到同一实例（与 WebSocket 会话本身的要求相同）。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+@Service
+public class WebSocketTicketService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ConcurrentHashMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    public WebSocketTicketService(@Value("${pigsty.websocket.ticket-ttl-ms:30000}") long ttlMillis) {
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("pigsty.websocket.ticket-ttl-ms must be at least 1");
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    private record Ticket(UserDetails principal, long expiresAtNanos) {
+    }
+
+    /**
+     * 票据有效期（毫秒）
+     */
+    public long ttlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * 为已认证的用户签发一张票据
+     *
+     * @param principal 当前请求的用户主体
+     * @return 票据
+     */
+    public String issue(UserDetails principal) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tickets.put(ticket, new Ticket(principal, System.nanoTime() + ttlMillis * 1_000_000L));
+        return ticket;
+    }
+
+    /**
+     * 使用一张票据，无论成功与否票据都会失效
+     *
+     * @param ticket 票据
+     * @return 签发时的用户主体；票据不存在、已使用或已过期时返回 null
+     */
+    public UserDetails redeem(String ticket) {
+        Ticket redeemed = tickets.remove(ticket);
+        if (redeemed == null || System.nanoTime() - redeemed.expiresAtNanos() > 0) {
+            return null;
+        }
+        return redeemed.principal();
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        tickets.values().removeIf(ticket -> now - ticket.expiresAtNanos() > 0);
+    }
+}
@@ -0,0 +1,279 @@
+package com.pigsty.backend.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla 时间序列压缩编码
+ *
+ * 一个数据块（chunk）是一串 (时间戳, double) 点，时间戳单调递增，按位紧凑编码：
+ *
+ * - 第一个点：时间戳和数值的原始 64 位
+ * - 时间戳：编码与上一个间隔的差（delta-of-delta）。定期上报的数据间隔几乎不变，差值多为 0 或很小：
+ *   '0' 表示差为 0，其余按大小取 '10' + 7 位、'110' + 12 位、'1110' + 20 位、'11110' + 32 位，
+ *   最后 '11111' + 64 位兜底。原论文按秒计时，这里的时间戳是微秒，因此档位比论文的 7/9/12/32 位更宽
+ * - 数值：与上一个值按位异或。相同为 '0'；否则 '1' 之后，若异或结果的有效位落在上一次的前导零/尾随零窗口内，
+ *   写 '0' + 窗口内的位；否则写 '1' + 5 位前导零个数 + 6 位有效位长度 + 有效位
+ *
+ * 缓慢变化的传感器读数每个点通常只需 2～4 个字节。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * 编码器：把点依次追加到内存中的位流
+     */
+    public static final class Encoder {
+
+        private byte[] bytes = new byte[64];
+        private long bitLength;
+        private int count;
+        private long firstTimestamp;
+        private long lastTimestamp;
+        private long lastDelta;
+        private long lastValueBits;
+        private int lastLeading = -1;
+        private int lastTrailing;
+
+        /**
+         * 追加一个点
+         *
+         * @param timestamp 时间戳，必须大于上一个点的时间戳
+         * @param value 数值
+         */
+        public void append(long timestamp, double value) {
+            long valueBits = Double.doubleToRawLongBits(value);
+            if (count == 0) {
+                writeBits(timestamp, 64);
+                writeBits(valueBits, 64);
+                firstTimestamp = timestamp;
+            } else {
+                long delta = timestamp - lastTimestamp;
+                writeDeltaOfDelta(delta - lastDelta);
+                lastDelta = delta;
+                writeXor(valueBits ^ lastValueBits);
+            }
+            lastTimestamp = timestamp;
+            lastValueBits = valueBits;
+            count++;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public long firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        /**
+         * 编码后的字节数（最后一个字节不足 8 位时补 0）
+         */
+        public int byteLength() {
+            return (int) ((bitLength + 7) >>> 3);
+        }
+
+        /**
+         * 编码后的字节
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bytes, byteLength());
+        }
+
+        private void writeDeltaOfDelta(long deltaOfDelta) {
+            if (deltaOfDelta == 0) {
+                writeBits(0b0, 1);
+            } else if (fits(deltaOfDelta, 7)) {
+                writeBits(0b10, 2);
+                writeBits(deltaOfDelta, 7);
+            } else if (fits(deltaOfDelta, 12)) {
+                writeBits(0b110, 3);
+                writeBits(deltaOfDelta, 12);
+            } else if (fits(deltaOfDelta, 20)) {
+                writeBits(0b1110, 4);
+                writeBits(deltaOfDelta, 20);
+            } else if (fits(deltaOfDelta, 32)) {
+                writeBits(0b11110, 5);
+                writeBits(deltaOfDelta, 32);
+            } else {
+                writeBits(0b11111, 5);
+                writeBits(deltaOfDelta, 64);
+            }
+        }
+
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                writeBits(0b0, 1);
+                return;
+            }
+            // 前导零个数用 5 位存放，最多记 31 个
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+                writeBits(0b10, 2);
+                writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                writeBits(0b11, 2);
+                writeBits(leading, 5);
+                writeBits(meaningful - 1, 6);
+                writeBits(xor >>> trailing, meaningful);
+                lastLeading = leading;
+                lastTrailing = trailing;
+            }
+        }
+
+        /**
+         * 写入 value 的低 n 位，高位在前
+         */
+        private void writeBits(long value, int n) {
+            int required = (int) ((bitLength + n + 7) >>> 3);
+            if (required > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+            }
+            while (n > 0) {
+                int byteIndex = (int) (bitLength >>> 3);
+                int free = 8 - (int) (bitLength & 7);
+                int take = Math.min(free, n);
+                int bits = (int) ((value >>> (n - take)) & ((1 << take) - 1));
+                bytes[byteIndex] |= (byte) (bits << (free - take));
+                bitLength += take;
+                n -= take;
+            }
+        }
+
+        private static boolean fits(long value, int bits) {
+            long bound = 1L << (bits - 1);
+            return value >= -bound && value < bound;
+        }
+    }
+
+    /**
+     * 解码器：直接从缓冲区（例如内存映射的段文件）中按位读取，不复制数据
+     *
+     * 用法：{@code while (decoder.next()) { decoder.timestamp(); decoder.value(); }}
+     */
+    public static final class Decoder {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private int remaining;
+        private long bitPosition;
+        private boolean started;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private int leading;
+        private int trailing;
+
+        /**
+         * @param buffer 数据所在的缓冲区，只做绝对位置读取，不改变其 position
+         * @param offset 数据块在缓冲区中的起始字节
+         * @param count 数据块中的点数
+         */
+        public Decoder(ByteBuffer buffer, int offset, int count) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.remaining = count;
+        }
+
+        /**
+         * 读取下一个点
+         *
+         * @return 还有点返回 true
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            if (!started) {
+                started = true;
+                timestamp = readBits(64);
+                valueBits = readBits(64);
+                return true;
+            }
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            valueBits ^= readXor();
+            return true;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public double value() {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        private long readDeltaOfDelta() {
+            if (readBit() == 0) {
+                return 0;
+            }
+            if (readBit() == 0) {
+                return readSigned(7);
+            }
+            if (readBit() == 0) {
+                return readSigned(12);
+            }
+            if (readBit() == 0) {
+                return readSigned(20);
+            }
+            if (readBit() == 0) {
+                return readSigned(32);
+            }
+            return readBits(64);
+        }
+
+        private long readXor() {
+            if (readBit() == 0) {
+                return 0;
+            }
+            if (readBit() == 1) {
+                leading = (int) readBits(5);
+                int meaningful = (int) readBits(6) + 1;
+                trailing = 64 - leading - meaningful;
+            }
+            return readBits(64 - leading - trailing) << trailing;
+        }
+
+        private long readSigned(int bits) {
+            return (readBits(bits) << (64 - bits)) >> (64 - bits);
+        }
+
+        private int readBit() {
+            int b = buffer.get(offset + (int) (bitPosition >>> 3));
+            int bit = (b >>> (7 - (int) (bitPosition & 7))) & 1;
+            bitPosition++;
+            return bit;
+        }
+
+        /**
+         * 读取 n 位（高位在前）
+         */
+        private long readBits(int n) {
+            long value = 0;
+            while (n > 0) {
+                int byteIndex = (int) (bitPosition >>> 3);
+                int available = 8 - (int) (bitPosition & 7);
+                int take = Math.min(available, n);
+                int b = buffer.get(offset + byteIndex) & 0xFF;
+                int bits = (b >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | bits;
+                bitPosition += take;
+                n -= take;
+            }
+            return value;
+        }
+    }
+}
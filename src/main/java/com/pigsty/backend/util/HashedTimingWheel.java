@@ -0,0 +1,168 @@
+package com.pigsty.backend.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 哈希时间轮
+ *
+ * 把时间按固定刻度切分，映射到一个长度为 2 的幂的环形槽数组上，每个槽是一条双向链表。
+ * 每个键最多对应一个定时，重新设置定时只需把节点从原来的槽摘下、挂到新的槽上，代价为 O(1)；
+ * {@link #advance(long)} 每个刻度只检查一个槽，超时时间超过一圈的定时留在槽中，等转到到期的那一圈才触发。
+ *
+ * 不创建任何线程，由调用方定期调用 {@link #advance(long)} 推进。所有方法均为线程安全。
+ *
+ * @param <K> 定时的键
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class HashedTimingWheel<K> {
+
+    private static final class Node<K> {
+        final K key;
+        long deadlineTick;
+        int slot;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final int mask;
+    private final Node<K>[] slots;
+    private final HashMap<K, Node<K>> nodes = new HashMap<>();
+
+    /**
+     * 已经处理过的最后一个刻度
+     */
+    private long currentTick;
+
+    /**
+     * @param tickMillis 刻度长度（毫秒），也是超时判定的精度
+     * @param requestedSlots 期望的槽数，会向上取整为 2 的幂；超时时间不超过一圈时每个槽里只有即将到期的定时
+     * @param nowMillis 当前时间（毫秒）
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickMillis, int requestedSlots, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (requestedSlots < 1) {
+            throw new IllegalArgumentException("Timing wheel needs at least one slot");
+        }
+        int slotCount = requestedSlots == 1 ? 1 : Integer.highestOneBit(requestedSlots - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.originMillis = nowMillis;
+        this.mask = slotCount - 1;
+        this.slots = (Node<K>[]) new Node<?>[slotCount];
+    }
+
+    /**
+     * 设置或重新设置某个键的定时
+     *
+     * @param key 键
+     * @param deadlineMillis 到期时间（毫秒）；已经过去的时间在下一次推进时触发
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        // 向上取整到刻度，保证不会早于到期时间触发
+        long deadlineTick = Math.max(currentTick + 1, Math.ceilDiv(deadlineMillis - originMillis, tickMillis));
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            nodes.put(key, node);
+        } else {
+            if (node.deadlineTick == deadlineTick) {
+                return;
+            }
+            unlink(node);
+        }
+        node.deadlineTick = deadlineTick;
+        link(node, (int) (deadlineTick & mask));
+    }
+
+    /**
+     * 取消某个键的定时
+     *
+     * @return 存在定时并被取消返回 true
+     */
+    public synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * 某个键当前是否有定时
+     */
+    public synchronized boolean contains(K key) {
+        return nodes.containsKey(key);
+    }
+
+    /**
+     * 当前定时的数量
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 推进到当前时间，移除并返回所有已经到期的键
+     *
+     * @param nowMillis 当前时间（毫秒）
+     * @return 到期的键，按槽的顺序排列
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - originMillis, tickMillis);
+        if (targetTick <= currentTick) {
+            return List.of();
+        }
+        List<K> expired = new ArrayList<>();
+        // 落后超过一圈时每个槽只需检查一次
+        long firstTick = Math.max(currentTick + 1, targetTick - mask);
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            Node<K> node = slots[(int) (tick & mask)];
+            while (node != null) {
+                Node<K> next = node.next;
+                if (node.deadlineTick <= targetTick) {
+                    unlink(node);
+                    nodes.remove(node.key);
+                    expired.add(node.key);
+                }
+                node = next;
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+
+    private void link(Node<K> node, int slot) {
+        node.slot = slot;
+        node.prev = null;
+        node.next = slots[slot];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        slots[slot] = node;
+    }
+
+    private void unlink(Node<K> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.pigsty.backend.util;
+
+/**
+ * 对数线性延迟直方图
+ *
+ * 小于 64 的值每个值一个桶；更大的值按 2 的幂分段，每段再等分为 32 个子桶，
+ * 任意值的相对误差不超过 1/32（约 3%）。桶数组固定为 2048 个 long，记录一个值只需一次数组自增，
+ * 不保留原始样本，适合在长时间压测中记录数百万次请求的延迟。
+ *
+ * 非线程安全：每个线程各自记录，结束时用 {@link #add(LatencyHistogram)} 合并。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    private final long[] counts = new long[64 * SUB_BUCKET_HALF];
+    private long totalCount;
+    private long maxValue;
+
+    /**
+     * 记录一个值，负数按 0 处理
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts[indexOf(v)]++;
+        totalCount++;
+        if (v > maxValue) {
+            maxValue = v;
+        }
+    }
+
+    /**
+     * 合并另一个直方图的计数
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public long max() {
+        return maxValue;
+    }
+
+    /**
+     * 百分位数
+     *
+     * @param percentile 0 到 100 之间的百分位，例如 99.9
+     * @return 该百分位所在桶的上界（不超过记录到的最大值）；没有记录时返回 0
+     */
+    public long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
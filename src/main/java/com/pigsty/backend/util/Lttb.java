@@ -0,0 +1,76 @@
+package com.pigsty.backend.util;
+
+/**
+ * LTTB（Largest-Triangle-Three-Buckets）降采样
+ *
+ * 首尾两点固定保留，中间的点均分为 threshold - 2 个桶，每个桶选出与
+ * “上一个已选点”和“下一个桶的平均点”构成三角形面积最大的那个点。
+ * 与等间隔抽样相比能保留曲线上的尖峰和拐点，适合把原始数据压缩到图表可承受的点数。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * 选出降采样后保留的点
+     *
+     * @param x 横坐标，按升序排列
+     * @param y 纵坐标，不能包含 NaN
+     * @param length 有效点数（x、y 的前 length 个元素）
+     * @param threshold 目标点数，小于 3 时按 3 处理
+     * @return 保留点的下标，升序；length 不超过 threshold 时返回全部下标
+     */
+    public static int[] select(long[] x, double[] y, int length, int threshold) {
+        if (length <= Math.max(threshold, 2)) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int target = Math.max(threshold, 3);
+        int[] selected = new int[target];
+        double bucketSize = (double) (length - 2) / (target - 2);
+        long origin = x[0];
+
+        int previous = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < target - 2; bucket++) {
+            // 下一个桶的平均点作为三角形的第三个顶点
+            int averageStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int averageEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = averageStart; i < averageEnd; i++) {
+                averageX += x[i] - origin;
+                averageY += y[i];
+            }
+            int averageLength = averageEnd - averageStart;
+            averageX /= averageLength;
+            averageY /= averageLength;
+
+            int rangeStart = (int) (bucket * bucketSize) + 1;
+            int rangeEnd = (int) ((bucket + 1) * bucketSize) + 1;
+            double previousX = x[previous] - origin;
+            double previousY = y[previous];
+            double maxArea = -1;
+            int chosen = rangeStart;
+            for (int i = rangeStart; i < rangeEnd; i++) {
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+                        - (previousX - (x[i] - origin)) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        selected[target - 1] = length - 1;
+        return selected;
+    }
+}
@@ -0,0 +1,135 @@
+package com.pigsty.backend.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列（多生产者 / 多消费者）
+ *
+ * 基于 Dmitry Vyukov 的有界 MPMC 队列算法：每个槽位带一个序号，
+ * 生产者和消费者只通过 CAS 推进各自的游标，队列满时 {@link #offer} 立即返回 false，
+ * 由调用方决定如何施加背压，而不是阻塞调用线程。
+ *
+ * @param <E> 元素类型
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class MpmcRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    /**
+     * @param requestedCapacity 期望容量，会向上取整为 2 的幂
+     */
+    public MpmcRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 2");
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 尝试入队
+     *
+     * @param element 元素，不能为 null
+     * @return 入队成功返回 true，队列已满返回 false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Ring buffer does not accept null elements");
+        }
+        long position = producerIndex.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerIndex.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    // 序号的 volatile 写发布元素，消费者看到新序号时一定能读到元素
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = producerIndex.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = producerIndex.get();
+            }
+        }
+    }
+
+    /**
+     * 尝试出队
+     *
+     * @return 队首元素，队列为空返回 null
+     */
+    public E poll() {
+        long position = consumerIndex.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (consumerIndex.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+                position = consumerIndex.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = consumerIndex.get();
+            }
+        }
+    }
+
+    /**
+     * 一次最多取出 maxElements 个元素放入 sink
+     *
+     * @param sink 接收元素的列表
+     * @param maxElements 最多取出的元素个数
+     * @return 实际取出的元素个数
+     */
+    public int drainTo(List<? super E> sink, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            E element = poll();
+            if (element == null) {
+                break;
+            }
+            sink.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * 当前元素个数（并发环境下为近似值）
+     */
+    public int size() {
+        long size = producerIndex.get() - consumerIndex.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
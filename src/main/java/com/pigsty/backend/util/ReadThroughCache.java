@@ -0,0 +1,130 @@
+package com.pigsty.backend.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 读穿透缓存：未命中时调用加载函数并缓存结果
+ *
+ * - 容量：条目数达到上限时，先任意移除一半条目再放入新条目（缓存的都是变化很少、重新加载很便宜的数据，
+ *   不值得维护 LRU 顺序）
+ * - 失效：{@link #invalidate} / {@link #invalidateAll} 使计数器加一，
+ *   加载开始后发生过失效的结果不会放入缓存，避免把失效前读到的旧数据缓存下来
+ * - 统计：命中、未命中、容量淘汰和失效次数，见 {@link #stats()}
+ *
+ * 加载函数返回 null 时不缓存。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class ReadThroughCache<K, V> {
+
+    private final String name;
+    private final int maxEntries;
+    private final ConcurrentHashMap<K, V> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 缓存的统计数据
+     *
+     * @param name 缓存名称
+     * @param size 当前条目数
+     * @param maxEntries 条目数上限
+     * @param hits 命中次数
+     * @param misses 未命中（即加载）次数
+     * @param hitRatio 命中率，尚无访问时为 0
+     * @param evictions 因容量上限被移除的条目数
+     * @param invalidations 失效次数
+     */
+    public record Stats(String name, int size, int maxEntries, long hits, long misses, double hitRatio,
+                        long evictions, long invalidations) {
+    }
+
+    public ReadThroughCache(String name, int maxEntries) {
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * 读取缓存，未命中时加载
+     *
+     * @param key 键
+     * @param loader 加载函数，可能被多个线程同时调用
+     * @return 缓存的值或新加载的值
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        long startGeneration = generation.get();
+        V loaded = loader.apply(key);
+        if (loaded == null || generation.get() != startGeneration) {
+            return loaded;
+        }
+        if (entries.size() >= maxEntries) {
+            trim();
+        }
+        V existing = entries.putIfAbsent(key, loaded);
+        if (existing == null && generation.get() != startGeneration) {
+            // 放入缓存的同时发生了失效，撤回这份可能已过期的值
+            entries.remove(key, loaded);
+        }
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * 使一个键失效
+     */
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        invalidations.increment();
+        entries.remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+        entries.clear();
+    }
+
+    /**
+     * 遍历当前缓存的条目（弱一致）
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        entries.forEach(action);
+    }
+
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return new Stats(name, entries.size(), maxEntries, hitCount, missCount,
+                total == 0 ? 0 : (double) hitCount / total, evictions.sum(), invalidations.sum());
+    }
+
+    private void trim() {
+        int excess = entries.size() - maxEntries / 2;
+        Iterator<K> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+}
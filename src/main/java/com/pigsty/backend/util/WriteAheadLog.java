@@ -0,0 +1,577 @@
+package com.pigsty.backend.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * 基于内存映射文件的预写日志（单一读取方）
+ *
+ * 日志由若干固定大小的段文件组成（{dir}/{序号}.wal），记录依次追加，写满后新建下一个段：
+ *
+ * - 记录：4 字节长度 + 4 字节 CRC32C + 内容。长度最后写入，长度为 0 的位置即日志末尾；
+ *   启动时从头扫描，遇到长度为 0、越界或 CRC 不符的记录即认为到达末尾（写到一半时进程或机器崩溃）
+ * - 读取：唯一的读取方按顺序读取记录，处理完成后调用 {@link #commit()} 把读取位置记入检查点文件，
+ *   检查点之前的段整个删除。未提交的记录在重新打开后从检查点开始再次读出（至少一次）
+ * - 刷盘：追加只写入映射内存，由调用方按自己的策略调用 {@link #sync()} 刷到磁盘
+ *   （例如定时批量刷盘，即组提交）。进程崩溃不丢数据，机器掉电丢失上次刷盘之后的记录
+ * - 容量：段文件总大小超过上限时 {@link #append} 返回 false，由调用方施加背压
+ * - 位置：{@link #position()} 是读取位置的单调递增编码（段序号 × 2^32 + 段内偏移），调用方可以把它与处理结果
+ *   一起保存，重新打开后用 {@link #skipThrough} 跳过已处理但尚未提交的记录，做到恰好一次。
+ *   日志目录第一次创建时生成随机的 {@link #id()}，目录被删除重建后位置从头编号，ID 也随之改变
+ *
+ * 追加和读取都在同一把锁（{@link ReentrantLock}，等待的虚拟线程可以卸下）内进行，只涉及内存拷贝，持锁时间很短：
+ * 下一个段文件由后台虚拟线程预先创建并映射（{dir}/{序号}.wal.spare），写满时在锁内只做一次改名；
+ * 已提交的段在释放锁之后删除。
+ *
+ * @author 系统架构
+ * @version 1.0
+ */
+public final class WriteAheadLog implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x5057414C;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String ID_FILE = "id";
+    private static final String SPARE_SUFFIX = ".spare";
+
+    /**
+     * 预先创建段文件的线程：每次创建一个虚拟线程
+     */
+    private static final Executor ALLOCATOR = task -> Thread.ofVirtual().name("wal-segment-allocator").start(task);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final MappedByteBuffer checkpoint;
+    private final long id;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 预先创建的下一个段；为 null 时写满后在锁内同步创建
+     */
+    private CompletableFuture<Segment> spare;
+
+    /**
+     * 释放锁之后要删除的文件（已提交的段、不再使用的预创建段）
+     */
+    private final List<Path> obsolete = new ArrayList<>();
+
+    /**
+     * 读取位置：segments 中的下标和段内偏移
+     */
+    private int readSegment;
+    private int readPosition;
+    private long appended;
+    private long committed;
+    private long read;
+    private boolean dirty;
+
+    /**
+     * 序号不小于该值的段可能有尚未刷盘的数据
+     */
+    private long unsyncedFrom;
+
+    /**
+     * 日志为空时新建段使用的序号，始终大于检查点中的序号，避免重启后新段被当作已提交的段删除
+     */
+    private long nextSequence;
+
+    /**
+     * 打开（或新建）日志目录，恢复检查点和日志末尾
+     *
+     * @param directory 日志目录
+     * @param segmentSize 每个段文件的字节数
+     * @param maxBytes 段文件总字节数上限
+     */
+    public WriteAheadLog(Path directory, int segmentSize, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+        id = loadOrCreateId(directory.resolve(ID_FILE));
+        recover();
+        preallocate(segments.isEmpty() ? nextSequence : segments.get(segments.size() - 1).sequence + 1);
+    }
+
+    private static long loadOrCreateId(Path file) throws IOException {
+        if (Files.exists(file) && Files.size(file) == Long.BYTES) {
+            return ByteBuffer.wrap(Files.readAllBytes(file)).getLong();
+        }
+        long created = new SecureRandom().nextLong() & Long.MAX_VALUE;
+        Path temporary = file.resolveSibling(ID_FILE + ".tmp");
+        Files.write(temporary, ByteBuffer.allocate(Long.BYTES).putLong(0, created).array());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return created;
+    }
+
+    private void recover() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.wal")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(0, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // 不是段文件
+                }
+            }
+        }
+        sequences.sort(null);
+        // 上次运行预先创建但没有用上的段
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SPARE_SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        // 检查点：段序号、段内偏移和二者的校验值；无效时从最早的段开始
+        long checkpointSequence = -1;
+        int checkpointPosition = SEGMENT_HEADER_BYTES;
+        if (checkpoint.getInt(12) == checkpointCrc(checkpoint.getLong(0), checkpoint.getInt(8))
+                && checkpoint.getInt(8) != 0) {
+            checkpointSequence = checkpoint.getLong(0);
+            checkpointPosition = checkpoint.getInt(8);
+        }
+
+        nextSequence = checkpointSequence + 1;
+        for (long sequence : sequences) {
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            Path file = segmentPath(sequence);
+            if (sequence < checkpointSequence) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            Segment segment = Segment.open(file, sequence);
+            if (segment == null) {
+                continue;
+            }
+            int from = sequence == checkpointSequence ? checkpointPosition : SEGMENT_HEADER_BYTES;
+            appended += segment.scan(from);
+            segments.add(segment);
+        }
+        if (!segments.isEmpty() && segments.get(0).sequence == checkpointSequence) {
+            readPosition = Math.min(checkpointPosition, segments.get(0).end);
+        } else {
+            readPosition = SEGMENT_HEADER_BYTES;
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param record 记录内容，不能为空
+     * @return 已写入返回 true；日志已达容量上限返回 false
+     */
+    public boolean append(byte[] record) {
+        int required = RECORD_HEADER_BYTES + record.length;
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        boolean cleanup;
+        lock.lock();
+        try {
+            Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (active == null || active.end + required > active.buffer.capacity()) {
+                if ((long) (segments.size() + 1) * segmentSize > maxBytes && !segments.isEmpty()) {
+                    return false;
+                }
+                active = nextSegment(active == null ? nextSequence : active.sequence + 1, required);
+                if (segments.isEmpty()) {
+                    readSegment = 0;
+                    readPosition = SEGMENT_HEADER_BYTES;
+                }
+                segments.add(active);
+            }
+            int position = active.end;
+            active.buffer.put(position + RECORD_HEADER_BYTES, record);
+            active.buffer.putInt(position + 4, (int) crc.getValue());
+            active.buffer.putInt(position, record.length);
+            active.end = position + required;
+            appended++;
+            dirty = true;
+            cleanup = !obsolete.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+        if (cleanup) {
+            deleteObsolete();
+        }
+        return true;
+    }
+
+    /**
+     * 取出预先创建的段作为新的活动段，并开始预先创建再下一个段；须持有锁
+     *
+     * 预创建的段还没有完成时在这里等待（等待的虚拟线程卸下，不占用载体线程）；序号不符、放不下这条记录
+     * （超过段大小的记录）或预创建失败时在锁内同步创建。
+     */
+    private Segment nextSegment(long sequence, int required) {
+        Segment next = null;
+        CompletableFuture<Segment> pending = spare;
+        spare = null;
+        if (pending != null) {
+            try {
+                Segment prepared = pending.join();
+                if (prepared.sequence == sequence && SEGMENT_HEADER_BYTES + required <= prepared.buffer.capacity()) {
+                    Files.move(prepared.path, segmentPath(sequence), StandardCopyOption.ATOMIC_MOVE);
+                    next = new Segment(segmentPath(sequence), sequence, prepared.buffer);
+                } else {
+                    obsolete.add(prepared.path);
+                }
+            } catch (CompletionException | IOException e) {
+                // 预创建失败（例如磁盘已满），下面同步创建，失败时把异常抛给调用方
+            }
+        }
+        if (next == null) {
+            next = Segment.create(segmentPath(sequence), sequence,
+                    Math.max(segmentSize, SEGMENT_HEADER_BYTES + required));
+        }
+        preallocate(sequence + 1);
+        return next;
+    }
+
+    private void preallocate(long sequence) {
+        Path path = directory.resolve(String.format("%020d.wal%s", sequence, SPARE_SUFFIX));
+        spare = CompletableFuture.supplyAsync(() -> Segment.create(path, sequence, segmentSize), ALLOCATOR);
+    }
+
+    private void deleteObsolete() {
+        List<Path> files;
+        lock.lock();
+        try {
+            files = new ArrayList<>(obsolete);
+            obsolete.clear();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 从读取位置起读出最多 max 条记录并前移读取位置
+     *
+     * @param max 最多读取的条数
+     * @return 读出的记录，没有新记录时为空列表
+     */
+    public List<byte[]> read(int max) {
+        List<byte[]> records = new ArrayList<>(Math.min(max, 1024));
+        lock.lock();
+        try {
+            readInto(records, max);
+        } finally {
+            lock.unlock();
+        }
+        return records;
+    }
+
+    private void readInto(List<byte[]> records, int max) {
+        while (records.size() < max && readSegment < segments.size()) {
+            Segment segment = segments.get(readSegment);
+            if (readPosition >= segment.end) {
+                if (readSegment == segments.size() - 1) {
+                    break;
+                }
+                readSegment++;
+                readPosition = SEGMENT_HEADER_BYTES;
+                continue;
+            }
+            int length = segment.buffer.getInt(readPosition);
+            byte[] record = new byte[length];
+            segment.buffer.get(readPosition + RECORD_HEADER_BYTES, record);
+            records.add(record);
+            readPosition += RECORD_HEADER_BYTES + length;
+        }
+        read += records.size();
+    }
+
+    /**
+     * 日志的ID：日志目录第一次创建时随机生成，之后不变
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * 当前读取位置，即最后一条读出的记录之后的位置；随读取单调递增，重新打开后仍然有效
+     */
+    public long position() {
+        lock.lock();
+        try {
+            if (segments.isEmpty()) {
+                return encodePosition(nextSequence, SEGMENT_HEADER_BYTES);
+            }
+            return encodePosition(segments.get(readSegment).sequence, readPosition);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把读取位置前移到 position：跳过结束位置不晚于它的记录，不返回其内容。跳过的记录与读出的一样，
+     * 在 {@link #commit()} 之后才算已提交
+     *
+     * @param position 之前由 {@link #position()} 取得的位置
+     * @return 跳过的记录条数
+     */
+    public long skipThrough(long position) {
+        lock.lock();
+        try {
+            return skip(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long skip(long position) {
+        long skipped = 0;
+        while (readSegment < segments.size()) {
+            Segment segment = segments.get(readSegment);
+            if (readPosition >= segment.end) {
+                if (readSegment == segments.size() - 1
+                        || encodePosition(segments.get(readSegment + 1).sequence, SEGMENT_HEADER_BYTES) > position) {
+                    break;
+                }
+                readSegment++;
+                readPosition = SEGMENT_HEADER_BYTES;
+                continue;
+            }
+            int next = readPosition + RECORD_HEADER_BYTES + segment.buffer.getInt(readPosition);
+            if (encodePosition(segment.sequence, next) > position) {
+                break;
+            }
+            readPosition = next;
+            skipped++;
+        }
+        read += skipped;
+        return skipped;
+    }
+
+    private static long encodePosition(long sequence, int offset) {
+        return (sequence << 32) + offset;
+    }
+
+    /**
+     * 确认已读出的记录都已处理：把读取位置记入检查点，删除检查点之前的段
+     */
+    public void commit() {
+        lock.lock();
+        try {
+            if (segments.isEmpty()) {
+                return;
+            }
+            Segment current = segments.get(readSegment);
+            checkpoint.putLong(0, current.sequence);
+            checkpoint.putInt(8, readPosition);
+            checkpoint.putInt(12, checkpointCrc(current.sequence, readPosition));
+            committed += read;
+            read = 0;
+            dirty = true;
+            while (readSegment > 0) {
+                obsolete.add(segments.remove(0).path);
+                readSegment--;
+            }
+            if (obsolete.isEmpty()) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        deleteObsolete();
+    }
+
+    /**
+     * 把尚未刷盘的段和检查点刷到磁盘
+     */
+    public void sync() {
+        List<Segment> toForce;
+        lock.lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            toForce = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.sequence >= unsyncedFrom) {
+                    toForce.add(segment);
+                }
+            }
+            if (!segments.isEmpty()) {
+                unsyncedFrom = segments.get(segments.size() - 1).sequence;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Segment segment : toForce) {
+            segment.buffer.force();
+        }
+        checkpoint.force();
+    }
+
+    /**
+     * 已追加但尚未提交的记录条数
+     */
+    public long backlog() {
+        lock.lock();
+        try {
+            return appended - committed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 段文件占用的字节数
+     */
+    public long sizeBytes() {
+        lock.lock();
+        try {
+            long bytes = 0;
+            for (Segment segment : segments) {
+                bytes += segment.buffer.capacity();
+            }
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 刷盘，并删除预先创建但没有用上的段
+     */
+    @Override
+    public void close() {
+        sync();
+        CompletableFuture<Segment> pending;
+        lock.lock();
+        try {
+            pending = spare;
+            spare = null;
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null) {
+            try {
+                Files.deleteIfExists(pending.join().path);
+            } catch (CompletionException | IOException e) {
+                // 下次打开时删除
+            }
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%020d.wal", sequence));
+    }
+
+    private static int checkpointCrc(long sequence, int position) {
+        // CRC32C.update(int) 只计入最低一个字节，需要按完整的 12 字节计算
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(12).putLong(0, sequence).putInt(8, position));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 一个映射到内存的段文件
+     */
+    private static final class Segment {
+
+        private final Path path;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * 最后一条有效记录之后的位置，即下一条记录的写入位置
+         */
+        private int end = SEGMENT_HEADER_BYTES;
+
+        private Segment(Path path, long sequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, long sequence, int size) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, SEGMENT_MAGIC);
+                return new Segment(path, sequence, buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * 打开已有的段文件，文件头无效时返回 null
+         */
+        static Segment open(Path path, long sequence) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < SEGMENT_HEADER_BYTES) {
+                    return null;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            return buffer.getInt(0) == SEGMENT_MAGIC ? new Segment(path, sequence, buffer) : null;
+        }
+
+        /**
+         * 从头扫描出有效记录的末尾，并把末尾之后的残留清零，避免新记录与残留拼接成“有效”记录
+         *
+         * @param countFrom 从该位置起统计记录条数
+         * @return countFrom 之后的有效记录条数
+         */
+        int scan(int countFrom) {
+            int position = SEGMENT_HEADER_BYTES;
+            int count = 0;
+            while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(position + RECORD_HEADER_BYTES, length));
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    break;
+                }
+                if (position >= countFrom) {
+                    count++;
+                }
+                position += RECORD_HEADER_BYTES + length;
+            }
+            end = position;
+            for (int i = position; i < Math.min(position + RECORD_HEADER_BYTES, buffer.capacity()); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            return count;
+        }
+    }
+}
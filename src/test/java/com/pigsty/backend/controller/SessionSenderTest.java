@@ -0,0 +1,183 @@
+package com.pigsty.backend.controller;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link SessionSender} 的单元测试：告警不丢弃、数据更新按猪舍合并或丢弃最旧、超出字节或时间上限的会话被驱逐
+ */
+class SessionSenderTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final List<SessionSender> senders = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> sentPayloads = new CopyOnWriteArrayList<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private Timer sendTimer;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() {
+        sendTimer = Timer.builder("test.send").register(new SimpleMeterRegistry());
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        senders.forEach(SessionSender::stop);
+    }
+
+    @Test
+    void neverDropsWarnings() {
+        SessionSender sender = sender(new SessionSender.Limits(2, SessionSender.OverflowPolicy.DROP_OLDEST, NO_LIMIT, NO_LIMIT));
+
+        for (int i = 0; i < 100; i++) {
+            sender.enqueueWarning(message("warning-" + i));
+            sender.enqueueDataUpdate((long) i, message("data-" + i));
+        }
+
+        SessionSender.Stats stats = sender.stats();
+        assertThat(stats.queuedWarnings()).isEqualTo(100);
+        assertThat(stats.queuedDataUpdates()).isEqualTo(2);
+        assertThat(stats.dropped()).isEqualTo(98);
+        assertThat(stats.coalesced()).isZero();
+    }
+
+    @Test
+    void coalescesDataUpdatesPerPigsty() {
+        SessionSender sender = sender(new SessionSender.Limits(10, SessionSender.OverflowPolicy.COALESCE, NO_LIMIT, NO_LIMIT));
+
+        sender.enqueueDataUpdate(1L, message("p1-a"));
+        sender.enqueueDataUpdate(2L, message("p2-a"));
+        sender.enqueueDataUpdate(1L, message("p1-b"));
+        sender.enqueueDataUpdate(1L, message("p1-c"));
+
+        SessionSender.Stats stats = sender.stats();
+        assertThat(stats.queuedDataUpdates()).isEqualTo(2);
+        assertThat(stats.coalesced()).isEqualTo(2);
+        assertThat(stats.dropped()).isZero();
+        assertThat(stats.queuedBytes()).isEqualTo("p1-c".length() + "p2-a".length());
+    }
+
+    @Test
+    void dropOldestKeepsEveryUpdateOfTheSamePigstyUntilFull() {
+        SessionSender sender = sender(new SessionSender.Limits(2, SessionSender.OverflowPolicy.DROP_OLDEST, NO_LIMIT, NO_LIMIT));
+
+        sender.enqueueDataUpdate(1L, message("p1-a"));
+        sender.enqueueDataUpdate(1L, message("p1-b"));
+        sender.enqueueDataUpdate(1L, message("p1-c"));
+
+        SessionSender.Stats stats = sender.stats();
+        assertThat(stats.queuedDataUpdates()).isEqualTo(2);
+        assertThat(stats.dropped()).isEqualTo(1);
+        assertThat(stats.coalesced()).isZero();
+    }
+
+    @Test
+    void sendsWarningsBeforeDataUpdates() throws Exception {
+        recordSends();
+        SessionSender sender = sender(new SessionSender.Limits(10, SessionSender.OverflowPolicy.COALESCE, NO_LIMIT, NO_LIMIT));
+        sender.enqueueDataUpdate(1L, message("p1-a"));
+        sender.enqueueDataUpdate(1L, message("p1-b"));
+        sender.enqueueDataUpdate(2L, message("p2-a"));
+        sender.enqueueWarning(message("warning"));
+
+        sender.start();
+
+        // 发送计数在 sendMessage 返回之后才更新
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sender.stats().sent() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sentPayloads).containsExactly("warning", "p1-b", "p2-a");
+        assertThat(sender.stats().sent()).isEqualTo(3);
+        assertThat(sendTimer.count()).isEqualTo(3);
+    }
+
+    @Test
+    void evictsSessionOverByteBudget() throws Exception {
+        SessionSender sender = sender(new SessionSender.Limits(10, SessionSender.OverflowPolicy.COALESCE, NO_LIMIT, 10));
+
+        sender.enqueueWarning(message("12345"));
+        verify(session, never()).close(any());
+        sender.enqueueWarning(message("678901"));
+
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(closed.await(5, TimeUnit.SECONDS)).isTrue();
+        // 驱逐之后入队的消息直接丢弃
+        sender.enqueueWarning(message("late"));
+        assertThat(sender.stats().queuedWarnings()).isZero();
+        assertThat(sender.stats().queuedBytes()).isZero();
+    }
+
+    @Test
+    void evictsSessionStuckInSend() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            // 模拟客户端不读：发送一直阻塞，直到被驱逐时中断
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            return null;
+        }).when(session).sendMessage(any());
+        SessionSender sender = sender(new SessionSender.Limits(10, SessionSender.OverflowPolicy.COALESCE, 50, NO_LIMIT));
+        sender.start();
+
+        sender.enqueueWarning(message("first"));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+        sender.enqueueDataUpdate(1L, message("second"));
+
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(closed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(sender.stats().sent()).isZero();
+    }
+
+    private SessionSender sender(SessionSender.Limits limits) {
+        SessionSender sender = new SessionSender(session, limits, sendTimer, closed::countDown);
+        senders.add(sender);
+        return sender;
+    }
+
+    private void recordSends() throws IOException {
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            sentPayloads.add((String) message.getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    private static TextMessage message(String payload) {
+        return new TextMessage(payload);
+    }
+}
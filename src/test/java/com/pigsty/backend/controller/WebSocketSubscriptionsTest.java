@@ -0,0 +1,114 @@
+package com.pigsty.backend.controller;
+
+import com.pigsty.backend.controller.WebSocketSubscriptions.Subscriber;
+import com.pigsty.backend.controller.WebSocketSubscriptions.Topic;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link WebSocketSubscriptions} 的单元测试：按猪舍和消息类型选择接收方，订阅变更后索引保持一致
+ */
+class WebSocketSubscriptionsTest {
+
+    private final WebSocketSubscriptions subscriptions = new WebSocketSubscriptions();
+
+    @Test
+    void deliversOnlyToSubscribersOfThePigsty() {
+        Subscriber admin = register("admin", true);
+        Subscriber first = register("first", false);
+        Subscriber second = register("second", false);
+        subscriptions.subscribeAll(admin);
+        subscriptions.subscribe(first, List.of(1L, 2L));
+        subscriptions.subscribe(second, List.of(2L));
+
+        assertThat(recipients(1L, Topic.DATA_UPDATE)).containsExactlyInAnyOrder(admin.sender(), first.sender());
+        assertThat(recipients(2L, Topic.DATA_UPDATE))
+                .containsExactlyInAnyOrder(admin.sender(), first.sender(), second.sender());
+        assertThat(recipients(3L, Topic.WARNING)).containsExactly(admin.sender());
+        // 不属于任何猪舍的消息只发给订阅了全部猪舍的会话
+        assertThat(recipients(null, Topic.WARNING)).containsExactly(admin.sender());
+    }
+
+    @Test
+    void filtersByTopic() {
+        Subscriber warningsOnly = register("warnings", false);
+        Subscriber everything = register("everything", false);
+        subscriptions.subscribe(warningsOnly, List.of(1L));
+        subscriptions.subscribe(everything, List.of(1L));
+        subscriptions.setTopics(warningsOnly, Topic.WARNING.bit());
+
+        assertThat(recipients(1L, Topic.WARNING)).containsExactlyInAnyOrder(warningsOnly.sender(), everything.sender());
+        assertThat(recipients(1L, Topic.DATA_UPDATE)).containsExactly(everything.sender());
+        assertThat(Topic.fromWireName("data-update")).isEqualTo(Topic.DATA_UPDATE);
+        assertThat(Topic.fromWireName("unknown")).isNull();
+    }
+
+    @Test
+    void unsubscribingFromAllPigstiesKeepsTheRemainingOnes() {
+        Subscriber subscriber = register("s", true);
+        subscriptions.subscribeAll(subscriber);
+
+        subscriptions.unsubscribe(subscriber, List.of(2L), List.of(1L, 3L));
+
+        assertThat(subscriber.isAllPigsties()).isFalse();
+        assertThat(subscriber.pigstyIds()).isEqualTo(Set.of(1L, 3L));
+        assertThat(recipients(2L, Topic.DATA_UPDATE)).isEmpty();
+        assertThat(recipients(3L, Topic.DATA_UPDATE)).containsExactly(subscriber.sender());
+    }
+
+    @Test
+    void removeClearsThePigstyIndex() {
+        Subscriber subscriber = register("s", false);
+        subscriptions.subscribe(subscriber, List.of(1L, 2L));
+        subscriptions.unsubscribe(subscriber, List.of(1L), List.of());
+        assertThat(subscriptions.subscribersOf(1L)).isEmpty();
+
+        assertThat(subscriptions.remove("s")).isSameAs(subscriber);
+
+        assertThat(subscriptions.get("s")).isNull();
+        assertThat(subscriptions.subscribersOf(2L)).isEmpty();
+        assertThat(recipients(2L, Topic.WARNING)).isEmpty();
+        assertThat(subscriptions.remove("s")).isNull();
+    }
+
+    @Test
+    void unsubscribeAllStopsEveryDelivery() {
+        Subscriber subscriber = register("s", true);
+        subscriptions.subscribeAll(subscriber);
+        subscriptions.unsubscribeAll(subscriber);
+        Subscriber other = register("other", false);
+        subscriptions.subscribe(other, List.of(1L));
+        subscriptions.unsubscribeAll(other);
+
+        assertThat(recipients(1L, Topic.WARNING)).isEmpty();
+        assertThat(recipients(null, Topic.WARNING)).isEmpty();
+        assertThat(subscriptions.all()).containsExactlyInAnyOrder(subscriber, other);
+    }
+
+    private Subscriber register(String sessionId, boolean admin) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        Timer timer = Timer.builder("test.send").register(new SimpleMeterRegistry());
+        SessionSender sender = new SessionSender(session,
+                new SessionSender.Limits(10, SessionSender.OverflowPolicy.COALESCE, 1000, 1024), timer, () -> { });
+        Subscriber subscriber = new Subscriber(sender, 1L, admin);
+        subscriptions.register(sessionId, subscriber);
+        return subscriber;
+    }
+
+    private List<SessionSender> recipients(Long pigstyId, Topic topic) {
+        List<SessionSender> recipients = new ArrayList<>();
+        subscriptions.forEachRecipient(pigstyId, topic, recipients::add);
+        return recipients;
+    }
+}
@@ -0,0 +1,128 @@
+package com.pigsty.backend.repository;
+
+import com.pigsty.backend.model.EnvironmentalData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link GorillaReadingStore} 的单元测试：按时间范围扫描，重复的点被跳过，迟到的点被计数，
+ * 其所在小时的查询交还 MySQL（重启后仍然记得）
+ */
+class GorillaReadingStoreTest {
+
+    private static final long PIGSTY_ID = 3L;
+    private static final LocalDateTime BASE = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(1);
+
+    @TempDir
+    Path directory;
+
+    private final List<GorillaReadingStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() {
+        stores.forEach(GorillaReadingStore::close);
+    }
+
+    @Test
+    void scansAppendedPointsInRange() throws Exception {
+        GorillaReadingStore store = openStore();
+        store.append(readings(0, 300));
+
+        List<Long> timestamps = new ArrayList<>();
+        int n = store.scan(PIGSTY_ID, ReadingStore.Metric.TEMPERATURE, BASE.plusMinutes(10), BASE.plusMinutes(20),
+                100, (micros, value) -> timestamps.add(micros));
+
+        assertThat(n).isEqualTo(10);
+        assertThat(timestamps).first().isEqualTo(ReadingStore.toEpochMicros(BASE.plusMinutes(10)));
+        assertThat(timestamps).isSorted();
+        assertThat(store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(300))).isTrue();
+    }
+
+    @Test
+    void skipsDuplicatesWithoutCountingThemAsLate() throws Exception {
+        GorillaReadingStore store = openStore();
+        store.append(readings(0, 300));
+        store.append(readings(100, 300));
+
+        assertThat(store.latePoints()).isZero();
+        assertThat(store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(300))).isTrue();
+        assertThat(count(store, BASE, BASE.plusMinutes(300))).isEqualTo(300);
+    }
+
+    @Test
+    void handsHoursWithLateReadingsBackToMySql() throws Exception {
+        GorillaReadingStore store = openStore();
+        store.append(readings(0, 300));
+        store.append(List.of(reading(BASE.plusMinutes(90).plusSeconds(30))));
+
+        assertThat(store.latePoints()).isEqualTo(1);
+        assertThat(store.covers(PIGSTY_ID, BASE.plusMinutes(60), BASE.plusMinutes(120))).isFalse();
+        assertThat(store.covers(PIGSTY_ID, BASE.plusMinutes(95), BASE.plusMinutes(100))).isFalse();
+        assertThat(store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(300))).isFalse();
+        assertThat(store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(60))).isTrue();
+        assertThat(store.covers(PIGSTY_ID, BASE.plusMinutes(120), BASE.plusMinutes(300))).isTrue();
+        assertThat(store.covers(PIGSTY_ID + 1, BASE, BASE.plusMinutes(300))).isTrue();
+    }
+
+    @Test
+    void remembersLateHoursAfterRestart() throws Exception {
+        GorillaReadingStore store = openStore();
+        store.append(readings(0, 300));
+        store.append(List.of(reading(BASE.plusMinutes(90).plusSeconds(30))));
+        store.close();
+        stores.remove(store);
+
+        GorillaReadingStore reopened = openStore();
+        assertThat(reopened.covers(PIGSTY_ID, BASE.plusMinutes(60), BASE.plusMinutes(120))).isFalse();
+        assertThat(reopened.covers(PIGSTY_ID, BASE.plusMinutes(120), BASE.plusMinutes(300))).isTrue();
+        assertThat(count(reopened, BASE, BASE.plusMinutes(300))).isEqualTo(300);
+    }
+
+    private GorillaReadingStore openStore() throws IOException, InterruptedException {
+        GorillaReadingStore store = new GorillaReadingStore(null, mock(PigstyRepository.class),
+                true, directory, 16, 4096, 30, 0);
+        stores.add(store);
+        store.open();
+        store.catchUp();
+        for (int i = 0; i < 500 && !store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(1)); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(store.covers(PIGSTY_ID, BASE, BASE.plusMinutes(1))).isTrue();
+        return store;
+    }
+
+    private static int count(GorillaReadingStore store, LocalDateTime from, LocalDateTime to) {
+        return store.scan(PIGSTY_ID, ReadingStore.Metric.TEMPERATURE, from, to, Integer.MAX_VALUE, (micros, value) -> {
+        });
+    }
+
+    /**
+     * 每分钟一条，第 fromMinute 到 toMinute（不含）分钟
+     */
+    private static List<EnvironmentalData> readings(int fromMinute, int toMinute) {
+        List<EnvironmentalData> readings = new ArrayList<>();
+        for (int minute = fromMinute; minute < toMinute; minute++) {
+            readings.add(reading(BASE.plusMinutes(minute)));
+        }
+        return readings;
+    }
+
+    private static EnvironmentalData reading(LocalDateTime timestamp) {
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId(PIGSTY_ID);
+        data.setTimestamp(timestamp);
+        data.setTemperature(20.0 + timestamp.getMinute() / 10.0);
+        return data;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pigsty.backend.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link WarningCursor} 的单元测试：编码后原样解析（包括排序键为空的游标），格式错误的游标被拒绝
+ */
+class WarningCursorTest {
+
+    @Test
+    void roundTripsSortKeyAndId() {
+        WarningCursor cursor = new WarningCursor(LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_000), 42L);
+        assertThat(WarningCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsNullSortKey() {
+        WarningCursor cursor = new WarningCursor(null, 7L);
+        String encoded = cursor.encode();
+        assertThat(encoded).isNotNull();
+        assertThat(WarningCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsExtremeIds() {
+        LocalDateTime sortKey = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (long id : new long[]{0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertThat(WarningCursor.decode(new WarningCursor(sortKey, id).encode()))
+                    .isEqualTo(new WarningCursor(sortKey, id));
+            assertThat(WarningCursor.decode(new WarningCursor(null, id).encode()))
+                    .isEqualTo(new WarningCursor(null, id));
+        }
+    }
+
+    @Test
+    void encodedFormIsUrlSafe() {
+        assertThat(new WarningCursor(LocalDateTime.of(2024, 3, 1, 12, 30), 1L).encode()).matches("[A-Za-z0-9_-]+");
+        assertThat(new WarningCursor(null, 1L).encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatThrownBy(() -> WarningCursor.decode("not base64!"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> WarningCursor.decode(encode("2024-03-01T12:30")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> WarningCursor.decode(encode("yesterday|1")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> WarningCursor.decode(encode("|abc")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
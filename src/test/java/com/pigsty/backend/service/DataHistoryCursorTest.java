@@ -0,0 +1,54 @@
+package com.pigsty.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link DataHistoryService.Cursor} 的单元测试：编码后原样解析，格式错误的游标被拒绝
+ */
+class DataHistoryCursorTest {
+
+    @Test
+    void roundTripsTimestampAndId() {
+        DataHistoryService.Cursor cursor =
+                new DataHistoryService.Cursor(LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_000), 42L);
+        assertThat(DataHistoryService.Cursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsWholeSecondsAndExtremeIds() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (long id : new long[]{0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            DataHistoryService.Cursor cursor = new DataHistoryService.Cursor(timestamp, id);
+            assertThat(DataHistoryService.Cursor.decode(cursor.encode())).isEqualTo(cursor);
+        }
+    }
+
+    @Test
+    void encodedFormIsUrlSafe() {
+        String encoded = new DataHistoryService.Cursor(LocalDateTime.of(2024, 3, 1, 12, 30), 1L).encode();
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatThrownBy(() -> DataHistoryService.Cursor.decode("not base64!"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DataHistoryService.Cursor.decode(encode("2024-03-01T12:30")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DataHistoryService.Cursor.decode(encode("yesterday|1")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DataHistoryService.Cursor.decode(encode("2024-03-01T12:30|abc")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
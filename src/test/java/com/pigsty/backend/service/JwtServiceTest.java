@@ -0,0 +1,156 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.model.Role;
+import com.pigsty.backend.model.User;
+import com.pigsty.backend.repository.UserRepository;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link JwtService} 的单元测试：已验证 Token 的缓存、账号缓存的有效期与失效、缓存大小上限
+ */
+class JwtServiceTest {
+
+    private static final long HOUR_MILLIS = 3_600_000;
+
+    private UserRepository userRepository;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        alice = user(1L, "alice", Role.USER);
+        when(userRepository.findById(1L)).thenAnswer(invocation -> Optional.of(alice));
+    }
+
+    @Test
+    void cachesVerifiedTokenAndAccount() {
+        JwtService jwtService = new JwtService(userRepository, 100, HOUR_MILLIS);
+        String token = jwtService.generateToken(alice);
+
+        JwtService.VerifiedToken first = jwtService.verify(token);
+        JwtService.VerifiedToken second = jwtService.verify(token);
+
+        assertThat(first.username()).isEqualTo("alice");
+        assertThat(first.principal().getId()).isEqualTo(1L);
+        assertThat(first.principal().getRole()).isEqualTo(Role.USER);
+        // 主体只含ID、用户名和角色
+        assertThat(first.principal().getPassword()).isNull();
+        assertThat(first.expiresAtMillis()).isGreaterThan(System.currentTimeMillis());
+        assertThat(second.principal()).isSameAs(first.principal());
+        assertThat(tokenCache(jwtService)).containsOnlyKeys(token);
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void rejectsTamperedTokenWithoutCachingIt() {
+        JwtService jwtService = new JwtService(userRepository, 100, HOUR_MILLIS);
+        String token = jwtService.generateToken(alice);
+        int signature = token.lastIndexOf('.') + 1;
+        char replaced = token.charAt(signature) == 'A' ? 'B' : 'A';
+        String tampered = token.substring(0, signature) + replaced + token.substring(signature + 1);
+
+        assertThatThrownBy(() -> jwtService.verify(tampered)).isInstanceOf(JwtException.class);
+        assertThat(tokenCache(jwtService)).isEmpty();
+        verify(userRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void appliesRoleChangeAfterAccountTtl() {
+        JwtService jwtService = new JwtService(userRepository, 100, 0);
+        String token = jwtService.generateToken(alice);
+        assertThat(jwtService.verify(token).principal().getRole()).isEqualTo(Role.USER);
+
+        // 有效期为 0：每次认证都重新加载账号，角色以数据库中的当前值为准
+        alice = user(1L, "alice", Role.ADMIN);
+        assertThat(jwtService.verify(token).principal().getRole()).isEqualTo(Role.ADMIN);
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void keepsCachedAccountWithinTtlUntilUserChanged() {
+        JwtService jwtService = new JwtService(userRepository, 100, HOUR_MILLIS);
+        String token = jwtService.generateToken(alice);
+        jwtService.verify(token);
+
+        alice = user(1L, "alice", Role.ADMIN);
+        assertThat(jwtService.verify(token).principal().getRole()).isEqualTo(Role.USER);
+
+        jwtService.userChanged(1L);
+        assertThat(jwtService.verify(token).principal().getRole()).isEqualTo(Role.ADMIN);
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void rejectsDeletedUserAndCachesTheMiss() {
+        JwtService jwtService = new JwtService(userRepository, 100, HOUR_MILLIS);
+        String token = jwtService.generateToken(alice);
+        jwtService.verify(token);
+
+        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        jwtService.userChanged(1L);
+
+        assertThatThrownBy(() -> jwtService.verify(token)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtService.verify(token)).isInstanceOf(JwtException.class);
+        // 用户不存在的结果也在有效期内缓存
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void legacyTokenWithoutUserIdHasNoPrincipal() {
+        JwtService jwtService = new JwtService(userRepository, 100, HOUR_MILLIS);
+        String token = jwtService.generateToken(Map.of(), alice);
+
+        JwtService.VerifiedToken verified = jwtService.verify(token);
+
+        assertThat(verified.username()).isEqualTo("alice");
+        assertThat(verified.principal()).isNull();
+        verify(userRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void boundsTokenAndAccountCaches() {
+        when(userRepository.findById(anyLong())).thenAnswer(
+                invocation -> Optional.of(user(invocation.getArgument(0), "user" + invocation.getArgument(0), Role.USER)));
+        JwtService jwtService = new JwtService(userRepository, 4, HOUR_MILLIS);
+
+        for (long id = 1; id <= 10; id++) {
+            User user = user(id, "user" + id, Role.USER);
+            assertThat(jwtService.verify(jwtService.generateToken(user)).principal().getId()).isEqualTo(id);
+            assertThat(tokenCache(jwtService)).hasSizeLessThanOrEqualTo(4);
+            assertThat(accountCache(jwtService)).hasSizeLessThanOrEqualTo(4);
+        }
+
+        // 被淘汰的账号在下一次认证时重新加载
+        jwtService.verify(jwtService.generateToken(user(1L, "user1", Role.USER)));
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> tokenCache(JwtService jwtService) {
+        return (Map<String, ?>) ReflectionTestUtils.getField(jwtService, "verifiedTokens");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, ?> accountCache(JwtService jwtService) {
+        return (Map<Long, ?>) ReflectionTestUtils.getField(jwtService, "accounts");
+    }
+
+    private static User user(Long id, String username, Role role) {
+        return User.builder().id(id).username(username).password("x").name(username).role(role).build();
+    }
+}
@@ -0,0 +1,209 @@
+package com.pigsty.backend.service;
+
+import com.pigsty.backend.controller.WebSocketHandler;
+import com.pigsty.backend.model.Device;
+import com.pigsty.backend.model.EnvironmentalData;
+import com.pigsty.backend.model.Pigsty;
+import com.pigsty.backend.model.WarningLog;
+import com.pigsty.backend.repository.DeviceRepository;
+import com.pigsty.backend.repository.PigstyRepository;
+import com.pigsty.backend.repository.WarningLogRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link WarningService} 的单元测试：事件的打开、回差关闭、空闲关闭和写回失败后的重试
+ */
+class WarningServiceTest {
+
+    /**
+     * {@link WarningService} 写回事件时每条更新中关闭时间的位置
+     */
+    private static final int CLOSED_AT_INDEX = 4;
+
+    private WarningService warningService;
+    private WarningLogRepository warningLogRepository;
+    private WebSocketHandler webSocketHandler;
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 打开事件时保存的告警，事件状态直接保存在这些对象上
+     */
+    private final List<WarningLog> savedLogs = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Pigsty pigsty = new Pigsty();
+        pigsty.setId(1L);
+        pigsty.setTempThresholdHigh(30.0);
+        pigsty.setTempThresholdLow(15.0);
+        pigsty.setHumidityThresholdHigh(80.0);
+        pigsty.setHumidityThresholdLow(40.0);
+
+        List<Device> devices = new ArrayList<>();
+        long deviceId = 1;
+        for (Device.MetricType type : Device.MetricType.values()) {
+            Device device = new Device();
+            device.setId(deviceId++);
+            device.setPigstyId(1L);
+            device.setType(type);
+            devices.add(device);
+        }
+
+        PigstyRepository pigstyRepository = mock(PigstyRepository.class);
+        when(pigstyRepository.findById(anyLong())).thenReturn(Optional.of(pigsty));
+        DeviceRepository deviceRepository = mock(DeviceRepository.class);
+        when(deviceRepository.findByPigstyId(anyLong())).thenReturn(devices);
+        warningLogRepository = mock(WarningLogRepository.class);
+        AtomicLong ids = new AtomicLong();
+        when(warningLogRepository.save(any(WarningLog.class))).thenAnswer(invocation -> {
+            WarningLog log = invocation.getArgument(0);
+            log.setId(ids.incrementAndGet());
+            savedLogs.add(log);
+            return log;
+        });
+        webSocketHandler = mock(WebSocketHandler.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+
+        warningService = new WarningService();
+        PigstyCache pigstyCache = new PigstyCache(pigstyRepository, deviceRepository, 100);
+        ReflectionTestUtils.setField(warningService, "thresholdEngine", new ThresholdEngine(pigstyCache));
+        ReflectionTestUtils.setField(warningService, "logRepository", warningLogRepository);
+        ReflectionTestUtils.setField(warningService, "webSocketHandler", webSocketHandler);
+        ReflectionTestUtils.setField(warningService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(warningService, "warningCounters", new WarningCounters(warningLogRepository));
+        ReflectionTestUtils.setField(warningService, "metrics", new PigstyMetrics(new SimpleMeterRegistry(), pigstyCache));
+        ReflectionTestUtils.setField(warningService, "hysteresisRatio", 0.05);
+        ReflectionTestUtils.setField(warningService, "incidentIdleTimeoutMillis", 60_000L);
+    }
+
+    @Test
+    void keepsIncidentOpenUntilValueLeavesHysteresisBand() {
+        LocalDateTime now = LocalDateTime.now();
+        warningService.checkDataForWarnings(reading(35.0, now));
+        warningService.checkDataForWarnings(reading(36.0, now.plusSeconds(1)));
+        // 回到阈值 30 以内，但没有低于 30 - 30 × 0.05 = 28.5
+        warningService.checkDataForWarnings(reading(29.0, now.plusSeconds(2)));
+        warningService.checkDataForWarnings(reading(31.0, now.plusSeconds(3)));
+
+        verify(warningLogRepository, times(1)).save(any(WarningLog.class));
+        assertThat(savedLogs.get(0).getClosedAt()).isNull();
+
+        warningService.checkDataForWarnings(reading(28.0, now.plusSeconds(4)));
+        assertThat(savedLogs.get(0).getClosedAt()).isEqualTo(now.plusSeconds(4));
+
+        List<Object[]> updates = flushedUpdates();
+        assertThat(updates).hasSize(1);
+        // 次数、峰值、最后越限时间和关闭时间
+        assertThat(updates.get(0)[0]).isEqualTo(3);
+        assertThat(updates.get(0)[1]).isEqualTo(36.0);
+        assertThat(updates.get(0)[2]).isEqualTo(Timestamp.valueOf(now.plusSeconds(3)));
+        assertThat(updates.get(0)[CLOSED_AT_INDEX]).isNotNull();
+
+        // 关闭之后再次越限打开新的事件
+        warningService.checkDataForWarnings(reading(35.0, now.plusSeconds(5)));
+        verify(warningLogRepository, times(2)).save(any(WarningLog.class));
+    }
+
+    @Test
+    void closesIncidentWithoutReadingsAfterIdleTimeout() {
+        warningService.checkDataForWarnings(reading(35.0, LocalDateTime.now()));
+        ReflectionTestUtils.setField(warningService, "incidentIdleTimeoutMillis", 0L);
+
+        List<Object[]> updates = flushedUpdates();
+
+        assertThat(updates).hasSize(1);
+        assertThat(updates.get(0)[CLOSED_AT_INDEX]).isNotNull();
+        assertThat(savedLogs.get(0).getClosedAt()).isNotNull();
+    }
+
+    @Test
+    void doesNotCloseReplayedReadingsAsIdle() {
+        // 回放两天前的数据：数据时间早于空闲超时，但刚刚收到，事件不算空闲
+        LocalDateTime replayed = LocalDateTime.now().minusDays(2);
+        warningService.checkDataForWarnings(reading(35.0, replayed));
+        warningService.checkDataForWarnings(reading(36.0, replayed.plusMinutes(1)));
+
+        List<Object[]> updates = flushedUpdates();
+
+        assertThat(updates).hasSize(1);
+        assertThat(updates.get(0)[CLOSED_AT_INDEX]).isNull();
+        assertThat(savedLogs.get(0).getClosedAt()).isNull();
+    }
+
+    @Test
+    void retriesFailedUpdatesKeepingOnlyTheLatestPerWarning() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenReturn(new int[] {1});
+        LocalDateTime now = LocalDateTime.now();
+        warningService.checkDataForWarnings(reading(35.0, now));
+        warningService.checkDataForWarnings(reading(36.0, now.plusSeconds(1)));
+        warningService.flushIncidents();
+        assertThat(warningService.pendingRetryUpdates()).isEqualTo(1);
+
+        warningService.checkDataForWarnings(reading(37.0, now.plusSeconds(2)));
+        List<Object[]> updates = flushedUpdates();
+
+        // 等待重试的旧状态被同一告警的新状态替换，只写回一条
+        assertThat(updates).hasSize(1);
+        assertThat(updates.get(0)[0]).isEqualTo(3);
+        assertThat(updates.get(0)[1]).isEqualTo(37.0);
+        assertThat(warningService.pendingRetryUpdates()).isZero();
+    }
+
+    @Test
+    void doesNotWriteBackWhenNothingChanged() {
+        warningService.checkDataForWarnings(reading(24.0, LocalDateTime.now()));
+        warningService.flushIncidents();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(warningLogRepository, never()).save(any(WarningLog.class));
+    }
+
+    /**
+     * 执行一次写回，返回最后一次批量更新的参数
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> flushedUpdates() {
+        warningService.flushIncidents();
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), captor.capture());
+        return captor.getValue();
+    }
+
+    private static EnvironmentalData reading(double temperature, LocalDateTime timestamp) {
+        EnvironmentalData data = new EnvironmentalData();
+        data.setPigstyId(1L);
+        data.setTemperature(temperature);
+        data.setHumidity(60.0);
+        data.setAmmoniaLevel(12.0);
+        data.setLight(300.0);
+        data.setTimestamp(timestamp);
+        return data;
+    }
+}
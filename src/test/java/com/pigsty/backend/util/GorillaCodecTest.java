@@ -0,0 +1,157 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link GorillaCodec} 的单元测试：各档位的时间间隔差值和各种数值编码后按位原样解码，以及规律数据的压缩率
+ */
+class GorillaCodecTest {
+
+    @Test
+    void roundTripsSinglePoint() {
+        assertRoundTrip(new long[]{1_700_000_000_000_000L}, new double[]{21.5});
+    }
+
+    @Test
+    void roundTripsRegularIntervalsWithSlowlyChangingValues() {
+        int n = 1000;
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        double temperature = 22.0;
+        Random random = new Random(1);
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = 1_700_000_000_000_000L + i * 60_000_000L;
+            temperature += random.nextGaussian() * 0.05;
+            values[i] = Math.round(temperature * 100.0) / 100.0;
+        }
+        // 原始数据每个点 16 字节
+        byte[] encoded = assertRoundTrip(timestamps, values);
+        assertThat(encoded.length).isLessThan(n * 8);
+    }
+
+    @Test
+    void encodesRegularRepeatedPointsInTwoBitsEach() {
+        int n = 1000;
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = 1_700_000_000_000_000L + i * 60_000_000L;
+            values[i] = 22.5;
+        }
+        // 第一个点 16 字节；第二个点起间隔的差为 0、数值不变，各占 1 位（第二个点的间隔差单独编码）
+        byte[] encoded = assertRoundTrip(timestamps, values);
+        assertThat(encoded.length).isLessThanOrEqualTo(16 + 16 + (2 * (n - 1) + 7) / 8);
+    }
+
+    @Test
+    void roundTripsEveryDeltaOfDeltaWidth() {
+        // 相邻间隔的差依次落在 0、7、12、20、32、64 位各档（正负两侧），最后是最大的间隔
+        long[] deltaOfDeltas = {0, 1, -1, 63, -64, 64, -65, 2047, -2048, 2048, -2049, 524_287, -524_288,
+                524_288, -524_289, 2_147_483_647L, -2_147_483_648L, 2_147_483_648L, 1L << 40};
+        long[] timestamps = new long[deltaOfDeltas.length + 2];
+        timestamps[0] = 0;
+        timestamps[1] = 10_000_000_000L;
+        long delta = timestamps[1];
+        for (int i = 0; i < deltaOfDeltas.length; i++) {
+            delta += deltaOfDeltas[i];
+            timestamps[i + 2] = timestamps[i + 1] + delta;
+        }
+        double[] values = new double[timestamps.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    void roundTripsSpecialAndExtremeValues() {
+        double[] values = {0.0, -0.0, 1.0, 1.0, -1.0, Double.MAX_VALUE, Double.MIN_VALUE, -Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.1, 0.2, 0.30000000000000004,
+                Double.longBitsToDouble(0x8000000000000001L), Double.longBitsToDouble(0x7FFFFFFFFFFFFFFFL)};
+        long[] timestamps = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            timestamps[i] = 1_000_000L * i;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    void roundTripsRandomPoints() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + random.nextInt(300);
+            long[] timestamps = new long[n];
+            double[] values = new double[n];
+            long timestamp = random.nextLong() >> 8;
+            for (int i = 0; i < n; i++) {
+                timestamp += 1 + (random.nextBoolean() ? random.nextInt(1000) : (long) random.nextInt() & 0xFFFFFFFFL);
+                timestamps[i] = timestamp;
+                values[i] = switch (random.nextInt(3)) {
+                    case 0 -> random.nextDouble();
+                    case 1 -> Double.longBitsToDouble(random.nextLong());
+                    default -> i > 0 ? values[i - 1] : 0.0;
+                };
+            }
+            assertRoundTrip(timestamps, values);
+        }
+    }
+
+    @Test
+    void decodesAtAnOffsetWithoutMovingTheBuffer() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        encoder.append(100, 1.5);
+        encoder.append(200, 2.5);
+        byte[] payload = encoder.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + 40);
+        buffer.put(17, payload);
+
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(buffer, 17, 2);
+        assertThat(decoder.next()).isTrue();
+        assertThat(decoder.timestamp()).isEqualTo(100);
+        assertThat(decoder.value()).isEqualTo(1.5);
+        assertThat(decoder.next()).isTrue();
+        assertThat(decoder.timestamp()).isEqualTo(200);
+        assertThat(decoder.value()).isEqualTo(2.5);
+        assertThat(decoder.next()).isFalse();
+        assertThat(buffer.position()).isZero();
+    }
+
+    @Test
+    void tracksCountAndTimestampRange() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        assertThat(encoder.count()).isZero();
+        assertThat(encoder.byteLength()).isZero();
+        encoder.append(5, 1.0);
+        encoder.append(9, 1.0);
+        encoder.append(20, 2.0);
+        assertThat(encoder.count()).isEqualTo(3);
+        assertThat(encoder.firstTimestamp()).isEqualTo(5);
+        assertThat(encoder.lastTimestamp()).isEqualTo(20);
+        assertThat(encoder.toByteArray()).hasSize(encoder.byteLength());
+    }
+
+    /**
+     * 编码后解码，时间戳和数值的位模式都必须一致
+     */
+    private static byte[] assertRoundTrip(long[] timestamps, double[] values) {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        byte[] encoded = encoder.toByteArray();
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(ByteBuffer.wrap(encoded), 0, timestamps.length);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertThat(decoder.next()).as("point %d", i).isTrue();
+            assertThat(decoder.timestamp()).as("timestamp %d", i).isEqualTo(timestamps[i]);
+            assertThat(Double.doubleToRawLongBits(decoder.value())).as("value %d", i)
+                    .isEqualTo(Double.doubleToRawLongBits(values[i]));
+        }
+        assertThat(decoder.next()).isFalse();
+        return encoded;
+    }
+}
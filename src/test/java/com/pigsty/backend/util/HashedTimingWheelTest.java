@@ -0,0 +1,98 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link HashedTimingWheel} 的单元测试：不早于到期时间触发、重新设置与取消、超过一圈的定时，以及长时间未推进后的追赶
+ */
+class HashedTimingWheelTest {
+
+    private static final long ORIGIN = 1_000_000L;
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThatThrownBy(() -> new HashedTimingWheel<Long>(0, 8, ORIGIN))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HashedTimingWheel<Long>(10, 0, ORIGIN))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void firesOnlyOnceDeadlineHasPassed() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        wheel.schedule("a", ORIGIN + 25);
+
+        assertThat(wheel.advance(ORIGIN + 20)).isEmpty();
+        assertThat(wheel.contains("a")).isTrue();
+        // 到期时间向上取整到刻度，不会提前触发
+        assertThat(wheel.advance(ORIGIN + 29)).isEmpty();
+        assertThat(wheel.advance(ORIGIN + 30)).containsExactly("a");
+        assertThat(wheel.contains("a")).isFalse();
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.advance(ORIGIN + 100)).isEmpty();
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextAdvance() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        wheel.advance(ORIGIN + 50);
+        wheel.schedule("late", ORIGIN);
+        assertThat(wheel.advance(ORIGIN + 60)).containsExactly("late");
+    }
+
+    @Test
+    void rescheduleMovesTheDeadline() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        wheel.schedule("a", ORIGIN + 20);
+        wheel.schedule("a", ORIGIN + 60);
+
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(ORIGIN + 50)).isEmpty();
+        assertThat(wheel.advance(ORIGIN + 60)).containsExactly("a");
+    }
+
+    @Test
+    void cancelRemovesTheTimer() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        wheel.schedule("a", ORIGIN + 20);
+        wheel.schedule("b", ORIGIN + 20);
+
+        assertThat(wheel.cancel("a")).isTrue();
+        assertThat(wheel.cancel("a")).isFalse();
+        assertThat(wheel.advance(ORIGIN + 20)).containsExactly("b");
+    }
+
+    @Test
+    void timersBeyondOneRevolutionWaitForTheirRound() {
+        // 8 个槽、刻度 10 ms，一圈 80 ms
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        wheel.schedule("near", ORIGIN + 30);
+        wheel.schedule("far", ORIGIN + 30 + 80 * 3);
+
+        List<String> fired = new ArrayList<>();
+        for (long t = ORIGIN + 10; t <= ORIGIN + 30 + 80 * 3 - 10; t += 10) {
+            fired.addAll(wheel.advance(t));
+        }
+        assertThat(fired).containsExactly("near");
+        assertThat(wheel.advance(ORIGIN + 30 + 80 * 3)).containsExactly("far");
+    }
+
+    @Test
+    void catchesUpAfterLongPause() {
+        HashedTimingWheel<Integer> wheel = new HashedTimingWheel<>(10, 8, ORIGIN);
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(i, ORIGIN + 10L * (i + 1));
+        }
+        wheel.schedule(1000, ORIGIN + 10_000);
+
+        assertThat(wheel.advance(ORIGIN + 5_000)).hasSize(100).doesNotContain(1000);
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(ORIGIN + 10_000)).containsExactly(1000);
+    }
+}
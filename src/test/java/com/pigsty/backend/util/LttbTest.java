@@ -0,0 +1,70 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link Lttb} 的单元测试：点数不超过目标时原样返回，否则保留首尾、下标严格递增、点数等于目标，且尖峰不被抹掉
+ */
+class LttbTest {
+
+    @Test
+    void returnsAllIndicesWhenAlreadySmallEnough() {
+        long[] x = {10, 20, 30, 40};
+        double[] y = {1, 2, 3, 4};
+        assertThat(Lttb.select(x, y, 4, 4)).containsExactly(0, 1, 2, 3);
+        assertThat(Lttb.select(x, y, 2, 3)).containsExactly(0, 1);
+        assertThat(Lttb.select(x, y, 0, 3)).isEmpty();
+    }
+
+    @Test
+    void selectsExactlyThresholdPointsKeepingEnds() {
+        int length = 1000;
+        long[] x = new long[length];
+        double[] y = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = 1_700_000_000_000L + i * 60_000L;
+            y[i] = Math.sin(i / 25.0) * 10 + 20;
+        }
+
+        int[] selected = Lttb.select(x, y, length, 100);
+
+        assertThat(selected).hasSize(100);
+        assertThat(selected[0]).isZero();
+        assertThat(selected[selected.length - 1]).isEqualTo(length - 1);
+        for (int i = 1; i < selected.length; i++) {
+            assertThat(selected[i]).isGreaterThan(selected[i - 1]);
+        }
+    }
+
+    @Test
+    void treatsThresholdBelowThreeAsThree() {
+        long[] x = {0, 1, 2, 3, 4, 5};
+        double[] y = {0, 0, 9, 0, 0, 0};
+        assertThat(Lttb.select(x, y, 6, 1)).containsExactly(0, 2, 5);
+    }
+
+    @Test
+    void keepsIsolatedSpike() {
+        int length = 1000;
+        long[] x = new long[length];
+        double[] y = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = i * 1_000L;
+            y[i] = 25.0;
+        }
+        y[437] = 80.0;
+
+        assertThat(Lttb.select(x, y, length, 20)).contains(437);
+    }
+
+    @Test
+    void ignoresElementsBeyondLength() {
+        long[] x = {0, 1, 2, 3, 4, 5, 6, 7};
+        double[] y = {0, 1, 0, 1, 0, 1, Double.NaN, Double.NaN};
+        int[] selected = Lttb.select(x, y, 6, 4);
+        assertThat(selected).hasSize(4);
+        assertThat(selected[3]).isEqualTo(5);
+    }
+}
@@ -0,0 +1,144 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link MpmcRingBuffer} 的单元测试：容量取整、先进先出、满/空边界、回绕，以及多生产者多消费者下每个元素恰好被取出一次
+ */
+class MpmcRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new MpmcRingBuffer<Integer>(2).capacity()).isEqualTo(2);
+        assertThat(new MpmcRingBuffer<Integer>(5).capacity()).isEqualTo(8);
+        assertThat(new MpmcRingBuffer<Integer>(1024).capacity()).isEqualTo(1024);
+        assertThatThrownBy(() -> new MpmcRingBuffer<Integer>(1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsNull() {
+        MpmcRingBuffer<Integer> queue = new MpmcRingBuffer<>(4);
+        assertThatThrownBy(() -> queue.offer(null)).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    void offerFailsWhenFullAndPollReturnsNullWhenEmpty() {
+        MpmcRingBuffer<Integer> queue = new MpmcRingBuffer<>(4);
+        assertThat(queue.poll()).isNull();
+        for (int i = 0; i < 4; i++) {
+            assertThat(queue.offer(i)).isTrue();
+        }
+        assertThat(queue.offer(4)).isFalse();
+        assertThat(queue.size()).isEqualTo(4);
+
+        assertThat(queue.poll()).isEqualTo(0);
+        assertThat(queue.offer(4)).isTrue();
+        assertThat(queue.offer(5)).isFalse();
+    }
+
+    @Test
+    void keepsFifoOrderAcrossWraparound() {
+        MpmcRingBuffer<Integer> queue = new MpmcRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 100; round++) {
+            while (queue.offer(next)) {
+                next++;
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(queue.poll()).isEqualTo(expected++);
+            }
+        }
+        while (!queue.isEmpty()) {
+            assertThat(queue.poll()).isEqualTo(expected++);
+        }
+        assertThat(expected).isEqualTo(next);
+    }
+
+    @Test
+    void drainToTakesAtMostMaxElements() {
+        MpmcRingBuffer<Integer> queue = new MpmcRingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        List<Integer> sink = new ArrayList<>();
+        assertThat(queue.drainTo(sink, 3)).isEqualTo(3);
+        assertThat(sink).containsExactly(0, 1, 2);
+        assertThat(queue.drainTo(sink, 10)).isEqualTo(2);
+        assertThat(sink).containsExactly(0, 1, 2, 3, 4);
+        assertThat(queue.drainTo(sink, 10)).isZero();
+    }
+
+    @Test
+    void deliversEveryElementExactlyOnceUnderContention() throws Exception {
+        int producers = 3;
+        int consumers = 3;
+        int perProducer = 20_000;
+        int total = producers * perProducer;
+        MpmcRingBuffer<Integer> queue = new MpmcRingBuffer<>(64);
+        BitSet seen = new BitSet(total);
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!queue.offer(base + i)) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (consumed.get() < total) {
+                        Integer element = queue.poll();
+                        if (element == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        synchronized (seen) {
+                            if (seen.get(element)) {
+                                duplicates.incrementAndGet();
+                            }
+                            seen.set(element);
+                        }
+                        consumed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(duplicates.get()).isZero();
+        assertThat(seen.cardinality()).isEqualTo(total);
+        assertThat(queue.isEmpty()).isTrue();
+    }
+}
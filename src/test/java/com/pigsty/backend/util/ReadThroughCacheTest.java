@@ -0,0 +1,144 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ReadThroughCache} 的单元测试：命中与加载、空值不缓存、加载期间失效的结果不缓存、容量淘汰和统计
+ */
+class ReadThroughCacheTest {
+
+    @Test
+    void loadsOnceAndThenHits() {
+        ReadThroughCache<Long, String> cache = new ReadThroughCache<>("test", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get(1L, key -> "v" + key + "-" + loads.incrementAndGet())).isEqualTo("v1-1");
+        assertThat(cache.get(1L, key -> "v" + key + "-" + loads.incrementAndGet())).isEqualTo("v1-1");
+        assertThat(cache.get(2L, key -> "v" + key + "-" + loads.incrementAndGet())).isEqualTo("v2-2");
+
+        ReadThroughCache.Stats stats = cache.stats();
+        assertThat(stats.name()).isEqualTo("test");
+        assertThat(stats.size()).isEqualTo(2);
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(2);
+        assertThat(stats.hitRatio()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void doesNotCacheNull() {
+        ReadThroughCache<Long, String> cache = new ReadThroughCache<>("test", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get(1L, key -> {
+            loads.incrementAndGet();
+            return null;
+        })).isNull();
+        assertThat(cache.get(1L, key -> "found")).isEqualTo("found");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        ReadThroughCache<Long, String> cache = new ReadThroughCache<>("test", 10);
+        cache.get(1L, key -> "old");
+        cache.get(2L, key -> "other");
+
+        cache.invalidate(1L);
+        assertThat(cache.get(1L, key -> "new")).isEqualTo("new");
+        assertThat(cache.get(2L, key -> "reloaded")).isEqualTo("other");
+
+        cache.invalidateAll();
+        assertThat(cache.stats().size()).isZero();
+        assertThat(cache.get(2L, key -> "reloaded")).isEqualTo("reloaded");
+        assertThat(cache.stats().invalidations()).isEqualTo(2);
+    }
+
+    @Test
+    void discardsValueLoadedAcrossAnInvalidation() {
+        ReadThroughCache<Long, String> cache = new ReadThroughCache<>("test", 10);
+
+        // 加载读到旧数据之后、放入缓存之前，另一个线程更新了数据并使缓存失效
+        String stale = cache.get(1L, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+        assertThat(stale).isEqualTo("stale");
+        assertThat(cache.stats().size()).isZero();
+        assertThat(cache.get(1L, key -> "fresh")).isEqualTo("fresh");
+
+        cache.get(2L, key -> {
+            cache.invalidateAll();
+            return "stale";
+        });
+        assertThat(cache.get(2L, key -> "fresh")).isEqualTo("fresh");
+    }
+
+    @Test
+    void evictsHalfWhenFull() {
+        ReadThroughCache<Integer, Integer> cache = new ReadThroughCache<>("test", 8);
+        for (int i = 0; i < 8; i++) {
+            cache.get(i, key -> key);
+        }
+        assertThat(cache.stats().size()).isEqualTo(8);
+        assertThat(cache.stats().evictions()).isZero();
+
+        cache.get(100, key -> key);
+        ReadThroughCache.Stats stats = cache.stats();
+        assertThat(stats.size()).isEqualTo(5);
+        assertThat(stats.evictions()).isEqualTo(4);
+        assertThat(stats.maxEntries()).isEqualTo(8);
+
+        Map<Integer, Integer> cached = new HashMap<>();
+        cache.forEach(cached::put);
+        assertThat(cached).containsEntry(100, 100).hasSize(5);
+    }
+
+    @Test
+    void treatsNonPositiveCapacityAsOne() {
+        ReadThroughCache<Integer, Integer> cache = new ReadThroughCache<>("test", 0);
+        cache.get(1, key -> key);
+        cache.get(2, key -> key);
+        assertThat(cache.stats().maxEntries()).isEqualTo(1);
+        assertThat(cache.stats().size()).isEqualTo(1);
+        assertThat(cache.get(2, key -> -1)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentLoadersAgreeOnOneCachedValue() throws Exception {
+        ReadThroughCache<Long, Object> cache = new ReadThroughCache<>("test", 10);
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] results = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                results[t] = executor.submit(() -> {
+                    start.await();
+                    return cache.get(1L, key -> new Object());
+                });
+            }
+            start.countDown();
+            Object cached = cache.get(1L, key -> new Object());
+            // 同时未命中的线程各自加载，但都拿到先放入缓存的那一个值
+            for (Future<?> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(cached);
+            }
+            assertThat(cache.get(1L, key -> null)).isSameAs(cached);
+            assertThat(cache.stats().size()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
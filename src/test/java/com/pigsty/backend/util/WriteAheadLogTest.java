@@ -0,0 +1,281 @@
+package com.pigsty.backend.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link WriteAheadLog} 的单元测试：重新打开后从检查点继续读取，CRC 不符或写到一半的记录被当作日志末尾，
+ * 段滚动和删除、容量上限，以及按位置跳过已处理的记录
+ */
+class WriteAheadLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    private final List<WriteAheadLog> logs = new ArrayList<>();
+
+    @AfterEach
+    void closeLogs() {
+        logs.forEach(WriteAheadLog::close);
+    }
+
+    @Test
+    void readsRecordsInOrder() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 5);
+
+        assertThat(strings(wal.read(3))).containsExactly("r0", "r1", "r2");
+        assertThat(strings(wal.read(10))).containsExactly("r3", "r4");
+        assertThat(wal.read(10)).isEmpty();
+        assertThat(wal.backlog()).isEqualTo(5);
+        wal.commit();
+        assertThat(wal.backlog()).isZero();
+    }
+
+    @Test
+    void replaysUncommittedRecordsAfterReopen() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 6);
+        wal.read(2);
+        wal.commit();
+        wal.read(2);
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.backlog()).isEqualTo(4);
+        assertThat(strings(reopened.read(10))).containsExactly("r2", "r3", "r4", "r5");
+    }
+
+    @Test
+    void treatsRecordWithBadCrcAsEndOfLog() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 3);
+        wal.close();
+        // 损坏第三条记录内容的一个字节：它和之后的内容都被丢弃
+        flipByte(onlySegment(), 8 + 2 * (8 + 2) + 8);
+
+        WriteAheadLog reopened = open();
+        assertThat(strings(reopened.read(10))).containsExactly("r0", "r1");
+        reopened.append(bytes("r9"));
+        assertThat(strings(reopened.read(10))).containsExactly("r9");
+        reopened.close();
+
+        assertThat(strings(open().read(10))).containsExactly("r0", "r1", "r9");
+    }
+
+    @Test
+    void treatsTornRecordAsEndOfLog() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 2);
+        wal.close();
+        // 第三条记录只写了长度，内容和 CRC 还没写完
+        try (FileChannel channel = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 2), 8 + 2 * (8 + 2));
+        }
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.backlog()).isEqualTo(2);
+        assertThat(strings(reopened.read(10))).containsExactly("r0", "r1");
+    }
+
+    @Test
+    void startsFromEarliestSegmentWhenCheckpointIsCorrupt() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 4);
+        wal.read(2);
+        wal.commit();
+        wal.close();
+        flipByte(directory.resolve("checkpoint"), 13);
+
+        assertThat(strings(open().read(10))).containsExactly("r0", "r1", "r2", "r3");
+    }
+
+    @Test
+    void rejectsCheckpointWithCorruptedHighByteOfPosition() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 4);
+        wal.read(2);
+        wal.commit();
+        wal.close();
+        // 段内偏移的最高字节：偏移变成一个越界的值，校验值必须覆盖到它
+        flipByte(directory.resolve("checkpoint"), 8);
+
+        assertThat(strings(open().read(10))).containsExactly("r0", "r1", "r2", "r3");
+    }
+
+    @Test
+    void rejectsCheckpointWithCorruptedHighByteOfSequence() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 4);
+        wal.read(2);
+        wal.commit();
+        wal.close();
+        flipByte(directory.resolve("checkpoint"), 1);
+
+        assertThat(strings(open().read(10))).containsExactly("r0", "r1", "r2", "r3");
+    }
+
+    @Test
+    void rollsOverSegmentsAndDeletesCommittedOnes() throws IOException {
+        WriteAheadLog wal = open();
+        // 每条记录 8 + 3 字节，一个 256 字节的段放得下 22 条
+        appendAll(wal, 100, 160);
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        List<String> read = strings(wal.read(1000));
+        assertThat(read).hasSize(60).startsWith("r100").endsWith("r159");
+        wal.commit();
+        assertThat(segments()).hasSize(1);
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.backlog()).isZero();
+        reopened.append(bytes("r160"));
+        assertThat(strings(reopened.read(10))).containsExactly("r160");
+    }
+
+    @Test
+    void rejectsAppendsBeyondCapacity() throws IOException {
+        WriteAheadLog wal = open(directory, 2L * SEGMENT_SIZE);
+        int appended = 0;
+        while (wal.append(bytes("r" + (100 + appended)))) {
+            appended++;
+        }
+        assertThat(appended).isGreaterThan(0);
+        assertThat(wal.sizeBytes()).isLessThanOrEqualTo(2L * SEGMENT_SIZE);
+
+        wal.read(appended);
+        wal.commit();
+        assertThat(wal.append(bytes("r999"))).isTrue();
+    }
+
+    @Test
+    void acceptsRecordLargerThanASegment() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 0, 2);
+        String large = "x".repeat(2 * SEGMENT_SIZE);
+        assertThat(wal.append(bytes(large))).isTrue();
+        appendAll(wal, 2, 4);
+
+        assertThat(strings(wal.read(10))).containsExactly("r0", "r1", large, "r2", "r3");
+        wal.commit();
+        wal.close();
+        assertThat(open().backlog()).isZero();
+    }
+
+    @Test
+    void deletesUnusedPreallocatedSegmentsOnOpen() throws IOException {
+        Path stale = directory.resolve(String.format("%020d.wal.spare", 99));
+        Files.write(stale, new byte[SEGMENT_SIZE]);
+
+        WriteAheadLog wal = open();
+        assertThat(stale).doesNotExist();
+        appendAll(wal, 0, 3);
+        assertThat(strings(wal.read(10))).containsExactly("r0", "r1", "r2");
+    }
+
+    @Test
+    void keepsIdAcrossReopenAndChangesItForANewDirectory(@TempDir Path other) throws IOException {
+        WriteAheadLog wal = open();
+        long id = wal.id();
+        wal.close();
+
+        assertThat(open().id()).isEqualTo(id);
+        assertThat(open(other, 1 << 20).id()).isNotEqualTo(id);
+    }
+
+    @Test
+    void skipsRecordsUpToAPersistedPosition() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 100, 150);
+        long start = wal.position();
+        wal.read(30);
+        long persisted = wal.position();
+        assertThat(persisted).isGreaterThan(start);
+        // 入库后、提交读取位置之前崩溃
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertThat(reopened.skipThrough(persisted)).isEqualTo(30);
+        assertThat(reopened.position()).isEqualTo(persisted);
+        assertThat(reopened.skipThrough(persisted)).isZero();
+        assertThat(strings(reopened.read(100))).hasSize(20).startsWith("r130");
+    }
+
+    @Test
+    void positionsIncreaseAcrossSegments() throws IOException {
+        WriteAheadLog wal = open();
+        appendAll(wal, 100, 200);
+        long previous = wal.position();
+        while (!wal.read(1).isEmpty()) {
+            long position = wal.position();
+            assertThat(position).isGreaterThan(previous);
+            previous = position;
+        }
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return open(directory, 1 << 20);
+    }
+
+    private WriteAheadLog open(Path path, long maxBytes) throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(path, SEGMENT_SIZE, maxBytes);
+        logs.add(wal);
+        return wal;
+    }
+
+    private static void appendAll(WriteAheadLog wal, int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertThat(wal.append(bytes("r" + i))).isTrue();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        List<String> result = new ArrayList<>();
+        for (byte[] record : records) {
+            result.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(1);
+        return segments.get(0);
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0xFF));
+            channel.write(one.rewind(), position);
+        }
+    }
+}